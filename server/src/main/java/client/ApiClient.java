@@ -10,7 +10,12 @@ import server.requests.*;
 import javax.ws.rs.client.Client;
 import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.Response;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.HashMap;
+import java.util.Map;
 
 import static server.Resources.*;
 
@@ -90,6 +95,46 @@ public final class ApiClient {
         return connector.get(baseTarget, NOTIFICATIONS_PATH);
     }
 
+    /**
+     * Searches the text of photo descriptions, album descriptions and comments
+     *
+     * @param query the words to search for
+     * @param limit the maximum number of results to return, or null for the server's default
+     * @param after the cursor returned with the previous page, or null for the first page
+     * @return the response of the request.
+     */
+    public Response search(String query, Integer limit, String after) {
+        Map<String, Object> params = new HashMap<>();
+        params.put(QUERY_PARAM, query);
+        params.put(LIMIT_PARAM, limit);
+        params.put(AFTER_PARAM, after);
+        return connector.getWithQuery(baseTarget, SEARCH_PATH, params);
+    }
+
+    /**
+     * Opens a stream of server-sent events carrying the user's new notifications.
+     * The response's entity should be read as an InputStream, and closed when done.
+     *
+     * @param lastEventId the id of the last notification received, to resume from, or null
+     * @return the response of the request.
+     */
+    public Response getNotificationStream(Long lastEventId) {
+        Map<String, String> headers = new HashMap<>();
+        if(lastEventId != null) headers.put(HttpHeaders.LAST_EVENT_ID_HEADER, String.valueOf(lastEventId));
+        return connector.get(baseTarget, NOTIFICATIONS_STREAM_PATH, headers);
+    }
+
+    /**
+     * Marks the user's notifications as read, up to and including the given one
+     *
+     * @param notificationId the id of the last notification which was read
+     * @return the response of the request.
+     */
+    public Response markNotificationsRead(long notificationId) {
+        String path = String.format("%s/%s", NOTIFICATIONS_READ_PATH, notificationId);
+        return connector.put(baseTarget, path);
+    }
+
     /**
      * Retrieves all users registered on the server
      *
@@ -133,6 +178,33 @@ public final class ApiClient {
         return connector.post(baseTarget, UPLOAD_PHOTO_PATH, gson.toJson(request));
     }
 
+    /**
+     * Uploads the given file as raw bytes, rather than encoding it into JSON
+     *
+     * @param photoName     the name of the photo
+     * @param ext the photo's extension, either jpg or png
+     * @param description the photo's description
+     * @param albumId the id of the album this photo is to be uploaded to
+     * @param photoContents the byte[] representing the photo's contents
+     * @return the response of the request.
+     */
+    public Response uploadRawPhoto(String photoName, String ext, String description, long albumId, byte[] photoContents) {
+        // Send the photo's details as headers
+        Map<String, String> headers = new HashMap<>();
+        try {
+            headers.put(PHOTO_NAME_HEADER, URLEncoder.encode(photoName, CHARSET_AS_STRING));
+            headers.put(PHOTO_DESCRIPTION_HEADER, URLEncoder.encode(description, CHARSET_AS_STRING));
+        }
+        catch (UnsupportedEncodingException e) {
+            e.printStackTrace();
+        }
+        headers.put(ALBUM_ID_HEADER, Long.toString(albumId));
+
+        // POST the contents
+        String mediaType = ext.equals("png") ? "image/png" : "image/jpeg";
+        return connector.post(baseTarget, UPLOAD_RAW_PHOTO_PATH, photoContents, mediaType, headers);
+    }
+
     /**
      * Sends a remove request to the server.
      *
@@ -171,6 +243,40 @@ public final class ApiClient {
         return connector.get(baseTarget, path);
     }
 
+    /**
+     * Retrieves the photo contents from the given photo, unless the client already has them
+     *
+     * @param id the id of the photo
+     * @param ext the file extension
+     * @param eTag the ETag of the contents the client already has, quoted as received
+     * @return the response of the request.
+     */
+    public Response getPhotoContentsJPG(long id, String ext, String eTag) {
+        // Encode path and GET the requested photo, if it doesn't match the given tag
+        String path = String.format("%s/%s.%s", PHOTO_CONTENTS_JPG_PATH, id, ext);
+        Map<String, String> headers = new HashMap<>();
+        headers.put(HttpHeaders.IF_NONE_MATCH, eTag);
+        return connector.get(baseTarget, path, headers);
+    }
+
+    /**
+     * Retrieves ranges of the photo contents from the given photo
+     *
+     * @param id the id of the photo
+     * @param ext the file extension
+     * @param range the value of the Range header, such as 'bytes=0-99'
+     * @param ifRange the ETag of the contents the ranges are of, quoted as received, or null
+     * @return the response of the request.
+     */
+    public Response getPhotoContentsJPGRange(long id, String ext, String range, String ifRange) {
+        // Encode path and GET the requested ranges of the photo
+        String path = String.format("%s/%s.%s", PHOTO_CONTENTS_JPG_PATH, id, ext);
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Range", range);
+        if(ifRange != null) headers.put("If-Range", ifRange);
+        return connector.get(baseTarget, path, headers);
+    }
+
     /**
      * Retrieves the photo meta-data for the given photo
      *
@@ -274,6 +380,19 @@ public final class ApiClient {
         return connector.get(baseTarget, path);
     }
 
+    /**
+     * Download the photos a given user posted within a time range
+     *
+     * @param name the name of the user to retrieve photos from
+     * @param since the earliest time to include, in milliseconds since the epoch, or null
+     * @param until the time to stop at, exclusive, in milliseconds since the epoch, or null
+     * @return the response of the request
+     */
+    public Response getAllPhotos(String name, Long since, Long until) {
+        String path = String.format(Resources.GET_USER_PHOTOS_PATH, name);
+        return connector.getWithQuery(baseTarget, path, timeRange(since, until));
+    }
+
     /**
      * Download all photos from a given album
      *
@@ -285,6 +404,19 @@ public final class ApiClient {
         return connector.get(baseTarget, path);
     }
 
+    /**
+     * Download the photos added to a given album within a time range
+     *
+     * @param albumId the id of the album to retrieve photos from
+     * @param since the earliest time to include, in milliseconds since the epoch, or null
+     * @param until the time to stop at, exclusive, in milliseconds since the epoch, or null
+     * @return the response of the request
+     */
+    public Response getAllPhotos(long albumId, Long since, Long until) {
+        String path = String.format("%s/%s", GET_PHOTOS_BY_ALBUM_PATH, albumId);
+        return connector.getWithQuery(baseTarget, path, timeRange(since, until));
+    }
+
     /**
      * Download all albums from a given user
      *
@@ -318,6 +450,19 @@ public final class ApiClient {
         return connector.get(baseTarget, path);
     }
 
+    /**
+     * Download the comments a given user made within a time range
+     *
+     * @param name the name of the user to retrieve comments from
+     * @param since the earliest time to include, in milliseconds since the epoch, or null
+     * @param until the time to stop at, exclusive, in milliseconds since the epoch, or null
+     * @return the response of the request
+     */
+    public Response getAllComments(String name, Long since, Long until) {
+        String path = String.format("%s/%s", COMMENTS_PATH, name);
+        return connector.getWithQuery(baseTarget, path, timeRange(since, until));
+    }
+
     /**
      * Download all comments from a given user
      *
@@ -340,6 +485,95 @@ public final class ApiClient {
         return connector.get(baseTarget, path);
     }
 
+    /**
+     * Download the comments made on a given photo within a time range
+     *
+     * @param id the photo's id
+     * @param since the earliest time to include, in milliseconds since the epoch, or null
+     * @param until the time to stop at, exclusive, in milliseconds since the epoch, or null
+     * @return the response of the request
+     */
+    public Response getAllPhotoComments(long id, Long since, Long until) {
+        String path = String.format("%s/%s", GET_ALL_PHOTO_COMMENTS_PATH, id);
+        return connector.getWithQuery(baseTarget, path, timeRange(since, until));
+    }
+
+    /**
+     * Download the whole thread of comments on a given photo, with replies nested below their comments
+     *
+     * @param id the photo's id
+     * @param depth the deepest level of replies to include, or null for every level
+     * @return the response of the request
+     */
+    public Response getPhotoCommentThread(long id, Integer depth) {
+        String path = String.format("%s/%s", PHOTO_COMMENT_THREAD_PATH, id);
+
+        Map<String, Object> query = new HashMap<>();
+        query.put(DEPTH_PARAM, depth);
+        return connector.getWithQuery(baseTarget, path, query);
+    }
+
+    /**
+     * Download a comment, with its replies nested below it
+     *
+     * @param id the comment's id
+     * @param depth the deepest level of replies to include, or null for every level
+     * @return the response of the request
+     */
+    public Response getCommentThread(long id, Integer depth) {
+        String path = String.format("%s/%s", COMMENT_THREAD_PATH, id);
+
+        Map<String, Object> query = new HashMap<>();
+        query.put(DEPTH_PARAM, depth);
+        return connector.getWithQuery(baseTarget, path, query);
+    }
+
+    /**
+     * @param since the earliest time to include, or null
+     * @param until the time to stop at, or null
+     * @return the query parameters filtering a listing to the given time range
+     */
+    private static Map<String, Object> timeRange(Long since, Long until) {
+        Map<String, Object> query = new HashMap<>();
+        query.put(SINCE_PARAM, since);
+        query.put(UNTIL_PARAM, until);
+        return query;
+    }
+
+    /**
+     * Retrieve a page of the users who liked the given photo
+     *
+     * @param id the photo's id
+     * @param limit the maximum number of users to return
+     * @param after the cursor returned with the previous page, or null for the first page
+     * @return the response of the request
+     */
+    public Response getPhotoLikers(long id, int limit, String after) {
+        String path = String.format("%s/%s", PHOTO_LIKERS_PATH, id);
+
+        Map<String, Object> query = new HashMap<>();
+        query.put(LIMIT_PARAM, limit);
+        query.put(AFTER_PARAM, after);
+        return connector.getWithQuery(baseTarget, path, query);
+    }
+
+    /**
+     * Retrieve a page of the users who liked the given comment
+     *
+     * @param id the comment's id
+     * @param limit the maximum number of users to return
+     * @param after the cursor returned with the previous page, or null for the first page
+     * @return the response of the request
+     */
+    public Response getCommentLikers(long id, int limit, String after) {
+        String path = String.format("%s/%s", COMMENT_LIKERS_PATH, id);
+
+        Map<String, Object> query = new HashMap<>();
+        query.put(LIMIT_PARAM, limit);
+        query.put(AFTER_PARAM, after);
+        return connector.getWithQuery(baseTarget, path, query);
+    }
+
     /**
      * Requests to add a comment to the photo / comment represented by the given information
      *
@@ -405,6 +639,49 @@ public final class ApiClient {
         return connector.get(baseTarget, path);
     }
 
+    /**
+     * Retrieves a page of the user's news feed, newest first
+     *
+     * @param limit the maximum number of photos on the page
+     * @param before the cursor returned with the previous page, or null for the first page
+     * @return the response of the request
+     */
+    public Response getNewsFeed(int limit, String before) {
+        String path = String.format("%s/%s", NEWS_FEED_PATH, user);
+
+        Map<String, Object> query = new HashMap<>();
+        query.put(LIMIT_PARAM, limit);
+        query.put(BEFORE_PARAM, before);
+        return connector.getWithQuery(baseTarget, path, query);
+    }
+
+    /**
+     * Retrieves the newest photos from the user's materialised news feed timeline
+     *
+     * @return the response of the request
+     */
+    public Response getNewsFeedTimeline() {
+        String path = String.format("%s/%s", NEWS_FEED_PATH, user);
+        return connector.getWithQuery(baseTarget, path, NEWS_FEED_MODE_PARAM, NEWS_FEED_TIMELINE_MODE);
+    }
+
+    /**
+     * Retrieves a page of the user's materialised news feed timeline, newest first
+     *
+     * @param limit the maximum number of photos on the page
+     * @param before the cursor returned with the previous page, or null for the first page
+     * @return the response of the request
+     */
+    public Response getNewsFeedTimeline(int limit, String before) {
+        String path = String.format("%s/%s", NEWS_FEED_PATH, user);
+
+        Map<String, Object> query = new HashMap<>();
+        query.put(NEWS_FEED_MODE_PARAM, NEWS_FEED_TIMELINE_MODE);
+        query.put(LIMIT_PARAM, limit);
+        query.put(BEFORE_PARAM, before);
+        return connector.getWithQuery(baseTarget, path, query);
+    }
+
     public Response getFollowing() {
         String path = String.format("%s/%s", USERS_FOLLOWING_PATH , user);
         return connector.get(baseTarget, path);
@@ -415,12 +692,44 @@ public final class ApiClient {
         return connector.get(baseTarget, path);
     }
 
+    /**
+     * @param name the user's name
+     * @return the response of the request, containing the number of users following the given user
+     */
+    public Response getFollowerCount(String name) {
+        String path = String.format("%s/%s%s", USERS_FOLLOWERS_PATH, name, COUNT);
+        return connector.get(baseTarget, path);
+    }
+
+    /**
+     * @param name the user's name
+     * @return the response of the request, containing the number of users the given user follows
+     */
+    public Response getFollowingCount(String name) {
+        String path = String.format("%s/%s%s", USERS_FOLLOWING_PATH, name, COUNT);
+        return connector.get(baseTarget, path);
+    }
+
     public Response getUserWithNameBegining(String name) {
         // Encode request  and POST
 
         return connector.getWithQuery(baseTarget, USERS_SEARCH_BAR_PATH, NAME_PARAM, name);
     }
 
+    /**
+     * Searches for users whose names start with the given query, ignoring case
+     *
+     * @param name the start of the names to find
+     * @param limit the maximum number of users to return, or null for the server's default
+     * @return the response of the request.
+     */
+    public Response getUserWithNameBegining(String name, Integer limit) {
+        Map<String, Object> query = new HashMap<>();
+        query.put(NAME_PARAM, name);
+        query.put(LIMIT_PARAM, limit);
+        return connector.getWithQuery(baseTarget, USERS_SEARCH_BAR_PATH, query);
+    }
+
     /**
      * Resets the logged-in user
      */
@@ -11,6 +11,7 @@ import javax.ws.rs.core.Response;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.Map;
 
 import static javax.ws.rs.core.HttpHeaders.*;
 
@@ -36,6 +37,24 @@ class Connector {
         return headers(pathTarget.request()).get();
     }
 
+    /**
+     * Performs a GET request on the provided path, with extra headers
+     *
+     * @param baseTarget the web target for the base url
+     * @param path       the path to GET from
+     * @param extraHeaders any further headers to send with the request
+     */
+    Response get(WebTarget baseTarget, String path, Map<String, String> extraHeaders) {
+        // Get API resource, and add the extra headers
+        Invocation.Builder request = headers(baseTarget.path(path).request());
+        for(Map.Entry<String, String> header : extraHeaders.entrySet()) {
+            request = request.header(header.getKey(), header.getValue());
+        }
+
+        // Get result and return
+        return request.get();
+    }
+
     /**
      * Add the date and authorisation headers
      * @param request the request
@@ -105,6 +124,26 @@ class Connector {
         return result;
     }
 
+    /**
+     * Posts the given raw bytes to the given path
+     *
+     * @param baseTarget the web target for the base url
+     * @param path       the path to post the bytes to
+     * @param contents   the bytes to post
+     * @param mediaType  the media type of the bytes
+     * @param extraHeaders any further headers to send with the request
+     */
+    Response post(WebTarget baseTarget, String path, byte[] contents, String mediaType, Map<String, String> extraHeaders) {
+        // Get API resource, and add the extra headers
+        Invocation.Builder request = headers(baseTarget.path(path).request());
+        for(Map.Entry<String, String> header : extraHeaders.entrySet()) {
+            request = request.header(header.getKey(), header.getValue());
+        }
+
+        // Post the bytes to the resource
+        return request.post(Entity.entity(contents, mediaType));
+    }
+
     /**
      * Performs a GET request on the provided path with query
      *
@@ -122,6 +161,24 @@ class Connector {
         return headers(search.request()).get();
     }
 
+    /**
+     * Performs a GET request on the provided path with several query parameters
+     *
+     * @param baseTarget the web target for the base url
+     * @param path       the path to GET from
+     * @param query      the query parameters. Those with null values are left out.
+     */
+    Response getWithQuery(WebTarget baseTarget, String path, Map<String, Object> query) {
+        // Get API resource, and add each query parameter
+        WebTarget pathTarget = baseTarget.path(path);
+        for(Map.Entry<String, Object> param : query.entrySet()) {
+            if(param.getValue() != null) pathTarget = pathTarget.queryParam(param.getKey(), param.getValue());
+        }
+
+        // Get result and return
+        return headers(pathTarget.request()).get();
+    }
+
     void setUserAndPw(String user, String password) {
         this.user = user;
         this.password = password;
@@ -7,6 +7,19 @@ import java.security.NoSuchAlgorithmException;
  * Class for generating api keys
  */
 public abstract class Auth {
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final byte SEPARATOR = ':';
+
+    // Digests are reused, one per thread, rather than being looked up on every request
+    private static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    });
 
     /**
      * Generates an api key for the user in this session. Uses HMAC (Hashed Message Authentication Code)
@@ -17,11 +30,47 @@ public abstract class Auth {
      * @return the encoded authentication information.
      */
     public static String getApiKey(String user, String base64HashedPassword, String systemTime) {
-        // Compose raw info used to make api key
-        String key = String.format("%s:%s:%s", systemTime, user, base64HashedPassword);
-
         // Hash and encode the overall key, and append the username before it.
-        return String.format("%s:%s", user, hashAndEncodeHex(key));
+        byte[] hash = hashApiKey(user, base64HashedPassword, systemTime);
+        return new StringBuilder(String.valueOf(user).length() + 1 + hash.length * 2)
+                .append(user).append(':').append(encodeHex(hash)).toString();
+    }
+
+    /**
+     * Checks the given api key, without revealing through its timing how much of the key was correct.
+     *
+     * @param user the user who sent the request
+     * @param base64HashedPassword the user's stored password
+     * @param systemTime the provided time when a request was launched
+     * @param apiKey the hex-encoded key provided with the request, without the username
+     * @return true if the key is the one generated by {@link #getApiKey}
+     */
+    public static boolean verifyApiKey(String user, String base64HashedPassword, String systemTime, String apiKey) {
+        byte[] hash = hashApiKey(user, base64HashedPassword, systemTime);
+        if(apiKey == null || apiKey.length() != hash.length * 2) return false;
+
+        // Compare every hex digit, accumulating any differences
+        int diff = 0;
+        for(int i = 0; i < hash.length; i++) {
+            diff |= apiKey.charAt(2 * i) ^ HEX_DIGITS[(hash[i] >> 4) & 0xf];
+            diff |= apiKey.charAt(2 * i + 1) ^ HEX_DIGITS[hash[i] & 0xf];
+        }
+        return diff == 0;
+    }
+
+    /**
+     * Hashes the raw info used to make an api key, in the form "time:user:password".
+     * Missing info is hashed as "null", as it is for requests sent before logging in.
+     * @return the hash
+     */
+    private static byte[] hashApiKey(String user, String base64HashedPassword, String systemTime) {
+        MessageDigest messageDigest = SHA_256.get();
+        messageDigest.update(String.valueOf(systemTime).getBytes(Resources.CHARSET));
+        messageDigest.update(SEPARATOR);
+        messageDigest.update(String.valueOf(user).getBytes(Resources.CHARSET));
+        messageDigest.update(SEPARATOR);
+        messageDigest.update(String.valueOf(base64HashedPassword).getBytes(Resources.CHARSET));
+        return messageDigest.digest();
     }
 
     /**
@@ -30,27 +79,20 @@ public abstract class Auth {
      * @return the encoded key
      */
     public static String hashAndEncodeHex(String key) {
-        // Get hash algorithm
-        try {
-            MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
-
-            // Hash the raw key
-            messageDigest.update(key.getBytes(Resources.CHARSET));
-            byte[] hash = messageDigest.digest();
-
-            // Convert to hex string
-            StringBuffer hexString = new StringBuffer();
-            for (byte b : hash) {
-                String hex = Integer.toHexString(0xff & b);
-                if (hex.length() == 1) hexString.append('0');
-                hexString.append(hex);
-            }
-            return hexString.toString();
-        }
-        catch (NoSuchAlgorithmException e) {
-            e.printStackTrace();
-        }
+        // Hash the raw key, and convert to hex string
+        return new String(encodeHex(SHA_256.get().digest(key.getBytes(Resources.CHARSET))));
+    }
 
-        return "";
+    /**
+     * @param bytes the bytes to encode
+     * @return the bytes as lower case hex digits
+     */
+    private static char[] encodeHex(byte[] bytes) {
+        char[] hex = new char[bytes.length * 2];
+        for(int i = 0; i < bytes.length; i++) {
+            hex[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+            hex[2 * i + 1] = HEX_DIGITS[bytes[i] & 0xf];
+        }
+        return hex;
     }
 }
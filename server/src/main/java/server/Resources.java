@@ -32,6 +32,7 @@ public abstract class Resources {
     public static final String USERS_FOLLOWING_PATH = USERS_PATH + FOLLOWING;
     public static final String USERS_FOLLOWERS_PATH = USERS_PATH + FOLLOWERS;
     public static final String USERS_SEARCH_BAR_PATH = USERS_PATH + SEARCH;
+    public static final String COUNT = "/count";
 
     // Resources regarding albums
     public static final String ALBUMS_PATH = "/albums";
@@ -51,6 +52,11 @@ public abstract class Resources {
     public static final String PHOTO_CONTENTS_JPG_PATH = PHOTOS_PATH + PHOTO_CONTENTS + JPG;
     public static final String UPLOAD_PHOTO = "/upload";
     public static final String UPLOAD_PHOTO_PATH = PHOTOS_PATH + UPLOAD_PHOTO;
+    public static final String UPLOAD_RAW = "/raw";
+    public static final String UPLOAD_RAW_PHOTO_PATH = UPLOAD_PHOTO_PATH + UPLOAD_RAW;
+    public static final String PHOTO_NAME_HEADER = "X-Photo-Name";
+    public static final String PHOTO_DESCRIPTION_HEADER = "X-Photo-Description";
+    public static final String ALBUM_ID_HEADER = "X-Album-Id";
     public static final String GET_USER_PHOTOS_PATH = USERS_PATH + "/%s" + PHOTOS_PATH;
     public static final String GET_PHOTOS_BY_ALBUM_PATH = PHOTOS_PATH + ALBUMS_PATH;
     public static final String DELETE_PHOTO = "/delete";
@@ -69,6 +75,10 @@ public abstract class Resources {
     public static final String DELETE_COMMENT_PATH = COMMENTS_PATH + DELETE_COMMENT;
     public static final String EDIT_COMMENT = "/edit";
     public static final String EDIT_COMMENT_PATH = COMMENTS_PATH + EDIT_COMMENT;
+    public static final String THREAD = "/threads";
+    public static final String COMMENT_THREAD_PATH = COMMENTS_PATH + THREAD;
+    public static final String PHOTO_COMMENT_THREAD_PATH = COMMENTS_PATH + THREAD + PHOTOS_PATH;
+    public static final String DEPTH_PARAM = "depth";
 
     // Resources regarding voting
     public static final String UNLIKE = "/unlike";
@@ -77,6 +87,9 @@ public abstract class Resources {
     public static final String COMMENT_LIKE_PATH = COMMENTS_PATH + LIKE;
     public static final String PHOTO_UNLIKE_PATH = PHOTOS_PATH + UNLIKE;
     public static final String PHOTO_LIKE_PATH = PHOTOS_PATH + LIKE;
+    public static final String LIKERS = "/likers";
+    public static final String COMMENT_LIKERS_PATH = COMMENTS_PATH + LIKERS;
+    public static final String PHOTO_LIKERS_PATH = PHOTOS_PATH + LIKERS;
 
     // Resources regarding admins
     public static final String ADMIN_PATH = "/admin";
@@ -87,7 +100,25 @@ public abstract class Resources {
 
     // Resources regarding News Feeds
     public static final String NEWS_FEED_PATH = "/newsfeeds";
+    public static final String NEWS_FEED_MODE_PARAM = "mode";
+    public static final String NEWS_FEED_TIMELINE_MODE = "timeline";
+    public static final String LIMIT_PARAM = "limit";
+    public static final String BEFORE_PARAM = "before";
+    public static final String AFTER_PARAM = "after";
+
+    // Time range filters on photo and comment listings, in milliseconds since the epoch
+    public static final String SINCE_PARAM = "since";
+    public static final String UNTIL_PARAM = "until";
+
+    // Resources regarding full-text search
+    public static final String SEARCH_PATH = "/search";
+    public static final String QUERY_PARAM = "q";
 
     // Resources regarding notifications
     public static final String NOTIFICATIONS_PATH = "/notifications";
+    public static final String READ = "/read";
+    public static final String NOTIFICATIONS_READ_PATH = NOTIFICATIONS_PATH + READ;
+    public static final String STREAM = "/stream";
+    public static final String NOTIFICATIONS_STREAM_PATH = NOTIFICATIONS_PATH + STREAM;
+    public static final String NOTIFICATION_EVENT = "notification";
 }
@@ -47,10 +47,14 @@ public class ServerMain {
 
     public static void main(String[] args) throws IOException {
         final HttpServer server = new ServerMain().startServer();
+
+        // Make sure buffered changes reach the data store, even if the server is killed rather than stopped
+        Runtime.getRuntime().addShutdownHook(new Thread(RESOLVER::close, "data-store-shutdown"));
         System.out.println(String.format("Jersey app started with WADL available at "
                 + "%sapplication.wadl%nHit enter to stop it...", BASE_URL));
         System.in.read();
         server.stop();
+        RESOLVER.close();
     }
 }
 
@@ -0,0 +1,50 @@
+package server.datastore;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Stream which fails once more than a given number of bytes have been read from it,
+ * so oversized uploads are rejected without reading them in full.
+ */
+final class BoundedInputStream extends FilterInputStream {
+    private final long limit;
+    private long read;
+
+    BoundedInputStream(InputStream in, long limit) {
+        super(in);
+        this.limit = limit;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if(b != -1) count(1);
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = super.read(b, off, len);
+        if(n > 0) count(n);
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = super.skip(n);
+        count(skipped);
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    private void count(long n) throws IOException {
+        read += n;
+        if(read > limit) throw new IOException(String.format("Contents exceed the limit of %d bytes", limit));
+    }
+}
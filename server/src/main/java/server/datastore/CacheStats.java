@@ -0,0 +1,69 @@
+package server.datastore;
+
+/**
+ * Snapshot of an entity cache's state and lifetime counters.
+ */
+public final class CacheStats {
+    private final String name;
+    private final int maxSize, size;
+    private final long hits, misses, evictions, invalidations;
+
+    CacheStats(String name, int maxSize, int size, long hits, long misses, long evictions, long invalidations) {
+        this.name = name;
+        this.maxSize = maxSize;
+        this.size = size;
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.invalidations = invalidations;
+    }
+
+    /**
+     * @return the name of the cache
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the maximum number of entries the cache holds
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return the number of entries currently cached
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @return the number of lookups answered from the cache
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return the number of lookups which went to the underlying data store
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return the number of entries removed to make room for others
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return the number of times entries were invalidated by a change
+     */
+    public long getInvalidations() {
+        return invalidations;
+    }
+}
@@ -0,0 +1,336 @@
+package server.datastore;
+
+import server.datastore.exceptions.InvalidResourceRequestException;
+import server.objects.*;
+import server.requests.AddCommentRequest;
+import server.requests.UploadPhotoRequest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * DataStore which caches the entities looked up by primary key in front of another DataStore.
+ *
+ * Users, albums, photos and comments are each held in their own bounded LRU cache.
+ * Every change made through this store invalidates exactly the entries it affects,
+ * after the change has been made to the underlying store. Listings are not cached.
+ * Cached entities are shared between callers, so must not be modified.
+ */
+final class CachingDataStore implements DataStore {
+    // Cache settings, overridable through system properties
+    static final String CACHE_SIZE_PROPERTY = "photoshare.cache.size";
+    static final int DEFAULT_CACHE_SIZE = 10 * 1000;
+
+    private final DataStore dataStore;
+    private final LruCache<String, User> users;
+    private final LruCache<Long, Album> albums;
+    private final LruCache<Long, Photo> photos;
+    private final LruCache<Long, PhotoReference> photoReferences;
+    private final LruCache<Long, Comment> comments;
+
+    /**
+     * @param dataStore the store to cache
+     * @param maxSize the maximum number of entries in each entity's cache
+     */
+    CachingDataStore(DataStore dataStore, int maxSize) {
+        this.dataStore = dataStore;
+        users = new LruCache<>("users", maxSize);
+        albums = new LruCache<>("albums", maxSize);
+        photos = new LruCache<>("photos", maxSize);
+        photoReferences = new LruCache<>("photoReferences", maxSize);
+        comments = new LruCache<>("comments", maxSize);
+    }
+
+    /**
+     * @return a snapshot of each entity cache's state
+     */
+    List<CacheStats> getStats() {
+        return Arrays.asList(users.getStats(), albums.getStats(), photos.getStats(),
+                photoReferences.getStats(), comments.getStats());
+    }
+
+    @Override
+    public long persistUploadPhoto(String author, UploadPhotoRequest request, InputStream contents, long time)
+            throws IOException {
+        return dataStore.persistUploadPhoto(author, request, contents, time);
+    }
+
+    @Override
+    public List<Photo> getPhotos(String user) {
+        return dataStore.getPhotos(user);
+    }
+
+    @Override
+    public List<Photo> getPhotos(String user, FeedCursor before, int limit) {
+        return dataStore.getPhotos(user, before, limit);
+    }
+
+    @Override
+    public List<Photo> getPhotos(String user, long since, long until) {
+        return dataStore.getPhotos(user, since, until);
+    }
+
+    @Override
+    public List<Photo> getPhotos(long albumId) {
+        return dataStore.getPhotos(albumId);
+    }
+
+    @Override
+    public List<Photo> getPhotos(long albumId, long since, long until) {
+        return dataStore.getPhotos(albumId, since, until);
+    }
+
+    @Override
+    public List<Photo> getPhotosById(Collection<Long> photoIds) {
+        return dataStore.getPhotosById(photoIds);
+    }
+
+    @Override
+    public Photo getPhotoMetaData(long id) throws InvalidResourceRequestException {
+        return photos.get(id, dataStore::getPhotoMetaData);
+    }
+
+    @Override
+    public PhotoReference getPhotoReference(long id) throws InvalidResourceRequestException {
+        return photoReferences.get(id, dataStore::getPhotoReference);
+    }
+
+    @Override
+    public PhotoContents getPhotoContents(long id, String ext) throws InvalidResourceRequestException {
+        return dataStore.getPhotoContents(id, ext);
+    }
+
+    @Override
+    public long persistAddAlbum(String albumName, String author, String description, long time) {
+        return dataStore.persistAddAlbum(albumName, author, description, time);
+    }
+
+    @Override
+    public Album getAlbum(long albumId) throws InvalidResourceRequestException {
+        return albums.get(albumId, dataStore::getAlbum);
+    }
+
+    @Override
+    public List<Album> getAlbums(String user) {
+        return dataStore.getAlbums(user);
+    }
+
+    @Override
+    public void updateAlbumDescription(long albumId, String description) throws InvalidResourceRequestException {
+        try {
+            dataStore.updateAlbumDescription(albumId, description);
+        }
+        finally {
+            albums.invalidate(albumId);
+        }
+    }
+
+    @Override
+    public void updatePhotoDescription(long photoId, String description) throws InvalidResourceRequestException {
+        try {
+            dataStore.updatePhotoDescription(photoId, description);
+        }
+        finally {
+            photos.invalidate(photoId);
+        }
+    }
+
+    @Override
+    public Comment getComment(long id) throws InvalidResourceRequestException {
+        return comments.get(id, dataStore::getComment);
+    }
+
+    @Override
+    public List<User> getUsers() {
+        return dataStore.getUsers();
+    }
+
+    @Override
+    public User getUser(String name) throws InvalidResourceRequestException {
+        return users.get(name, dataStore::getUser);
+    }
+
+    @Override
+    public void persistAddUser(String username, String password, boolean admin) {
+        dataStore.persistAddUser(username, password, admin);
+        users.invalidate(username);
+    }
+
+    @Override
+    public List<Comment> getComments(String username) {
+        return dataStore.getComments(username);
+    }
+
+    @Override
+    public List<Comment> getPhotoComments(long referenceId) {
+        return dataStore.getPhotoComments(referenceId);
+    }
+
+    @Override
+    public List<Comment> getComments(String username, long since, long until) {
+        return dataStore.getComments(username, since, until);
+    }
+
+    @Override
+    public List<Comment> getPhotoComments(long referenceId, long since, long until) {
+        return dataStore.getPhotoComments(referenceId, since, until);
+    }
+
+    @Override
+    public List<Comment> getReplies(long referenceId) {
+        return dataStore.getReplies(referenceId);
+    }
+
+    @Override
+    public List<Comment> getCommentThread(long photoId, int maxDepth) {
+        return dataStore.getCommentThread(photoId, maxDepth);
+    }
+
+    @Override
+    public List<Comment> getReplyThread(long commentId, int maxDepth) {
+        return dataStore.getReplyThread(commentId, maxDepth);
+    }
+
+    @Override
+    public List<Notification> getNotifications(String user) {
+        return dataStore.getNotifications(user);
+    }
+
+    @Override
+    public long persistAddComment(String user, AddCommentRequest request, long time) {
+        return dataStore.persistAddComment(user, request, time);
+    }
+
+    @Override
+    public void persistEditComment(long commentId, String content) {
+        dataStore.persistEditComment(commentId, content);
+        comments.invalidate(commentId);
+    }
+
+    @Override
+    public long persistAddNotification(String parentName, NotifiableEvent event) {
+        return dataStore.persistAddNotification(parentName, event);
+    }
+
+    @Override
+    public int persistRemoveNotifications(String user, Collection<Long> contentIds) {
+        return dataStore.persistRemoveNotifications(user, contentIds);
+    }
+
+    @Override
+    public int persistRemoveNotificationsUpTo(String user, long notificationId) {
+        return dataStore.persistRemoveNotificationsUpTo(user, notificationId);
+    }
+
+    @Override
+    public void persistRemoveComment(long commentId) {
+        dataStore.persistRemoveComment(commentId);
+        comments.invalidate(commentId);
+    }
+
+    @Override
+    public void persistRemovePhoto(long photoId) {
+        dataStore.persistRemovePhoto(photoId);
+        photos.invalidate(photoId);
+        photoReferences.invalidate(photoId);
+    }
+
+    @Override
+    public void persistCommentVote(long commentId, String user, boolean upvote) throws InvalidResourceRequestException {
+        try {
+            dataStore.persistCommentVote(commentId, user, upvote);
+        }
+        finally {
+            comments.invalidate(commentId);
+        }
+    }
+
+    @Override
+    public void persistPhotoRating(long photoId, String user, boolean upvote) throws InvalidResourceRequestException {
+        try {
+            dataStore.persistPhotoRating(photoId, user, upvote);
+        }
+        finally {
+            photos.invalidate(photoId);
+        }
+    }
+
+    @Override
+    public boolean hasLikedPhoto(long photoId, String user) {
+        return dataStore.hasLikedPhoto(photoId, user);
+    }
+
+    @Override
+    public boolean hasLikedComment(long commentId, String user) {
+        return dataStore.hasLikedComment(commentId, user);
+    }
+
+    @Override
+    public Set<Long> getLikedPhotos(String user, Collection<Long> photoIds) {
+        return dataStore.getLikedPhotos(user, photoIds);
+    }
+
+    @Override
+    public Set<Long> getLikedComments(String user, Collection<Long> commentIds) {
+        return dataStore.getLikedComments(user, commentIds);
+    }
+
+    @Override
+    public List<String> getPhotoLikers(long photoId, String after, int limit) {
+        return dataStore.getPhotoLikers(photoId, after, limit);
+    }
+
+    @Override
+    public List<String> getCommentLikers(long commentId, String after, int limit) {
+        return dataStore.getCommentLikers(commentId, after, limit);
+    }
+
+    @Override
+    public long persistFollowing(String userFrom, String userTo) {
+        return dataStore.persistFollowing(userFrom, userTo);
+    }
+
+    @Override
+    public List<User> getFollowers(String username) throws InvalidResourceRequestException {
+        return dataStore.getFollowers(username);
+    }
+
+    @Override
+    public void persistDeleteFollowing(String userFrom, String userTo) {
+        dataStore.persistDeleteFollowing(userFrom, userTo);
+    }
+
+    @Override
+    public List<User> getFollowing(String username) throws InvalidResourceRequestException {
+        return dataStore.getFollowing(username);
+    }
+
+    @Override
+    public long countFollowers(String username) {
+        return dataStore.countFollowers(username);
+    }
+
+    @Override
+    public long countFollowing(String username) {
+        return dataStore.countFollowing(username);
+    }
+
+    @Override
+    public boolean isFollowing(String userFrom, String userTo) {
+        return dataStore.isFollowing(userFrom, userTo);
+    }
+
+    @Override
+    public void clear() {
+        dataStore.clear();
+        users.invalidateAll();
+        albums.invalidateAll();
+        photos.invalidateAll();
+        photoReferences.invalidateAll();
+        comments.invalidateAll();
+    }
+}
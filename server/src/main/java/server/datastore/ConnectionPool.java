@@ -0,0 +1,243 @@
+package server.datastore;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded pool of JDBC connections to a single database.
+ *
+ * Connections are handed out as proxies: calling close() on one returns the
+ * underlying connection to the pool, so callers can simply borrow a connection
+ * in a try-with-resources block. Connections held for longer than the leak
+ * threshold are reported along with what the thread which borrowed them is doing at the time.
+ * No stack trace is taken when borrowing, so detection costs nothing until a lease is reported.
+ */
+final class ConnectionPool implements AutoCloseable {
+    private final String url, user, password;
+    private final int minSize, maxSize;
+    private final long acquireTimeoutMillis, leakThresholdMillis;
+
+    // Idle physical connections, and permits bounding the number of open connections
+    private final BlockingDeque<Connection> idle = new LinkedBlockingDeque<>();
+    private final Semaphore permits;
+
+    // Connections currently lent out, mapped to the lease describing who holds them
+    private final Map<Connection, Lease> leased = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService leakDetector;
+
+    // Statistics
+    private final AtomicLong acquired = new AtomicLong(), timeouts = new AtomicLong(),
+            leaks = new AtomicLong(), created = new AtomicLong(), statements = new AtomicLong(),
+            waitNanos = new AtomicLong();
+    private volatile boolean closed;
+
+    ConnectionPool(String url, String user, String password, int minSize, int maxSize,
+                   long acquireTimeoutMillis, long leakThresholdMillis) throws SQLException {
+        if(minSize < 0 || maxSize < 1 || minSize > maxSize) {
+            throw new IllegalArgumentException(String.format("Invalid pool bounds [%d, %d]", minSize, maxSize));
+        }
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.leakThresholdMillis = leakThresholdMillis;
+        this.permits = new Semaphore(maxSize, true);
+
+        // Open the minimum number of connections up front
+        for(int i = 0; i < minSize; i++) idle.push(openConnection());
+
+        // Periodically check for connections which have been held for too long,
+        // and trim idle connections. A non-positive threshold disables leak detection.
+        leakDetector = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "connection-pool-housekeeper");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = leakThresholdMillis > 0 ? Math.max(leakThresholdMillis / 2, 100) : 30000;
+        leakDetector.scheduleAtFixedRate(this::detectLeaks, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Borrows a connection from the pool, waiting up to the acquire timeout for one to become free.
+     * The returned connection must be closed to give it back to the pool.
+     * @return a pooled connection
+     * @throws SQLException if no connection became available in time, or one couldn't be opened
+     */
+    Connection getConnection() throws SQLException {
+        if(closed) throw new SQLException("Connection pool is closed");
+
+        // Wait for capacity
+        long start = System.nanoTime();
+        try {
+            if(!permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                timeouts.incrementAndGet();
+                throw new SQLException(String.format("Timed out after %dms waiting for a connection "
+                        + "(active=%d, max=%d)", acquireTimeoutMillis, leased.size(), maxSize));
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", e);
+        }
+        finally {
+            waitNanos.addAndGet(System.nanoTime() - start);
+        }
+
+        // Reuse an idle connection if a valid one exists, otherwise open a new one.
+        try {
+            Connection physical = idle.pollFirst();
+            while(physical != null && physical.isClosed()) physical = idle.pollFirst();
+            if(physical == null) physical = openConnection();
+
+            // Make sure the borrower receives the connection in its default state
+            if(!physical.getAutoCommit()) physical.setAutoCommit(true);
+
+            Lease lease = new Lease(physical);
+            leased.put(physical, lease);
+            acquired.incrementAndGet();
+            return lease.proxy;
+        }
+        catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the given physical connection to the pool
+     * @param lease the lease being ended
+     */
+    private void release(Lease lease) {
+        if(leased.remove(lease.physical) == null) return;
+
+        try {
+            // Discard any uncommitted work left behind by the borrower
+            if(!lease.physical.getAutoCommit()) {
+                lease.physical.rollback();
+                lease.physical.setAutoCommit(true);
+            }
+
+            // Close surplus connections, otherwise keep them for reuse.
+            if(closed || lease.physical.isClosed() || idle.size() >= maxSize) lease.physical.close();
+            else idle.push(lease.physical);
+        }
+        catch (SQLException e) {
+            e.printStackTrace();
+            closeQuietly(lease.physical);
+        }
+        finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Reports connections which have been held for longer than the leak threshold.
+     * Each lease is only reported once.
+     */
+    private void detectLeaks() {
+        long now = System.currentTimeMillis();
+        for(Lease lease : leased.values()) {
+            if(leakThresholdMillis > 0 && !lease.reported && now - lease.borrowedAt > leakThresholdMillis) {
+                lease.reported = true;
+                leaks.incrementAndGet();
+                System.err.println(String.format("Possible connection leak: connection held by %s for %dms",
+                        lease.owner.getName(), now - lease.borrowedAt));
+                for(StackTraceElement frame : lease.owner.getStackTrace()) System.err.println("\tat " + frame);
+            }
+        }
+
+        // Trim idle connections back down to the minimum size
+        while(idle.size() > minSize) {
+            Connection c = idle.pollLast();
+            if(c == null) break;
+            closeQuietly(c);
+        }
+    }
+
+    /**
+     * @return a snapshot of the pool's current state and lifetime counters
+     */
+    PoolStats getStats() {
+        return new PoolStats(minSize, maxSize, leased.size(), idle.size(), permits.getQueueLength(),
+                acquired.get(), timeouts.get(), leaks.get(), created.get(), statements.get(),
+                TimeUnit.NANOSECONDS.toMillis(waitNanos.get()));
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        leakDetector.shutdownNow();
+
+        // Close idle connections. Leased connections are closed as they are returned.
+        Connection c;
+        while((c = idle.poll()) != null) closeQuietly(c);
+    }
+
+    private Connection openConnection() throws SQLException {
+        Connection c = DriverManager.getConnection(url, user, password);
+        created.incrementAndGet();
+        return c;
+    }
+
+    private static void closeQuietly(Connection c) {
+        try {
+            c.close();
+        }
+        catch (SQLException e) {e.printStackTrace();}
+    }
+
+    /**
+     * A single borrowing of a connection. The proxy handed out to the borrower
+     * forwards all calls to the physical connection, except for close().
+     */
+    private final class Lease implements InvocationHandler {
+        private final Connection physical, proxy;
+        private final long borrowedAt = System.currentTimeMillis();
+        private final Thread owner = Thread.currentThread();
+        private volatile boolean returned, reported;
+
+        private Lease(Connection physical) {
+            this.physical = physical;
+            this.proxy = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[] {Connection.class}, this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if(!returned) {
+                        returned = true;
+                        release(this);
+                    }
+                    return null;
+                case "isClosed":
+                    return returned || physical.isClosed();
+                default:
+                    if(returned) throw new SQLException("Connection has already been returned to the pool");
+            }
+
+            // Count statements, so the number of queries issued per operation can be measured
+            if(method.getName().startsWith("prepare") || method.getName().equals("createStatement")) {
+                statements.incrementAndGet();
+            }
+
+            try {
+                return method.invoke(physical, args);
+            }
+            catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package server.datastore;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Short-lived cache of the credentials of users who have recently authenticated,
+ * so verifying each of their requests doesn't need a data store lookup.
+ * Entries expire after a fixed time, so changes made elsewhere are picked up quickly.
+ */
+final class CredentialCache {
+    private final long ttlMillis;
+    private final ConcurrentMap<String, Credentials> credentials = new ConcurrentHashMap<>();
+
+    /**
+     * @param ttlMillis how long credentials are kept for, in milliseconds
+     */
+    CredentialCache(long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * @param username the user's name
+     * @return the user's credentials, or null if they aren't cached or have expired
+     */
+    Credentials get(String username) {
+        Credentials found = credentials.get(username);
+        if(found == null) return null;
+
+        if(System.currentTimeMillis() >= found.expiresAt) {
+            credentials.remove(username, found);
+            return null;
+        }
+        return found;
+    }
+
+    /**
+     * Caches the given user's credentials
+     * @param username the user's name
+     * @param password the user's stored password
+     * @param admin whether or not the user is an admin
+     * @return the cached credentials
+     */
+    Credentials put(String username, String password, boolean admin) {
+        Credentials added = new Credentials(password, admin, System.currentTimeMillis() + ttlMillis);
+        if(ttlMillis > 0) credentials.put(username, added);
+        return added;
+    }
+
+    /**
+     * Removes the given user's credentials, if present
+     * @param username the user's name
+     */
+    void invalidate(String username) {
+        credentials.remove(username);
+    }
+
+    /**
+     * Removes all credentials
+     */
+    void clear() {
+        credentials.clear();
+    }
+
+    /**
+     * A user's stored password and admin status
+     */
+    static final class Credentials {
+        private final String password;
+        private final boolean admin;
+        private final long expiresAt;
+
+        private Credentials(String password, boolean admin, long expiresAt) {
+            this.password = password;
+            this.admin = admin;
+            this.expiresAt = expiresAt;
+        }
+
+        /**
+         * @return the user's password, hashed and then encoded as a hex string
+         */
+        String getPassword() {
+            return password;
+        }
+
+        /**
+         * @return if the user is an admin
+         */
+        boolean isAdmin() {
+            return admin;
+        }
+    }
+}
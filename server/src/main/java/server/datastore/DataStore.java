@@ -5,7 +5,11 @@ import server.objects.*;
 import server.requests.AddCommentRequest;
 import server.requests.UploadPhotoRequest;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Interface defining a data storage mechanism.
@@ -18,10 +22,13 @@ interface DataStore {
      * Uploads the given photo
      * @param author the user who posted the photo
      * @param request the photo request
-     * @param date the formatted date string
+     * @param contents the raw photo contents
+     * @param time the time the photo was posted, in milliseconds since the epoch
      * @return the newly generated id
+     * @throws IOException if the contents couldn't be read
      */
-    long persistUploadPhoto(String author, UploadPhotoRequest request, String date);
+    long persistUploadPhoto(String author, UploadPhotoRequest request, InputStream contents, long time)
+            throws IOException;
 
     /**
      * Retrieves photos a user has posted.
@@ -30,6 +37,24 @@ interface DataStore {
      */
     List<Photo> getPhotos(String user);
 
+    /**
+     * Retrieves photos a user posted within the given time range.
+     * @param user the user's name
+     * @param since the earliest time to include, in milliseconds since the epoch
+     * @param until the time to stop at, exclusive, in milliseconds since the epoch
+     * @return the photos, ordered by time and then id
+     */
+    List<Photo> getPhotos(String user, long since, long until);
+
+    /**
+     * Retrieves a page of the photos a user has posted, newest first.
+     * @param user the user's name
+     * @param before only photos older than this position are returned, or null for the newest photos
+     * @param limit the maximum number of photos to return
+     * @return the photos, ordered by time and then id, descending
+     */
+    List<Photo> getPhotos(String user, FeedCursor before, int limit);
+
     /**
      * Retrieves photos from a given album.
      * @param albumId the album's ID
@@ -38,6 +63,22 @@ interface DataStore {
      */
     List<Photo> getPhotos(long albumId);
 
+    /**
+     * Retrieves photos added to a given album within the given time range.
+     * @param albumId the album's ID
+     * @param since the earliest time to include, in milliseconds since the epoch
+     * @param until the time to stop at, exclusive, in milliseconds since the epoch
+     * @return the photos, ordered by time and then id
+     */
+    List<Photo> getPhotos(long albumId, long since, long until);
+
+    /**
+     * Retrieves the given photos in a single operation. Photos which don't exist are left out.
+     * @param photoIds the ids of the photos
+     * @return the photos which were found, in no particular order
+     */
+    List<Photo> getPhotosById(Collection<Long> photoIds);
+
     /**
      * Retrieves the given photo
      * @param id the id of the photo
@@ -46,24 +87,32 @@ interface DataStore {
      */
     Photo getPhotoMetaData(long id) throws InvalidResourceRequestException;
 
+    /**
+     * Retrieves just enough of the given photo to check it exists and who owns it
+     * @param id the id of the photo
+     * @return the photo's reference
+     * @throws InvalidResourceRequestException if the photo doesn't exist
+     */
+    PhotoReference getPhotoReference(long id) throws InvalidResourceRequestException;
+
     /**
      * Retrieves the photo contents of given photo
      * @param id the id of the photo
      * @param ext the provided file extension
-     * @return the photo contents
+     * @return a handle for streaming the raw photo contents
      * @throws InvalidResourceRequestException if the photo doesn't exist
      */
-    String getPhotoContents(long id, String ext) throws InvalidResourceRequestException;
+    PhotoContents getPhotoContents(long id, String ext) throws InvalidResourceRequestException;
 
     /**
      * Creates and persists the newly created album
      * @param albumName the name of the new album
      * @param author the author of the new album
      * @param description the description of the new album
-     * @param date the formatted date in which the request was sent
+     * @param time the time the request was sent, in milliseconds since the epoch
      * @return the newly generated id
      */
-    long persistAddAlbum(String albumName, String author, String description, String date);
+    long persistAddAlbum(String albumName, String author, String description, long time);
 
     /**
      * Retreives the album associated with the given id.
@@ -132,6 +181,15 @@ interface DataStore {
      */
     List<Comment> getComments(String username);
 
+    /**
+     * Retrieves the comments a user made within the given time range.
+     * @param username the user to retrieve comments for
+     * @param since the earliest time to include, in milliseconds since the epoch
+     * @param until the time to stop at, exclusive, in milliseconds since the epoch
+     * @return the comments, ordered by time and then id
+     */
+    List<Comment> getComments(String username, long since, long until);
+
     /**
      * Retrieves all top-level comments made on the comment / photo with the given reference id
      * @param referenceId the id of the resource
@@ -139,6 +197,15 @@ interface DataStore {
      */
     List<Comment> getPhotoComments(long referenceId);
 
+    /**
+     * Retrieves the top-level comments made on the given photo within the given time range.
+     * @param referenceId the id of the photo
+     * @param since the earliest time to include, in milliseconds since the epoch
+     * @param until the time to stop at, exclusive, in milliseconds since the epoch
+     * @return the comments, ordered by time and then id
+     */
+    List<Comment> getPhotoComments(long referenceId, long since, long until);
+
     /**
      * Retrieves all top-level comments made on the comment / photo with the given reference id
      * @param referenceId the id of the resource
@@ -146,10 +213,26 @@ interface DataStore {
      */
     List<Comment> getReplies(long referenceId);
 
+    /**
+     * Retrieves the comments on the given photo, along with their replies at every level
+     * @param photoId the id of the photo
+     * @param maxDepth the deepest level to include, where 0 is the top-level comments
+     * @return the comments, level by level, each level ordered by time
+     */
+    List<Comment> getCommentThread(long photoId, int maxDepth);
+
+    /**
+     * Retrieves the replies to the given comment, along with their replies at every level
+     * @param commentId the id of the comment
+     * @param maxDepth the deepest level to include, where 1 is the direct replies
+     * @return the replies, level by level, each level ordered by time
+     */
+    List<Comment> getReplyThread(long commentId, int maxDepth);
+
     /**
      * Retrieves all notifications for the given user
      * @param user the user to retrieve comments for
-     * @return the list of notifications for this user
+     * @return the list of notifications for this user, oldest first
      */
     List<Notification> getNotifications(String user);
 
@@ -157,9 +240,9 @@ interface DataStore {
      * Adds the given comment
      * @param user the user who posted it
      * @param request the request for a new comment
-     * @param date the formatted date in which the request was sent
+     * @param time the time the request was sent, in milliseconds since the epoch
      */
-    long persistAddComment(String user, AddCommentRequest request, String date);
+    long persistAddComment(String user, AddCommentRequest request, long time);
 
     /**
      * Edits the given comment
@@ -174,15 +257,25 @@ interface DataStore {
      * commented on
      * @param parentName the name of the user who posted the original photo / comment
      * @param event the event to be the subject of the notification
+     * @return the id of the new notification, or -1 if it couldn't be added
+     */
+    long persistAddNotification(String parentName, NotifiableEvent event);
+
+    /**
+     * Removes the user's notifications about any of the given content, in a single operation
+     * @param user the user to remove the notifications from
+     * @param contentIds the ids of the comments / follows the notifications are about
+     * @return the number of notifications removed, or -1 if they couldn't be removed
      */
-    void persistAddNotification(String parentName, NotifiableEvent event);
+    int persistRemoveNotifications(String user, Collection<Long> contentIds);
 
     /**
-     * Removes the given notification, if it exists
-     * @param user the user to remove the notification from
-     * @param id the id of the notification to remove
+     * Removes the user's notifications up to and including the given one
+     * @param user the user to remove the notifications from
+     * @param notificationId the id of the last notification to remove
+     * @return the number of notifications removed, or -1 if they couldn't be removed
      */
-    void persistRemoveNotification(String user, long id);
+    int persistRemoveNotificationsUpTo(String user, long notificationId);
 
     /**
      * Removes the given comment
@@ -214,6 +307,52 @@ interface DataStore {
      */
     void persistPhotoRating(long commentId, String user, boolean upvote) throws InvalidResourceRequestException;
 
+    /**
+     * @param photoId the id of the photo
+     * @param user the user who may have liked it
+     * @return true if the user has liked the given photo
+     */
+    boolean hasLikedPhoto(long photoId, String user);
+
+    /**
+     * @param commentId the id of the comment
+     * @param user the user who may have liked it
+     * @return true if the user has liked the given comment
+     */
+    boolean hasLikedComment(long commentId, String user);
+
+    /**
+     * @param user the user who may have liked them
+     * @param photoIds the ids of the photos
+     * @return the ids of the given photos which the user has liked, looked up in a single operation
+     */
+    Set<Long> getLikedPhotos(String user, Collection<Long> photoIds);
+
+    /**
+     * @param user the user who may have liked them
+     * @param commentIds the ids of the comments
+     * @return the ids of the given comments which the user has liked, looked up in a single operation
+     */
+    Set<Long> getLikedComments(String user, Collection<Long> commentIds);
+
+    /**
+     * Retrieves a page of the users who liked the given photo
+     * @param photoId the id of the photo
+     * @param after only users whose names come after this are returned, or null for the first page
+     * @param limit the maximum number of users to return
+     * @return the users' names, in alphabetical order
+     */
+    List<String> getPhotoLikers(long photoId, String after, int limit);
+
+    /**
+     * Retrieves a page of the users who liked the given comment
+     * @param commentId the id of the comment
+     * @param after only users whose names come after this are returned, or null for the first page
+     * @param limit the maximum number of users to return
+     * @return the users' names, in alphabetical order
+     */
+    List<String> getCommentLikers(long commentId, String after, int limit);
+
 
     /**
      * Attempts to follow the person a user has specified
@@ -250,13 +389,27 @@ interface DataStore {
     List<User> getFollowing(String username)  throws InvalidResourceRequestException;
 
     /**
-     * Search for users whose name contains query
+     * Counts the users following the given user, without retrieving them
      *
-     * @param name search query on the user's name
-     * @return the given users, who have names like the query
+     * @param username the user's name
+     * @return the number of followers
      */
+    long countFollowers(String username);
 
-    List<User> getUserWithNameBegining(String name);
+    /**
+     * Counts the users the given user follows, without retrieving them
+     *
+     * @param username the user's name
+     * @return the number of users followed
+     */
+    long countFollowing(String username);
+
+    /**
+     * @param userFrom the user who may be following
+     * @param userTo the user who may be followed
+     * @return true if userFrom follows userTo
+     */
+    boolean isFollowing(String userFrom, String userTo);
 
     /**
      * Empties the data store
@@ -6,14 +6,12 @@ import server.objects.*;
 import server.requests.AddCommentRequest;
 import server.requests.UploadPhotoRequest;
 
-import java.io.ByteArrayInputStream;
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.nio.charset.StandardCharsets;
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
 import java.sql.*;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Scanner;
+import java.util.*;
 
 import static server.datastore.DatabaseResources.*;
 
@@ -25,8 +23,35 @@ final class DatabaseBackedDataStore implements DataStore {
     private static final String DB_CONFIG = "src/main/resources/db_config.txt";
     private static String uname;
     private static String pw;
-    private Connection conn;
-    private int CURRENT_ID = 0;
+
+    // Connection pool settings, overridable through system properties
+    static final String POOL_MIN_PROPERTY = "photoshare.db.pool.min";
+    static final String POOL_MAX_PROPERTY = "photoshare.db.pool.max";
+    static final String POOL_TIMEOUT_PROPERTY = "photoshare.db.pool.acquireTimeoutMs";
+    static final String POOL_LEAK_PROPERTY = "photoshare.db.pool.leakThresholdMs";
+    private static final int DEFAULT_POOL_MIN = 2;
+    private static final int DEFAULT_POOL_MAX = 16;
+    private static final long DEFAULT_ACQUIRE_TIMEOUT = 5 * 1000;
+    private static final long DEFAULT_LEAK_THRESHOLD = 30 * 1000;
+    private ConnectionPool pool;
+    private IdBlockAllocator notificationIds;
+
+    // Photo contents are kept in a content-addressed store on disk, rather than in the database.
+    // Uploads and deletions of the same contents are serialised by the blob locks, otherwise
+    // a blob could be removed just as a new photo starts referring to it.
+    static final String BLOBS_DIR_PROPERTY = "photoshare.blobs.dir";
+    private static final String DEFAULT_BLOBS_DIR = "./photos";
+    private static final int BLOB_LOCK_STRIPES = 64;
+    private final StripedLocks blobLocks = new StripedLocks(BLOB_LOCK_STRIPES);
+    private PhotoBlobStore blobs;
+
+    // Likes are buffered in memory and written in batches, as the same likes are often toggled repeatedly
+    private LikeBuffer photoLikes, commentLikes;
+
+    // Photo columns read when listing photos. The contents, held elsewhere, are never selected
+    // alongside them.
+    private static final String PHOTO_METADATA_COLUMNS = String.join(",", PHOTOS_ID, PHOTOS_NAME, PHOTOS_EXT,
+            USERNAME, ALBUMS_ID, PHOTOS_TIME, PHOTOS_DESCRIPTION, LIKE_COUNT);
 
     // Before anything else, read in the username and password for accessing the database
     static {
@@ -42,47 +67,108 @@ final class DatabaseBackedDataStore implements DataStore {
 
     DatabaseBackedDataStore() {
         try {
-            // Create database connection, and create all database tables (if they don't already exist)
-            conn = DriverManager.getConnection(db_url, uname, pw);
-            new TableCreator(conn).createTables();
+            // Create the connection pool, create all database tables (if they don't already exist),
+            // and bring their schema up to date
+            pool = new ConnectionPool(db_url, uname, pw,
+                    Integer.getInteger(POOL_MIN_PROPERTY, DEFAULT_POOL_MIN),
+                    Integer.getInteger(POOL_MAX_PROPERTY, DEFAULT_POOL_MAX),
+                    Long.getLong(POOL_TIMEOUT_PROPERTY, DEFAULT_ACQUIRE_TIMEOUT),
+                    Long.getLong(POOL_LEAK_PROPERTY, DEFAULT_LEAK_THRESHOLD));
+            blobs = new FileSystemPhotoBlobStore(Paths.get(System.getProperty(BLOBS_DIR_PROPERTY, DEFAULT_BLOBS_DIR)));
+            try (Connection conn = pool.getConnection()) {
+                new TableCreator(conn).createTables();
+                new SchemaMigrator(conn).migrate();
+            }
+            notificationIds = new IdBlockAllocator(pool, NOTIFICATIONS_SEQUENCE, NOTIFICATIONS_ID_BLOCK);
+            long flushInterval = Long.getLong(LikeBuffer.FLUSH_INTERVAL_PROPERTY, LikeBuffer.DEFAULT_FLUSH_INTERVAL);
+            int flushThreshold = Integer.getInteger(LikeBuffer.FLUSH_THRESHOLD_PROPERTY,
+                    LikeBuffer.DEFAULT_FLUSH_THRESHOLD);
+            photoLikes = new LikeBuffer("photos", new LikeBackend(PHOTO_RATINGS_TABLE, PHOTOS_TABLE, PHOTOS_ID),
+                    flushInterval, flushThreshold);
+            commentLikes = new LikeBuffer("comments",
+                    new LikeBackend(COMMENTS_VOTES_TABLE, COMMENTS_TABLE, COMMENTS_ID), flushInterval, flushThreshold);
             System.out.println("Connected");
+
+            // Bring photos stored by older versions up to date, without holding up start-up
+            Thread migration = new Thread(new PhotoContentsMigration(pool, blobs, blobLocks), "photo-contents-migration");
+            migration.setDaemon(true);
+            migration.start();
         }
-        catch (SQLException e) {
+        catch (SQLException | IOException e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * @return a snapshot of the connection pool's state
+     */
+    PoolStats getPoolStats() {
+        return pool.getStats();
+    }
+
+    /**
+     * @return a snapshot of the photo and comment like buffers' states
+     */
+    List<LikeBufferStats> getLikeBufferStats() {
+        return Arrays.asList(photoLikes.getStats(), commentLikes.getStats());
+    }
+
+    /**
+     * Writes any buffered likes, and closes the connection pool
+     */
+    void close() {
+        photoLikes.close();
+        commentLikes.close();
+        pool.close();
+    }
+
     @Override
-    public long persistUploadPhoto(String author, UploadPhotoRequest request, String date) {
+    public long persistUploadPhoto(String author, UploadPhotoRequest request, InputStream contents, long time)
+            throws IOException {
         // Set up query for inserting a new photo into the table
         String query = "INSERT INTO "+PHOTOS_TABLE+"("+PHOTOS_NAME+","+PHOTOS_EXT+","+USERNAME+","
-            +ALBUMS_ID+","+PHOTOS_CONTENTS+","+PHOTOS_TIME+","+PHOTOS_DESCRIPTION+") "+"values(?, ?, ?, ?, ?, ?, ?)";
-
-        // Persist photo
-        try (PreparedStatement stmt = conn.prepareStatement(query, Statement.RETURN_GENERATED_KEYS)) {
-            // Insert user info into prepared statement
-            stmt.setString(1, request.getPhotoName());
-            stmt.setString(2, request.getExtension());
-            stmt.setString(3, author);
-            stmt.setLong(4, request.getAlbumId());
-            stmt.setBlob(5, new ByteArrayInputStream(request.getEncodedPhotoContents()
-                    .getBytes(StandardCharsets.UTF_8)));
-            stmt.setString(6, date);
-            stmt.setString(7, request.getDescription());
+            +ALBUMS_ID+","+PHOTOS_CONTENT_HASH+","+PHOTOS_CONTENT_LENGTH+","+PHOTOS_TIME+","+PHOTOS_DESCRIPTION+","
+            +PHOTOS_CONTENT_DECODED+") values(?, ?, ?, ?, ?, ?, ?, ?, TRUE)";
 
-            // Persist data
-            stmt.executeUpdate();
+        // Write the photo's contents to the blob store first
+        PhotoBlob blob = blobs.write(contents);
 
-            // Retrieve last generated ID and return
-            ResultSet generatedKeys = stmt.getGeneratedKeys();
-            if (generatedKeys.next()) {
-                long key = generatedKeys.getLong(1);
-                stmt.close();
-                return key;
+        // Persist photo
+        synchronized (blobLocks.lockFor(blob.getHash())) {
+            try (Connection conn = pool.getConnection()) {
+                try (PreparedStatement stmt = conn.prepareStatement(query, Statement.RETURN_GENERATED_KEYS)) {
+                    blobs.commit(blob);
+
+                    // Insert user info into prepared statement
+                    stmt.setString(1, request.getPhotoName());
+                    stmt.setString(2, request.getExtension());
+                    stmt.setString(3, author);
+                    stmt.setLong(4, request.getAlbumId());
+                    stmt.setString(5, blob.getHash());
+                    stmt.setLong(6, blob.getLength());
+                    stmt.setLong(7, time);
+                    stmt.setString(8, request.getDescription());
+
+                    // Persist data
+                    stmt.executeUpdate();
+
+                    // Retrieve last generated ID and return
+                    ResultSet generatedKeys = stmt.getGeneratedKeys();
+                    if (generatedKeys.next()) return generatedKeys.getLong(1);
+                }
+                catch (SQLException | IOException e) {
+                    e.printStackTrace();
+                }
+
+                // The contents may already have been moved into place, so remove them unless another photo has them
+                blobs.discard(blob);
+                deleteIfUnreferenced(conn, blobs, blob.getHash());
+            }
+            catch (SQLException e) {
+                e.printStackTrace();
+                blobs.discard(blob);
             }
-            stmt.close();
         }
-        catch (SQLException e) {e.printStackTrace(); }
 
         // Default
         return -1;
@@ -91,29 +177,42 @@ final class DatabaseBackedDataStore implements DataStore {
     @Override
     public List<Photo> getPhotos(String user) {
         // Set up query to retrieve each row in the photos table
-        String query = "SELECT * FROM "+PHOTOS_TABLE+" WHERE "+USERNAME+" = ?";
+        String query = "SELECT "+PHOTO_METADATA_COLUMNS+" FROM "+PHOTOS_TABLE+" WHERE "+USERNAME+" = ?";
         List<Photo> photos = new ArrayList<>();
 
         // Execute query on database
-        try (PreparedStatement stmt = conn.prepareStatement(query)) {
+        try (Connection conn = pool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(query)) {
             stmt.setString(1, user);
-            ResultSet rs = stmt.executeQuery();
+            photos = readPhotos(conn, stmt.executeQuery());
+            stmt.close();
+        }
+        catch (SQLException e) {e.printStackTrace(); }
 
-            // Iterate through result set, constructing PHOTO Objects
-            while(rs.next()) {
-                // Create photos
-                long id = rs.getLong(1);
-                String photoName = rs.getString(2);
-                String ext = rs.getString(3);
-                String username = rs.getString(4);
-                long albumId = rs.getLong(5);
-                String timestamp = rs.getString(7);
-                String description = rs.getString(8);
-
-                photos.add(new Photo(username, photoName, ext, description, id, albumId,
-                        getPhotoRatings(id), timestamp));
+        // Return found photos
+        return photos;
+    }
+
+    @Override
+    public List<Photo> getPhotos(String user, FeedCursor before, int limit) {
+        // Set up query to retrieve the user's photos older than the given position, newest first
+        String query = "SELECT "+PHOTO_METADATA_COLUMNS+" FROM "+PHOTOS_TABLE+" WHERE "+USERNAME+" = ?"
+                + (before == null ? "" : " AND ("+PHOTOS_TIME+" < ? OR ("+PHOTOS_TIME+" = ? AND "+PHOTOS_ID+" < ?))")
+                + " ORDER BY "+PHOTOS_TIME+" DESC, "+PHOTOS_ID+" DESC LIMIT ?";
+        List<Photo> photos = new ArrayList<>();
+
+        // Execute query on database
+        try (Connection conn = pool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(query)) {
+            int param = 1;
+            stmt.setString(param++, user);
+            if(before != null) {
+                stmt.setLong(param++, before.getPhotoTime());
+                stmt.setLong(param++, before.getPhotoTime());
+                stmt.setLong(param++, before.getPhotoId());
             }
-            stmt.close();
+            stmt.setInt(param, limit);
+            photos = readPhotos(conn, stmt.executeQuery());
         }
         catch (SQLException e) {e.printStackTrace(); }
 
@@ -124,27 +223,14 @@ final class DatabaseBackedDataStore implements DataStore {
     @Override
     public List<Photo> getPhotos(long albumId) {
         // Set up query to retrieve each row in the photos table
-        String query = "SELECT * FROM "+PHOTOS_TABLE+" WHERE "+ALBUMS_ID+" = ?";
+        String query = "SELECT "+PHOTO_METADATA_COLUMNS+" FROM "+PHOTOS_TABLE+" WHERE "+ALBUMS_ID+" = ?";
         List<Photo> photos = new ArrayList<>();
 
         // Execute query on database
-        try (PreparedStatement stmt = conn.prepareStatement(query)) {
+        try (Connection conn = pool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(query)) {
             stmt.setLong(1, albumId);
-            ResultSet rs = stmt.executeQuery();
-
-            // Iterate through result set, constructing PHOTO Objects
-            while(rs.next()) {
-                // Create photos
-                long id = rs.getLong(1);
-                String photoName = rs.getString(2);
-                String ext = rs.getString(3);
-                String username = rs.getString(4);
-                String timestamp = rs.getString(7);
-                String description = rs.getString(8);
-
-                photos.add(new Photo(username, photoName, ext, description, id, albumId,
-                        getPhotoRatings(id), timestamp));
-            }
+            photos = readPhotos(conn, stmt.executeQuery());
             stmt.close();
         }
         catch (SQLException e) {e.printStackTrace(); }
@@ -153,30 +239,80 @@ final class DatabaseBackedDataStore implements DataStore {
         return photos;
     }
 
+    @Override
+    public List<Photo> getPhotos(String user, long since, long until) {
+        // Set up query to retrieve the user's photos posted within the range, through the (user, time) index
+        String query = "SELECT "+PHOTO_METADATA_COLUMNS+" FROM "+PHOTOS_TABLE+" WHERE "+USERNAME+" = ?"
+                + " AND "+PHOTOS_TIME+" >= ? AND "+PHOTOS_TIME+" < ? ORDER BY "+PHOTOS_TIME+", "+PHOTOS_ID;
+        List<Photo> photos = new ArrayList<>();
+
+        // Execute query on database
+        try (Connection conn = pool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(query)) {
+            stmt.setString(1, user);
+            stmt.setLong(2, since);
+            stmt.setLong(3, until);
+            photos = readPhotos(conn, stmt.executeQuery());
+        }
+        catch (SQLException e) {e.printStackTrace(); }
+
+        // Return found photos
+        return photos;
+    }
+
+    @Override
+    public List<Photo> getPhotos(long albumId, long since, long until) {
+        // Set up query to retrieve the album's photos added within the range, through the (album, time) index
+        String query = "SELECT "+PHOTO_METADATA_COLUMNS+" FROM "+PHOTOS_TABLE+" WHERE "+ALBUMS_ID+" = ?"
+                + " AND "+PHOTOS_TIME+" >= ? AND "+PHOTOS_TIME+" < ? ORDER BY "+PHOTOS_TIME+", "+PHOTOS_ID;
+        List<Photo> photos = new ArrayList<>();
+
+        // Execute query on database
+        try (Connection conn = pool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(query)) {
+            stmt.setLong(1, albumId);
+            stmt.setLong(2, since);
+            stmt.setLong(3, until);
+            photos = readPhotos(conn, stmt.executeQuery());
+        }
+        catch (SQLException e) {e.printStackTrace(); }
+
+        // Return found photos
+        return photos;
+    }
+
+    @Override
+    public List<Photo> getPhotosById(Collection<Long> photoIds) {
+        if(photoIds.isEmpty()) return new ArrayList<>();
+
+        // Set up query to retrieve all of the photos through the primary key, in one statement
+        String query = "SELECT "+PHOTO_METADATA_COLUMNS+" FROM "+PHOTOS_TABLE+" WHERE "+PHOTOS_ID
+                +" IN (SELECT X FROM TABLE(X BIGINT = ?))";
+        List<Photo> photos = new ArrayList<>();
+
+        // Execute query on database
+        try (Connection conn = pool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(query)) {
+            stmt.setObject(1, photoIds.toArray(new Long[photoIds.size()]));
+            photos = readPhotos(conn, stmt.executeQuery());
+        }
+        catch (SQLException e) {e.printStackTrace(); }
+
+        // Return found photos
+        return photos;
+    }
+
     @Override
     public Photo getPhotoMetaData(long id) throws InvalidResourceRequestException {
         // Set up query to retrieve the requested photo in the photos table
-        String query = "SELECT * FROM "+PHOTOS_TABLE+" WHERE "+PHOTOS_ID+" = ?";
+        String query = "SELECT "+PHOTO_METADATA_COLUMNS+" FROM "+PHOTOS_TABLE+" WHERE "+PHOTOS_ID+" = ?";
         List<Photo> photos = new ArrayList<>();
 
         // Execute query on database
-        try (PreparedStatement stmt = conn.prepareStatement(query)) {
+        try (Connection conn = pool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(query)) {
             stmt.setLong(1, id);
-            ResultSet rs = stmt.executeQuery();
-
-            // Iterate through result set, constructing PHOTO Objects
-            while(rs.next()) {
-                // Create photos
-                String photoName = rs.getString(2);
-                String ext = rs.getString(3);
-                String username = rs.getString(4);
-                long albumId = rs.getLong(5);
-                String timestamp = rs.getString(7);
-                String description = rs.getString(8);
-
-                photos.add(new Photo(username, photoName, ext, description, id, albumId,
-                        getPhotoRatings(id), timestamp));
-            }
+            photos = readPhotos(conn, stmt.executeQuery());
             stmt.close();
         }
         catch (SQLException e) { throw new InvalidResourceRequestException(id); }
@@ -189,52 +325,111 @@ final class DatabaseBackedDataStore implements DataStore {
     }
 
     @Override
-    public String getPhotoContents(long id, String ext) throws InvalidResourceRequestException {
-        // Set up query to retrieve the requested photo in the photos table
-        String query = "SELECT * FROM "+PHOTOS_TABLE+" WHERE "+PHOTOS_ID+" = ?";
-        List<String> photoContents = new ArrayList<>();
+    public PhotoReference getPhotoReference(long id) throws InvalidResourceRequestException {
+        // Set up query to retrieve only the photo's owner
+        String query = "SELECT "+USERNAME+","+ALBUMS_ID+" FROM "+PHOTOS_TABLE+" WHERE "+PHOTOS_ID+" = ?";
 
         // Execute query on database
-        try (PreparedStatement stmt = conn.prepareStatement(query)) {
+        try (Connection conn = pool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(query)) {
             stmt.setLong(1, id);
             ResultSet rs = stmt.executeQuery();
+            if(rs.next()) return new PhotoReference(id, rs.getString(1), rs.getLong(2));
+        }
+        catch (SQLException e) {e.printStackTrace();}
 
-            // Iterate through result set, constructing PHOTO Objects
-            while(rs.next()) {
-                // Check provided file extension is correct
-                String foundExt = rs.getString(3);
-                if(!ext.equals(foundExt)) throw new InvalidResourceRequestException(id);
-
-                // Retrieve base 64 encoded contents
-                Blob photo = rs.getBlob(6);
-                Scanner s = new Scanner(photo.getBinaryStream(), Resources.CHARSET_AS_STRING).useDelimiter("\\A");
-                String encodedPhotoContents = s.hasNext() ? s.next() : "";
-                photoContents.add(encodedPhotoContents);
-            }
-            stmt.close();
+        // Photo not found
+        throw new InvalidResourceRequestException(id);
+    }
+
+    /**
+     * Constructs the photos in the given result set
+     * @param conn the connection already borrowed by the caller
+     * @param rs the result of a query selecting the photo metadata columns
+     * @return the photos in the result set, in order
+     */
+    private List<Photo> readPhotos(Connection conn, ResultSet rs) throws SQLException {
+        List<Photo> photos = new ArrayList<>();
+
+        // Iterate through result set, constructing PHOTO Objects
+        while(rs.next()) {
+            // Create photos
+            long id = rs.getLong(1);
+            String photoName = rs.getString(2);
+            String ext = rs.getString(3);
+            String username = rs.getString(4);
+            long albumId = rs.getLong(5);
+            long time = rs.getLong(6);
+            String description = rs.getString(7);
+            long likeCount = photoLikes.getLikeCount(id, rs.getLong(8));
+
+            photos.add(new Photo(username, photoName, ext, description, id, albumId, likeCount,
+                    Timestamps.format(time), time));
         }
-        catch (SQLException e) { throw new InvalidResourceRequestException(id); }
+        return photos;
+    }
 
-        // If no photos found, throw exception
-        if(photoContents.size() == 0) throw new InvalidResourceRequestException(id);
+    @Override
+    public PhotoContents getPhotoContents(long id, String ext) throws InvalidResourceRequestException {
+        // Look up where the requested photo's contents are stored, and in what form
+        String query = "SELECT "+PHOTOS_EXT+","+PHOTOS_CONTENT_HASH+","+PHOTOS_CONTENT_LENGTH+","
+                +PHOTOS_CONTENT_DECODED+","+PHOTOS_CONTENTS+" FROM "+PHOTOS_TABLE+" WHERE "+PHOTOS_ID+" = ?";
 
-        // Return found photo contents
-        return photoContents.get(0);
+        // Execute query on database
+        try (Connection conn = pool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(query)) {
+            stmt.setLong(1, id);
+            ResultSet rs = stmt.executeQuery();
+
+            // If no photos found, throw exception
+            if(!rs.next()) throw new InvalidResourceRequestException(id);
+
+            // Check provided file extension is correct
+            String foundExt = rs.getString(1);
+            if(!ext.equals(foundExt)) throw new InvalidResourceRequestException(id);
+
+            String hash = rs.getString(2);
+            long length = rs.getLong(3);
+            boolean decoded = rs.getBoolean(4);
+
+            // Contents not yet migrated out of the database
+            if(hash == null) {
+                Blob contents = rs.getBlob(5);
+                if(contents == null) throw new InvalidResourceRequestException(id);
+                try (InputStream in = UploadPhotoRequest.decodeContents(contents.getBinaryStream())) {
+                    return PhotoContents.read(in);
+                }
+            }
+
+            // Raw contents are streamed straight from the blob store when written out
+            if(decoded) return PhotoContents.ofBlob(blobs, hash, length);
+
+            // Contents not yet migrated from base64
+            try (FileChannel channel = blobs.open(hash);
+                 InputStream in = UploadPhotoRequest.decodeContents(Channels.newInputStream(channel))) {
+                return PhotoContents.read(in);
+            }
+        }
+        catch (SQLException | IOException | IllegalArgumentException e) {
+            e.printStackTrace();
+            throw new InvalidResourceRequestException(id);
+        }
     }
 
     @Override
-    public long persistAddAlbum(String albumName, String author, String description, String date) {
+    public long persistAddAlbum(String albumName, String author, String description, long time) {
         // Set up query for inserting a new album into the table
         String query = "INSERT INTO " + ALBUMS_TABLE + "(" + ALBUMS_NAME + ","
                 + USERNAME + "," + ALBUMS_DESCRIPTION + "," + ALBUMS_TIME + ") values(?, ?, ?, ?)";
 
         // Persist photo
-        try (PreparedStatement stmt = conn.prepareStatement(query, Statement.RETURN_GENERATED_KEYS)) {
+        try (Connection conn = pool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(query, Statement.RETURN_GENERATED_KEYS)) {
             // Insert user info into prepared statement
             stmt.setString(1, albumName);
             stmt.setString(2, author);
             stmt.setString(3, description);
-            stmt.setString(4, date);
+            stmt.setLong(4, time);
 
             // Persist data
             stmt.executeUpdate();
@@ -263,7 +458,8 @@ final class DatabaseBackedDataStore implements DataStore {
         List<Album> albums = new ArrayList<>();
 
         // Execute query on database
-        try (PreparedStatement stmt = conn.prepareStatement(query)) {
+        try (Connection conn = pool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(query)) {
             stmt.setLong(1, albumId);
             ResultSet rs = stmt.executeQuery();
 
@@ -273,7 +469,7 @@ final class DatabaseBackedDataStore implements DataStore {
                 String albumName = rs.getString(2);
                 String authorName = rs.getString(3);
                 String description = rs.getString(4);
-                String timestamp = rs.getString(5);
+                String timestamp = Timestamps.format(rs.getLong(5));
 
                 albums.add(new Album(albumId, albumName, authorName, description, timestamp));
             }
@@ -295,7 +491,8 @@ final class DatabaseBackedDataStore implements DataStore {
         List<Album> albums = new ArrayList<>();
 
         // Execute query on database
-        try (PreparedStatement stmt = conn.prepareStatement(query)) {
+        try (Connection conn = pool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(query)) {
             stmt.setString(1, author);
             ResultSet rs = stmt.executeQuery();
 
@@ -306,7 +503,7 @@ final class DatabaseBackedDataStore implements DataStore {
                 String albumName = rs.getString(2);
                 String authorName = rs.getString(3);
                 String description = rs.getString(4);
-                String timestamp = rs.getString(5);
+                String timestamp = Timestamps.format(rs.getLong(5));
 
                 albums.add(new Album(albumId, albumName, authorName, description, timestamp));
             }
@@ -324,7 +521,8 @@ final class DatabaseBackedDataStore implements DataStore {
         String query = "UPDATE " + ALBUMS_TABLE + " SET " + ALBUMS_DESCRIPTION + " = ? WHERE " + ALBUMS_ID + " = ?";
 
         // Setup update query.
-        try (PreparedStatement stmt = conn.prepareStatement(query)) {
+        try (Connection conn = pool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(query)) {
             stmt.setString(1, description);
             stmt.setLong(2, albumId);
 
@@ -345,7 +543,8 @@ final class DatabaseBackedDataStore implements DataStore {
         String query = "UPDATE " + PHOTOS_TABLE + " SET " + PHOTOS_DESCRIPTION + " = ? WHERE " + PHOTOS_ID + " = ?";
 
         // Setup update query.
-        try (PreparedStatement stmt = conn.prepareStatement(query)) {
+        try (Connection conn = pool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(query)) {
             stmt.setString(1, description);
             stmt.setLong(2, photoId);
 
@@ -367,7 +566,8 @@ final class DatabaseBackedDataStore implements DataStore {
         // Set up query to retrieve the requested photo in the comments table
         String query = "SELECT * FROM "+COMMENTS_TABLE+" WHERE "+COMMENTS_ID+" = ?";
 
-        try (PreparedStatement stmt = conn.prepareStatement(query)) {
+        try (Connection conn = pool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(query)) {
             // Execute query on database
             stmt.setLong(1, id);
             ResultSet rs = stmt.executeQuery();
@@ -377,15 +577,16 @@ final class DatabaseBackedDataStore implements DataStore {
                 // Get info
                 String username = rs.getString(2);
                 String contents = rs.getString(3);
-                String timestamp = rs.getString(5);
+                String timestamp = Timestamps.format(rs.getLong(5));
                 long referenceId = rs.getLong(6);
 
                 // Get type
                 boolean reply = rs.getBoolean(4);
                 EventType type = reply ? EventType.REPLY : EventType.PHOTO_COMMENT;
 
-                // Create comment and retrieve upvotes / downvotes
-                Comment comm = new Comment(id, username, contents, referenceId, type, getCommentVotes(id), timestamp);
+                // Create comment, along with its like count
+                long likeCount = commentLikes.getLikeCount(id, rs.getLong(7));
+                Comment comm = new Comment(id, username, contents, referenceId, type, likeCount, timestamp);
                 comments.add(comm);
             }
             stmt.close();
@@ -406,7 +607,7 @@ final class DatabaseBackedDataStore implements DataStore {
         List<User> users = new ArrayList<>();
 
         // Execute query on database
-        try (Statement stmt = conn.createStatement()) {
+        try (Connection conn = pool.getConnection(); Statement stmt = conn.createStatement()) {
             ResultSet rs = stmt.executeQuery(query);
 
             // Iterate through result set, constructing User Objects
@@ -431,6 +632,24 @@ final class DatabaseBackedDataStore implements DataStore {
 
     @Override
     public User getUser(String name) throws InvalidResourceRequestException {
+        // Borrow a connection for the lookup
+        try (Connection conn = pool.getConnection()) {
+            return getUser(conn, name);
+        }
+        catch (SQLException e) {e.printStackTrace();}
+
+        // Connection couldn't be obtained
+        throw new InvalidResourceRequestException(name);
+    }
+
+    /**
+     * Looks up the given user using a connection already borrowed by the caller
+     * @param conn the connection to query with
+     * @param name the user's name
+     * @return the given user, if present
+     * @throws InvalidResourceRequestException if the user doesn't exist
+     */
+    private User getUser(Connection conn, String name) throws InvalidResourceRequestException {
         // Set up query
         String query = "SELECT * FROM "+USERS_TABLE+" WHERE "+USERNAME+" = ?";
         List<User> users = new ArrayList<>();
@@ -469,7 +688,8 @@ final class DatabaseBackedDataStore implements DataStore {
         String query = "INSERT INTO "+USERS_TABLE+"("+USERNAME+","+PASSWORD+","+USERS_ADMIN+") values(?, ?, ?)";
 
         // Persist the user
-        try (PreparedStatement stmt = conn.prepareStatement(query)) {
+        try (Connection conn = pool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(query)) {
             // Insert user info into prepared statement
             stmt.setString(1, username);
             stmt.setString(2, password);
@@ -488,7 +708,8 @@ final class DatabaseBackedDataStore implements DataStore {
         List<Comment> comments = new ArrayList<>();
 
         // Get comments
-        try (PreparedStatement stmt = conn.prepareStatement(query)) {
+        try (Connection conn = pool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(query)) {
             // Execute query on database
             stmt.setString(1, username);
             ResultSet rs = stmt.executeQuery();
@@ -498,15 +719,16 @@ final class DatabaseBackedDataStore implements DataStore {
                 // Get info
                 long id = rs.getLong(1);
                 String contents = rs.getString(3);
-                String timestamp = rs.getString(5);
+                String timestamp = Timestamps.format(rs.getLong(5));
                 long referenceId = rs.getLong(6);
 
                 // Get Type
                 boolean reply = rs.getBoolean(4);
                 EventType type = reply ? EventType.REPLY : EventType.PHOTO_COMMENT;
 
-                // Create comment and retrieve upvotes / downvotes
-                Comment comm = new Comment(id, username, contents, referenceId, type, getCommentVotes(id), timestamp);
+                // Create comment, along with its like count
+                long likeCount = commentLikes.getLikeCount(id, rs.getLong(7));
+                Comment comm = new Comment(id, username, contents, referenceId, type, likeCount, timestamp);
                 comments.add(comm);
             }
             stmt.close();
@@ -523,7 +745,8 @@ final class DatabaseBackedDataStore implements DataStore {
         List<Comment> comments = new ArrayList<>();
         String query = "SELECT * FROM "+COMMENTS_TABLE+" WHERE "+REFERENCE_ID+" = ? AND "+COMMENT_TYPE+" = false";
 
-        try (PreparedStatement stmt = conn.prepareStatement(query)) {
+        try (Connection conn = pool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(query)) {
             // Execute query on database
             stmt.setLong(1, referenceId);
             ResultSet rs = stmt.executeQuery();
@@ -534,11 +757,11 @@ final class DatabaseBackedDataStore implements DataStore {
                 long id = rs.getLong(1);
                 String username = rs.getString(2);
                 String contents = rs.getString(3);
-                String timestamp = rs.getString(5);
+                String timestamp = Timestamps.format(rs.getLong(5));
 
-                // Create comment and retrieve upvotes / downvotes
+                // Create comment, along with its like count
                 Comment comm = new Comment(id, username, contents, referenceId, EventType.PHOTO_COMMENT,
-                        getCommentVotes(id), timestamp);
+                        commentLikes.getLikeCount(id, rs.getLong(7)), timestamp);
                 comments.add(comm);
             }
             stmt.close();
@@ -549,13 +772,80 @@ final class DatabaseBackedDataStore implements DataStore {
         return comments;
     }
 
+    @Override
+    public List<Comment> getComments(String username, long since, long until) {
+        // Set up query to retrieve the user's comments made within the range, through the (user, time) index
+        String query = "SELECT * FROM "+COMMENTS_TABLE+" WHERE "+USERNAME+" = ? AND "+COMMENTS_TIME+" >= ?"
+                + " AND "+COMMENTS_TIME+" < ? ORDER BY "+COMMENTS_TIME+", "+COMMENTS_ID;
+
+        try (Connection conn = pool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(query)) {
+            // Execute query on database
+            stmt.setString(1, username);
+            stmt.setLong(2, since);
+            stmt.setLong(3, until);
+            return readComments(conn, stmt.executeQuery());
+        }
+        catch (SQLException e) { e.printStackTrace(); }
+
+        // Failed
+        return new ArrayList<>();
+    }
+
+    @Override
+    public List<Comment> getPhotoComments(long referenceId, long since, long until) {
+        // Set up query to retrieve the photo's comments made within the range, through the (reference, time) index
+        String query = "SELECT * FROM "+COMMENTS_TABLE+" WHERE "+REFERENCE_ID+" = ? AND "+COMMENT_TYPE+" = false"
+                + " AND "+COMMENTS_TIME+" >= ? AND "+COMMENTS_TIME+" < ? ORDER BY "+COMMENTS_TIME+", "+COMMENTS_ID;
+
+        try (Connection conn = pool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(query)) {
+            // Execute query on database
+            stmt.setLong(1, referenceId);
+            stmt.setLong(2, since);
+            stmt.setLong(3, until);
+            return readComments(conn, stmt.executeQuery());
+        }
+        catch (SQLException e) { e.printStackTrace(); }
+
+        // Failed
+        return new ArrayList<>();
+    }
+
+    /**
+     * Constructs the comments in the given result set, along with their votes
+     * @param conn the connection already borrowed by the caller
+     * @param rs the result of a query selecting every column of the comments table
+     * @return the comments in the result set, in order
+     */
+    private List<Comment> readComments(Connection conn, ResultSet rs) throws SQLException {
+        List<Comment> comments = new ArrayList<>();
+
+        // Iterate through result set, constructing Comment Objects
+        while(rs.next()) {
+            // Get info
+            long id = rs.getLong(1);
+            String username = rs.getString(2);
+            String contents = rs.getString(3);
+            EventType type = rs.getBoolean(4) ? EventType.REPLY : EventType.PHOTO_COMMENT;
+            String timestamp = Timestamps.format(rs.getLong(5));
+            long referenceId = rs.getLong(6);
+
+            // Create comment, along with its like count
+            long likeCount = commentLikes.getLikeCount(id, rs.getLong(7));
+            comments.add(new Comment(id, username, contents, referenceId, type, likeCount, timestamp));
+        }
+        return comments;
+    }
+
     @Override
     public List<Comment> getReplies(long referenceId) {
         // Set up query to retrieve the requested comments in the comments table
         List<Comment> comments = new ArrayList<>();
         String query = "SELECT * FROM "+COMMENTS_TABLE+" WHERE "+REFERENCE_ID+" = ? AND "+COMMENT_TYPE+" = true";
 
-        try (PreparedStatement stmt = conn.prepareStatement(query)) {
+        try (Connection conn = pool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(query)) {
             // Execute query on database
             stmt.setLong(1, referenceId);
             ResultSet rs = stmt.executeQuery();
@@ -566,11 +856,11 @@ final class DatabaseBackedDataStore implements DataStore {
                 long id = rs.getLong(1);
                 String username = rs.getString(2);
                 String contents = rs.getString(3);
-                String timestamp = rs.getString(5);
+                String timestamp = Timestamps.format(rs.getLong(5));
 
-                // Create comment and retrieve upvotes / downvotes
+                // Create comment, along with its like count
                 Comment comm = new Comment(id, username, contents, referenceId, EventType.REPLY,
-                        getCommentVotes(id), timestamp);
+                        commentLikes.getLikeCount(id, rs.getLong(7)), timestamp);
                 comments.add(comm);
             }
             stmt.close();
@@ -581,21 +871,82 @@ final class DatabaseBackedDataStore implements DataStore {
         return comments;
     }
 
+    @Override
+    public List<Comment> getCommentThread(long photoId, int maxDepth) {
+        return getThread(ThreadPaths.ofPhoto(photoId), maxDepth);
+    }
 
     @Override
-    public long persistAddComment(String user, AddCommentRequest request, String date) {
-        // Set up query for inserting a new comment into the table
-        String query = "INSERT INTO "+COMMENTS_TABLE+"("+USERNAME+","
-                        +COMMENTS_CONTENTS+","+COMMENT_TYPE+","+REFERENCE_ID+","+COMMENTS_TIME+") values(?, ?, ?, ?, ?)";
+    public List<Comment> getReplyThread(long commentId, int maxDepth) {
+        // Find where the comment sits in its thread
+        String query = "SELECT "+COMMENTS_THREAD_PATH+", "+COMMENTS_THREAD_DEPTH+" FROM "+COMMENTS_TABLE
+                +" WHERE "+COMMENTS_ID+" = ?";
+
+        try (Connection conn = pool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(query)) {
+            stmt.setLong(1, commentId);
+            ResultSet rs = stmt.executeQuery();
+            if(rs.next() && rs.getString(1) != null) {
+                return getThread(ThreadPaths.below(rs.getString(1), commentId), rs.getInt(2) + (long) maxDepth);
+            }
+        }
+        catch (SQLException e) { e.printStackTrace(); }
+
+        // Comment doesn't exist, or isn't part of a thread
+        return new ArrayList<>();
+    }
+
+    /**
+     * Retrieves every comment whose thread path starts with the given one, with a single range scan
+     * @param prefix the thread path shared by the comments
+     * @param maxDepth the deepest level to include, counting from the photo's top-level comments
+     * @return the comments, level by level, each level ordered by time
+     */
+    private List<Comment> getThread(String prefix, long maxDepth) {
+        String query = "SELECT * FROM "+COMMENTS_TABLE+" WHERE "+COMMENTS_THREAD_PATH+" >= ? AND "
+                +COMMENTS_THREAD_PATH+" < ? AND "+COMMENTS_THREAD_DEPTH+" <= ?"
+                +" ORDER BY "+COMMENTS_THREAD_DEPTH+", "+COMMENTS_TIME+", "+COMMENTS_ID;
+
+        // Execute query on database
+        try (Connection conn = pool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(query)) {
+            stmt.setString(1, prefix);
+            stmt.setString(2, ThreadPaths.end(prefix));
+            stmt.setLong(3, maxDepth);
+            return readComments(conn, stmt.executeQuery());
+        }
+        catch (SQLException e) { e.printStackTrace(); }
+
+        // Failed
+        return new ArrayList<>();
+    }
+
+    @Override
+    public long persistAddComment(String user, AddCommentRequest request, long time) {
+        // Set up query for inserting a new comment into the table. Top-level comments start their photo's thread,
+        // while replies extend their parent's thread path, read as part of the insert.
+        boolean reply = request.getEventType() == EventType.REPLY;
+        String columns = "INSERT INTO "+COMMENTS_TABLE+"("+USERNAME+","+COMMENTS_CONTENTS+","+COMMENT_TYPE+","
+                +REFERENCE_ID+","+COMMENTS_TIME+","+COMMENTS_THREAD_PATH+","+COMMENTS_THREAD_DEPTH+")";
+        String query = reply
+                ? columns+" SELECT ?, ?, ?, ?, ?, "+COMMENTS_THREAD_PATH+" || ?, "+COMMENTS_THREAD_DEPTH+" + 1"
+                        +" FROM "+COMMENTS_TABLE+" WHERE "+COMMENTS_ID+" = ?"
+                : columns+" values(?, ?, ?, ?, ?, ?, 0)";
 
         // Add comment
-        try (PreparedStatement stmt = conn.prepareStatement(query, Statement.RETURN_GENERATED_KEYS)) {
+        try (Connection conn = pool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(query, Statement.RETURN_GENERATED_KEYS)) {
             // Insert user info into prepared statement)
             stmt.setString(1, user);
             stmt.setString(2, request.getCommentContents());
-            stmt.setBoolean(3, request.getEventType() == EventType.REPLY);
+            stmt.setBoolean(3, reply);
             stmt.setLong(4, request.getReferenceId());
-            stmt.setString(5, date);
+            stmt.setLong(5, time);
+            if(reply) {
+                stmt.setString(6, ThreadPaths.step(request.getReferenceId()));
+                stmt.setLong(7, request.getReferenceId());
+            }
+            else stmt.setString(6, ThreadPaths.ofPhoto(request.getReferenceId()));
 
             // Persist data
             stmt.executeUpdate();
@@ -621,7 +972,8 @@ final class DatabaseBackedDataStore implements DataStore {
         String query = "UPDATE " + COMMENTS_TABLE + " SET " + COMMENTS_CONTENTS + " = ? WHERE " + COMMENTS_ID + " = ?";
 
         // Setup update query.
-        try (PreparedStatement stmt = conn.prepareStatement(query)) {
+        try (Connection conn = pool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(query)) {
             stmt.setString(1, content);
             stmt.setLong(2, commentId);
 
@@ -635,17 +987,17 @@ final class DatabaseBackedDataStore implements DataStore {
 
 
     @Override
-    public void persistAddNotification(String parentName, NotifiableEvent event) {
+    public long persistAddNotification(String parentName, NotifiableEvent event) {
         // Set up query for inserting a new notification into the table
         String query = "INSERT INTO "+NOTIFICATIONS_TABLE+"("+NOTIFICATIONS_ID+","+CONTENT_ID+","
                 +PARENTNAME+","+USERNAME+","+CONTENT_TYPE+") values(?, ?, ?, ?, ?)";
 
         // Persist notification
-        try (PreparedStatement stmt = conn.prepareStatement(query)) {
-
-
-            // Insert notification info into prepared statement
-            stmt.setLong(1, CURRENT_ID++);
+        try (Connection conn = pool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(query)) {
+            // Insert notification info into prepared statement, with a newly allocated id
+            long id = notificationIds.next();
+            stmt.setLong(1, id);
             stmt.setLong(2, event.getContentId());
             stmt.setString(3, parentName);
             stmt.setString(4, event.getParentName());
@@ -654,34 +1006,57 @@ final class DatabaseBackedDataStore implements DataStore {
             // Persist data
             stmt.executeUpdate();
             stmt.close();
+            return id;
         }
         catch (SQLException e) {e.printStackTrace();}
+        return -1;
     }
 
     @Override
-    public void persistRemoveNotification(String user, long id) {
-        // Update query overwriting the comment's text
-        String query = "DELETE FROM "+NOTIFICATIONS_TABLE+" WHERE "+PARENTNAME+" = ? AND "+CONTENT_ID+" = ?";
+    public int persistRemoveNotifications(String user, Collection<Long> contentIds) {
+        if(contentIds.isEmpty()) return 0;
+
+        // Delete the user's notifications about all of the given content in one statement
+        String query = "DELETE FROM "+NOTIFICATIONS_TABLE+" WHERE "+PARENTNAME+" = ? AND "+CONTENT_ID
+                +" IN (SELECT X FROM TABLE(X BIGINT = ?))";
 
         // Execute query
-        try (PreparedStatement stmt = conn.prepareStatement(query)) {
+        try (Connection conn = pool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(query)) {
             stmt.setString(1, user);
-            stmt.setLong(2, id);
-            stmt.executeUpdate();
-            stmt.close();
+            stmt.setObject(2, contentIds.toArray(new Long[contentIds.size()]));
+            return stmt.executeUpdate();
         }
         catch (SQLException e) {e.printStackTrace();}
+        return -1;
+    }
+
+    @Override
+    public int persistRemoveNotificationsUpTo(String user, long notificationId) {
+        // Delete the user's notifications up to and including the given one
+        String query = "DELETE FROM "+NOTIFICATIONS_TABLE+" WHERE "+PARENTNAME+" = ? AND "+NOTIFICATIONS_ID+" <= ?";
+
+        // Execute query
+        try (Connection conn = pool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(query)) {
+            stmt.setString(1, user);
+            stmt.setLong(2, notificationId);
+            return stmt.executeUpdate();
+        }
+        catch (SQLException e) {e.printStackTrace();}
+        return -1;
     }
 
     @Override
     public List<Notification> getNotifications(String user) {
         // Set up query
-        String query = "SELECT * FROM "+NOTIFICATIONS_TABLE+" WHERE "+PARENTNAME+" = ?";
+        String query = "SELECT * FROM "+NOTIFICATIONS_TABLE+" WHERE "+PARENTNAME+" = ? ORDER BY "+NOTIFICATIONS_ID;
         List<Notification> notifications = new ArrayList<>();
 
 
         // Get notifications
-        try (PreparedStatement stmt = conn.prepareStatement(query)) {
+        try (Connection conn = pool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(query)) {
             // Execute query on database
             stmt.setString(1, user);
             ResultSet rs = stmt.executeQuery();
@@ -692,6 +1067,7 @@ final class DatabaseBackedDataStore implements DataStore {
                 // Get info
 
 
+                long id = rs.getLong(1);
                 long commentId = rs.getLong(2);
                 String notifiedUser = rs.getString(3);
                 String commentPostedBy = rs.getString(4);
@@ -701,7 +1077,7 @@ final class DatabaseBackedDataStore implements DataStore {
                 EventType type = decodeCommentTypeFromString(stored_type);
 
                 // Create notification
-                notifications.add(new Notification(commentId, commentPostedBy, notifiedUser, type));
+                notifications.add(new Notification(id, commentId, commentPostedBy, notifiedUser, type));
             }
             stmt.close();
         }
@@ -740,11 +1116,14 @@ final class DatabaseBackedDataStore implements DataStore {
 
     @Override
     public void persistRemoveComment(long commentId) {
+        commentLikes.discard(commentId);
+
         // The comment's contents will be overwritten.
         String query = "DELETE FROM " + COMMENTS_TABLE + " WHERE " + COMMENTS_ID + " = ?";
 
         // Setup and execute delete query.
-        try (PreparedStatement stmt = conn.prepareStatement(query)) {
+        try (Connection conn = pool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(query)) {
             stmt.setLong(1, commentId);
             stmt.executeUpdate();
             stmt.close();
@@ -754,147 +1133,270 @@ final class DatabaseBackedDataStore implements DataStore {
 
     @Override
     public void persistRemovePhoto(long photoId) {
-        // The photo will be deleted.
+        // Find the photo's contents, so they can be removed if no other photo shares them.
+        String hashQuery = "SELECT "+PHOTOS_CONTENT_HASH+" FROM "+PHOTOS_TABLE+" WHERE "+PHOTOS_ID+" = ?";
         String query = "DELETE FROM " + PHOTOS_TABLE + " WHERE " + PHOTOS_ID + " = ?";
+        photoLikes.discard(photoId);
+
+        try (Connection conn = pool.getConnection()) {
+            String hash = null;
+            try (PreparedStatement stmt = conn.prepareStatement(hashQuery)) {
+                stmt.setLong(1, photoId);
+                ResultSet rs = stmt.executeQuery();
+                if(rs.next()) hash = rs.getString(1);
+            }
+
+            // Photo didn't exist, or its contents were never moved out of the database
+            if(hash == null) {
+                deletePhotoRow(conn, query, photoId);
+                return;
+            }
+
+            synchronized (blobLocks.lockFor(hash)) {
+                deletePhotoRow(conn, query, photoId);
+
+                // Remove the contents if this was the last photo referring to them
+                deleteIfUnreferenced(conn, blobs, hash);
+            }
+        }
+        catch (SQLException e) {e.printStackTrace();}
+    }
+
+    /**
+     * Removes the given contents from the blob store if no photo refers to them.
+     * The caller must hold the blob's lock.
+     * @param conn the connection already borrowed by the caller
+     * @param blobs the blob store holding the contents
+     * @param hash the hash of the contents
+     */
+    static void deleteIfUnreferenced(Connection conn, PhotoBlobStore blobs, String hash) throws SQLException {
+        String query = "SELECT COUNT(*) FROM "+PHOTOS_TABLE+" WHERE "+PHOTOS_CONTENT_HASH+" = ?";
+        try (PreparedStatement stmt = conn.prepareStatement(query)) {
+            stmt.setString(1, hash);
+            ResultSet rs = stmt.executeQuery();
+            if(rs.next() && rs.getLong(1) == 0) blobs.delete(hash);
+        }
+    }
 
+    /**
+     * Deletes the given photo's row
+     * @param conn the connection already borrowed by the caller
+     * @param query the delete query
+     * @param photoId the given photoId
+     */
+    private void deletePhotoRow(Connection conn, String query, long photoId) throws SQLException {
         // Setup delete query.
         try (PreparedStatement stmt = conn.prepareStatement(query)) {
             stmt.setLong(1, photoId);
 
             // Execute query to delete row
             stmt.executeUpdate();
-            stmt.close();
         }
-        catch (SQLException e) {e.printStackTrace();}
     }
 
     @Override
     public void persistCommentVote(long commentId, String user, boolean rating) throws InvalidResourceRequestException {
-        // Set up query for updating / inserting a new photo into the table
-        String query = "INSERT INTO "+COMMENTS_VOTES_TABLE+"("+REFERENCE_ID+","+USERNAME+") values(?, ?)";
-        String update = "DELETE FROM "+COMMENTS_VOTES_TABLE+" WHERE "+USERNAME+" = ? AND "+REFERENCE_ID+" = ?";
+        commentLikes.persistLike(commentId, user, rating);
+    }
 
-        // Delete the existing row from the table, if present.
-        try (PreparedStatement stmt = conn.prepareStatement(update)) {
-            stmt.setString(1, user);
-            stmt.setLong(2, commentId);
+    @Override
+    public void persistPhotoRating(long photoId, String user, boolean rating) throws InvalidResourceRequestException {
+        photoLikes.persistLike(photoId, user, rating);
+    }
 
-            // Delete rating if present
-            stmt.executeUpdate();
-            stmt.close();
-        }
-        catch (SQLException e) {
-            e.printStackTrace();
-        }
+    @Override
+    public boolean hasLikedPhoto(long photoId, String user) {
+        return photoLikes.hasLiked(photoId, user);
+    }
 
-        // Add new like
-        if(rating) {
-            try (PreparedStatement stmt = conn.prepareStatement(query)) {
-                // Insert user info into prepared statement
-                stmt.setLong(1, commentId);
-                stmt.setString(2, user);
+    @Override
+    public boolean hasLikedComment(long commentId, String user) {
+        return commentLikes.hasLiked(commentId, user);
+    }
 
-                // Persist data
-                stmt.executeUpdate();
-                stmt.close();
-            }
-            catch (SQLException e) {
-                throw new InvalidResourceRequestException(commentId);
-            }
-        }
+    @Override
+    public Set<Long> getLikedPhotos(String user, Collection<Long> photoIds) {
+        return photoLikes.getLiked(user, photoIds);
     }
 
     @Override
-    public void persistPhotoRating(long photoId, String user, boolean rating) throws InvalidResourceRequestException {
-        // Set up query for updating / inserting a new photo into the table
-        String query = "INSERT INTO "+PHOTO_RATINGS_TABLE+"("+REFERENCE_ID+","+USERNAME+") values(?, ?)";
-        String update = "DELETE FROM "+PHOTO_RATINGS_TABLE+ " WHERE "+USERNAME+" = ? AND "+REFERENCE_ID+" = ?";
+    public Set<Long> getLikedComments(String user, Collection<Long> commentIds) {
+        return commentLikes.getLiked(user, commentIds);
+    }
 
-        // Delete the existing row from the table, if present.
-        try (PreparedStatement stmt = conn.prepareStatement(update)) {
-            stmt.setString(1, user);
-            stmt.setLong(2, photoId);
+    @Override
+    public List<String> getPhotoLikers(long photoId, String after, int limit) {
+        return photoLikes.getLikers(photoId, after, limit);
+    }
 
-            // Delete rating if present
-            stmt.executeUpdate();
-            stmt.close();
-        }
-        catch (SQLException e) {
-            e.printStackTrace();
+    @Override
+    public List<String> getCommentLikers(long commentId, String after, int limit) {
+        return commentLikes.getLikers(commentId, after, limit);
+    }
+
+    /**
+     * Stores the likes of one kind of entity, for a like buffer to write through to
+     */
+    private final class LikeBackend implements LikeBuffer.Backend {
+        private final String votesTable, table, idColumn;
+
+        /**
+         * @param votesTable the table of likes
+         * @param table the table of the liked photos / comments
+         * @param idColumn the id column of the liked photos / comments
+         */
+        LikeBackend(String votesTable, String table, String idColumn) {
+            this.votesTable = votesTable;
+            this.table = table;
+            this.idColumn = idColumn;
         }
 
-        // Add new like
-        if(rating) {
-            try (PreparedStatement stmt = conn.prepareStatement(query)) {
-                // Insert user info into prepared statement
-                stmt.setLong(1, photoId);
-                stmt.setString(2, user);
+        @Override
+        public boolean hasLiked(long id, String user) {
+            // Look up the like through the likes table's primary key
+            String query = "SELECT 1 FROM "+votesTable+" WHERE "+REFERENCE_ID+" = ? AND "+USERNAME+" = ?";
 
-                // Persist data
-                stmt.executeUpdate();
-                stmt.close();
-            }
-            catch (SQLException e) {
-                throw new InvalidResourceRequestException(photoId);
+            // Execute query on database
+            try (Connection conn = pool.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(query)) {
+                stmt.setLong(1, id);
+                stmt.setString(2, user);
+                return stmt.executeQuery().next();
             }
+            catch (SQLException e) {e.printStackTrace();}
+
+            // Failed
+            return false;
         }
-    }
 
-    /**
-     * Queries the database for all votes for the given comment
-     * @param commentId the comment
-     * @return the votes for the given comment
-     */
-    private List<String> getCommentVotes(long commentId) {
-        // Set up query to retrieve each row in the votes table
-        String query = "SELECT * FROM "+COMMENTS_VOTES_TABLE+" WHERE "+REFERENCE_ID+" = ?";
-        List<String> votes = new ArrayList<>();
+        @Override
+        public Set<Long> getLiked(String user, Collection<Long> ids) {
+            // Look up all of the likes through the likes table's primary key, in one statement
+            String query = "SELECT "+REFERENCE_ID+" FROM "+votesTable+" WHERE "+USERNAME+" = ? AND "+REFERENCE_ID
+                    +" IN (SELECT X FROM TABLE(X BIGINT = ?))";
+            Set<Long> liked = new HashSet<>();
 
-        try (PreparedStatement stmt = conn.prepareStatement(query)) {
             // Execute query on database
-            stmt.setLong(1, commentId);
-            ResultSet rs = stmt.executeQuery();
-
-            // Iterate through result set
-            while(rs.next()) {
-                String userName = rs.getString(2);
-                votes.add(userName);
+            try (Connection conn = pool.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(query)) {
+                stmt.setString(1, user);
+                stmt.setObject(2, ids.toArray(new Long[ids.size()]));
+                ResultSet rs = stmt.executeQuery();
+                while(rs.next()) liked.add(rs.getLong(1));
             }
-            stmt.close();
+            catch (SQLException e) {e.printStackTrace();}
+
+            // Return found likes
+            return liked;
         }
-        catch (SQLException e) { e.printStackTrace();}
 
-        // Return found votes
-        return votes;
-    }
+        @Override
+        public long getLikeCount(long id) {
+            String query = "SELECT "+LIKE_COUNT+" FROM "+table+" WHERE "+idColumn+" = ?";
 
+            // Execute query on database
+            try (Connection conn = pool.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(query)) {
+                stmt.setLong(1, id);
+                ResultSet rs = stmt.executeQuery();
+                if(rs.next()) return rs.getLong(1);
+            }
+            catch (SQLException e) {e.printStackTrace();}
 
-    /**
-     * Queries the database for all votes for the given photo
-     * @param photoId the photo
-     * @return the votes for the given photo
-     */
-    private List<String> getPhotoRatings(long photoId) {
-        // Set up query to retrieve each row in the votes table
-        String query = "SELECT * FROM "+PHOTO_RATINGS_TABLE+" WHERE "+REFERENCE_ID+" = ?";
-        List<String> votes = new ArrayList<>();
+            // Failed
+            return 0;
+        }
+
+        @Override
+        public List<String> getLikers(long id, String after, int limit) {
+            // Scan the likes table's primary key in order
+            String query = "SELECT "+USERNAME+" FROM "+votesTable+" WHERE "+REFERENCE_ID+" = ?"
+                    + (after == null ? "" : " AND "+USERNAME+" > ?") + " ORDER BY "+USERNAME+" LIMIT ?";
+            List<String> likers = new ArrayList<>();
 
-        try (PreparedStatement stmt = conn.prepareStatement(query)) {
             // Execute query on database
-            stmt.setLong(1, photoId);
-            ResultSet rs = stmt.executeQuery();
+            try (Connection conn = pool.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(query)) {
+                int param = 1;
+                stmt.setLong(param++, id);
+                if(after != null) stmt.setString(param++, after);
+                stmt.setInt(param, limit);
+
+                ResultSet rs = stmt.executeQuery();
+                while(rs.next()) likers.add(rs.getString(1));
+            }
+            catch (SQLException e) {e.printStackTrace();}
 
-            // Iterate through result set
-            while(rs.next()) {
-                String userName = rs.getString(2);
-                votes.add(userName);
+            // Return found users
+            return likers;
+        }
+
+        @Override
+        public Map<Long, Long> persist(List<LikeBuffer.Change> changes) throws SQLException {
+            // Set up queries for inserting likes if they aren't already present, deleting them,
+            // and adjusting the like counts by however many were actually added or removed
+            String insert = "INSERT INTO "+votesTable+"("+REFERENCE_ID+","+USERNAME+") SELECT ?, ? FROM DUAL"
+                    +" WHERE NOT EXISTS (SELECT 1 FROM "+votesTable+" WHERE "+REFERENCE_ID+" = ? AND "+USERNAME+" = ?)";
+            String delete = "DELETE FROM "+votesTable+" WHERE "+REFERENCE_ID+" = ? AND "+USERNAME+" = ?";
+            String count = "UPDATE "+table+" SET "+LIKE_COUNT+" = "+LIKE_COUNT+" + ? WHERE "+idColumn+" = ?";
+            Map<Long, Long> applied = new HashMap<>();
+
+            try (Connection conn = pool.getConnection()) {
+                conn.setAutoCommit(false);
+                try (PreparedStatement insertStmt = conn.prepareStatement(insert);
+                     PreparedStatement deleteStmt = conn.prepareStatement(delete);
+                     PreparedStatement countStmt = conn.prepareStatement(count)) {
+                    // Batch up the likes and unlikes separately
+                    List<LikeBuffer.Change> likes = new ArrayList<>(), unlikes = new ArrayList<>();
+                    for(LikeBuffer.Change change : changes) {
+                        PreparedStatement stmt = change.isLike() ? insertStmt : deleteStmt;
+                        stmt.setLong(1, change.getId());
+                        stmt.setString(2, change.getUser());
+                        if(change.isLike()) {
+                            stmt.setLong(3, change.getId());
+                            stmt.setString(4, change.getUser());
+                            likes.add(change);
+                        }
+                        else unlikes.add(change);
+                        stmt.addBatch();
+                    }
+                    countApplied(insertStmt.executeBatch(), likes, applied);
+                    countApplied(deleteStmt.executeBatch(), unlikes, applied);
+
+                    // Adjust the like counts, then make the whole batch visible at once
+                    for(Map.Entry<Long, Long> change : applied.entrySet()) {
+                        if(change.getValue() == 0) continue;
+                        countStmt.setLong(1, change.getValue());
+                        countStmt.setLong(2, change.getKey());
+                        countStmt.addBatch();
+                    }
+                    countStmt.executeBatch();
+                    conn.commit();
+                }
+                catch (SQLException e) {
+                    conn.rollback();
+                    throw e;
+                }
+                finally {
+                    conn.setAutoCommit(true);
+                }
             }
-            stmt.close();
+            return applied;
         }
-        catch (SQLException e) { e.printStackTrace();}
 
-        // Return found votes
-        return votes;
+        /**
+         * Totals the change in like counts made by a batch of likes or unlikes
+         * @param updates the number of rows each change updated
+         * @param changes the changes in the batch
+         * @param applied the change in each photo / comment's like count, to add to
+         */
+        private void countApplied(int[] updates, List<LikeBuffer.Change> changes, Map<Long, Long> applied) {
+            for(int i = 0; i < changes.size(); i++) {
+                LikeBuffer.Change change = changes.get(i);
+                boolean updated = updates[i] > 0 || updates[i] == Statement.SUCCESS_NO_INFO;
+                applied.merge(change.getId(), updated ? (change.isLike() ? 1L : -1L) : 0L, Long::sum);
+            }
+        }
     }
 
     @Override
@@ -903,7 +1405,8 @@ final class DatabaseBackedDataStore implements DataStore {
         String query = "INSERT INTO "+FOLLOWINGS_TABLE+"("+USER_FROM+","+USER_TO+") values(?, ?)";
 
         // Persist the user
-        try (PreparedStatement stmt = conn.prepareStatement(query, Statement.RETURN_GENERATED_KEYS)) {
+        try (Connection conn = pool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(query, Statement.RETURN_GENERATED_KEYS)) {
             // Insert user info into prepared statement
             stmt.setString(1, userFrom);
             stmt.setString(2, userTo);
@@ -932,7 +1435,8 @@ final class DatabaseBackedDataStore implements DataStore {
         String query = "DELETE FROM "+FOLLOWINGS_TABLE+" WHERE "+USER_FROM+" = ? AND "+USER_TO+" = ?";
 
         // Execute query
-        try (PreparedStatement stmt = conn.prepareStatement(query)) {
+        try (Connection conn = pool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(query)) {
 
             // Persist
             stmt.setString(1, userFrom);
@@ -945,62 +1449,89 @@ final class DatabaseBackedDataStore implements DataStore {
 
     @Override
     public List<User> getFollowers(String username) throws InvalidResourceRequestException{
+        // Set up query to retrieve each follower, joined with their user info
+        String query = "SELECT u."+USERNAME+", u."+PASSWORD+", u."+USERS_ADMIN+" FROM "+FOLLOWINGS_TABLE+" f JOIN "
+                +USERS_TABLE+" u ON u."+USERNAME+" = f."+USER_FROM+" WHERE f."+USER_TO+" = ? ORDER BY f."+FOLLOW_ID;
+        return getFollowUsers(query, username);
+    }
+
+    @Override
+    public List<User> getFollowing(String username) {
+        // Set up query to retrieve each followed user, joined with their user info
+        String query = "SELECT u."+USERNAME+", u."+PASSWORD+", u."+USERS_ADMIN+" FROM "+FOLLOWINGS_TABLE+" f JOIN "
+                +USERS_TABLE+" u ON u."+USERNAME+" = f."+USER_TO+" WHERE f."+USER_FROM+" = ? ORDER BY f."+FOLLOW_ID;
+        return getFollowUsers(query, username);
+    }
 
-        // Set up query to retrieve each row in the votes table
-        String query = "SELECT * FROM "+FOLLOWINGS_TABLE+" WHERE "+USER_TO+" = ?";
-        List<User> following = new ArrayList<>();
+    /**
+     * Retrieves the users on one side of the given user's followings, with a single query
+     * @param query the query joining the followings table with the users table
+     * @param username the given user
+     * @return the users found
+     */
+    private List<User> getFollowUsers(String query, String username) {
+        List<User> users = new ArrayList<>();
 
-        // Get followers
-        try (PreparedStatement stmt = conn.prepareStatement(query)) {
+        // Get users
+        try (Connection conn = pool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(query)) {
             // Execute query on database
             stmt.setString(1, username);
             ResultSet rs = stmt.executeQuery();
 
-            // Iterate through result set, constructing PHOTO Objects
+            // Iterate through result set, constructing User Objects
             while (rs.next()) {
-                // Get info
-                String usernameOfFollower = rs.getString(2);
-                User follower = getUser(usernameOfFollower);
-
-                // Add to list of followees
-                following.add(follower);
+                User user = new User(rs.getString(1), rs.getString(2));
+                user.setAdmin(rs.getBoolean(3));
+                users.add(user);
             }
             stmt.close();
         }
         catch (SQLException e) { e.printStackTrace(); }
 
-        return following;
+        return users;
     }
 
     @Override
-    public List<User> getFollowing(String username) {
+    public long countFollowers(String username) {
+        // Set up query to count the rows following the user
+        String query = "SELECT COUNT(*) FROM "+FOLLOWINGS_TABLE+" WHERE "+USER_TO+" = ?";
+        return count(query, username);
+    }
 
-        // Set up query to retrieve each row in the votes table
-        String query = "SELECT * FROM "+FOLLOWINGS_TABLE+" WHERE "+USER_FROM+" = ?";
-        List<User> following = new ArrayList<>();
+    @Override
+    public long countFollowing(String username) {
+        // Set up query to count the rows followed by the user
+        String query = "SELECT COUNT(*) FROM "+FOLLOWINGS_TABLE+" WHERE "+USER_FROM+" = ?";
+        return count(query, username);
+    }
 
-        // Get followers
-        try (PreparedStatement stmt = conn.prepareStatement(query)) {
-            // Execute query on database
-            stmt.setString(1, username);
-            ResultSet rs = stmt.executeQuery();
+    @Override
+    public boolean isFollowing(String userFrom, String userTo) {
+        // Set up query to look for the following
+        String query = "SELECT COUNT(*) FROM "+FOLLOWINGS_TABLE+" WHERE "+USER_FROM+" = ? AND "+USER_TO+" = ?";
+        return count(query, userFrom, userTo) > 0;
+    }
 
-            // Iterate through result set, constructing PHOTO Objects
-            while (rs.next()) {
-                // Get info
-                String usernameOfFollowee = rs.getString(3);
-                User follower = getUser(usernameOfFollowee);
+    /**
+     * Executes the given counting query
+     * @param query the query, selecting a single count
+     * @param params the query's string parameters
+     * @return the count, or -1 if the query failed
+     */
+    private long count(String query, String... params) {
+        try (Connection conn = pool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(query)) {
+            for(int i = 0; i < params.length; i++) stmt.setString(i + 1, params[i]);
 
-                // Add to list of followes
-                following.add(follower);
-            }
-            stmt.close();
+            // Execute query and read the count
+            ResultSet rs = stmt.executeQuery();
+            if(rs.next()) return rs.getLong(1);
         }
         catch (SQLException e) { e.printStackTrace(); }
-        catch (InvalidResourceRequestException e) { e.printStackTrace(); }
-
 
-        return following;
+        // Failed
+        return -1;
     }
 
     @Override
@@ -1009,10 +1540,15 @@ final class DatabaseBackedDataStore implements DataStore {
         String[] tables = new String[] {USERS_TABLE,ALBUMS_TABLE,PHOTOS_TABLE,
                 COMMENTS_TABLE,COMMENTS_VOTES_TABLE, PHOTO_RATINGS_TABLE,NOTIFICATIONS_TABLE, FOLLOWINGS_TABLE};
 
+        // Drop buffered likes, rather than writing them to tables about to be emptied
+        photoLikes.clear();
+        commentLikes.clear();
+
         // Clear each table, but retaining their schema.
         for(String table : tables) {
             // Execute statement
-            try (PreparedStatement stmt = conn.prepareStatement(query + table)) {
+            try (Connection conn = pool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(query + table)) {
                 // Allow clearing of data without caring about foreign keys
                 stmt.executeUpdate();
             }
@@ -1020,36 +1556,8 @@ final class DatabaseBackedDataStore implements DataStore {
                 e.printStackTrace();
             }
         }
-    }
-
-    @Override
-    public List<User> getUserWithNameBegining(String name) {
-        // Set up query
-        String query = "SELECT * FROM "+USERS_TABLE+" WHERE  "+USERNAME+" LIKE ?";
-        List<User> users = new ArrayList<>();
-
-        // Execute query on database
-        try (PreparedStatement stmt = conn.prepareStatement(query)) {
-            stmt.setString(1, "%" + name + "%");
-            ResultSet rs = stmt.executeQuery();
-
-            // Iterate through result set, constructing User Objects
-            while(rs.next()) {
-                // Create users
-                String userName = rs.getString(1);
-                String password = rs.getString(2);
-                boolean admin = rs.getBoolean(3);
-
-                // Add users to collection to return
-                User user = new User(userName, password);
-                user.setAdmin(admin);
-                users.add(user);
-            }
-            stmt.close();
-        }
-        catch (SQLException e) {e.printStackTrace();}
 
-        // Return found user
-        return users;
+        // Remove all photo contents
+        blobs.clear();
     }
 }
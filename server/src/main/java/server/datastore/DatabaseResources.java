@@ -14,6 +14,7 @@ abstract class DatabaseResources {
     static final String PHOTO_RATINGS_TABLE = "photoRatings";
     static final String NOTIFICATIONS_TABLE = "notifications";
     static final String FOLLOWINGS_TABLE = "followings";
+    static final String SCHEMA_VERSION_TABLE = "schemaVersion";
 
     // User table attributes
     static final String PARENTNAME = "parentname";
@@ -34,6 +35,9 @@ abstract class DatabaseResources {
     static final String PHOTOS_EXT = "photoExt";
     static final String PHOTOS_TIME = "photoTime";
     static final String PHOTOS_DESCRIPTION = "photoDescription";
+    static final String PHOTOS_CONTENT_HASH = "contentHash";
+    static final String PHOTOS_CONTENT_LENGTH = "contentLength";
+    static final String PHOTOS_CONTENT_DECODED = "contentDecoded";
 
     // Comment table attributes
     static final String REFERENCE_ID = "referenceId";
@@ -41,6 +45,11 @@ abstract class DatabaseResources {
     static final String COMMENT_TYPE = "type";
     static final String COMMENTS_CONTENTS = "commentContents";
     static final String COMMENTS_TIME = "commentTime";
+    static final String COMMENTS_THREAD_PATH = "threadPath";
+    static final String COMMENTS_THREAD_DEPTH = "threadDepth";
+
+    // Number of likes, kept on both photos and comments
+    static final String LIKE_COUNT = "likeCount";
 
     // Followings table attributes
     static final String FOLLOW_ID = "followId";
@@ -51,6 +60,13 @@ abstract class DatabaseResources {
     static final String CONTENT_TYPE = "content_type";
     static final String CONTENT_ID = "content_id";
     static final String NOTIFICATIONS_ID = "notification_id";
+    static final String NOTIFICATIONS_SEQUENCE = "notificationIds";
+    static final int NOTIFICATIONS_ID_BLOCK = 50;
+
+    // Schema version table attributes
+    static final String SCHEMA_VERSION = "version";
+    static final String SCHEMA_DESCRIPTION = "description";
+    static final String SCHEMA_APPLIED = "appliedAt";
 
 
 }
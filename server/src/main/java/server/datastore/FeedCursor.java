@@ -0,0 +1,78 @@
+package server.datastore;
+
+import server.objects.Photo;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Position in a newest-first stream of photos: the time and id of the last photo seen.
+ * Photos are ordered by time, and then by id among photos posted at the same time,
+ * so a position is never ambiguous.
+ *
+ * Cursors are sent to clients in an opaque, URL-safe encoding.
+ */
+final class FeedCursor {
+    private static final char SEPARATOR = '\n';
+
+    private final long photoTime;
+    private final long photoId;
+
+    FeedCursor(long photoTime, long photoId) {
+        this.photoTime = photoTime;
+        this.photoId = photoId;
+    }
+
+    /**
+     * @param photo the last photo seen
+     * @return the position just after the given photo
+     */
+    static FeedCursor after(Photo photo) {
+        return new FeedCursor(photo.getPhotoTimeMillis(), photo.getId());
+    }
+
+    /**
+     * @param encoded a cursor produced by {@link #encode()}
+     * @return the decoded cursor
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    static FeedCursor decode(String encoded) {
+        String decoded = new String(Base64.getUrlDecoder().decode(encoded), StandardCharsets.UTF_8);
+        int separator = decoded.lastIndexOf(SEPARATOR);
+        if(separator == -1) throw new IllegalArgumentException(String.format("Malformed cursor: %s", encoded));
+
+        return new FeedCursor(Long.parseLong(decoded.substring(0, separator)),
+                Long.parseLong(decoded.substring(separator + 1)));
+    }
+
+    /**
+     * @return the cursor in its opaque form
+     */
+    String encode() {
+        String raw = Long.toString(photoTime) + SEPARATOR + photoId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return the time the last photo seen was posted, in milliseconds since the epoch
+     */
+    long getPhotoTime() {
+        return photoTime;
+    }
+
+    /**
+     * @return the id of the last photo seen
+     */
+    long getPhotoId() {
+        return photoId;
+    }
+
+    /**
+     * @param photo the photo to check
+     * @return true if the given photo is older than this position, so comes after it
+     */
+    boolean isOlder(Photo photo) {
+        int time = Long.compare(photo.getPhotoTimeMillis(), photoTime);
+        return time < 0 || (time == 0 && photo.getId() < photoId);
+    }
+}
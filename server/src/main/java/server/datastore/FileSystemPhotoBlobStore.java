@@ -0,0 +1,145 @@
+package server.datastore;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.regex.Pattern;
+
+/**
+ * PhotoBlobStore writing each blob to its own file in a sharded directory tree.
+ * A blob with hash 'abcdef...' lives at 'root/ab/cd/abcdef...', which keeps
+ * directories small no matter how many photos are stored.
+ */
+final class FileSystemPhotoBlobStore implements PhotoBlobStore {
+    private static final String STAGING_DIR = "staging";
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final Pattern HASH_PATTERN = Pattern.compile("[0-9a-f]{64}");
+    private final Path root, staging;
+
+    FileSystemPhotoBlobStore(Path root) throws IOException {
+        this.root = root;
+        this.staging = root.resolve(STAGING_DIR);
+        Files.createDirectories(staging);
+    }
+
+    @Override
+    public PhotoBlob write(InputStream contents) throws IOException {
+        // Stream the contents to a temporary file while hashing them
+        Path temp = Files.createTempFile(staging, "upload", ".tmp");
+        DigestInputStream in = new DigestInputStream(contents, newDigest());
+        try (OutputStream out = Files.newOutputStream(temp)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            long length = 0;
+            int read;
+            while((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+                length += read;
+            }
+
+            return new PhotoBlob(toHex(in.getMessageDigest().digest()), length, temp);
+        }
+        catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+    }
+
+    @Override
+    public void commit(PhotoBlob blob) throws IOException {
+        Path target = pathOf(blob.getHash());
+
+        // Identical contents are already stored, so the staged copy isn't needed
+        if(Files.exists(target)) {
+            discard(blob);
+            return;
+        }
+
+        // Move the staged file into place
+        Files.createDirectories(target.getParent());
+        try {
+            Files.move(blob.getStagedPath(), target, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (AtomicMoveNotSupportedException e) {
+            Files.move(blob.getStagedPath(), target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (FileAlreadyExistsException e) {
+            discard(blob);
+        }
+    }
+
+    @Override
+    public void discard(PhotoBlob blob) {
+        if(blob.getStagedPath() == null) return;
+        try {
+            Files.deleteIfExists(blob.getStagedPath());
+        }
+        catch (IOException e) {e.printStackTrace();}
+    }
+
+    @Override
+    public FileChannel open(String hash) throws IOException {
+        return FileChannel.open(pathOf(hash), StandardOpenOption.READ);
+    }
+
+    @Override
+    public void delete(String hash) {
+        try {
+            Files.deleteIfExists(pathOf(hash));
+        }
+        catch (IOException e) {e.printStackTrace();}
+    }
+
+    @Override
+    public void clear() {
+        try {
+            // Remove every shard, but keep the root and staging directories
+            Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    Files.delete(file);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                    if(!dir.equals(root) && !dir.equals(staging)) Files.delete(dir);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+        catch (IOException e) {e.printStackTrace();}
+    }
+
+    /**
+     * @param hash the hex-encoded hash of some contents
+     * @return the location of the contents with the given hash
+     */
+    private Path pathOf(String hash) {
+        if(!HASH_PATTERN.matcher(hash).matches()) {
+            throw new IllegalArgumentException(String.format("Invalid blob hash: %s", hash));
+        }
+        return root.resolve(hash.substring(0, 2)).resolve(hash.substring(2, 4)).resolve(hash);
+    }
+
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) hex.append(String.format("%02x", b));
+        return hex.toString();
+    }
+}
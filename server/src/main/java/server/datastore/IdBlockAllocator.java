@@ -0,0 +1,81 @@
+package server.datastore;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands out unique ids from a database sequence, a block at a time.
+ *
+ * The sequence is incremented by the block size, so each value read from it reserves
+ * the whole block of ids following it. Ids within the current block are claimed
+ * without locking, and the database is only visited once a block is used up.
+ * Blocks are never reused, so ids stay unique across restarts, at the cost of
+ * skipping the unused remainder of a block on shutdown.
+ */
+final class IdBlockAllocator {
+    private final ConnectionPool pool;
+    private final String sequence;
+    private final int blockSize;
+    private volatile Block current = new Block(0, 0);
+
+    /**
+     * @param pool the pool to borrow connections from when a new block is needed
+     * @param sequence the name of the sequence, which must increment by the block size
+     * @param blockSize the number of ids in each block
+     */
+    IdBlockAllocator(ConnectionPool pool, String sequence, int blockSize) {
+        this.pool = pool;
+        this.sequence = sequence;
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * @return an id which has never been handed out before
+     * @throws SQLException if a new block was needed, but couldn't be reserved
+     */
+    long next() throws SQLException {
+        while(true) {
+            // Claim the next id in the current block, if there are any left
+            Block block = current;
+            long id = block.next.getAndIncrement();
+            if(id < block.end) return id;
+
+            // Reserve a new block, unless another thread already has
+            synchronized (this) {
+                if(current == block) current = reserveBlock();
+            }
+        }
+    }
+
+    /**
+     * @return the next block of ids from the sequence
+     */
+    private Block reserveBlock() throws SQLException {
+        String query = "SELECT NEXT VALUE FOR "+sequence;
+
+        try (Connection conn = pool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(query)) {
+            ResultSet rs = stmt.executeQuery();
+            if(!rs.next()) throw new SQLException(String.format("Sequence %s returned no value", sequence));
+
+            long start = rs.getLong(1);
+            return new Block(start, start + blockSize);
+        }
+    }
+
+    /**
+     * A range of reserved ids, from start (inclusive) to end (exclusive)
+     */
+    private static final class Block {
+        private final AtomicLong next;
+        private final long end;
+
+        private Block(long start, long end) {
+            this.next = new AtomicLong(start);
+            this.end = end;
+        }
+    }
+}
@@ -0,0 +1,636 @@
+package server.datastore;
+
+import server.datastore.exceptions.InvalidResourceRequestException;
+import server.objects.*;
+import server.requests.AddCommentRequest;
+import server.requests.UploadPhotoRequest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * DataStore held entirely in memory, for benchmarks, tests and ephemeral deployments.
+ *
+ * Each entity is kept in a concurrent map by its id, alongside secondary indexes of ids
+ * by user, album and reference id, so lookups never scan a whole map. Changes which touch
+ * an entity and the entities depending on it (e.g. a photo and its ratings) are made under
+ * a striped lock for that entity. Nothing survives a restart.
+ */
+final class InMemoryDataStore implements DataStore {
+    private static final int LOCK_STRIPES = 64;
+    private final StripedLocks locks = new StripedLocks(LOCK_STRIPES);
+
+    // Id generators. As with the database, ids are never reused, even after clearing.
+    private final AtomicLong photoIds = new AtomicLong(1), albumIds = new AtomicLong(1),
+            commentIds = new AtomicLong(1), notificationIds = new AtomicLong(1), followIds = new AtomicLong(1);
+
+    // Users, ordered by name
+    private final ConcurrentMap<String, User> users = new ConcurrentSkipListMap<>();
+
+    // Albums
+    private final ConcurrentMap<Long, Album> albums = new ConcurrentHashMap<>();
+    private final Index<String> albumsByUser = new Index<>();
+
+    // Photos, their contents, and ratings
+    private final ConcurrentMap<Long, Photo> photos = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Long, PhotoContents> photoContents = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Long, NavigableSet<String>> photoRatings = new ConcurrentHashMap<>();
+    private final Index<String> photosByUser = new Index<>();
+    private final Index<Long> photosByAlbum = new Index<>();
+
+    // Comments and their votes
+    private final ConcurrentMap<Long, Comment> comments = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Long, NavigableSet<String>> commentVotes = new ConcurrentHashMap<>();
+    private final Index<String> commentsByUser = new Index<>();
+    private final Index<Long> commentsByPhoto = new Index<>();
+    private final Index<Long> repliesByComment = new Index<>();
+
+    // Notifications
+    private final ConcurrentMap<Long, Notification> notifications = new ConcurrentHashMap<>();
+    private final Index<String> notificationsByUser = new Index<>();
+
+    // Followings
+    private final ConcurrentMap<Long, Follow> follows = new ConcurrentHashMap<>();
+    private final Index<String> followsByUserFrom = new Index<>();
+    private final Index<String> followsByUserTo = new Index<>();
+
+    @Override
+    public long persistUploadPhoto(String author, UploadPhotoRequest request, InputStream contents, long time)
+            throws IOException {
+        // Read the contents before anything is added
+        PhotoContents read = PhotoContents.read(contents);
+        long id = photoIds.getAndIncrement();
+
+        // Persist photo, and index it
+        synchronized (locks.lockFor(id)) {
+            photoContents.put(id, read);
+            photoRatings.put(id, new ConcurrentSkipListSet<>());
+            photos.put(id, new Photo(author, request.getPhotoName(), request.getExtension(), request.getDescription(),
+                    id, request.getAlbumId(), 0, Timestamps.format(time), time));
+            photosByUser.add(author, id);
+            photosByAlbum.add(request.getAlbumId(), id);
+        }
+        return id;
+    }
+
+    @Override
+    public List<Photo> getPhotos(String user) {
+        return getPhotos(photosByUser.get(user));
+    }
+
+    @Override
+    public List<Photo> getPhotos(String user, FeedCursor before, int limit) {
+        // Order the user's photos newest first, then skip to the given position
+        List<Photo> found = getPhotos(photosByUser.get(user));
+        found.sort(Comparator.comparingLong(Photo::getPhotoTimeMillis).thenComparingLong(Photo::getId).reversed());
+
+        List<Photo> page = new ArrayList<>();
+        for(Photo photo : found) {
+            if(page.size() == limit) break;
+            if(before == null || before.isOlder(photo)) page.add(photo);
+        }
+        return page;
+    }
+
+    @Override
+    public List<Photo> getPhotos(String user, long since, long until) {
+        return inRange(getPhotos(photosByUser.get(user)), Photo::getPhotoTime, since, until);
+    }
+
+    @Override
+    public List<Photo> getPhotos(long albumId) {
+        return getPhotos(photosByAlbum.get(albumId));
+    }
+
+    @Override
+    public List<Photo> getPhotos(long albumId, long since, long until) {
+        return inRange(getPhotos(photosByAlbum.get(albumId)), Photo::getPhotoTime, since, until);
+    }
+
+    /**
+     * @param ids the ids of the photos
+     * @return the photos which still exist, in order of id
+     */
+    @Override
+    public List<Photo> getPhotosById(Collection<Long> photoIds) {
+        return getPhotos(photoIds);
+    }
+
+    private List<Photo> getPhotos(Collection<Long> ids) {
+        List<Photo> found = new ArrayList<>();
+        for(long id : ids) {
+            Photo photo = photos.get(id);
+            if(photo != null) found.add(photo);
+        }
+        return found;
+    }
+
+    @Override
+    public Photo getPhotoMetaData(long id) throws InvalidResourceRequestException {
+        Photo photo = photos.get(id);
+        if(photo == null) throw new InvalidResourceRequestException(id);
+        return photo;
+    }
+
+    @Override
+    public PhotoReference getPhotoReference(long id) throws InvalidResourceRequestException {
+        Photo photo = photos.get(id);
+        if(photo == null) throw new InvalidResourceRequestException(id);
+        return new PhotoReference(id, photo.getAuthorName(), photo.getAlbumId());
+    }
+
+    @Override
+    public PhotoContents getPhotoContents(long id, String ext) throws InvalidResourceRequestException {
+        // Check the photo exists, and the provided file extension is correct
+        Photo photo = photos.get(id);
+        PhotoContents contents = photoContents.get(id);
+        if(photo == null || contents == null || !photo.getExt().equals(ext)) {
+            throw new InvalidResourceRequestException(id);
+        }
+        return contents;
+    }
+
+    @Override
+    public long persistAddAlbum(String albumName, String author, String description, long time) {
+        long id = albumIds.getAndIncrement();
+        albums.put(id, new Album(id, albumName, author, description, Timestamps.format(time)));
+        albumsByUser.add(author, id);
+        return id;
+    }
+
+    @Override
+    public Album getAlbum(long albumId) throws InvalidResourceRequestException {
+        Album album = albums.get(albumId);
+        if(album == null) throw new InvalidResourceRequestException(albumId);
+        return album;
+    }
+
+    @Override
+    public List<Album> getAlbums(String user) {
+        return lookup(albumsByUser.get(user), albums);
+    }
+
+    @Override
+    public void updateAlbumDescription(long albumId, String description) throws InvalidResourceRequestException {
+        // Replace the album with one holding the new description
+        Album updated = albums.computeIfPresent(albumId, (id, album) -> new Album(id, album.getAlbumName(),
+                album.getAuthorName(), description, album.getAlbumTime()));
+
+        // Album didn't exist
+        if(updated == null) throw new InvalidResourceRequestException(albumId);
+    }
+
+    @Override
+    public void updatePhotoDescription(long photoId, String description) throws InvalidResourceRequestException {
+        // Replace the photo with one holding the new description
+        Photo updated = photos.computeIfPresent(photoId, (id, photo) -> new Photo(photo.getAuthorName(),
+                photo.getPhotoName(), photo.getExt(), description, id, photo.getAlbumId(),
+                photo.getLikeCount(), photo.getPhotoTime(), photo.getPhotoTimeMillis()));
+
+        // Photo didn't exist
+        if(updated == null) throw new InvalidResourceRequestException(photoId);
+    }
+
+    @Override
+    public Comment getComment(long id) throws InvalidResourceRequestException {
+        Comment comment = comments.get(id);
+        if(comment == null) throw new InvalidResourceRequestException(id);
+        return comment;
+    }
+
+    /**
+     * @param ids the ids of the comments
+     * @return the comments which still exist, in order of id
+     */
+    private List<Comment> getComments(Set<Long> ids) {
+        List<Comment> found = new ArrayList<>();
+        for(long id : ids) {
+            Comment comment = comments.get(id);
+            if(comment != null) found.add(comment);
+        }
+        return found;
+    }
+
+    @Override
+    public List<User> getUsers() {
+        List<User> found = new ArrayList<>();
+        for(User user : users.values()) found.add(copy(user));
+        return found;
+    }
+
+    @Override
+    public User getUser(String name) throws InvalidResourceRequestException {
+        User user = users.get(name);
+        if(user == null) throw new InvalidResourceRequestException(name);
+        return copy(user);
+    }
+
+    /**
+     * @param user the stored user
+     * @return a copy of the given user, which callers are free to change
+     */
+    private static User copy(User user) {
+        User copy = new User(user.getUsername(), user.getPassword());
+        copy.setAdmin(user.isAdmin());
+        return copy;
+    }
+
+    @Override
+    public void persistAddUser(String username, String password, boolean admin) {
+        // Existing users are left as they are
+        User user = new User(username, password);
+        user.setAdmin(admin);
+        users.putIfAbsent(username, user);
+    }
+
+    @Override
+    public List<Comment> getComments(String username) {
+        return getComments(commentsByUser.get(username));
+    }
+
+    @Override
+    public List<Comment> getPhotoComments(long referenceId) {
+        return getComments(commentsByPhoto.get(referenceId));
+    }
+
+    @Override
+    public List<Comment> getComments(String username, long since, long until) {
+        return inRange(getComments(commentsByUser.get(username)), Comment::getCommentTime, since, until);
+    }
+
+    @Override
+    public List<Comment> getPhotoComments(long referenceId, long since, long until) {
+        return inRange(getComments(commentsByPhoto.get(referenceId)), Comment::getCommentTime, since, until);
+    }
+
+    /**
+     * @param found the entities, in order of id
+     * @param time the formatted time of an entity
+     * @param since the earliest time to include, in milliseconds since the epoch
+     * @param until the time to stop at, exclusive, in milliseconds since the epoch
+     * @return the entities within the range, ordered by time and then id
+     */
+    private static <T> List<T> inRange(List<T> found, Function<T, String> time, long since, long until) {
+        List<T> within = new ArrayList<>();
+        for(T entity : found) {
+            long millis = Timestamps.parse(time.apply(entity));
+            if(millis >= since && millis < until) within.add(entity);
+        }
+
+        // The sort is stable, so entities posted at the same time stay in order of id
+        within.sort(Comparator.comparingLong(entity -> Timestamps.parse(time.apply(entity))));
+        return within;
+    }
+
+    @Override
+    public List<Comment> getReplies(long referenceId) {
+        return getComments(repliesByComment.get(referenceId));
+    }
+
+    @Override
+    public List<Comment> getCommentThread(long photoId, int maxDepth) {
+        return getThread(getComments(commentsByPhoto.get(photoId)), maxDepth);
+    }
+
+    @Override
+    public List<Comment> getReplyThread(long commentId, int maxDepth) {
+        return maxDepth < 1 ? new ArrayList<>() : getThread(getComments(repliesByComment.get(commentId)), maxDepth - 1);
+    }
+
+    /**
+     * Walks down a thread one level at a time, following the reply index
+     * @param level the first level of comments
+     * @param maxDepth the number of levels of replies to include below the first
+     * @return the comments, level by level, each level ordered by time
+     */
+    private List<Comment> getThread(List<Comment> level, int maxDepth) {
+        Comparator<Comment> order = Comparator.comparing(Comment::getCommentTime).thenComparingLong(Comment::getId);
+        List<Comment> thread = new ArrayList<>();
+        for(int depth = 0; !level.isEmpty(); depth++) {
+            level.sort(order);
+            thread.addAll(level);
+            if(depth == maxDepth) break;
+
+            List<Comment> next = new ArrayList<>();
+            for(Comment comment : level) next.addAll(getComments(repliesByComment.get(comment.getId())));
+            level = next;
+        }
+        return thread;
+    }
+
+    @Override
+    public List<Notification> getNotifications(String user) {
+        return lookup(notificationsByUser.get(user), notifications);
+    }
+
+    @Override
+    public long persistAddComment(String user, AddCommentRequest request, long time) {
+        long id = commentIds.getAndIncrement();
+
+        // Persist comment, and index it
+        synchronized (locks.lockFor(id)) {
+            commentVotes.put(id, new ConcurrentSkipListSet<>());
+            comments.put(id, new Comment(id, user, request, Timestamps.format(time)));
+            commentsByUser.add(user, id);
+            if(request.getEventType() == EventType.REPLY) repliesByComment.add(request.getReferenceId(), id);
+            else commentsByPhoto.add(request.getReferenceId(), id);
+        }
+        return id;
+    }
+
+    @Override
+    public void persistEditComment(long commentId, String content) {
+        // Replace the comment with one holding the new contents
+        comments.computeIfPresent(commentId, (id, comment) -> new Comment(id, comment.getAuthor(), content,
+                comment.getReferenceId(), comment.getEventType(), comment.getLikeCount(), comment.getCommentTime()));
+    }
+
+    @Override
+    public long persistAddNotification(String parentName, NotifiableEvent event) {
+        long id = notificationIds.getAndIncrement();
+
+        // Users are stored the same way round as in the database
+        notifications.put(id, new Notification(id, event.getContentId(), event.getParentName(), parentName,
+                event.getEventType()));
+        notificationsByUser.add(parentName, id);
+        return id;
+    }
+
+    @Override
+    public int persistRemoveNotifications(String user, Collection<Long> contentIds) {
+        // Remove each of the user's notifications about any of the given content
+        return removeNotifications(user, notification -> contentIds.contains(notification.getContentId()));
+    }
+
+    @Override
+    public int persistRemoveNotificationsUpTo(String user, long notificationId) {
+        return removeNotifications(user, notification -> notification.getId() <= notificationId);
+    }
+
+    /**
+     * Removes the user's notifications which match the given filter
+     * @return the number of notifications removed
+     */
+    private int removeNotifications(String user, Predicate<Notification> filter) {
+        int removed = 0;
+        for(long notificationId : notificationsByUser.get(user)) {
+            Notification notification = notifications.get(notificationId);
+            if(notification != null && filter.test(notification)) {
+                notificationsByUser.remove(user, notificationId);
+                if(notifications.remove(notificationId) != null) removed++;
+            }
+        }
+        return removed;
+    }
+
+    @Override
+    public void persistRemoveComment(long commentId) {
+        synchronized (locks.lockFor(commentId)) {
+            Comment comment = comments.remove(commentId);
+            if(comment == null) return;
+
+            // Remove the comment's votes, and drop it from the indexes
+            commentVotes.remove(commentId);
+            commentsByUser.remove(comment.getAuthor(), commentId);
+            commentsByPhoto.remove(comment.getReferenceId(), commentId);
+            repliesByComment.remove(comment.getReferenceId(), commentId);
+        }
+    }
+
+    @Override
+    public void persistRemovePhoto(long photoId) {
+        synchronized (locks.lockFor(photoId)) {
+            Photo photo = photos.remove(photoId);
+            if(photo == null) return;
+
+            // Remove the photo's contents and ratings, and drop it from the indexes
+            photoContents.remove(photoId);
+            photoRatings.remove(photoId);
+            photosByUser.remove(photo.getAuthorName(), photoId);
+            photosByAlbum.remove(photo.getAlbumId(), photoId);
+        }
+    }
+
+    @Override
+    public void persistCommentVote(long commentId, String user, boolean upvote) throws InvalidResourceRequestException {
+        // Hold the lock so the comment can't be removed part way through
+        synchronized (locks.lockFor(commentId)) {
+            if(!vote(commentVotes, commentId, user, upvote)) return;
+
+            // Replace the comment with one holding the new count
+            long change = upvote ? 1 : -1;
+            comments.computeIfPresent(commentId, (id, comment) -> new Comment(id, comment.getAuthor(),
+                    comment.getCommentContents(), comment.getReferenceId(), comment.getEventType(),
+                    comment.getLikeCount() + change, comment.getCommentTime()));
+        }
+    }
+
+    @Override
+    public void persistPhotoRating(long photoId, String user, boolean upvote) throws InvalidResourceRequestException {
+        // Hold the lock so the photo can't be removed part way through
+        synchronized (locks.lockFor(photoId)) {
+            if(!vote(photoRatings, photoId, user, upvote)) return;
+
+            // Replace the photo with one holding the new count
+            long change = upvote ? 1 : -1;
+            photos.computeIfPresent(photoId, (id, photo) -> new Photo(photo.getAuthorName(), photo.getPhotoName(),
+                    photo.getExt(), photo.getDescription(), id, photo.getAlbumId(), photo.getLikeCount() + change,
+                    photo.getPhotoTime(), photo.getPhotoTimeMillis()));
+        }
+    }
+
+    /**
+     * Adds or removes the user's vote on the given photo / comment
+     * @param votes the votes of each photo / comment
+     * @param id the id of the photo / comment to vote on
+     * @param user the user who cast this vote
+     * @param upvote whether or not this is an upvote or a downvote
+     * @return true if the vote was added or removed, or false if it was already that way
+     * @throws InvalidResourceRequestException if the photo / comment doesn't exist
+     */
+    private static boolean vote(ConcurrentMap<Long, NavigableSet<String>> votes, long id, String user, boolean upvote)
+            throws InvalidResourceRequestException {
+        Set<String> voters = votes.get(id);
+        if(voters == null) throw new InvalidResourceRequestException(id);
+
+        return upvote ? voters.add(user) : voters.remove(user);
+    }
+
+    @Override
+    public boolean hasLikedPhoto(long photoId, String user) {
+        return photoRatings.getOrDefault(photoId, Collections.emptyNavigableSet()).contains(user);
+    }
+
+    @Override
+    public boolean hasLikedComment(long commentId, String user) {
+        return commentVotes.getOrDefault(commentId, Collections.emptyNavigableSet()).contains(user);
+    }
+
+    @Override
+    public Set<Long> getLikedPhotos(String user, Collection<Long> photoIds) {
+        return photoIds.stream().filter(id -> hasLikedPhoto(id, user)).collect(Collectors.toSet());
+    }
+
+    @Override
+    public Set<Long> getLikedComments(String user, Collection<Long> commentIds) {
+        return commentIds.stream().filter(id -> hasLikedComment(id, user)).collect(Collectors.toSet());
+    }
+
+    @Override
+    public List<String> getPhotoLikers(long photoId, String after, int limit) {
+        return getLikers(photoRatings.get(photoId), after, limit);
+    }
+
+    @Override
+    public List<String> getCommentLikers(long commentId, String after, int limit) {
+        return getLikers(commentVotes.get(commentId), after, limit);
+    }
+
+    /**
+     * @param voters the users who liked a photo / comment, in order, or null if it doesn't exist
+     * @param after only users whose names come after this are returned, or null for the first page
+     * @param limit the maximum number of users to return
+     * @return the users' names, in order
+     */
+    private static List<String> getLikers(NavigableSet<String> voters, String after, int limit) {
+        List<String> likers = new ArrayList<>();
+        if(voters == null) return likers;
+
+        for(String voter : after == null ? voters : voters.tailSet(after, false)) {
+            if(likers.size() == limit) break;
+            likers.add(voter);
+        }
+        return likers;
+    }
+
+    @Override
+    public long persistFollowing(String userFrom, String userTo) {
+        long id = followIds.getAndIncrement();
+        follows.put(id, new Follow(userFrom, userTo, id));
+        followsByUserFrom.add(userFrom, id);
+        followsByUserTo.add(userTo, id);
+        return id;
+    }
+
+    @Override
+    public void persistDeleteFollowing(String userFrom, String userTo) {
+        // Remove each following between the two users
+        for(long id : followsByUserFrom.get(userFrom)) {
+            Follow follow = follows.get(id);
+            if(follow != null && follow.getUserTo().equals(userTo)) {
+                followsByUserFrom.remove(userFrom, id);
+                followsByUserTo.remove(userTo, id);
+                follows.remove(id);
+            }
+        }
+    }
+
+    @Override
+    public List<User> getFollowers(String username) {
+        List<User> found = new ArrayList<>();
+        for(Follow follow : lookup(followsByUserTo.get(username), follows)) {
+            User user = users.get(follow.getParentName());
+            if(user != null) found.add(copy(user));
+        }
+        return found;
+    }
+
+    @Override
+    public List<User> getFollowing(String username) {
+        List<User> found = new ArrayList<>();
+        for(Follow follow : lookup(followsByUserFrom.get(username), follows)) {
+            User user = users.get(follow.getUserTo());
+            if(user != null) found.add(copy(user));
+        }
+        return found;
+    }
+
+    @Override
+    public long countFollowers(String username) {
+        return followsByUserTo.get(username).size();
+    }
+
+    @Override
+    public long countFollowing(String username) {
+        return followsByUserFrom.get(username).size();
+    }
+
+    @Override
+    public boolean isFollowing(String userFrom, String userTo) {
+        for(Follow follow : lookup(followsByUserFrom.get(userFrom), follows)) {
+            if(follow.getUserTo().equals(userTo)) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void clear() {
+        users.clear();
+        albums.clear();
+        albumsByUser.clear();
+        photos.clear();
+        photoContents.clear();
+        photoRatings.clear();
+        photosByUser.clear();
+        photosByAlbum.clear();
+        comments.clear();
+        commentVotes.clear();
+        commentsByUser.clear();
+        commentsByPhoto.clear();
+        repliesByComment.clear();
+        notifications.clear();
+        notificationsByUser.clear();
+        follows.clear();
+        followsByUserFrom.clear();
+        followsByUserTo.clear();
+    }
+
+    /**
+     * @param ids the ids to look up
+     * @param entities the entities, by id
+     * @return the entities which still exist, in order of id
+     */
+    private static <T> List<T> lookup(Set<Long> ids, Map<Long, T> entities) {
+        List<T> found = new ArrayList<>();
+        for(long id : ids) {
+            T entity = entities.get(id);
+            if(entity != null) found.add(entity);
+        }
+        return found;
+    }
+
+    /**
+     * Secondary index from a key to the ids of the entities with that key, kept in order of id.
+     * An id may be indexed briefly after its entity is removed, so readers skip ids whose
+     * entity isn't found.
+     */
+    private static final class Index<K> {
+        private final ConcurrentMap<K, Set<Long>> ids = new ConcurrentHashMap<>();
+
+        void add(K key, long id) {
+            ids.computeIfAbsent(key, k -> new ConcurrentSkipListSet<>()).add(id);
+        }
+
+        void remove(K key, long id) {
+            Set<Long> found = ids.get(key);
+            if(found != null) found.remove(id);
+        }
+
+        Set<Long> get(K key) {
+            return ids.getOrDefault(key, Collections.emptySet());
+        }
+
+        void clear() {
+            ids.clear();
+        }
+    }
+}
@@ -0,0 +1,446 @@
+package server.datastore;
+
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Write-behind buffer for the likes of one kind of entity, such as photos or comments.
+ *
+ * Likes and unlikes are applied in memory, and written to the backend in batches on a short
+ * interval, or sooner once enough changes are waiting. Toggling the same like several times
+ * between flushes results in at most one write, or none if it ends up where it started.
+ *
+ * Reads go through the buffer, so they see changes which haven't been written yet. Likes are kept
+ * for a further flush after they have been written, so a read which raced that flush still finds
+ * them here, rather than relying on what it read from the backend before they were committed.
+ */
+final class LikeBuffer {
+    // Buffer settings, overridable through system properties
+    static final String FLUSH_INTERVAL_PROPERTY = "photoshare.likes.flushIntervalMs";
+    static final String FLUSH_THRESHOLD_PROPERTY = "photoshare.likes.flushThreshold";
+    static final long DEFAULT_FLUSH_INTERVAL = 200;
+    static final int DEFAULT_FLUSH_THRESHOLD = 500;
+    private static final int LOCK_STRIPES = 64;
+    private static final long CLOSE_TIMEOUT = 10 * 1000;
+
+    /**
+     * Where the likes are stored
+     */
+    interface Backend {
+        /**
+         * @return true if the user's like of the given photo / comment is stored
+         */
+        boolean hasLiked(long id, String user);
+
+        /**
+         * @return which of the given photos / comments the user's likes of are stored
+         */
+        Set<Long> getLiked(String user, Collection<Long> ids);
+
+        /**
+         * @return the stored like count of the given photo / comment
+         */
+        long getLikeCount(long id);
+
+        /**
+         * @return up to limit of the stored likers of the given photo / comment whose names come after the
+         * given one, in order
+         */
+        List<String> getLikers(long id, String after, int limit);
+
+        /**
+         * Stores the given likes and unlikes, and adjusts the like counts to match, all or nothing
+         * @param changes the changes to store, at most one for each user and photo / comment
+         * @return the change in each photo / comment's like count
+         * @throws SQLException if the changes couldn't be stored
+         */
+        Map<Long, Long> persist(List<Change> changes) throws SQLException;
+    }
+
+    /**
+     * A like or unlike waiting to be written
+     */
+    static final class Change {
+        private final long id;
+        private final String user;
+        private final boolean like;
+
+        Change(long id, String user, boolean like) {
+            this.id = id;
+            this.user = user;
+            this.like = like;
+        }
+
+        long getId() {
+            return id;
+        }
+
+        String getUser() {
+            return user;
+        }
+
+        boolean isLike() {
+            return like;
+        }
+    }
+
+    // A photo / comment whose likes have recently changed, guarded by its stripe's lock
+    private static final class Target {
+        private final NavigableMap<String, Vote> votes = new TreeMap<>();
+        private long count, touched;
+
+        Target(long count) {
+            this.count = count;
+        }
+    }
+
+    // A user's like of a photo / comment, and whether the backend has caught up with it
+    private static final class Vote {
+        private boolean liked, written;
+        private long touched;
+
+        Vote(boolean liked) {
+            this.liked = written = liked;
+        }
+
+        boolean isPending() {
+            return liked != written;
+        }
+    }
+
+    private final String name;
+    private final Backend backend;
+    private final int flushThreshold;
+    private final StripedLocks locks = new StripedLocks(LOCK_STRIPES);
+    private final ConcurrentMap<Long, Target> targets = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService flusher;
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+    // Number of flushes started, used to tell how long ago each like was last changed
+    private volatile long generation;
+    private volatile boolean closed;
+
+    // Statistics
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicLong changes = new AtomicLong(), writes = new AtomicLong(), flushes = new AtomicLong(),
+            failedFlushes = new AtomicLong(), flushNanos = new AtomicLong();
+
+    /**
+     * @param name the name of the buffer, used in its statistics and logs
+     * @param backend where the likes are stored
+     * @param flushInterval the time between flushes, in milliseconds
+     * @param flushThreshold the number of waiting changes which triggers a flush before the interval is up
+     */
+    LikeBuffer(String name, Backend backend, long flushInterval, int flushThreshold) {
+        if(flushInterval <= 0 || flushThreshold <= 0) {
+            throw new IllegalArgumentException(String.format("Invalid like buffer settings: every %dms or %d changes",
+                    flushInterval, flushThreshold));
+        }
+        this.name = name;
+        this.backend = backend;
+        this.flushThreshold = flushThreshold;
+
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, name + "-like-flusher");
+            t.setDaemon(true);
+            return t;
+        });
+        flusher.scheduleWithFixedDelay(this::flushQuietly, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Adds or removes a user's like of a photo / comment. Liking twice, or removing a like which
+     * isn't there, changes nothing.
+     * @param id the id of the liked photo / comment
+     * @param user the user who cast this vote
+     * @param like whether the like is being added or removed
+     * @return true if this changed whether the user likes the photo / comment
+     */
+    boolean persistLike(long id, String user, boolean like) {
+        // Read the stored state the first time this like is changed, before taking the lock, so the
+        // backend isn't queried while other likes on the same stripe wait
+        Long storedCount = null;
+        Boolean storedLike = null;
+        boolean changed;
+        while(true) {
+            Target target = targets.get(id);
+            if(target == null && storedCount == null) storedCount = backend.getLikeCount(id);
+            if((target == null || !target.votes.containsKey(user)) && storedLike == null) {
+                storedLike = backend.hasLiked(id, user);
+            }
+
+            synchronized (locks.lockFor(id)) {
+                // Only start from the stored state if nothing was buffered in the meantime. If what was buffered
+                // has since been forgotten, read the stored state again.
+                target = targets.get(id);
+                if(target == null) {
+                    if(storedCount == null) continue;
+                    target = new Target(storedCount);
+                    targets.put(id, target);
+                }
+                Vote vote = target.votes.get(user);
+                if(vote == null) {
+                    if(storedLike == null) continue;
+                    vote = new Vote(storedLike);
+                    target.votes.put(user, vote);
+                }
+                vote.touched = target.touched = generation;
+
+                // Each change flips the vote between written and waiting to be written
+                changed = vote.liked != like;
+                if(changed) {
+                    vote.liked = like;
+                    target.count += like ? 1 : -1;
+                    pending.addAndGet(vote.isPending() ? 1 : -1);
+                    changes.incrementAndGet();
+                }
+                break;
+            }
+        }
+
+        // Once closed, changes are written straight away
+        if(closed) flush();
+        else if(pending.get() >= flushThreshold && flushRequested.compareAndSet(false, true)) {
+            try {
+                flusher.execute(this::flushQuietly);
+            }
+            catch (RejectedExecutionException e) {
+                flush();
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Checks for a buffered like before the backend, as likes only leave the buffer after being written
+     * @param id the id of the photo / comment
+     * @param user the user who may have liked it
+     * @return true if the user likes the given photo / comment
+     */
+    boolean hasLiked(long id, String user) {
+        synchronized (locks.lockFor(id)) {
+            Target target = targets.get(id);
+            Vote vote = target != null ? target.votes.get(user) : null;
+            if(vote != null) return vote.liked;
+        }
+        return backend.hasLiked(id, user);
+    }
+
+    /**
+     * Checks for buffered likes before the backend, reading the likes which aren't buffered in one go
+     * @param user the user who may have liked them
+     * @param ids the ids of the photos / comments
+     * @return the ids of the photos / comments the user likes
+     */
+    Set<Long> getLiked(String user, Collection<Long> ids) {
+        Set<Long> liked = new HashSet<>();
+        List<Long> unbuffered = new ArrayList<>();
+        for(long id : ids) {
+            if(!targets.containsKey(id)) {
+                unbuffered.add(id);
+                continue;
+            }
+
+            synchronized (locks.lockFor(id)) {
+                Target target = targets.get(id);
+                Vote vote = target != null ? target.votes.get(user) : null;
+                if(vote == null) unbuffered.add(id);
+                else if(vote.liked) liked.add(id);
+            }
+        }
+        if(!unbuffered.isEmpty()) liked.addAll(backend.getLiked(user, unbuffered));
+        return liked;
+    }
+
+    /**
+     * @param id the id of the photo / comment
+     * @param stored the like count read from the backend
+     * @return the photo / comment's like count, including changes which haven't been written
+     */
+    long getLikeCount(long id, long stored) {
+        if(!targets.containsKey(id)) return stored;
+
+        synchronized (locks.lockFor(id)) {
+            Target target = targets.get(id);
+            return target != null ? target.count : stored;
+        }
+    }
+
+    /**
+     * Retrieves a page of a photo / comment's likers, merging buffered changes into the stored likers
+     * @param id the id of the photo / comment
+     * @param after only users whose names come after this are returned, or null for the first page
+     * @param limit the maximum number of users to return
+     * @return the users' names, in order
+     */
+    List<String> getLikers(long id, String after, int limit) {
+        // Take the buffered likes first, as they only leave the buffer after being written
+        NavigableMap<String, Boolean> buffered = new TreeMap<>();
+        synchronized (locks.lockFor(id)) {
+            Target target = targets.get(id);
+            if(target != null) {
+                Map<String, Vote> votes = after == null ? target.votes : target.votes.tailMap(after, false);
+                for(Map.Entry<String, Vote> vote : votes.entrySet()) buffered.put(vote.getKey(), vote.getValue().liked);
+            }
+        }
+        if(buffered.isEmpty()) return backend.getLikers(id, after, limit);
+
+        // Read enough extra stored likers to make up for any which have been removed. If there may be more
+        // stored likers after these, buffered likers beyond the last one read can't be placed yet.
+        int removed = (int) buffered.values().stream().filter(liked -> !liked).count();
+        List<String> stored = backend.getLikers(id, after, limit + removed);
+        String last = stored.size() < limit + removed ? null : stored.get(stored.size() - 1);
+
+        NavigableSet<String> likers = new TreeSet<>(stored);
+        for(Map.Entry<String, Boolean> vote : buffered.entrySet()) {
+            if(!vote.getValue()) likers.remove(vote.getKey());
+            else if(last == null || vote.getKey().compareTo(last) < 0) likers.add(vote.getKey());
+        }
+        return likers.stream().limit(limit).collect(Collectors.toList());
+    }
+
+    /**
+     * Writes all waiting changes to the backend in a single batch, and forgets likes which
+     * were written by the previous flush and haven't changed since.
+     */
+    synchronized void flush() {
+        flushRequested.set(false);
+        long current = ++generation;
+
+        // Collect the waiting changes
+        Map<Long, List<Change>> batch = new LinkedHashMap<>();
+        for(Long id : targets.keySet()) {
+            synchronized (locks.lockFor(id)) {
+                Target target = targets.get(id);
+                if(target == null) continue;
+
+                Iterator<Map.Entry<String, Vote>> votes = target.votes.entrySet().iterator();
+                while(votes.hasNext()) {
+                    Map.Entry<String, Vote> vote = votes.next();
+                    if(vote.getValue().isPending()) {
+                        batch.computeIfAbsent(id, k -> new ArrayList<>())
+                                .add(new Change(id, vote.getKey(), vote.getValue().liked));
+                    }
+                    else if(vote.getValue().touched < current - 1) votes.remove();
+                }
+                if(target.votes.isEmpty() && target.touched < current - 1) targets.remove(id);
+            }
+        }
+        if(batch.isEmpty()) return;
+
+        // Write the batch. If it is rejected, e.g. because it likes something which has since been deleted,
+        // write each change on its own so the rest still get through.
+        long start = System.nanoTime();
+        List<Change> all = batch.values().stream().flatMap(List::stream).collect(Collectors.toList());
+        Map<Long, Long> applied = new HashMap<>();
+        try {
+            applied.putAll(backend.persist(all));
+        }
+        catch (SQLException e) {
+            System.err.println(String.format("Writing %d %s likes failed, retrying individually: %s",
+                    all.size(), name, e.getMessage()));
+            failedFlushes.incrementAndGet();
+            for(Change change : all) {
+                try {
+                    backend.persist(Collections.singletonList(change))
+                            .forEach((id, n) -> applied.merge(id, n, Long::sum));
+                }
+                catch (SQLException ignored) {}
+            }
+        }
+        flushNanos.addAndGet(System.nanoTime() - start);
+        flushes.incrementAndGet();
+
+        // Mark the changes as written. If the backend disagreed about how a like count changed, the buffer no
+        // longer matches it, so forget that photo / comment and let it be read from the backend again.
+        for(Map.Entry<Long, List<Change>> entry : batch.entrySet()) {
+            long id = entry.getKey();
+            long expected = entry.getValue().stream().mapToLong(change -> change.isLike() ? 1 : -1).sum();
+            if(applied.getOrDefault(id, 0L) != expected) {
+                System.err.println(String.format("Discarding buffered likes of %s %d", name, id));
+                discard(id);
+                continue;
+            }
+
+            synchronized (locks.lockFor(id)) {
+                Target target = targets.get(id);
+                if(target == null) continue;
+                for(Change change : entry.getValue()) {
+                    Vote vote = target.votes.get(change.getUser());
+                    if(vote == null) continue;
+
+                    boolean wasPending = vote.isPending();
+                    vote.written = change.isLike();
+                    if(wasPending != vote.isPending()) pending.addAndGet(wasPending ? -1 : 1);
+                }
+            }
+            writes.addAndGet(entry.getValue().size());
+        }
+    }
+
+    /**
+     * Flushes, logging rather than propagating any failure, so periodic flushes carry on
+     */
+    private void flushQuietly() {
+        try {
+            flush();
+        }
+        catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Forgets any buffered likes of the given photo / comment, such as when it is deleted
+     * @param id the id of the photo / comment
+     */
+    void discard(long id) {
+        synchronized (locks.lockFor(id)) {
+            Target target = targets.remove(id);
+            if(target != null) {
+                pending.addAndGet((int) -target.votes.values().stream().filter(Vote::isPending).count());
+            }
+        }
+    }
+
+    /**
+     * Forgets all buffered likes, without writing them
+     */
+    synchronized void clear() {
+        for(Long id : targets.keySet()) discard(id);
+    }
+
+    /**
+     * Stops flushing periodically and writes any waiting changes. Changes made afterwards
+     * are written straight away.
+     */
+    void close() {
+        closed = true;
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(CLOSE_TIMEOUT, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    /**
+     * @return a snapshot of the buffer's state
+     */
+    LikeBufferStats getStats() {
+        return new LikeBufferStats(name, pending.get(), changes.get(), writes.get(), flushes.get(),
+                failedFlushes.get(), TimeUnit.NANOSECONDS.toMillis(flushNanos.get()));
+    }
+}
@@ -0,0 +1,70 @@
+package server.datastore;
+
+/**
+ * Snapshot of a like buffer's state and lifetime counters.
+ */
+public final class LikeBufferStats {
+    private final String name;
+    private final int pending;
+    private final long changes, writes, flushes, failedFlushes, totalFlushMillis;
+
+    LikeBufferStats(String name, int pending, long changes, long writes, long flushes, long failedFlushes,
+                    long totalFlushMillis) {
+        this.name = name;
+        this.pending = pending;
+        this.changes = changes;
+        this.writes = writes;
+        this.flushes = flushes;
+        this.failedFlushes = failedFlushes;
+        this.totalFlushMillis = totalFlushMillis;
+    }
+
+    /**
+     * @return the name of the buffer
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the number of likes and unlikes waiting to be flushed
+     */
+    public int getPending() {
+        return pending;
+    }
+
+    /**
+     * @return the number of likes and unlikes which changed whether a user likes something
+     */
+    public long getChanges() {
+        return changes;
+    }
+
+    /**
+     * @return the number of likes and unlikes written to the data store, after collapsing repeated changes
+     */
+    public long getWrites() {
+        return writes;
+    }
+
+    /**
+     * @return the number of flushes which wrote at least one change
+     */
+    public long getFlushes() {
+        return flushes;
+    }
+
+    /**
+     * @return the number of flushes whose batch was rejected, and so were written one change at a time
+     */
+    public long getFailedFlushes() {
+        return failedFlushes;
+    }
+
+    /**
+     * @return the total time spent writing flushes
+     */
+    public long getTotalFlushMillis() {
+        return totalFlushMillis;
+    }
+}
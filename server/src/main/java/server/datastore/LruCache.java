@@ -0,0 +1,127 @@
+package server.datastore;
+
+import server.datastore.exceptions.InvalidResourceRequestException;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Bounded cache which evicts its least recently used entry once full.
+ *
+ * Values are loaded on a miss and only stored if nothing was invalidated while they
+ * were being loaded, so a value read just before a concurrent change is never cached
+ * after that change's invalidation.
+ */
+final class LruCache<K, V> {
+    private final String name;
+    private final int maxSize;
+    private final LinkedHashMap<K, V> entries;
+
+    // Counters, guarded by this cache's lock
+    private long hits, misses, evictions, invalidations;
+
+    /**
+     * @param name the name of the cache, used in its stats
+     * @param maxSize the maximum number of entries to hold
+     */
+    LruCache(String name, int maxSize) {
+        this.name = name;
+        this.maxSize = maxSize;
+        this.entries = new LinkedHashMap<K, V>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                if(size() <= LruCache.this.maxSize) return false;
+                evictions++;
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Loads a value on a cache miss
+     */
+    @FunctionalInterface
+    interface Loader<K, V> {
+        V load(K key) throws InvalidResourceRequestException;
+    }
+
+    /**
+     * @param key the key to look up
+     * @param loader loads the value if it isn't cached
+     * @return the cached or newly loaded value
+     * @throws InvalidResourceRequestException if the value doesn't exist. Nothing is cached.
+     */
+    V get(K key, Loader<K, V> loader) throws InvalidResourceRequestException {
+        long generation;
+        synchronized (this) {
+            V value = entries.get(key);
+            if(value != null) {
+                hits++;
+                return value;
+            }
+            misses++;
+            generation = invalidations;
+        }
+
+        // Load without holding the lock, so other keys aren't held up
+        V value = loader.load(key);
+        synchronized (this) {
+            if(value != null && generation == invalidations) entries.put(key, value);
+        }
+        return value;
+    }
+
+    /**
+     * Creates a missing value while holding the lock, so every caller gets the same one.
+     * Only suitable for values which are cheap to create, and which are kept up to date in place.
+     * @param key the key to look up
+     * @param create creates the value if it isn't cached
+     * @return the cached or newly created value
+     */
+    synchronized V computeIfAbsent(K key, Function<K, V> create) {
+        V value = entries.get(key);
+        if(value != null) {
+            hits++;
+            return value;
+        }
+        misses++;
+        value = create.apply(key);
+        entries.put(key, value);
+        return value;
+    }
+
+    /**
+     * @param key the key to look up
+     * @return the cached value, or null if there isn't one. Nothing is loaded.
+     */
+    synchronized V getIfPresent(K key) {
+        return entries.get(key);
+    }
+
+    /**
+     * Removes the given key's entry, if present
+     * @param key the key to remove
+     */
+    synchronized void invalidate(K key) {
+        invalidations++;
+        entries.remove(key);
+    }
+
+    /**
+     * Removes every entry
+     */
+    synchronized void invalidateAll() {
+        invalidations++;
+        entries.clear();
+    }
+
+    /**
+     * @return a snapshot of the cache's state
+     */
+    synchronized CacheStats getStats() {
+        return new CacheStats(name, maxSize, entries.size(), hits, misses, evictions, invalidations);
+    }
+}
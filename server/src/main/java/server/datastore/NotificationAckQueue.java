@@ -0,0 +1,165 @@
+package server.datastore;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Queue of notifications which users have seen, removed from the data store in the background.
+ *
+ * Reading comments acknowledges the notifications about them. Rather than removing those on the
+ * request thread, the ids of the comments are queued for their user, and each user's queue is
+ * removed with one statement per batch on a short interval. Acknowledged notifications stay in
+ * the queue until they have been removed, so reads can leave them out in the meantime.
+ */
+final class NotificationAckQueue {
+    // Queue settings, overridable through system properties
+    static final String ACK_INTERVAL_PROPERTY = "photoshare.notifications.ackIntervalMs";
+    static final long DEFAULT_ACK_INTERVAL = 100;
+    static final int MAX_BATCH = 500;
+    private static final long CLOSE_TIMEOUT = 10 * 1000;
+
+    private final DataStore dataStore;
+
+    // Ids of the content each user has seen, whose notifications haven't been removed yet.
+    // Each set is only read or changed inside its map entry's compute functions.
+    private final ConcurrentMap<String, Set<Long>> pending = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService flusher;
+    private volatile boolean closed;
+
+    // Statistics
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final AtomicLong acknowledged = new AtomicLong(), batches = new AtomicLong(),
+            removed = new AtomicLong(), failedBatches = new AtomicLong();
+
+    /**
+     * @param dataStore the store to remove notifications from
+     * @param interval the time between flushes, in milliseconds
+     */
+    NotificationAckQueue(DataStore dataStore, long interval) {
+        if(interval <= 0) {
+            throw new IllegalArgumentException(String.format("Invalid notification ack interval: %dms", interval));
+        }
+        this.dataStore = dataStore;
+
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "notification-ack-flusher");
+            t.setDaemon(true);
+            return t;
+        });
+        flusher.scheduleWithFixedDelay(this::flushQuietly, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Queues the removal of the user's notifications about the given content
+     * @param user the user who has seen the content
+     * @param contentIds the ids of the comments which were seen
+     */
+    void acknowledge(String user, Collection<Long> contentIds) {
+        if(contentIds.isEmpty()) return;
+
+        pending.compute(user, (k, ids) -> {
+            if(ids == null) ids = new HashSet<>();
+            for(long id : contentIds) {
+                if(ids.add(id)) {
+                    waiting.incrementAndGet();
+                    acknowledged.incrementAndGet();
+                }
+            }
+            return ids;
+        });
+
+        // Once closed, acknowledgements are removed straight away
+        if(closed) flush();
+    }
+
+    /**
+     * @param user the user who has seen the content
+     * @return the ids of the content whose notifications the user has acknowledged, but which are yet to be removed
+     */
+    Set<Long> getPending(String user) {
+        Set<Long> copy = new HashSet<>();
+        pending.computeIfPresent(user, (k, ids) -> {
+            copy.addAll(ids);
+            return ids;
+        });
+        return copy;
+    }
+
+    /**
+     * Removes every queued notification from the data store, in batches of at most MAX_BATCH per user.
+     * Batches which fail stay queued for the next flush.
+     */
+    synchronized void flush() {
+        for(String user : pending.keySet()) {
+            List<Long> ids = new ArrayList<>(getPending(user));
+            for(int i = 0; i < ids.size(); i += MAX_BATCH) {
+                List<Long> batch = ids.subList(i, Math.min(i + MAX_BATCH, ids.size()));
+                int ret = dataStore.persistRemoveNotifications(user, batch);
+                batches.incrementAndGet();
+                if(ret < 0) {
+                    System.err.println(String.format("Removing %d notifications of %s failed, will retry",
+                            batch.size(), user));
+                    failedBatches.incrementAndGet();
+                    continue;
+                }
+                removed.addAndGet(ret);
+
+                // Only forget the ids once they're gone from the data store, so reads keep leaving them out
+                pending.computeIfPresent(user, (k, queued) -> {
+                    for(long id : batch) if(queued.remove(id)) waiting.decrementAndGet();
+                    return queued.isEmpty() ? null : queued;
+                });
+            }
+        }
+    }
+
+    /**
+     * Flushes, logging rather than propagating any failure, so periodic flushes carry on
+     */
+    private void flushQuietly() {
+        try {
+            flush();
+        }
+        catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Forgets all queued acknowledgements, without removing their notifications
+     */
+    synchronized void clear() {
+        pending.clear();
+        waiting.set(0);
+    }
+
+    /**
+     * Stops flushing periodically and removes any queued notifications. Acknowledgements made
+     * afterwards are removed straight away.
+     */
+    void close() {
+        closed = true;
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(CLOSE_TIMEOUT, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    /**
+     * @return a snapshot of the queue's state
+     */
+    NotificationAckStats getStats() {
+        return new NotificationAckStats(waiting.get(), acknowledged.get(), batches.get(), removed.get(),
+                failedBatches.get());
+    }
+}
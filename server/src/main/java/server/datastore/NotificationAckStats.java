@@ -0,0 +1,52 @@
+package server.datastore;
+
+/**
+ * Snapshot of the notification acknowledgement queue's state and lifetime counters.
+ */
+public final class NotificationAckStats {
+    private final int pending;
+    private final long acknowledged, batches, removed, failedBatches;
+
+    NotificationAckStats(int pending, long acknowledged, long batches, long removed, long failedBatches) {
+        this.pending = pending;
+        this.acknowledged = acknowledged;
+        this.batches = batches;
+        this.removed = removed;
+        this.failedBatches = failedBatches;
+    }
+
+    /**
+     * @return the number of acknowledged notifications waiting to be removed
+     */
+    public int getPending() {
+        return pending;
+    }
+
+    /**
+     * @return the number of notifications acknowledged, ignoring repeats while they were waiting
+     */
+    public long getAcknowledged() {
+        return acknowledged;
+    }
+
+    /**
+     * @return the number of removal statements issued
+     */
+    public long getBatches() {
+        return batches;
+    }
+
+    /**
+     * @return the number of notifications removed from the data store
+     */
+    public long getRemoved() {
+        return removed;
+    }
+
+    /**
+     * @return the number of removal statements which failed, and so were retried by a later flush
+     */
+    public long getFailedBatches() {
+        return failedBatches;
+    }
+}
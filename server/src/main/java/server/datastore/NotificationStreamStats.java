@@ -0,0 +1,52 @@
+package server.datastore;
+
+/**
+ * Snapshot of the notification stream registry's state and lifetime counters.
+ */
+public final class NotificationStreamStats {
+    private final int open;
+    private final long opened, rejected, published, dropped;
+
+    NotificationStreamStats(int open, long opened, long rejected, long published, long dropped) {
+        this.open = open;
+        this.opened = opened;
+        this.rejected = rejected;
+        this.published = published;
+        this.dropped = dropped;
+    }
+
+    /**
+     * @return the number of streams currently open
+     */
+    public int getOpen() {
+        return open;
+    }
+
+    /**
+     * @return the number of streams opened
+     */
+    public long getOpened() {
+        return opened;
+    }
+
+    /**
+     * @return the number of streams refused because too many were open
+     */
+    public long getRejected() {
+        return rejected;
+    }
+
+    /**
+     * @return the number of notifications sent to at least one open stream
+     */
+    public long getPublished() {
+        return published;
+    }
+
+    /**
+     * @return the number of streams closed because their clients fell too far behind
+     */
+    public long getDropped() {
+        return dropped;
+    }
+}
@@ -0,0 +1,324 @@
+package server.datastore;
+
+import server.objects.Notification;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Registry of the open notification streams, which pushes each new notification to its user's streams.
+ *
+ * Each stream has its own bounded queue of events waiting to be sent. Publishing only adds to the queues,
+ * and a stream's queue is drained by a sender thread only while it has something to send, so idle streams
+ * hold no thread, and a slow client only holds up its own stream. A client which falls so far behind that
+ * its queue fills is dropped, and can reconnect to be sent what it missed. A keep-alive is queued on every
+ * idle stream on an interval, so connections which have gone away are noticed.
+ */
+public final class NotificationStreams {
+    // Stream settings, overridable through system properties
+    static final String MAX_STREAMS_PROPERTY = "photoshare.notifications.maxStreams";
+    static final String MAX_USER_STREAMS_PROPERTY = "photoshare.notifications.maxStreamsPerUser";
+    static final String KEEP_ALIVE_PROPERTY = "photoshare.notifications.keepAliveMs";
+    static final String QUEUE_SIZE_PROPERTY = "photoshare.notifications.streamQueueSize";
+    static final int DEFAULT_MAX_STREAMS = 10 * 1000;
+    static final int DEFAULT_MAX_USER_STREAMS = 8;
+    static final long DEFAULT_KEEP_ALIVE = 20 * 1000;
+    static final int DEFAULT_QUEUE_SIZE = 64;
+
+    /**
+     * Receives the events of one stream. Notifications and keep-alives are sent one at a time,
+     * but the stream may be closed while one is being sent, which should make it fail.
+     */
+    public interface Listener {
+        /**
+         * Sends a new notification down the stream
+         */
+        void onNotification(Notification notification);
+
+        /**
+         * Sends something down an otherwise idle stream, to check it is still open
+         */
+        void onKeepAlive();
+
+        /**
+         * Ends the stream, once it has been closed
+         */
+        void onClose();
+    }
+
+    /**
+     * One open stream of a user's notifications
+     */
+    public final class Subscription implements AutoCloseable {
+        private final String user;
+        private final Listener listener;
+
+        // Events waiting to be sent, guarded by this. Missed notifications being replayed come first,
+        // and don't count towards the bound on live notifications.
+        private final Deque<Notification> replay = new ArrayDeque<>(), live = new ArrayDeque<>();
+        private boolean started, draining, keepAliveDue, closed;
+
+        private Subscription(String user, Listener listener) {
+            this.user = user;
+            this.listener = listener;
+        }
+
+        /**
+         * Starts sending, with the notifications the client missed, then those which arrived in the meantime,
+         * leaving out any which were in both. Nothing is sent on the calling thread.
+         * @param missed the notifications to replay, oldest first
+         */
+        void start(List<Notification> missed) {
+            synchronized (this) {
+                if(closed || started) return;
+                Set<Long> replayed = new HashSet<>();
+                for(Notification notification : missed) replayed.add(notification.getId());
+                live.removeIf(notification -> replayed.contains(notification.getId()));
+                replay.addAll(missed);
+                started = true;
+            }
+            schedule();
+        }
+
+        /**
+         * Queues a live notification, dropping the stream if its client has fallen too far behind
+         */
+        private void deliver(Notification notification) {
+            boolean overflowed;
+            synchronized (this) {
+                if(closed) return;
+                overflowed = live.size() >= queueSize;
+                if(!overflowed) live.add(notification);
+            }
+            if(overflowed) {
+                dropped.incrementAndGet();
+                close();
+            }
+            else schedule();
+        }
+
+        /**
+         * Queues a keep-alive, if nothing else is waiting to be sent
+         */
+        private void keepAlive() {
+            synchronized (this) {
+                if(closed || draining || !replay.isEmpty() || !live.isEmpty()) return;
+                keepAliveDue = true;
+            }
+            schedule();
+        }
+
+        /**
+         * Hands the stream to a sender thread, unless it is already being drained or hasn't started
+         */
+        private void schedule() {
+            synchronized (this) {
+                if(closed || !started || draining || (replay.isEmpty() && live.isEmpty() && !keepAliveDue)) return;
+                draining = true;
+            }
+            try {
+                senders.execute(this::drain);
+            }
+            catch (RejectedExecutionException e) {
+                close();
+            }
+        }
+
+        /**
+         * Sends events until none are left, taking each one under the lock but sending it outside
+         */
+        private void drain() {
+            while(true) {
+                Notification next;
+                boolean keepAlive = false;
+                synchronized (this) {
+                    next = !replay.isEmpty() ? replay.poll() : live.poll();
+                    if(next == null && keepAliveDue) {
+                        keepAliveDue = false;
+                        keepAlive = true;
+                    }
+                    if(closed || (next == null && !keepAlive)) {
+                        draining = false;
+                        return;
+                    }
+                }
+
+                try {
+                    if(keepAlive) listener.onKeepAlive();
+                    else listener.onNotification(next);
+                }
+                catch (RuntimeException e) {
+                    // The client has gone away
+                    close();
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Stops sending to this stream and ends it. Closing twice does nothing.
+         */
+        @Override
+        public void close() {
+            synchronized (this) {
+                if(closed) return;
+                closed = true;
+                replay.clear();
+                live.clear();
+            }
+            streams.computeIfPresent(user, (k, subscriptions) -> {
+                subscriptions.remove(this);
+                return subscriptions.isEmpty() ? null : subscriptions;
+            });
+            open.decrementAndGet();
+            listener.onClose();
+        }
+    }
+
+    private final int maxStreams, maxUserStreams, queueSize;
+
+    // Each user's open streams. Each set is only read or changed inside its map entry's compute functions.
+    private final ConcurrentMap<String, Set<Subscription>> streams = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService keepAlives;
+    private final ExecutorService senders;
+    private volatile boolean closed;
+
+    // Statistics
+    private final AtomicInteger open = new AtomicInteger();
+    private final AtomicLong opened = new AtomicLong(), rejected = new AtomicLong(), published = new AtomicLong(),
+            dropped = new AtomicLong();
+
+    /**
+     * @param maxStreams the maximum number of streams open at once
+     * @param maxUserStreams the maximum number of streams each user may have open at once
+     * @param keepAlive the time between keep-alives, in milliseconds
+     * @param queueSize the maximum number of notifications waiting to be sent down a stream before it is dropped
+     */
+    NotificationStreams(int maxStreams, int maxUserStreams, long keepAlive, int queueSize) {
+        if(maxStreams <= 0 || maxUserStreams <= 0 || keepAlive <= 0 || queueSize <= 0) {
+            throw new IllegalArgumentException(String.format("Invalid notification stream settings: %d streams, "
+                    + "%d per user, keep-alive every %dms, queues of %d", maxStreams, maxUserStreams, keepAlive,
+                    queueSize));
+        }
+        this.maxStreams = maxStreams;
+        this.maxUserStreams = maxUserStreams;
+        this.queueSize = queueSize;
+
+        keepAlives = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "notification-keep-alive");
+            t.setDaemon(true);
+            return t;
+        });
+        keepAlives.scheduleWithFixedDelay(this::keepAlive, keepAlive, keepAlive, TimeUnit.MILLISECONDS);
+
+        // Threads are only kept while streams have something to send, so there are never more than open streams
+        AtomicInteger senderCount = new AtomicInteger();
+        senders = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "notification-sender-" + senderCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Opens a stream of the user's new notifications. Nothing is sent until it has been started.
+     * @param user the user whose notifications to send
+     * @param listener where to send them
+     * @return the new stream, or null if there are already too many streams open
+     */
+    Subscription subscribe(String user, Listener listener) {
+        if(closed) {
+            rejected.incrementAndGet();
+            return null;
+        }
+        if(open.incrementAndGet() > maxStreams) {
+            open.decrementAndGet();
+            rejected.incrementAndGet();
+            return null;
+        }
+
+        // Add the stream, unless the user already has as many as they're allowed
+        Subscription subscription = new Subscription(user, listener);
+        boolean[] added = {false};
+        streams.compute(user, (k, subscriptions) -> {
+            if(subscriptions == null) subscriptions = new HashSet<>();
+            if(subscriptions.size() < maxUserStreams) added[0] = subscriptions.add(subscription);
+            return subscriptions.isEmpty() ? null : subscriptions;
+        });
+        if(!added[0]) {
+            open.decrementAndGet();
+            rejected.incrementAndGet();
+            return null;
+        }
+        opened.incrementAndGet();
+        return subscription;
+    }
+
+    /**
+     * Queues a new notification on each of its user's open streams, to be sent in the background
+     * @param user the user who was notified
+     * @param notification the notification to send
+     */
+    void publish(String user, Notification notification) {
+        List<Subscription> subscriptions = getSubscriptions(user);
+        if(subscriptions.isEmpty()) return;
+
+        published.incrementAndGet();
+        for(Subscription subscription : subscriptions) subscription.deliver(notification);
+    }
+
+    /**
+     * @param user the user whose streams to find
+     * @return a copy of the user's open streams
+     */
+    private List<Subscription> getSubscriptions(String user) {
+        List<Subscription> copy = new ArrayList<>();
+        streams.computeIfPresent(user, (k, subscriptions) -> {
+            copy.addAll(subscriptions);
+            return subscriptions;
+        });
+        return copy;
+    }
+
+    /**
+     * Queues a keep-alive on every idle stream
+     */
+    private void keepAlive() {
+        for(String user : streams.keySet()) {
+            for(Subscription subscription : getSubscriptions(user)) subscription.keepAlive();
+        }
+    }
+
+    /**
+     * Stops accepting streams, and closes every open one
+     */
+    void close() {
+        closed = true;
+        keepAlives.shutdown();
+        for(String user : streams.keySet()) {
+            for(Subscription subscription : getSubscriptions(user)) subscription.close();
+        }
+        senders.shutdown();
+        try {
+            senders.awaitTermination(1000, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return a snapshot of the registry's state
+     */
+    NotificationStreamStats getStats() {
+        return new NotificationStreamStats(open.get(), opened.get(), rejected.get(), published.get(), dropped.get());
+    }
+}
@@ -0,0 +1,44 @@
+package server.datastore;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterator whose next element can be looked at without moving past it.
+ */
+final class PeekingIterator<T> implements Iterator<T> {
+    private final Iterator<T> iterator;
+    private T next;
+    private boolean peeked;
+
+    PeekingIterator(Iterator<T> iterator) {
+        this.iterator = iterator;
+    }
+
+    /**
+     * @return the next element, without moving past it
+     * @throws NoSuchElementException if there are no more elements
+     */
+    T peek() {
+        if(!peeked) {
+            next = iterator.next();
+            peeked = true;
+        }
+        return next;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return peeked || iterator.hasNext();
+    }
+
+    @Override
+    public T next() {
+        if(!peeked) return iterator.next();
+
+        T result = next;
+        next = null;
+        peeked = false;
+        return result;
+    }
+}
@@ -0,0 +1,42 @@
+package server.datastore;
+
+import java.nio.file.Path;
+
+/**
+ * Reference to photo contents held in a PhotoBlobStore.
+ * Blobs are addressed by the SHA-256 hash of their contents.
+ */
+final class PhotoBlob {
+    private final String hash;
+    private final long length;
+
+    // Location of the written, but not yet committed, contents
+    private final Path stagedPath;
+
+    PhotoBlob(String hash, long length, Path stagedPath) {
+        this.hash = hash;
+        this.length = length;
+        this.stagedPath = stagedPath;
+    }
+
+    /**
+     * @return the hex-encoded SHA-256 hash of the contents
+     */
+    String getHash() {
+        return hash;
+    }
+
+    /**
+     * @return the length of the contents in bytes
+     */
+    long getLength() {
+        return length;
+    }
+
+    /**
+     * @return where the contents were written before being committed, if anywhere
+     */
+    Path getStagedPath() {
+        return stagedPath;
+    }
+}
@@ -0,0 +1,54 @@
+package server.datastore;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+
+/**
+ * Content-addressed storage for photo contents, kept outside of the database.
+ * Writing is split into two steps, so callers can commit the contents and record
+ * their hash in the database atomically with respect to deletion of the same blob.
+ */
+interface PhotoBlobStore {
+
+    /**
+     * Writes the given contents to a staging area, hashing them as they are written.
+     * @param contents the contents to write. The stream is read to its end but not closed.
+     * @return a reference to the staged contents
+     * @throws IOException if the contents couldn't be written
+     */
+    PhotoBlob write(InputStream contents) throws IOException;
+
+    /**
+     * Moves staged contents into place. If identical contents are already stored,
+     * the staged copy is discarded instead.
+     * @param blob the staged blob
+     * @throws IOException if the contents couldn't be moved into place
+     */
+    void commit(PhotoBlob blob) throws IOException;
+
+    /**
+     * Discards staged contents which are no longer needed
+     * @param blob the staged blob
+     */
+    void discard(PhotoBlob blob);
+
+    /**
+     * Opens the contents with the given hash for reading
+     * @param hash the hash of the contents
+     * @return a read-only channel over the contents
+     * @throws IOException if no such contents exist
+     */
+    FileChannel open(String hash) throws IOException;
+
+    /**
+     * Removes the contents with the given hash, if present
+     * @param hash the hash of the contents
+     */
+    void delete(String hash);
+
+    /**
+     * Removes all stored contents
+     */
+    void clear();
+}
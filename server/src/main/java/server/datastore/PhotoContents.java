@@ -0,0 +1,114 @@
+package server.datastore;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.security.MessageDigest;
+
+/**
+ * Handle on a photo's raw contents, which can be streamed to a client
+ * without first reading them into memory.
+ */
+public final class PhotoContents {
+    private final long length;
+    private final PhotoBlobStore blobs;
+    private final String hash;
+    private final byte[] bytes;
+
+    private PhotoContents(long length, PhotoBlobStore blobs, String hash, byte[] bytes) {
+        this.length = length;
+        this.blobs = blobs;
+        this.hash = hash;
+        this.bytes = bytes;
+    }
+
+    /**
+     * @param blobs the store holding the contents
+     * @param hash the hash of the contents
+     * @param length the length of the contents in bytes
+     * @return a handle on contents held in a blob store
+     */
+    static PhotoContents ofBlob(PhotoBlobStore blobs, String hash, long length) {
+        return new PhotoContents(length, blobs, hash, null);
+    }
+
+    /**
+     * Hashes the given contents, so they can be identified in the same way as those in a blob store
+     * @param bytes the contents
+     * @return a handle on contents already held in memory
+     */
+    static PhotoContents ofBytes(byte[] bytes) {
+        MessageDigest digest = FileSystemPhotoBlobStore.newDigest();
+        return new PhotoContents(bytes.length, null, FileSystemPhotoBlobStore.toHex(digest.digest(bytes)), bytes);
+    }
+
+    /**
+     * Reads the given stream to its end, holding the contents in memory
+     * @param in the stream to read, which is left open
+     * @return a handle on everything read from the stream
+     * @throws IOException if the stream couldn't be read
+     */
+    static PhotoContents read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while((read = in.read(buffer)) != -1) out.write(buffer, 0, read);
+        return ofBytes(out.toByteArray());
+    }
+
+    /**
+     * @return the length of the contents in bytes
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * @return the hex-encoded SHA-256 hash of the contents, which changes only if the contents do
+     */
+    public String getHash() {
+        return hash;
+    }
+
+    /**
+     * Writes the contents to the given stream. Contents held in the blob store
+     * are transferred directly from their file, a chunk at a time.
+     * @param out the stream to write to, which is left open
+     * @throws IOException if the contents couldn't be read or written
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        writeTo(out, 0, length);
+    }
+
+    /**
+     * Writes part of the contents to the given stream. Contents held in the blob store
+     * are transferred directly from the given offset in their file, so nothing before it is read.
+     * @param out the stream to write to, which is left open
+     * @param offset the offset of the first byte to write
+     * @param count the number of bytes to write
+     * @throws IOException if the contents couldn't be read or written
+     */
+    public void writeTo(OutputStream out, long offset, long count) throws IOException {
+        if(offset < 0 || count < 0 || offset + count > length) {
+            throw new IllegalArgumentException(String.format("Invalid range of %d bytes at %d", count, offset));
+        }
+        if(bytes != null) {
+            out.write(bytes, (int) offset, (int) count);
+            return;
+        }
+
+        try (FileChannel channel = blobs.open(hash)) {
+            WritableByteChannel target = Channels.newChannel(out);
+            long position = offset, end = offset + count;
+            while(position < end) {
+                long transferred = channel.transferTo(position, end - position, target);
+                if(transferred <= 0) throw new IOException(String.format("Contents of %s are truncated", hash));
+                position += transferred;
+            }
+        }
+    }
+}
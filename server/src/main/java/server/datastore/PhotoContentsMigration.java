@@ -0,0 +1,160 @@
+package server.datastore;
+
+import server.requests.UploadPhotoRequest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+
+import static server.datastore.DatabaseResources.*;
+
+/**
+ * Brings photo contents stored by older versions of the server up to date.
+ * Contents still held in the photos table's BLOB column, or held in the blob
+ * store as base64 text, are decoded and written to the blob store as raw bytes.
+ *
+ * The migration is safe to run while the server is handling requests: reads
+ * cope with contents in any of their old forms, and each photo is switched
+ * over to its new contents by a single update.
+ */
+class PhotoContentsMigration implements Runnable {
+    private static final int BATCH_SIZE = 50;
+    private final ConnectionPool pool;
+    private final PhotoBlobStore blobs;
+    private final StripedLocks blobLocks;
+
+    PhotoContentsMigration(ConnectionPool pool, PhotoBlobStore blobs, StripedLocks blobLocks) {
+        this.pool = pool;
+        this.blobs = blobs;
+        this.blobLocks = blobLocks;
+    }
+
+    @Override
+    public void run() {
+        int migrated = migrate();
+        if(migrated > 0) System.out.println(String.format("Migrated the contents of %d photos", migrated));
+    }
+
+    /**
+     * Migrates all photos whose contents are not yet stored as raw bytes in the blob store.
+     * Rows are processed in small batches, so only a few photos are open at once.
+     * @return the number of photos migrated
+     */
+    int migrate() {
+        // Set up query to find photos which haven't been migrated.
+        String select = "SELECT "+PHOTOS_ID+","+PHOTOS_CONTENT_HASH+" FROM "+PHOTOS_TABLE+" WHERE "
+                +PHOTOS_CONTENT_DECODED+" = FALSE AND "+PHOTOS_ID+" > ? ORDER BY "+PHOTOS_ID+" LIMIT "+BATCH_SIZE;
+        long lastId = -1;
+        int migrated = 0;
+
+        while(true) {
+            // Find the next batch
+            List<Long> ids = new ArrayList<>();
+            List<String> hashes = new ArrayList<>();
+            try (Connection conn = pool.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(select)) {
+                stmt.setLong(1, lastId);
+                ResultSet rs = stmt.executeQuery();
+                while(rs.next()) {
+                    ids.add(rs.getLong(1));
+                    hashes.add(rs.getString(2));
+                }
+            }
+            catch (SQLException e) {
+                e.printStackTrace();
+                return migrated;
+            }
+            if(ids.isEmpty()) return migrated;
+
+            // Migrate each photo in turn. Failures are reported, and the photo left as it was.
+            for(int i = 0; i < ids.size(); i++) {
+                try {
+                    if(migrate(ids.get(i), hashes.get(i))) migrated++;
+                }
+                catch (SQLException | IOException | IllegalArgumentException e) {
+                    e.printStackTrace();
+                }
+            }
+            lastId = ids.get(ids.size() - 1);
+        }
+    }
+
+    /**
+     * Decodes the given photo's contents into the blob store, and points its row at them.
+     * @param photoId the photo's id
+     * @param oldHash the hash of the photo's base64 contents in the blob store,
+     *                or null if they are still in the database
+     * @return true if the photo was migrated
+     */
+    private boolean migrate(long photoId, String oldHash) throws SQLException, IOException {
+        PhotoBlob blob;
+        try (Connection conn = pool.getConnection()) {
+            // Decode the contents from wherever they currently live
+            if(oldHash == null) blob = decodeFromDatabase(conn, photoId);
+            else blob = decodeFromBlobStore(oldHash);
+        }
+        if(blob == null) return false;
+
+        // Switch the photo over to its decoded contents. This only succeeds if
+        // the photo still exists, and no one else has migrated it first.
+        String update = "UPDATE "+PHOTOS_TABLE+" SET "+PHOTOS_CONTENT_HASH+" = ?, "+PHOTOS_CONTENT_LENGTH+" = ?, "
+                +PHOTOS_CONTENTS+" = NULL, "+PHOTOS_CONTENT_DECODED+" = TRUE WHERE "+PHOTOS_ID+" = ? AND "
+                +PHOTOS_CONTENT_DECODED+" = FALSE";
+        boolean updated;
+        synchronized (blobLocks.lockFor(blob.getHash())) {
+            try (Connection conn = pool.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(update)) {
+                blobs.commit(blob);
+                stmt.setString(1, blob.getHash());
+                stmt.setLong(2, blob.getLength());
+                stmt.setLong(3, photoId);
+                updated = stmt.executeUpdate() == 1;
+
+                // Don't leave behind new contents which nothing refers to
+                if(!updated) DatabaseBackedDataStore.deleteIfUnreferenced(conn, blobs, blob.getHash());
+            }
+        }
+
+        // The base64 contents may no longer be needed
+        if(oldHash != null) {
+            synchronized (blobLocks.lockFor(oldHash)) {
+                try (Connection conn = pool.getConnection()) {
+                    DatabaseBackedDataStore.deleteIfUnreferenced(conn, blobs, oldHash);
+                }
+            }
+        }
+        return updated;
+    }
+
+    /**
+     * Decodes contents still held in the database's BLOB column into the blob store's staging area.
+     * @return the staged blob, or null if the photo no longer exists
+     */
+    private PhotoBlob decodeFromDatabase(Connection conn, long photoId) throws SQLException, IOException {
+        String query = "SELECT "+PHOTOS_CONTENTS+" FROM "+PHOTOS_TABLE+" WHERE "+PHOTOS_ID+" = ?";
+        try (PreparedStatement stmt = conn.prepareStatement(query)) {
+            stmt.setLong(1, photoId);
+            ResultSet rs = stmt.executeQuery();
+            if(!rs.next() || rs.getBlob(1) == null) return null;
+
+            try (InputStream in = UploadPhotoRequest.decodeContents(rs.getBlob(1).getBinaryStream())) {
+                return blobs.write(in);
+            }
+        }
+    }
+
+    /**
+     * Decodes base64 contents held in the blob store into its staging area.
+     * @return the staged blob
+     */
+    private PhotoBlob decodeFromBlobStore(String hash) throws IOException {
+        try (FileChannel channel = blobs.open(hash);
+             InputStream in = UploadPhotoRequest.decodeContents(Channels.newInputStream(channel))) {
+            return blobs.write(in);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package server.datastore;
+
+/**
+ * The few details of a photo needed to check it exists and who owns it,
+ * without reading its full metadata or ratings.
+ */
+final class PhotoReference {
+    private final long id, albumId;
+    private final String authorName;
+
+    PhotoReference(long id, String authorName, long albumId) {
+        this.id = id;
+        this.authorName = authorName;
+        this.albumId = albumId;
+    }
+
+    /**
+     * @return the photo's id
+     */
+    long getId() {
+        return id;
+    }
+
+    /**
+     * @return the name of the user who posted the photo
+     */
+    String getAuthorName() {
+        return authorName;
+    }
+
+    /**
+     * @return the id of the album the photo is in
+     */
+    long getAlbumId() {
+        return albumId;
+    }
+}
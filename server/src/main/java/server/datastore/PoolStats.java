@@ -0,0 +1,101 @@
+package server.datastore;
+
+/**
+ * Snapshot of a connection pool's state and lifetime counters.
+ */
+public final class PoolStats {
+    private final int minSize, maxSize, active, idle, waiting;
+    private final long acquired, timeouts, leaks, created, statements, totalWaitMillis;
+
+    PoolStats(int minSize, int maxSize, int active, int idle, int waiting, long acquired, long timeouts,
+              long leaks, long created, long statements, long totalWaitMillis) {
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.active = active;
+        this.idle = idle;
+        this.waiting = waiting;
+        this.acquired = acquired;
+        this.timeouts = timeouts;
+        this.leaks = leaks;
+        this.created = created;
+        this.statements = statements;
+        this.totalWaitMillis = totalWaitMillis;
+    }
+
+    /**
+     * @return the number of connections the pool keeps open when idle
+     */
+    public int getMinSize() {
+        return minSize;
+    }
+
+    /**
+     * @return the maximum number of connections the pool will open
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return the number of connections currently borrowed
+     */
+    public int getActive() {
+        return active;
+    }
+
+    /**
+     * @return the number of open connections waiting to be borrowed
+     */
+    public int getIdle() {
+        return idle;
+    }
+
+    /**
+     * @return the approximate number of threads waiting for a connection
+     */
+    public int getWaiting() {
+        return waiting;
+    }
+
+    /**
+     * @return the total number of times a connection has been borrowed
+     */
+    public long getAcquired() {
+        return acquired;
+    }
+
+    /**
+     * @return the number of borrow attempts which timed out
+     */
+    public long getTimeouts() {
+        return timeouts;
+    }
+
+    /**
+     * @return the number of borrowed connections reported as possible leaks
+     */
+    public long getLeaks() {
+        return leaks;
+    }
+
+    /**
+     * @return the number of physical connections opened over the pool's lifetime
+     */
+    public long getCreated() {
+        return created;
+    }
+
+    /**
+     * @return the number of statements prepared through pooled connections
+     */
+    public long getStatements() {
+        return statements;
+    }
+
+    /**
+     * @return the total time threads have spent waiting for a connection
+     */
+    public long getTotalWaitMillis() {
+        return totalWaitMillis;
+    }
+}
@@ -6,10 +6,12 @@ import server.objects.*;
 import server.requests.AddCommentRequest;
 import server.requests.EditCommentRequest;
 import server.requests.UploadPhotoRequest;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.format.DateTimeParseException;
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * Layer which resolves requests received from a client,
@@ -18,7 +20,60 @@ import java.util.stream.Collectors;
 public final class RequestResolver {
     public static final Locale LOCALE = Locale.UK;
     private static final long TIMEOUT = (long) (15 * 1000); // 15 sec
-    private DataStore dataStore = new DatabaseBackedDataStore();
+    private static final long MAX_PHOTO_BYTES = 4 * 1000 * 1000; // 4 MB
+    public static final int DEFAULT_NEWS_FEED_PAGE = 20;
+    public static final int MAX_NEWS_FEED_PAGE = 100;
+    public static final int DEFAULT_LIKERS_PAGE = 50;
+    public static final int MAX_LIKERS_PAGE = 500;
+    public static final int DEFAULT_USER_SEARCH_LIMIT = 10;
+    public static final int MAX_USER_SEARCH_LIMIT = 100;
+    public static final int DEFAULT_SEARCH_PAGE = 20;
+    public static final int MAX_SEARCH_PAGE = 100;
+
+    // Order of photos in a news feed: newest first, with ties broken by id
+    private static final Comparator<Photo> NEWS_FEED_ORDER =
+            Comparator.comparingLong(Photo::getPhotoTimeMillis).thenComparingLong(Photo::getId).reversed();
+
+    // The data store backend, chosen through a system property
+    public static final String DATA_STORE_PROPERTY = "photoshare.datastore";
+    public static final String DATABASE_DATA_STORE = "database";
+    public static final String IN_MEMORY_DATA_STORE = "memory";
+    private final DataStore backend = createDataStore(System.getProperty(DATA_STORE_PROPERTY, DATABASE_DATA_STORE));
+
+    // Entities read by id are cached in front of the backend, unless the cache size is 0
+    private final CachingDataStore cache = createCache(backend,
+            Integer.getInteger(CachingDataStore.CACHE_SIZE_PROPERTY, CachingDataStore.DEFAULT_CACHE_SIZE));
+    private DataStore dataStore = cache != null ? cache : backend;
+
+    // News feed timelines, materialised from the data store
+    private final TimelineStore timelines = new TimelineStore(dataStore,
+            Integer.getInteger(TimelineStore.CAPACITY_PROPERTY, TimelineStore.DEFAULT_CAPACITY),
+            Integer.getInteger(TimelineStore.PULL_THRESHOLD_PROPERTY, TimelineStore.DEFAULT_PULL_THRESHOLD),
+            Integer.getInteger(TimelineStore.MAX_TIMELINES_PROPERTY, TimelineStore.DEFAULT_MAX_TIMELINES));
+
+    // Credentials of recently authenticated users, kept briefly to save a lookup on each request
+    public static final String CREDENTIAL_CACHE_TTL_PROPERTY = "photoshare.auth.cacheTtlMs";
+    private static final long DEFAULT_CREDENTIAL_CACHE_TTL = 5 * 1000;
+    private final CredentialCache credentials =
+            new CredentialCache(Long.getLong(CREDENTIAL_CACHE_TTL_PROPERTY, DEFAULT_CREDENTIAL_CACHE_TTL));
+
+    // Usernames, sorted for searching by prefix
+    private final UsernameIndex usernames = new UsernameIndex(dataStore);
+
+    // Words in photo descriptions, album descriptions and comments, for full-text search
+    private final SearchIndex searchIndex = new SearchIndex(dataStore);
+
+    // Notifications acknowledged by reading comments, removed from the data store in the background
+    private final NotificationAckQueue notificationAcks = new NotificationAckQueue(dataStore,
+            Long.getLong(NotificationAckQueue.ACK_INTERVAL_PROPERTY, NotificationAckQueue.DEFAULT_ACK_INTERVAL));
+
+    // Open notification streams, which new notifications are pushed to
+    private final NotificationStreams notificationStreams = new NotificationStreams(
+            Integer.getInteger(NotificationStreams.MAX_STREAMS_PROPERTY, NotificationStreams.DEFAULT_MAX_STREAMS),
+            Integer.getInteger(NotificationStreams.MAX_USER_STREAMS_PROPERTY,
+                    NotificationStreams.DEFAULT_MAX_USER_STREAMS),
+            Long.getLong(NotificationStreams.KEEP_ALIVE_PROPERTY, NotificationStreams.DEFAULT_KEEP_ALIVE),
+            Integer.getInteger(NotificationStreams.QUEUE_SIZE_PROPERTY, NotificationStreams.DEFAULT_QUEUE_SIZE));
 
     // Allowed extensions
     private static Set<String> allowedExtensions = new HashSet<>();
@@ -27,6 +82,33 @@ public final class RequestResolver {
         allowedExtensions.add("png");
     }
 
+    /**
+     * Creates the configured data store
+     * @param backend the name of the backend to use
+     * @return the new data store
+     */
+    private static DataStore createDataStore(String backend) {
+        switch (backend) {
+            case IN_MEMORY_DATA_STORE:
+                System.out.println("Using in-memory data store");
+                return new InMemoryDataStore();
+            case DATABASE_DATA_STORE:
+                return new DatabaseBackedDataStore();
+            default:
+                throw new IllegalArgumentException(String.format("Unknown data store: %s", backend));
+        }
+    }
+
+    /**
+     * Creates the cache in front of the given data store
+     * @param backend the data store to cache
+     * @param maxSize the maximum number of entries in each entity's cache
+     * @return the new cache, or null if caching is disabled
+     */
+    private static CachingDataStore createCache(DataStore backend, int maxSize) {
+        return maxSize > 0 ? new CachingDataStore(backend, maxSize) : null;
+    }
+
     /**
      * Verify the auth info sent by the client. Try to generate shared secret.
      *
@@ -36,20 +118,47 @@ public final class RequestResolver {
      * @throws UnauthorisedException if bad provided info
      */
     public void verifyAuth(String username, String apiKey, String date) throws UnauthorisedException {
-        // Check user exists on server
-        try {
-            User user = getUser(username);
+        verifyCredentials(username, apiKey, date);
+    }
 
+    /**
+     * Verify the auth info sent by the client, and retrieve the user's credentials.
+     *
+     * @param username the user who sent the request
+     * @param apiKey the apiKey the user provided with the login request
+     * @param date the timestamp of the sent request
+     * @return the user's credentials
+     * @throws UnauthorisedException if bad provided info
+     */
+    private CredentialCache.Credentials verifyCredentials(String username, String apiKey, String date)
+            throws UnauthorisedException {
+        if(username == null || date == null) throw new UnauthorisedException();
+
+        try {
             // Check timestamp isn't too old
-            Date d = new SimpleDateFormat("yyyy/MM/dd HH:mm:ss").parse(date);
-            long time = System.currentTimeMillis(), dateTime = d.getTime();
+            long time = System.currentTimeMillis();
+            long dateTime = Timestamps.parse(date);
             if(time - dateTime > TIMEOUT) throw new UnauthorisedException();
 
-            // Compare generated secret API key
-            String key = Auth.getApiKey(username, user.getPassword(), date).split(":")[1];
-            if(!key.equals(apiKey)) throw new UnauthorisedException();
+            // Check user exists on server, then compare generated secret API key
+            CredentialCache.Credentials user = getCredentials(username);
+            if(!Auth.verifyApiKey(username, user.getPassword(), date, apiKey)) throw new UnauthorisedException();
+            return user;
         }
-        catch (InvalidResourceRequestException | ParseException ignored) {throw new UnauthorisedException();}
+        catch (InvalidResourceRequestException | DateTimeParseException ignored) {throw new UnauthorisedException();}
+    }
+
+    /**
+     * @param username the user's name
+     * @return the user's credentials, from the cache if present
+     * @throws InvalidResourceRequestException if the user doesn't exist
+     */
+    private CredentialCache.Credentials getCredentials(String username) throws InvalidResourceRequestException {
+        CredentialCache.Credentials found = credentials.get(username);
+        if(found != null) return found;
+
+        User user = getUser(username);
+        return credentials.put(username, user.getPassword(), user.isAdmin());
     }
 
     /**
@@ -62,11 +171,8 @@ public final class RequestResolver {
      */
     public void verifyAdminAuth(String user, String apiKey, String date) throws UnauthorisedException,
             InvalidResourceRequestException {
-        // Ensure valid user and client
-        verifyAuth(user, apiKey, date);
-
-        // Ensure user is an admin
-        if(!getUser(user).isAdmin()) throw new UnauthorisedException();
+        // Ensure valid user and client, and that the user is an admin
+        if(!verifyCredentials(user, apiKey, date).isAdmin()) throw new UnauthorisedException();
     }
 
     /**
@@ -90,6 +196,8 @@ public final class RequestResolver {
 
         // Persist user with hashed and encoded password
         dataStore.persistAddUser(username, Auth.hashAndEncodeHex(password), admin);
+        usernames.add(username, admin);
+        credentials.invalidate(username);
     }
 
     /**
@@ -121,11 +229,33 @@ public final class RequestResolver {
      */
     public Receipt uploadPhoto(String user, UploadPhotoRequest request, String date)
             throws InvalidResourceRequestException, DoesNotOwnAlbumException, InvalidFileFormatException {
+        if(!isValidPhotoFormat(request.getEncodedPhotoContents())) throw new InvalidFileFormatException();
+
+        // Decode the photo's contents, so they are stored as raw bytes
+        byte[] contents;
+        try {
+            contents = UploadPhotoRequest.decodeContents(request.getEncodedPhotoContents());
+        }
+        catch (IllegalArgumentException e) {
+            throw new InvalidFileFormatException();
+        }
+
+        return uploadPhoto(user, request, new ByteArrayInputStream(contents), date);
+    }
+
+    /**
+     * Uploads the given photo, streaming its raw contents straight to storage
+     *
+     * @param user the user who posted the photo
+     * @param request the photo's details
+     * @param contents the photo's raw contents
+     * @param date the formatted date in which the request was sent
+     */
+    public Receipt uploadPhoto(String user, UploadPhotoRequest request, InputStream contents, String date)
+            throws InvalidResourceRequestException, DoesNotOwnAlbumException, InvalidFileFormatException {
         // Ensure user is known
         getUser(user);
 
-        if(!isValidPhotoFormat(request.getEncodedPhotoContents())) throw new InvalidFileFormatException();
-
         // Ensure albumId is known, and that it belongs to the user
         Album album = getAlbum(request.getAlbumId());
         if(!album.getAuthorName().equals(user)) {
@@ -137,8 +267,21 @@ public final class RequestResolver {
             throw new InvalidFileFormatException(request.getExtension().toLowerCase(LOCALE));
         }
 
-        // Create photo and persist it
-        long id = dataStore.persistUploadPhoto(user, request, date);
+        // Create photo and persist it. Uploads over the size limit are abandoned part way through.
+        long id, time = Timestamps.parse(date);
+        try {
+            id = dataStore.persistUploadPhoto(user, request, new BoundedInputStream(contents, MAX_PHOTO_BYTES),
+                    time);
+        }
+        catch (IOException e) {
+            throw new InvalidFileFormatException();
+        }
+
+        // Add photo to followers' news feeds, and index its description
+        if(id != -1) {
+            timelines.photoUploaded(user, id, time);
+            searchIndex.put(SearchResultType.PHOTO, id, request.getDescription());
+        }
 
         // Return receipt confirming photo was created
         return new Receipt(id);
@@ -151,10 +294,24 @@ public final class RequestResolver {
      * @throws InvalidResourceRequestException if user has never posted a photo
      */
     public List<Photo> getPhotos(String user) throws InvalidResourceRequestException {
+        return getPhotos(user, null, null);
+    }
+
+    /**
+     * Retrieves photos a user posted within the given time range, if one is given.
+     * @param user the user's name
+     * @param since the earliest time to include, in milliseconds since the epoch, or null for no lower bound
+     * @param until the time to stop at, exclusive, in milliseconds since the epoch, or null for no upper bound
+     * @return the list of photos, ordered by time if a range was given
+     * @throws InvalidResourceRequestException if the user doesn't exist
+     * @throws IllegalArgumentException if the range ends before it starts
+     */
+    public List<Photo> getPhotos(String user, Long since, Long until) throws InvalidResourceRequestException {
         // Ensure user exists
         getUser(user);
 
-        return dataStore.getPhotos(user);
+        if(since == null && until == null) return dataStore.getPhotos(user);
+        return dataStore.getPhotos(user, lowerBound(since, until), upperBound(until));
     }
 
     /**
@@ -164,20 +321,55 @@ public final class RequestResolver {
      * @throws InvalidResourceRequestException if the given album ID is unknown
      */
     public List<Photo> getPhotos(long albumId) throws InvalidResourceRequestException {
+        return getPhotos(albumId, null, null);
+    }
+
+    /**
+     * Retrieves photos added to a given album within the given time range, if one is given.
+     * @param albumId the album's ID
+     * @param since the earliest time to include, in milliseconds since the epoch, or null for no lower bound
+     * @param until the time to stop at, exclusive, in milliseconds since the epoch, or null for no upper bound
+     * @return the list of photos, ordered by time if a range was given
+     * @throws InvalidResourceRequestException if the given album ID is unknown
+     * @throws IllegalArgumentException if the range ends before it starts
+     */
+    public List<Photo> getPhotos(long albumId, Long since, Long until) throws InvalidResourceRequestException {
         // Ensure album exists
         getAlbum(albumId);
 
-        return dataStore.getPhotos(albumId);
+        if(since == null && until == null) return dataStore.getPhotos(albumId);
+        return dataStore.getPhotos(albumId, lowerBound(since, until), upperBound(until));
+    }
+
+    /**
+     * @param since the given start of a time range, or null
+     * @param until the given end of a time range, or null
+     * @return the start of the range, in milliseconds since the epoch
+     * @throws IllegalArgumentException if the range ends before it starts
+     */
+    private static long lowerBound(Long since, Long until) {
+        if(since != null && until != null && since > until) {
+            throw new IllegalArgumentException(String.format("Time range ends before it starts: %d, %d", since, until));
+        }
+        return since != null ? since : Long.MIN_VALUE;
+    }
+
+    /**
+     * @param until the given end of a time range, or null
+     * @return the end of the range, in milliseconds since the epoch
+     */
+    private static long upperBound(Long until) {
+        return until != null ? until : Long.MAX_VALUE;
     }
 
     /**
      * Retrieves the photo contents for given photo
      * @param id the id of the photo
      * @param ext the provided file extension
-     * @return the encoded photo contents
+     * @return a handle for streaming the raw photo contents
      * @throws InvalidResourceRequestException if the photo doesn't exist
      */
-    public String getPhotoContents(long id, String ext) throws InvalidResourceRequestException {
+    public PhotoContents getPhotoContents(long id, String ext) throws InvalidResourceRequestException {
         return dataStore.getPhotoContents(id, ext);
     }
 
@@ -191,6 +383,16 @@ public final class RequestResolver {
         return dataStore.getPhotoMetaData(id);
     }
 
+    /**
+     * Retrieves the given photo's reference, for checking it exists and who owns it
+     * @param id the id of the photo
+     * @return the photo's reference
+     * @throws InvalidResourceRequestException if the photo doesn't exist
+     */
+    private PhotoReference getPhotoReference(long id) throws InvalidResourceRequestException {
+        return dataStore.getPhotoReference(id);
+    }
+
     /**
      * Creates and persists the newly created album
      * @param author the author of the new album
@@ -204,7 +406,8 @@ public final class RequestResolver {
         getUser(author);
 
         // Create album and persist it
-        long newId = dataStore.persistAddAlbum(albumName, author, description, date);
+        long newId = dataStore.persistAddAlbum(albumName, author, description, Timestamps.parse(date));
+        if(newId != -1) searchIndex.put(SearchResultType.ALBUM, newId, description);
 
         // Return receipt confirming album was created
         return new Receipt(newId);
@@ -246,6 +449,7 @@ public final class RequestResolver {
 
         // Persist description update
         dataStore.updateAlbumDescription(albumId, description);
+        searchIndex.put(SearchResultType.ALBUM, albumId, description);
     }
 
     /**
@@ -260,13 +464,14 @@ public final class RequestResolver {
         throws InvalidResourceRequestException, DoesNotOwnPhotoException {
 
         // Ensure photo exists
-        Photo photo = getPhotoMetaData(photoId);
+        PhotoReference photo = getPhotoReference(photoId);
 
         // Ensure photo is owned by requesting user
         if (!photo.getAuthorName().equals(user)) throw new DoesNotOwnPhotoException(photoId, user);
 
         // Persist description update
         dataStore.updatePhotoDescription(photoId, description);
+        searchIndex.put(SearchResultType.PHOTO, photoId, description);
     }
 
     /**
@@ -297,46 +502,74 @@ public final class RequestResolver {
 
     /**
      * Retrieves all comments a user has made.
-     * Relevant notifications will be implicitly removed, as well.
+     * Relevant notifications will be queued for removal, as well.
      * @param username the user to retrieve comments for
      * @return the list of comments by this user
      * @throws InvalidResourceRequestException if the user has no comments
      */
     public List<Comment> getComments(String username) throws InvalidResourceRequestException {
+        return getComments(username, null, null);
+    }
+
+    /**
+     * Retrieves the comments a user made within the given time range, if one is given.
+     * Relevant notifications will be queued for removal, as well.
+     * @param username the user to retrieve comments for
+     * @param since the earliest time to include, in milliseconds since the epoch, or null for no lower bound
+     * @param until the time to stop at, exclusive, in milliseconds since the epoch, or null for no upper bound
+     * @return the list of comments by this user, ordered by time if a range was given
+     * @throws InvalidResourceRequestException if the user doesn't exist
+     * @throws IllegalArgumentException if the range ends before it starts
+     */
+    public List<Comment> getComments(String username, Long since, Long until) throws InvalidResourceRequestException {
         // Ensure the user exists
         getUser(username);
 
         // Get user comments
-        List<Comment> comments = dataStore.getComments(username);
+        List<Comment> comments = since == null && until == null ? dataStore.getComments(username)
+                : dataStore.getComments(username, lowerBound(since, until), upperBound(until));
 
-        // Remove any notifications for these comments that may exist for this user
-        for (Comment reply : comments) {
-            removeNotification(username, reply.getId());
-        }
+        // Queue the removal of any notifications for these comments that may exist for this user
+        acknowledgeNotifications(username, comments);
 
         // Return comments;
         return comments;
     }
     /**
      * Retrieves all top-level comments made on the comment / photo with the given reference id
-     * Relevant notifications will be implicitly removed, as well.
+     * Relevant notifications will be queued for removal, as well.
      * @param user the user who made the request
      * @param referenceId the id of the resource
      * @return the list of comments on this resource
      * @throws InvalidResourceRequestException if the reference doesn't exist
      */
     public List<Comment> getPhotoComments(String user, long referenceId) throws InvalidResourceRequestException {
+        return getPhotoComments(user, referenceId, null, null);
+    }
+
+    /**
+     * Retrieves the top-level comments made on the given photo within the given time range, if one is given.
+     * Relevant notifications will be queued for removal, as well.
+     * @param user the user who made the request
+     * @param referenceId the id of the photo
+     * @param since the earliest time to include, in milliseconds since the epoch, or null for no lower bound
+     * @param until the time to stop at, exclusive, in milliseconds since the epoch, or null for no upper bound
+     * @return the list of comments on this photo, ordered by time if a range was given
+     * @throws InvalidResourceRequestException if the reference doesn't exist
+     * @throws IllegalArgumentException if the range ends before it starts
+     */
+    public List<Comment> getPhotoComments(String user, long referenceId, Long since, Long until)
+            throws InvalidResourceRequestException {
         // Get photo the reference is referring to (exception thrown if doesn't exist)
-        getPhotoMetaData(referenceId);
+        getPhotoReference(referenceId);
         getUser(user);
 
         // Find all comments on this photo
-        List<Comment> photoComments = dataStore.getPhotoComments(referenceId);
+        List<Comment> photoComments = since == null && until == null ? dataStore.getPhotoComments(referenceId)
+                : dataStore.getPhotoComments(referenceId, lowerBound(since, until), upperBound(until));
 
-        // Remove any notifications for these comments that may exist for this user
-        for (Comment comment : photoComments) {
-            removeNotification(user, comment.getId());
-        }
+        // Queue the removal of any notifications for these comments that may exist for this user
+        acknowledgeNotifications(user, photoComments);
 
         // Return all photoComments
         return photoComments;
@@ -344,7 +577,7 @@ public final class RequestResolver {
 
     /**
      * Retrieves all top-level comments made on the comment / photo with the given reference id
-     * Relevant notifications will be implicitly removed, as well.
+     * Relevant notifications will be queued for removal, as well.
      * @param user the user who made the request
      * @param referenceId the id of the resource
      * @return the list of comments on this resource
@@ -358,26 +591,112 @@ public final class RequestResolver {
         // Find all comments on this comment
         List<Comment> replies = dataStore.getReplies(referenceId);
 
-        // Remove any notifications for these comments that may exist for this user
-        for (Comment reply : replies) {
-            removeNotification(user, reply.getId());
-        }
+        // Queue the removal of any notifications for these comments that may exist for this user
+        acknowledgeNotifications(user, replies);
 
         // Return all replies
         return replies;
     }
 
+    /**
+     * Retrieves the whole thread of comments on the given photo, with each comment's replies nested below it.
+     * The thread is read in a single query, the viewer's likes of it in another, and notifications are left alone.
+     * @param user the user who made the request
+     * @param photoId the id of the photo
+     * @param maxDepth the deepest level of replies to include, where 0 is only the top-level comments,
+     *                 or null for every level
+     * @return the photo's top-level comments, oldest first, each with its replies
+     * @throws InvalidResourceRequestException if the photo doesn't exist
+     * @throws IllegalArgumentException if the depth is negative
+     */
+    public List<CommentThread> getCommentThread(String user, long photoId, Integer maxDepth)
+            throws InvalidResourceRequestException {
+        int depth = checkThreadDepth(maxDepth);
+        getPhotoReference(photoId);
+
+        List<CommentThread> thread = new ArrayList<>();
+        assembleThread(commentsFor(user, dataStore.getCommentThread(photoId, depth)), thread, new HashMap<>());
+        return thread;
+    }
+
+    /**
+     * Retrieves the given comment, with its replies, and theirs, nested below it.
+     * The replies are read in a single query, the viewer's likes of them in another, and notifications are left alone.
+     * @param user the user who made the request
+     * @param commentId the id of the comment
+     * @param maxDepth the deepest level of replies to include, where 0 is only the comment itself,
+     *                 or null for every level
+     * @return the comment, with its replies
+     * @throws InvalidResourceRequestException if the comment doesn't exist
+     * @throws IllegalArgumentException if the depth is negative
+     */
+    public CommentThread getReplyThread(String user, long commentId, Integer maxDepth)
+            throws InvalidResourceRequestException {
+        int depth = checkThreadDepth(maxDepth);
+        Comment comment = getComment(commentId);
+
+        // Look up the viewer's likes of the comment and its replies together
+        List<Comment> comments = new ArrayList<>();
+        comments.add(comment);
+        comments.addAll(dataStore.getReplyThread(commentId, depth));
+        List<Comment> viewed = commentsFor(user, comments);
+
+        // Replies are attached below the comment itself
+        List<CommentThread> replies = new ArrayList<>();
+        Map<Long, List<CommentThread>> parents = new HashMap<>();
+        parents.put(commentId, replies);
+        assembleThread(viewed.subList(1, viewed.size()), new ArrayList<>(), parents);
+        return new CommentThread(viewed.get(0), replies);
+    }
+
+    /**
+     * @param maxDepth the requested depth, or null for every level
+     * @return the depth to read a thread to
+     * @throws IllegalArgumentException if the depth is negative
+     */
+    private static int checkThreadDepth(Integer maxDepth) {
+        if(maxDepth == null) return Integer.MAX_VALUE;
+        if(maxDepth < 0) throw new IllegalArgumentException(String.format("Invalid depth: %d", maxDepth));
+        return maxDepth;
+    }
+
+    /**
+     * Nests each comment below its parent. Parents must come before their replies.
+     * @param comments the comments in the thread, level by level, already noting which the viewer has liked
+     * @param roots the list to add top-level comments to
+     * @param parents the lists of replies to each comment seen so far, to add to
+     */
+    private void assembleThread(List<Comment> comments, List<CommentThread> roots,
+                                Map<Long, List<CommentThread>> parents) {
+        for(Comment comment : comments) {
+            List<CommentThread> siblings = comment.getEventType() == EventType.REPLY
+                    ? parents.get(comment.getReferenceId()) : roots;
+
+            // Skip replies to comments which have been deleted
+            if(siblings == null) continue;
+
+            List<CommentThread> replies = new ArrayList<>();
+            parents.put(comment.getId(), replies);
+            siblings.add(new CommentThread(comment, replies));
+        }
+    }
+
     /**
      * Retrieves all notifications for the given user
      * @param user the user to retrieve comments for
-     * @return the list of notifications for this user
+     * @return the list of notifications for this user, oldest first
      * @throws InvalidResourceRequestException if the user doesn't exist
      */
     public List<Notification> getNotifications(String user) throws InvalidResourceRequestException {
         // Ensure user exists
         getUser(user);
 
-        return dataStore.getNotifications(user);
+        // Leave out notifications which have been acknowledged but not yet removed. The queue is read first,
+        // so a notification removed in between is already gone from the data store.
+        Set<Long> acknowledged = notificationAcks.getPending(user);
+        List<Notification> notifications = dataStore.getNotifications(user);
+        if(!acknowledged.isEmpty()) notifications.removeIf(n -> acknowledged.contains(n.getContentId()));
+        return notifications;
     }
 
     /**
@@ -398,11 +717,13 @@ public final class RequestResolver {
         else {
             // Retrieve the parent photo and check it exists
             // (exception will be thrown, if not).
-            getPhotoMetaData(request.getReferenceId());
+            getPhotoReference(request.getReferenceId());
         }
 
         // Persist comment to data store
-        long id = dataStore.persistAddComment(user, request, date);
+        long id = dataStore.persistAddComment(user, request, Timestamps.parse(date));
+        if(id == -1) return new Receipt(id);
+        searchIndex.put(SearchResultType.COMMENT, id, request.getCommentContents());
 
         // Create notification for this comment to the appropriate user
         addNotification(new Comment(id, user, request, date));
@@ -426,6 +747,7 @@ public final class RequestResolver {
 
         // Persist comment to data store
         dataStore.persistEditComment(commentId, request.getCommentContents());
+        searchIndex.put(SearchResultType.COMMENT, commentId, request.getCommentContents());
 
         // Return a receipt
         return new Receipt(commentId);
@@ -444,23 +766,86 @@ public final class RequestResolver {
             parentName = getComment(comment.getReferenceId()).getAuthor();
         }
         else {
-            parentName = getPhotoMetaData(comment.getReferenceId()).getAuthorName();
+            parentName = getPhotoReference(comment.getReferenceId()).getAuthorName();
         }
 
         // Add notification using found parent's name
-        dataStore.persistAddNotification(parentName, comment);
+        addNotification(parentName, comment);
+    }
+
+    /**
+     * Adds a notification for the given user, and pushes it to any streams they have open
+     * @param parentName the user to notify
+     * @param event the event to be the subject of the notification
+     */
+    private void addNotification(String parentName, NotifiableEvent event) {
+        long id = dataStore.persistAddNotification(parentName, event);
+        if(id < 0) return;
+
+        // Built the same way round as the data store returns it
+        notificationStreams.publish(parentName, new Notification(id, event.getContentId(), event.getParentName(),
+                parentName, event.getEventType()));
     }
 
     /**
-     * Removes the given notification, if it exists
-     * @param user the user to remove the notification from
-     * @param id the id of the notification to remove
-     * @throws InvalidResourceRequestException if the id doesn't correspond to a valid notification
+     * Opens a stream of the user's new notifications
+     * @param user the user whose notifications to send
+     * @param lastEventId the id of the last notification the client received, to resume from,
+     *                    or null to only send new ones
+     * @param listener where to send the notifications
+     * @return the new stream, or null if there are already too many streams open
+     * @throws InvalidResourceRequestException if the user doesn't exist
      */
-    private void removeNotification(String user, long id) throws InvalidResourceRequestException {
+    public NotificationStreams.Subscription openNotificationStream(String user, Long lastEventId,
+                                                                   NotificationStreams.Listener listener)
+            throws InvalidResourceRequestException {
+        // Ensure user exists
+        getUser(user);
+
+        // Subscribe before reading what was missed, so nothing added in between is lost
+        NotificationStreams.Subscription subscription = notificationStreams.subscribe(user, listener);
+        if(subscription == null) return null;
 
-        // Retrieve notification and remove it, if present.
-        dataStore.persistRemoveNotification(user, id);
+        // The missed notifications are queued ahead of any new ones, and sent in the background
+        try {
+            List<Notification> missed = new ArrayList<>();
+            if(lastEventId != null) {
+                for(Notification notification : getNotifications(user)) {
+                    if(notification.getId() > lastEventId) missed.add(notification);
+                }
+            }
+            subscription.start(missed);
+        }
+        catch (InvalidResourceRequestException | RuntimeException e) {
+            // Don't leave the stream open if what was missed couldn't be read
+            subscription.close();
+            throw e;
+        }
+        return subscription;
+    }
+
+    /**
+     * Queues the removal of the user's notifications about the given comments, which they have now seen
+     * @param user the user to remove the notifications from
+     * @param comments the comments which were read
+     */
+    private void acknowledgeNotifications(String user, List<Comment> comments) {
+        List<Long> ids = new ArrayList<>(comments.size());
+        for(Comment comment : comments) ids.add(comment.getId());
+        notificationAcks.acknowledge(user, ids);
+    }
+
+    /**
+     * Marks the user's notifications as read, up to and including the given one
+     * @param user the user whose notifications to mark
+     * @param notificationId the id of the last notification which was read
+     * @throws InvalidResourceRequestException if the user doesn't exist
+     */
+    public void markNotificationsRead(String user, long notificationId) throws InvalidResourceRequestException {
+        // Ensure user exists
+        getUser(user);
+
+        dataStore.persistRemoveNotificationsUpTo(user, notificationId);
     }
 
     /**
@@ -475,6 +860,7 @@ public final class RequestResolver {
 
         // Cascade deletes a comment
         dataStore.persistRemoveComment(commentId);
+        searchIndex.remove(SearchResultType.COMMENT, commentId);
     }
 
     /**
@@ -492,6 +878,7 @@ public final class RequestResolver {
 
         // Cascade deletes a comment
         dataStore.persistRemoveComment(commentId);
+        searchIndex.remove(SearchResultType.COMMENT, commentId);
     }
 
     /**
@@ -502,10 +889,10 @@ public final class RequestResolver {
     public void removePhotoAdmin(long photoId) throws InvalidResourceRequestException {
 
         // Checks that the photo exists, throws an exception if not
-        getPhotoMetaData(photoId);
+        getPhotoReference(photoId);
 
         // Removes the photo from the database
-        dataStore.persistRemovePhoto(photoId);
+        removeFromDataStore(photoId);
     }
 
     /**
@@ -518,11 +905,24 @@ public final class RequestResolver {
             throws InvalidResourceRequestException, DoesNotOwnPhotoException {
 
         // Checks that the photo exists and is owned by requesting user, throws an exception if not
-        Photo p = getPhotoMetaData(photoId);
+        PhotoReference p = getPhotoReference(photoId);
         if (!p.getAuthorName().equals(user)) throw new DoesNotOwnPhotoException(photoId, user);
 
         // Removes the photo from the database
+        removeFromDataStore(photoId);
+    }
+
+    /**
+     * Removes the given photo, and drops it and every comment in its thread from the search index.
+     * The comments are left in the data store, so they are found before the photo goes.
+     * @param photoId the id of the photo
+     */
+    private void removeFromDataStore(long photoId) {
+        List<Comment> thread = dataStore.getCommentThread(photoId, Integer.MAX_VALUE);
         dataStore.persistRemovePhoto(photoId);
+
+        searchIndex.remove(SearchResultType.PHOTO, photoId);
+        for(Comment comment : thread) searchIndex.remove(SearchResultType.COMMENT, comment.getId());
     }
 
     /**
@@ -546,11 +946,62 @@ public final class RequestResolver {
      */
     public void ratePhoto(long photoId, String user, boolean upvote) throws InvalidResourceRequestException {
         getUser(user);
-        getPhotoMetaData(photoId);
+        getPhotoReference(photoId);
 
         dataStore.persistPhotoRating(photoId, user, upvote);
     }
 
+    /**
+     * Retrieves a page of the users who liked the given photo, in alphabetical order
+     * @param photoId the id of the photo
+     * @param limit the maximum number of users to return, up to {@link #MAX_LIKERS_PAGE}
+     * @param after the cursor returned with the previous page, or null for the first page
+     * @return the page of users, along with the cursor for the next page
+     * @throws InvalidResourceRequestException if the photo doesn't exist
+     * @throws IllegalArgumentException if the limit is not positive
+     */
+    public LikersPage getPhotoLikers(long photoId, int limit, String after) throws InvalidResourceRequestException {
+        limit = checkLikersLimit(limit);
+        getPhotoReference(photoId);
+
+        return toLikersPage(dataStore.getPhotoLikers(photoId, after, limit), limit);
+    }
+
+    /**
+     * Retrieves a page of the users who liked the given comment, in alphabetical order
+     * @param commentId the id of the comment
+     * @param limit the maximum number of users to return, up to {@link #MAX_LIKERS_PAGE}
+     * @param after the cursor returned with the previous page, or null for the first page
+     * @return the page of users, along with the cursor for the next page
+     * @throws InvalidResourceRequestException if the comment doesn't exist
+     * @throws IllegalArgumentException if the limit is not positive
+     */
+    public LikersPage getCommentLikers(long commentId, int limit, String after) throws InvalidResourceRequestException {
+        limit = checkLikersLimit(limit);
+        getComment(commentId);
+
+        return toLikersPage(dataStore.getCommentLikers(commentId, after, limit), limit);
+    }
+
+    /**
+     * @param limit the requested page size
+     * @return the page size to use
+     * @throws IllegalArgumentException if the limit is not positive
+     */
+    private static int checkLikersLimit(int limit) {
+        if(limit <= 0) throw new IllegalArgumentException(String.format("Invalid page size: %d", limit));
+        return Math.min(limit, MAX_LIKERS_PAGE);
+    }
+
+    /**
+     * @param likers the users on the page
+     * @param limit the page size
+     * @return the page, whose cursor is the last user's name if there may be more
+     */
+    private static LikersPage toLikersPage(List<String> likers, int limit) {
+        return new LikersPage(likers, likers.size() == limit ? likers.get(likers.size() - 1) : null);
+    }
+
     /**
      * Attempts tp a user to follow the person a user has specified
      *
@@ -569,17 +1020,15 @@ public final class RequestResolver {
 
 
         // Check the user is not already following the userToFollow
-
-        List<String> followers_usernames = getUsernamesOfFollowers(userTo);
-
-        if (followers_usernames.contains(userFrom)){
+        if (dataStore.isFollowing(userFrom, userTo)){
 
             throw new ExistingException("You are already following " + userTo);
 
         }
 
         long id = dataStore.persistFollowing(userFrom, userTo);
-        dataStore.persistAddNotification(userTo, new Follow(userFrom, userTo, id));
+        addNotification(userTo, new Follow(userFrom, userTo, id));
+        timelines.followingChanged(userFrom);
 
     }
 
@@ -597,15 +1046,12 @@ public final class RequestResolver {
         getUser(userTo);
 
 
-        // usernames of followers
-        List<String> followers_usernames = getUsernamesOfFollowers(userTo);
-
-
         // Check if the user is following the subject of deletion
-        if (followers_usernames.contains(userFrom)){
+        if (dataStore.isFollowing(userFrom, userTo)){
 
             // Deletion is possible
             dataStore.persistDeleteFollowing(userFrom, userTo);
+            timelines.followingChanged(userFrom);
 
         }else{
 
@@ -642,20 +1088,31 @@ public final class RequestResolver {
 
 
     /**
-     * Utility method to get the usernames of the persons by whom a user
+     * Counts the users following the given user
      *
-     * @param username - username of the user trying to find out who their followers are
-     * @return
+     * @param username the user's name
+     * @return the number of followers
+     * @throws InvalidResourceRequestException if the user doesn't exist
      */
+    public long countFollowers(String username) throws InvalidResourceRequestException {
+        // Ensure user exists
+        getUser(username);
 
-    private List<String> getUsernamesOfFollowers(String username) throws InvalidResourceRequestException{
+        return dataStore.countFollowers(username);
+    }
 
-        List<User> followers = dataStore.getFollowers(username);
-        List<String> followers_usernames = followers.stream()
-                .map(object -> Objects.toString(object.getUsername(), null))
-                .collect(Collectors.toList());
+    /**
+     * Counts the users the given user follows
+     *
+     * @param username the user's name
+     * @return the number of users followed
+     * @throws InvalidResourceRequestException if the user doesn't exist
+     */
+    public long countFollowing(String username) throws InvalidResourceRequestException {
+        // Ensure user exists
+        getUser(username);
 
-        return followers_usernames;
+        return dataStore.countFollowing(username);
     }
 
     /**
@@ -695,7 +1152,90 @@ public final class RequestResolver {
             newsFeed.addAll(photos);
         }
 
-        return newsFeed;
+        return photosFor(username, newsFeed);
+    }
+
+    /**
+     * A page of the photos posted by the people a user is following, newest first.
+     *
+     * The newest photos of each followed user are read in order, and merged together until
+     * the page is full. Each followed user is only read as far as the page could need,
+     * so the work done depends on the page size, rather than how many photos there are.
+     *
+     * @param username the user whose news feed to retrieve
+     * @param limit the maximum number of photos to return, up to {@link #MAX_NEWS_FEED_PAGE}
+     * @param before the cursor returned with the previous page, or null for the first page
+     * @return the page of photos, along with the cursor for the next page
+     * @throws InvalidResourceRequestException if the user doesn't exist
+     * @throws IllegalArgumentException if the limit is not positive, or the cursor is malformed
+     */
+    public NewsFeedPage getNewsFeed(String username, int limit, String before)
+            throws InvalidResourceRequestException {
+        if(limit <= 0) throw new IllegalArgumentException(String.format("Invalid page size: %d", limit));
+        limit = Math.min(limit, MAX_NEWS_FEED_PAGE);
+        FeedCursor cursor = before == null ? null : FeedCursor.decode(before);
+
+        // Ensure user exists
+        getUser(username);
+
+        // Start with the newest photos of each followed user
+        PriorityQueue<PeekingIterator<Photo>> heads = new PriorityQueue<>(
+                (a, b) -> NEWS_FEED_ORDER.compare(a.peek(), b.peek()));
+        for(User followed : getFollowing(username)) {
+            PeekingIterator<Photo> photos =
+                    new PeekingIterator<>(dataStore.getPhotos(followed.getUsername(), cursor, limit).iterator());
+            if(photos.hasNext()) heads.add(photos);
+        }
+
+        // Repeatedly take the newest photo of any followed user, until the page is full
+        List<Photo> page = new ArrayList<>();
+        while(page.size() < limit && !heads.isEmpty()) {
+            PeekingIterator<Photo> newest = heads.poll();
+            page.add(newest.next());
+            if(newest.hasNext()) heads.add(newest);
+        }
+
+        // There may be more photos if the page was filled
+        String next = page.size() == limit ? FeedCursor.after(page.get(page.size() - 1)).encode() : null;
+        return new NewsFeedPage(photosFor(username, page), next);
+    }
+
+    /**
+     * The newest photos posted by the people a user is following, newest first,
+     * served from the user's materialised timeline
+     *
+     * @param username the user whose news feed to retrieve
+     * @return the first {@link #MAX_NEWS_FEED_PAGE} photos in the user's timeline
+     * @throws InvalidResourceRequestException if the user doesn't exist
+     */
+    public List<Photo> getNewsFeedTimeline(String username) throws InvalidResourceRequestException {
+        return getNewsFeedTimeline(username, MAX_NEWS_FEED_PAGE, null).getPhotos();
+    }
+
+    /**
+     * A page of the photos posted by the people a user is following, newest first,
+     * served from the user's materialised timeline
+     *
+     * @param username the user whose news feed to retrieve
+     * @param limit the maximum number of photos to return, up to {@link #MAX_NEWS_FEED_PAGE}
+     * @param before the cursor returned with the previous page, or null for the first page
+     * @return the page of photos, along with the cursor for the next page
+     * @throws InvalidResourceRequestException if the user doesn't exist
+     * @throws IllegalArgumentException if the limit is not positive, or the cursor is malformed
+     */
+    public NewsFeedPage getNewsFeedTimeline(String username, int limit, String before)
+            throws InvalidResourceRequestException {
+        if(limit <= 0) throw new IllegalArgumentException(String.format("Invalid page size: %d", limit));
+        limit = Math.min(limit, MAX_NEWS_FEED_PAGE);
+        FeedCursor cursor = before == null ? null : FeedCursor.decode(before);
+
+        // Ensure user exists
+        getUser(username);
+
+        // Pages older than the timeline kept are merged from each followed user's photos instead
+        NewsFeedPage page = timelines.read(username, cursor, limit);
+        if(page == null) return getNewsFeed(username, limit, before);
+        return new NewsFeedPage(photosFor(username, page.getPhotos()), page.getNextCursor());
     }
 
     /**
@@ -707,10 +1247,10 @@ public final class RequestResolver {
      */
     public CommentResult getCommentResult(String user, Comment comment) {
         try {
-            return new CommentResult(comment, getReplies(user, comment.getId()));
+            return new CommentResult(commentFor(user, comment), commentsFor(user, getReplies(user, comment.getId())));
         }
         catch (InvalidResourceRequestException e) {
-            return new CommentResult(comment, new ArrayList<>());
+            return new CommentResult(commentFor(user, comment), new ArrayList<>());
         }
     }
 
@@ -724,27 +1264,164 @@ public final class RequestResolver {
      */
     public PhotoResult getPhotoResult(String user, Photo photo) {
         try {
-            return new PhotoResult(photo, getPhotoComments(user, photo.getId()));
+            return new PhotoResult(photoFor(user, photo), commentsFor(user, getPhotoComments(user, photo.getId())));
         }
         catch (InvalidResourceRequestException e) {
-            return new PhotoResult(photo, new ArrayList<>());
+            return new PhotoResult(photoFor(user, photo), new ArrayList<>());
         }
     }
 
     /**
-     * Search for users whose name contains query
+     * @param viewer the user viewing the photo
+     * @param photo the photo
+     * @return a copy of the photo noting whether the viewer has liked it, looked up by the like's key
+     */
+    private Photo photoFor(String viewer, Photo photo) {
+        return photo.withLikedByMe(dataStore.hasLikedPhoto(photo.getId(), viewer));
+    }
+
+    /**
+     * @param viewer the user viewing the photos
+     * @param photos the photos
+     * @return copies of the photos noting which the viewer has liked
+     */
+    private List<Photo> photosFor(String viewer, List<Photo> photos) {
+        if(photos.isEmpty()) return new ArrayList<>();
+
+        // Look up which of the photos the viewer has liked all at once
+        List<Long> ids = new ArrayList<>(photos.size());
+        for(Photo photo : photos) ids.add(photo.getId());
+        Set<Long> liked = dataStore.getLikedPhotos(viewer, ids);
+
+        List<Photo> viewed = new ArrayList<>(photos.size());
+        for(Photo photo : photos) viewed.add(photo.withLikedByMe(liked.contains(photo.getId())));
+        return viewed;
+    }
+
+    /**
+     * @param viewer the user viewing the comment
+     * @param comment the comment
+     * @return a copy of the comment noting whether the viewer has liked it, looked up by the like's key
+     */
+    private Comment commentFor(String viewer, Comment comment) {
+        return comment.withLikedByMe(dataStore.hasLikedComment(comment.getId(), viewer));
+    }
+
+    /**
+     * @param viewer the user viewing the comments
+     * @param comments the comments
+     * @return copies of the comments noting which the viewer has liked
+     */
+    private List<Comment> commentsFor(String viewer, List<Comment> comments) {
+        if(comments.isEmpty()) return new ArrayList<>();
+
+        // Look up which of the comments the viewer has liked all at once
+        List<Long> ids = new ArrayList<>(comments.size());
+        for(Comment comment : comments) ids.add(comment.getId());
+        Set<Long> liked = dataStore.getLikedComments(viewer, ids);
+
+        List<Comment> viewed = new ArrayList<>(comments.size());
+        for(Comment comment : comments) viewed.add(comment.withLikedByMe(liked.contains(comment.getId())));
+        return viewed;
+    }
+
+    /**
+     * Search for users whose name starts with the query, ignoring case
      *
      * @param name search query on the user's name
-     * @return the given users, who have names like the query
+     * @param limit the maximum number of users to return, up to {@link #MAX_USER_SEARCH_LIMIT}
+     * @return the given users, in alphabetical order ignoring case
+     * @throws IllegalArgumentException if the limit is not positive
+     */
+    public List<User> getUsersWithName(String name, int limit) {
+        if(limit <= 0) throw new IllegalArgumentException(String.format("Invalid search limit: %d", limit));
+        if(name == null) return new ArrayList<>();
+
+        return usernames.search(name, Math.min(limit, MAX_USER_SEARCH_LIMIT));
+    }
+
+    /**
+     * Searches the text of photo descriptions, album descriptions and comments
+     * @param query the words to search for
+     * @param limit the maximum number of results to return, up to {@link #MAX_SEARCH_PAGE}
+     * @param after the cursor returned with the previous page, or null for the first page
+     * @return the page of results, best match first, along with the cursor for the next page
+     * @throws IllegalArgumentException if the limit is not positive, or the cursor is malformed
+     */
+    public SearchPage search(String query, int limit, String after) {
+        if(limit <= 0) throw new IllegalArgumentException(String.format("Invalid page size: %d", limit));
+        limit = Math.min(limit, MAX_SEARCH_PAGE);
+        int offset = after == null ? 0 : Integer.parseInt(after);
+        if(offset < 0) throw new IllegalArgumentException(String.format("Invalid cursor: %s", after));
+        if(query == null) return new SearchPage(new ArrayList<>(), null);
+
+        // Fetch one more than needed, to tell whether there is another page
+        List<SearchResult> results = searchIndex.search(query, offset, limit + 1);
+        if(results.size() <= limit) return new SearchPage(results, null);
+        return new SearchPage(new ArrayList<>(results.subList(0, limit)), String.valueOf(offset + limit));
+    }
+
+    /**
+     * @return a snapshot of the database connection pool's state,
+     * or null if the data store is not backed by a database
+     */
+    public PoolStats getPoolStats() {
+        if(backend instanceof DatabaseBackedDataStore) {
+            return ((DatabaseBackedDataStore) backend).getPoolStats();
+        }
+        return null;
+    }
+
+    /**
+     * @return a snapshot of each entity cache's state, or an empty list if caching is disabled
      */
+    public List<CacheStats> getCacheStats() {
+        return cache != null ? cache.getStats() : Collections.emptyList();
+    }
 
-    public List<User> getUsersWithName(String name){
-        return dataStore.getUserWithNameBegining(name);
+    /**
+     * @return a snapshot of each like buffer's state, or an empty list if the data store doesn't buffer likes
+     */
+    public List<LikeBufferStats> getLikeBufferStats() {
+        if(backend instanceof DatabaseBackedDataStore) {
+            return ((DatabaseBackedDataStore) backend).getLikeBufferStats();
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * @return a snapshot of the notification acknowledgement queue's state
+     */
+    public NotificationAckStats getNotificationAckStats() {
+        return notificationAcks.getStats();
+    }
+
+    /**
+     * @return a snapshot of the notification stream registry's state
+     */
+    public NotificationStreamStats getNotificationStreamStats() {
+        return notificationStreams.getStats();
+    }
+
+    /**
+     * Writes any changes still held in memory to the data store, and releases its resources
+     */
+    public void close() {
+        notificationStreams.close();
+        notificationAcks.close();
+        if(backend instanceof DatabaseBackedDataStore) {
+            ((DatabaseBackedDataStore) backend).close();
+        }
     }
 
     public void clear() {
         // Empty records
+        notificationAcks.clear();
         dataStore.clear();
+        usernames.clear();
+        searchIndex.clear();
+        credentials.clear();
+        timelines.clear();
     }
 
 }
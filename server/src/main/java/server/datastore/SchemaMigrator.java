@@ -0,0 +1,347 @@
+package server.datastore;
+
+import java.sql.*;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+
+import static server.datastore.DatabaseResources.*;
+
+/**
+ * Brings the database schema up to date by applying versioned migrations in order.
+ * The version reached is recorded in the schema version table, so a migration which
+ * succeeded is not run again against the same database.
+ *
+ * New schema changes are added as a new migration at the end of the list,
+ * never by editing one which has already been released, and must be safe to rerun.
+ */
+class SchemaMigrator {
+    private final Connection conn;
+    private final List<Migration> migrations = new ArrayList<>();
+
+    SchemaMigrator(Connection conn) {
+        this.conn = conn;
+
+        // Photo contents moved out of the database, into the blob store
+        add(1, "Reference photo contents in the blob store",
+                "ALTER TABLE "+PHOTOS_TABLE+" ADD COLUMN IF NOT EXISTS "+PHOTOS_CONTENT_HASH+" varchar(64)",
+                "ALTER TABLE "+PHOTOS_TABLE+" ADD COLUMN IF NOT EXISTS "+PHOTOS_CONTENT_LENGTH+" BIGINT",
+                "ALTER TABLE "+PHOTOS_TABLE+" ADD COLUMN IF NOT EXISTS "+PHOTOS_CONTENT_DECODED+" boolean DEFAULT FALSE NOT NULL",
+                "ALTER TABLE "+PHOTOS_TABLE+" ALTER COLUMN "+PHOTOS_CONTENTS+" SET NULL");
+
+        // Index the columns each lookup filters on
+        add(2, "Index lookup columns",
+                "CREATE INDEX IF NOT EXISTS idx_albums_user ON "+ALBUMS_TABLE+"("+USERNAME+")",
+                "CREATE INDEX IF NOT EXISTS idx_photos_user ON "+PHOTOS_TABLE+"("+USERNAME+")",
+                "CREATE INDEX IF NOT EXISTS idx_photos_album ON "+PHOTOS_TABLE+"("+ALBUMS_ID+")",
+                "CREATE INDEX IF NOT EXISTS idx_photos_id ON "+PHOTOS_TABLE+"("+PHOTOS_ID+")",
+                "CREATE INDEX IF NOT EXISTS idx_photos_hash ON "+PHOTOS_TABLE+"("+PHOTOS_CONTENT_HASH+")",
+                "CREATE INDEX IF NOT EXISTS idx_comments_reference ON "+COMMENTS_TABLE+"("+REFERENCE_ID+", "+COMMENT_TYPE+")",
+                "CREATE INDEX IF NOT EXISTS idx_comments_user ON "+COMMENTS_TABLE+"("+USERNAME+")",
+                "CREATE INDEX IF NOT EXISTS idx_notifications_user ON "+NOTIFICATIONS_TABLE+"("+PARENTNAME+", "+CONTENT_ID+")",
+                "CREATE INDEX IF NOT EXISTS idx_followings_from ON "+FOLLOWINGS_TABLE+"("+USER_FROM+", "+USER_TO+")",
+                "CREATE INDEX IF NOT EXISTS idx_followings_to ON "+FOLLOWINGS_TABLE+"("+USER_TO+", "+USER_FROM+")");
+
+        // Notification ids are handed out from a sequence, starting after any existing ids
+        add(3, "Allocate notification ids from a sequence", c -> {
+            long start = 0;
+            try (Statement stmt = c.createStatement()) {
+                ResultSet rs = stmt.executeQuery("SELECT MAX("+NOTIFICATIONS_ID+") FROM "+NOTIFICATIONS_TABLE);
+                if(rs.next()) start = rs.getLong(1) + 1;
+            }
+            try (Statement stmt = c.createStatement()) {
+                stmt.executeUpdate("CREATE SEQUENCE IF NOT EXISTS "+NOTIFICATIONS_SEQUENCE+" START WITH "+start
+                        +" INCREMENT BY "+NOTIFICATIONS_ID_BLOCK);
+            }
+        });
+
+        // Times were stored as the date strings clients send. Store them as epoch milliseconds instead,
+        // so time ranges are index range scans. Each column is converted in place, keeping its position.
+        add(4, "Store times as epoch milliseconds", c -> {
+            convertTimes(c, ALBUMS_TABLE, ALBUMS_ID, ALBUMS_TIME);
+            convertTimes(c, PHOTOS_TABLE, PHOTOS_ID, PHOTOS_TIME);
+            convertTimes(c, COMMENTS_TABLE, COMMENTS_ID, COMMENTS_TIME);
+
+            String[] indexes = {
+                    "CREATE INDEX IF NOT EXISTS idx_albums_user_time ON "+ALBUMS_TABLE+"("+USERNAME+", "+ALBUMS_TIME+")",
+                    "CREATE INDEX IF NOT EXISTS idx_photos_user_time ON "+PHOTOS_TABLE
+                            +"("+USERNAME+", "+PHOTOS_TIME+", "+PHOTOS_ID+")",
+                    "CREATE INDEX IF NOT EXISTS idx_photos_album_time ON "+PHOTOS_TABLE
+                            +"("+ALBUMS_ID+", "+PHOTOS_TIME+", "+PHOTOS_ID+")",
+                    "CREATE INDEX IF NOT EXISTS idx_comments_user_time ON "+COMMENTS_TABLE
+                            +"("+USERNAME+", "+COMMENTS_TIME+")",
+                    "CREATE INDEX IF NOT EXISTS idx_comments_reference_time ON "+COMMENTS_TABLE
+                            +"("+REFERENCE_ID+", "+COMMENT_TYPE+", "+COMMENTS_TIME+")"};
+            for(String index : indexes) {
+                try (Statement stmt = c.createStatement()) {
+                    stmt.executeUpdate(index);
+                }
+            }
+        });
+
+        // Like counts are kept alongside photos and comments, rather than counted from every vote when read
+        add(5, "Count likes on photos and comments",
+                "ALTER TABLE "+PHOTOS_TABLE+" ADD COLUMN IF NOT EXISTS "+LIKE_COUNT+" BIGINT DEFAULT 0 NOT NULL",
+                "ALTER TABLE "+COMMENTS_TABLE+" ADD COLUMN IF NOT EXISTS "+LIKE_COUNT+" BIGINT DEFAULT 0 NOT NULL",
+                "UPDATE "+PHOTOS_TABLE+" p SET "+LIKE_COUNT+" = (SELECT COUNT(*) FROM "+PHOTO_RATINGS_TABLE+" r"
+                        +" WHERE r."+REFERENCE_ID+" = p."+PHOTOS_ID+")",
+                "UPDATE "+COMMENTS_TABLE+" c SET "+LIKE_COUNT+" = (SELECT COUNT(*) FROM "+COMMENTS_VOTES_TABLE+" v"
+                        +" WHERE v."+REFERENCE_ID+" = c."+COMMENTS_ID+")");
+
+        // Comments record where they sit in their photo's thread, so a whole thread is one index range scan
+        add(6, "Store comment thread paths", c -> {
+            String[] columns = {
+                    "ALTER TABLE "+COMMENTS_TABLE+" ADD COLUMN IF NOT EXISTS "+COMMENTS_THREAD_PATH+" varchar(4096)",
+                    "ALTER TABLE "+COMMENTS_TABLE+" ADD COLUMN IF NOT EXISTS "+COMMENTS_THREAD_DEPTH+" INT"};
+            for(String column : columns) {
+                try (Statement stmt = c.createStatement()) {
+                    stmt.executeUpdate(column);
+                }
+            }
+
+            fillThreadPaths(c);
+
+            try (Statement stmt = c.createStatement()) {
+                stmt.executeUpdate("CREATE INDEX IF NOT EXISTS idx_comments_thread ON "+COMMENTS_TABLE
+                        +"("+COMMENTS_THREAD_PATH+", "+COMMENTS_THREAD_DEPTH+")");
+            }
+        });
+
+        // Thread paths grow with every level of replies, so they can't be given a length
+        add(7, "Remove the limit on comment thread path length",
+                "ALTER TABLE "+COMMENTS_TABLE+" ALTER COLUMN "+COMMENTS_THREAD_PATH+" varchar");
+    }
+
+    /**
+     * Works out the thread path and depth of every existing comment, in a single batch.
+     * Replies whose parent has been deleted are left without a path, as they can't be reached.
+     * @param conn the connection the migration is running on
+     */
+    private static void fillThreadPaths(Connection conn) throws SQLException {
+        String select = "SELECT "+COMMENTS_ID+", "+COMMENT_TYPE+", "+REFERENCE_ID+" FROM "+COMMENTS_TABLE;
+        String update = "UPDATE "+COMMENTS_TABLE+" SET "+COMMENTS_THREAD_PATH+" = ?, "+COMMENTS_THREAD_DEPTH+" = ?"
+                +" WHERE "+COMMENTS_ID+" = ?";
+
+        // Read each comment's parent: replies refer to a comment, and top-level comments to a photo
+        Map<Long, Long> parents = new HashMap<>(), photos = new HashMap<>();
+        try (Statement query = conn.createStatement()) {
+            ResultSet rs = query.executeQuery(select);
+            while(rs.next()) {
+                if(rs.getBoolean(2)) parents.put(rs.getLong(1), rs.getLong(3));
+                else photos.put(rs.getLong(1), rs.getLong(3));
+            }
+        }
+
+        // Walk each reply up to its top-level comment, building paths downwards from there
+        Map<Long, String> paths = new HashMap<>();
+        Map<Long, Integer> depths = new HashMap<>();
+        for(Map.Entry<Long, Long> photo : photos.entrySet()) {
+            paths.put(photo.getKey(), ThreadPaths.ofPhoto(photo.getValue()));
+            depths.put(photo.getKey(), 0);
+        }
+        for(Long id : parents.keySet()) {
+            Deque<Long> ancestors = new ArrayDeque<>();
+            Long current = id;
+            while(current != null && !paths.containsKey(current) && !ancestors.contains(current)) {
+                ancestors.push(current);
+                current = parents.get(current);
+            }
+            if(current == null || !paths.containsKey(current)) continue;
+
+            for(Long reply : ancestors) {
+                paths.put(reply, ThreadPaths.below(paths.get(current), current));
+                depths.put(reply, depths.get(current) + 1);
+                current = reply;
+            }
+        }
+
+        try (PreparedStatement stmt = conn.prepareStatement(update)) {
+            for(Map.Entry<Long, String> path : paths.entrySet()) {
+                stmt.setString(1, path.getValue());
+                stmt.setInt(2, depths.get(path.getKey()));
+                stmt.setLong(3, path.getKey());
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+    }
+
+    /**
+     * Rewrites each date string in the given column as epoch milliseconds, and then changes the
+     * column's type to BIGINT. Dates which can't be parsed become 0, and values which are already
+     * numbers are left alone.
+     * @param conn the connection the migration is running on
+     * @param table the table to convert
+     * @param idColumn the column identifying each row
+     * @param timeColumn the column to convert
+     */
+    private static void convertTimes(Connection conn, String table, String idColumn, String timeColumn)
+            throws SQLException {
+        String select = "SELECT "+idColumn+", "+timeColumn+" FROM "+table;
+        String update = "UPDATE "+table+" SET "+timeColumn+" = ? WHERE "+idColumn+" = ?";
+
+        // Convert every row, in a single batch
+        try (Statement query = conn.createStatement();
+             PreparedStatement stmt = conn.prepareStatement(update)) {
+            ResultSet rs = query.executeQuery(select);
+            while(rs.next()) {
+                String time = rs.getString(2);
+                if(time == null || time.matches("-?\\d+")) continue;
+
+                long millis;
+                try {
+                    millis = Timestamps.parse(time);
+                }
+                catch (DateTimeParseException e) {
+                    millis = 0;
+                }
+                stmt.setString(1, Long.toString(millis));
+                stmt.setLong(2, rs.getLong(1));
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("ALTER TABLE "+table+" ALTER COLUMN "+timeColumn+" BIGINT NOT NULL");
+        }
+    }
+
+    /**
+     * Adds a migration made up of plain SQL statements
+     * @param version the migration's version, one greater than the previous migration's
+     * @param description a short description of the change
+     * @param statements the statements to execute, in order
+     */
+    private void add(int version, String description, String... statements) {
+        add(version, description, c -> {
+            for(String statement : statements) {
+                try (Statement stmt = c.createStatement()) {
+                    stmt.executeUpdate(statement);
+                }
+            }
+        });
+    }
+
+    /**
+     * Adds a migration
+     * @param version the migration's version, one greater than the previous migration's
+     * @param description a short description of the change
+     * @param change the change to make
+     */
+    private void add(int version, String description, Change change) {
+        if(version != migrations.size() + 1) {
+            throw new IllegalStateException(String.format("Migration %d is out of order", version));
+        }
+        migrations.add(new Migration(version, description, change));
+    }
+
+    /**
+     * Applies every migration newer than the database's current version.
+     * Migration stops at the first failure, so later migrations never run against an
+     * unexpected schema.
+     * @return the version the database is now at
+     */
+    int migrate() {
+        int version;
+        try {
+            createVersionTable();
+            version = getVersion();
+        }
+        catch (SQLException e) {
+            e.printStackTrace();
+            return -1;
+        }
+
+        for(Migration migration : migrations) {
+            if(migration.version <= version) continue;
+
+            try {
+                apply(migration);
+                version = migration.version;
+                System.out.println(String.format("Migrated schema to version %d: %s",
+                        migration.version, migration.description));
+            }
+            catch (SQLException e) {
+                System.err.println(String.format("Schema migration %d failed", migration.version));
+                e.printStackTrace();
+                break;
+            }
+        }
+        return version;
+    }
+
+    /**
+     * Applies the given migration, and records it. This runs in a transaction, but H2 commits each schema
+     * change as it runs, so a migration which fails part way is not rolled back and will run again on the
+     * next start. Every migration must therefore be safe to rerun over its own partial changes, for example
+     * with IF NOT EXISTS, or by skipping values which are already converted as {@link #convertTimes} does.
+     * @param migration the migration to apply
+     */
+    private void apply(Migration migration) throws SQLException {
+        String record = "INSERT INTO "+SCHEMA_VERSION_TABLE+"("+SCHEMA_VERSION+","+SCHEMA_DESCRIPTION+") values(?, ?)";
+
+        conn.setAutoCommit(false);
+        try {
+            migration.change.apply(conn);
+            try (PreparedStatement stmt = conn.prepareStatement(record)) {
+                stmt.setInt(1, migration.version);
+                stmt.setString(2, migration.description);
+                stmt.executeUpdate();
+            }
+            conn.commit();
+        }
+        catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        }
+        finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Creates the schema version table
+     */
+    private void createVersionTable() throws SQLException {
+        String query = "CREATE TABLE IF NOT EXISTS "+SCHEMA_VERSION_TABLE+" ("+SCHEMA_VERSION+" int NOT NULL, " +
+                SCHEMA_DESCRIPTION+" varchar(255) NOT NULL," +
+                SCHEMA_APPLIED+" TIMESTAMP DEFAULT CURRENT_TIMESTAMP NOT NULL," +
+                "PRIMARY KEY("+SCHEMA_VERSION+"))";
+
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate(query);
+        }
+    }
+
+    /**
+     * @return the latest migration applied to the database, or 0 if none have been
+     */
+    private int getVersion() throws SQLException {
+        String query = "SELECT MAX("+SCHEMA_VERSION+") FROM "+SCHEMA_VERSION_TABLE;
+
+        try (Statement stmt = conn.createStatement()) {
+            ResultSet rs = stmt.executeQuery(query);
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    /**
+     * A change to the schema
+     */
+    @FunctionalInterface
+    interface Change {
+        void apply(Connection conn) throws SQLException;
+    }
+
+    private static final class Migration {
+        private final int version;
+        private final String description;
+        private final Change change;
+
+        private Migration(int version, String description, Change change) {
+            this.version = version;
+            this.description = description;
+            this.change = change;
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package server.datastore;
+
+import server.objects.*;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Inverted index over the text of photo descriptions, album descriptions and comments.
+ *
+ * Text is split into lower-case words, and each word maps to the documents containing it and how
+ * often. Documents are re-indexed as they are added or edited, and searches rank the documents
+ * containing any of the query's words with Okapi BM25, so rarer words and shorter texts count for more.
+ *
+ * The index is built from the data store when it is created. Changes are made one at a time, while
+ * searches run alongside them and may see a change half made, which only affects their scores.
+ */
+final class SearchIndex {
+    // BM25 parameters: how quickly repeated words stop counting, and how much long texts are penalised
+    private static final double K1 = 1.2, B = 0.75;
+    private static final int MAX_WORD_LENGTH = 64;
+
+    // A document is identified by its type and id, packed into one key
+    private static final SearchResultType[] TYPES = SearchResultType.values();
+
+    // An indexed photo description, album description or comment
+    private static final class Document {
+        private final String text;
+        private final Map<String, Integer> words;
+        private final int length;
+
+        Document(String text, Map<String, Integer> words, int length) {
+            this.text = text;
+            this.words = words;
+            this.length = length;
+        }
+    }
+
+    private final ConcurrentMap<Long, Document> documents = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, ConcurrentMap<Long, Integer>> postings = new ConcurrentHashMap<>();
+    private volatile long totalLength;
+
+    /**
+     * @param dataStore the store to build the index from
+     */
+    SearchIndex(DataStore dataStore) {
+        rebuild(dataStore);
+    }
+
+    /**
+     * Replaces the index's contents with the text in the data store
+     * @param dataStore the store to read the text from
+     */
+    synchronized void rebuild(DataStore dataStore) {
+        long start = System.currentTimeMillis();
+        clear();
+        for(User user : dataStore.getUsers()) {
+            String name = user.getUsername();
+            for(Album album : dataStore.getAlbums(name)) {
+                put(SearchResultType.ALBUM, album.getAlbumId(), album.getDescription());
+            }
+            for(Photo photo : dataStore.getPhotos(name)) {
+                put(SearchResultType.PHOTO, photo.getId(), photo.getDescription());
+            }
+            for(Comment comment : dataStore.getComments(name)) {
+                put(SearchResultType.COMMENT, comment.getId(), comment.getCommentContents());
+            }
+        }
+        System.out.println(String.format("Indexed %d documents in %dms", documents.size(),
+                System.currentTimeMillis() - start));
+    }
+
+    /**
+     * Indexes the given text, replacing any text previously indexed for the same photo / album / comment
+     * @param type what the text belongs to
+     * @param id the id of the photo / album / comment
+     * @param text the text, or null for none
+     */
+    synchronized void put(SearchResultType type, long id, String text) {
+        remove(type, id);
+        if(text == null) return;
+
+        // Count each word's occurrences
+        Map<String, Integer> words = new HashMap<>();
+        int length = 0;
+        for(String word : tokenize(text)) {
+            words.merge(word, 1, Integer::sum);
+            length++;
+        }
+        if(length == 0) return;
+
+        long key = key(type, id);
+        documents.put(key, new Document(text, words, length));
+        for(Map.Entry<String, Integer> word : words.entrySet()) {
+            postings.computeIfAbsent(word.getKey(), k -> new ConcurrentHashMap<>()).put(key, word.getValue());
+        }
+        totalLength += length;
+    }
+
+    /**
+     * Removes the text of the given photo / album / comment from the index, if present
+     * @param type what the text belongs to
+     * @param id the id of the photo / album / comment
+     */
+    synchronized void remove(SearchResultType type, long id) {
+        long key = key(type, id);
+        Document document = documents.remove(key);
+        if(document == null) return;
+
+        for(String word : document.words.keySet()) {
+            postings.computeIfPresent(word, (k, matches) -> {
+                matches.remove(key);
+                return matches.isEmpty() ? null : matches;
+            });
+        }
+        totalLength -= document.length;
+    }
+
+    /**
+     * Finds the documents containing any of the query's words, best match first
+     * @param query the text to search for
+     * @param offset the number of matches to skip
+     * @param limit the maximum number of matches to return
+     * @return the matches, ranked by score, with ties broken by id, highest first
+     */
+    List<SearchResult> search(String query, int offset, int limit) {
+        int n = documents.size();
+        if(n == 0 || limit <= 0) return new ArrayList<>();
+        double averageLength = Math.max(1.0, (double) totalLength / n);
+
+        // Add up each matching document's score over the distinct words of the query
+        Map<Long, Double> scores = new HashMap<>();
+        for(String word : new LinkedHashSet<>(tokenize(query))) {
+            Map<Long, Integer> matches = postings.get(word);
+            if(matches == null) continue;
+
+            double idf = Math.log(1 + (n - matches.size() + 0.5) / (matches.size() + 0.5));
+            for(Map.Entry<Long, Integer> match : matches.entrySet()) {
+                Document document = documents.get(match.getKey());
+                if(document == null) continue;
+
+                double tf = match.getValue();
+                double norm = K1 * (1 - B + B * document.length / averageLength);
+                scores.merge(match.getKey(), idf * tf * (K1 + 1) / (tf + norm), Double::sum);
+            }
+        }
+
+        // Keep only the best offset + limit, in a heap whose head is the worst of them
+        Comparator<Map.Entry<Long, Double>> ranking = Map.Entry.<Long, Double>comparingByValue()
+                .thenComparing(Map.Entry.comparingByKey());
+        int wanted = offset + limit;
+        PriorityQueue<Map.Entry<Long, Double>> best = new PriorityQueue<>(ranking);
+        for(Map.Entry<Long, Double> score : scores.entrySet()) {
+            best.add(score);
+            if(best.size() > wanted) best.poll();
+        }
+
+        // Drain the heap worst first, then reverse it, and skip the offset
+        List<Map.Entry<Long, Double>> ranked = new ArrayList<>(best.size());
+        while(!best.isEmpty()) ranked.add(best.poll());
+        Collections.reverse(ranked);
+
+        List<SearchResult> results = new ArrayList<>();
+        for(Map.Entry<Long, Double> score : ranked.subList(Math.min(offset, ranked.size()), ranked.size())) {
+            long key = score.getKey();
+            Document document = documents.get(key);
+            if(document != null) results.add(new SearchResult(typeOf(key), idOf(key), document.text, score.getValue()));
+        }
+        return results;
+    }
+
+    synchronized void clear() {
+        documents.clear();
+        postings.clear();
+        totalLength = 0;
+    }
+
+    /**
+     * Splits text into lower-case words of letters and digits
+     * @param text the text to split
+     * @return the words, in order
+     */
+    static List<String> tokenize(String text) {
+        List<String> words = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        for(int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            if(Character.isLetterOrDigit(c)) {
+                word.append(c);
+                continue;
+            }
+            if(word.length() > 0 && word.length() <= MAX_WORD_LENGTH) {
+                words.add(word.toString().toLowerCase(RequestResolver.LOCALE));
+            }
+            word.setLength(0);
+        }
+        return words;
+    }
+
+    private static long key(SearchResultType type, long id) {
+        return id * TYPES.length + type.ordinal();
+    }
+
+    private static SearchResultType typeOf(long key) {
+        return TYPES[(int) (key % TYPES.length)];
+    }
+
+    private static long idOf(long key) {
+        return key / TYPES.length;
+    }
+}
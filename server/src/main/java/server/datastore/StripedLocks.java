@@ -0,0 +1,23 @@
+package server.datastore;
+
+/**
+ * Fixed set of locks shared out between keys by their hash code.
+ * Operations on the same key always use the same lock, while operations
+ * on different keys rarely contend.
+ */
+final class StripedLocks {
+    private final Object[] locks;
+
+    StripedLocks(int stripes) {
+        locks = new Object[stripes];
+        for(int i = 0; i < stripes; i++) locks[i] = new Object();
+    }
+
+    /**
+     * @param key the key to be locked
+     * @return the lock guarding the given key
+     */
+    Object lockFor(Object key) {
+        return locks[(key.hashCode() & Integer.MAX_VALUE) % locks.length];
+    }
+}
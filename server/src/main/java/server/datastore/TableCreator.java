@@ -60,7 +60,7 @@ class TableCreator {
                 ALBUMS_NAME+" varchar(255) NOT NULL," +
                 USERNAME+" varchar(255) NOT NULL," +
                 ALBUMS_DESCRIPTION+" varchar(255) NOT NULL," +
-                ALBUMS_TIME+" varchar(50) NOT NULL," +
+                ALBUMS_TIME+" BIGINT NOT NULL," +
                 "PRIMARY KEY ("+ALBUMS_ID+"), " +
                 "FOREIGN KEY("+USERNAME+") references "+USERS_TABLE+"("+USERNAME+") on delete cascade)";
 
@@ -83,9 +83,13 @@ class TableCreator {
                 PHOTOS_EXT+" varchar(10) NOT NULL," +
                 USERNAME+" varchar(255) NOT NULL," +
                 ALBUMS_ID+" BIGINT NOT NULL," +
-                PHOTOS_CONTENTS+" BLOB NOT NULL," +
-                PHOTOS_TIME+" varchar(50) NOT NULL," +
+                PHOTOS_CONTENTS+" BLOB," +
+                PHOTOS_TIME+" BIGINT NOT NULL," +
                 PHOTOS_DESCRIPTION+" varchar(255) NOT NULL," +
+                PHOTOS_CONTENT_HASH+" varchar(64)," +
+                PHOTOS_CONTENT_LENGTH+" BIGINT," +
+                PHOTOS_CONTENT_DECODED+" boolean DEFAULT FALSE NOT NULL," +
+                LIKE_COUNT+" BIGINT DEFAULT 0 NOT NULL," +
                 "FOREIGN KEY("+USERNAME+") references "+USERS_TABLE+"("+USERNAME+") on delete cascade," +
                 "FOREIGN KEY("+ALBUMS_ID+") references "+ALBUMS_TABLE+"("+ALBUMS_ID+") ON DELETE CASCADE)";
 
@@ -107,8 +111,11 @@ class TableCreator {
                 USERNAME+" varchar(255) NOT NULL," +
                 COMMENTS_CONTENTS+" varchar(255) NOT NULL," +
                 COMMENT_TYPE+" boolean," +
-                COMMENTS_TIME+" varchar(50) NOT NULL," +
+                COMMENTS_TIME+" BIGINT NOT NULL," +
                 REFERENCE_ID+" BIGINT," +
+                LIKE_COUNT+" BIGINT DEFAULT 0 NOT NULL," +
+                COMMENTS_THREAD_PATH+" varchar," +
+                COMMENTS_THREAD_DEPTH+" INT," +
                 "PRIMARY KEY ("+COMMENTS_ID+"), " +
                 "FOREIGN KEY("+USERNAME+") references "+USERS_TABLE+"("+USERNAME+") ON DELETE CASCADE)";
 
@@ -0,0 +1,52 @@
+package server.datastore;
+
+/**
+ * Materialised paths locating comments within their photo's thread.
+ *
+ * A comment's path is the id of the photo it belongs to, followed by the ids of each of its
+ * ancestor comments, written as fixed-width hex and separated by dots. For example, a reply to
+ * comment 7 on photo 42 has the path "000000000000002a.0000000000000007". Every comment below a
+ * given photo or comment shares a path prefix, so a whole thread, or any part of one, is a single
+ * range scan of an index on the path.
+ */
+final class ThreadPaths {
+    private static final char SEPARATOR = '.';
+
+    // Sorts straight after the separator, and before any hex digit
+    private static final char END = '/';
+
+    private ThreadPaths() {}
+
+    /**
+     * @param photoId the id of the photo
+     * @return the path of the photo's top-level comments
+     */
+    static String ofPhoto(long photoId) {
+        return String.format("%016x", photoId);
+    }
+
+    /**
+     * @param path the path of the comment being replied to
+     * @param commentId the id of the comment being replied to
+     * @return the path of the comment's replies
+     */
+    static String below(String path, long commentId) {
+        return path + step(commentId);
+    }
+
+    /**
+     * @param commentId the id of the comment
+     * @return what the comment adds to the end of its own path, to make its replies' paths
+     */
+    static String step(long commentId) {
+        return SEPARATOR + String.format("%016x", commentId);
+    }
+
+    /**
+     * @param prefix the path of a photo's top-level comments, or of a comment's replies
+     * @return the exclusive upper bound of the paths starting with the given one, so of every comment below it
+     */
+    static String end(String prefix) {
+        return prefix + END;
+    }
+}
@@ -0,0 +1,263 @@
+package server.datastore;
+
+import server.datastore.exceptions.InvalidResourceRequestException;
+import server.objects.NewsFeedPage;
+import server.objects.Photo;
+import server.objects.User;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Materialised news feed timelines, holding the positions of the newest photos posted by
+ * the users each user follows.
+ *
+ * New photos are pushed into the timelines of their author's followers as they are
+ * uploaded. Authors with more followers than the pull threshold are never pushed,
+ * as that would mean writing to every one of their followers' timelines for each photo.
+ * Their photos are pulled from the data store when a timeline is read, instead.
+ *
+ * Timelines are built from the data store the first time they are read, and are
+ * rebuilt in the background whenever their user follows or unfollows someone.
+ * Each timeline is bounded, keeping only the newest photos, and only the most recently
+ * read timelines are kept. Timelines are read a page at a time, so a read costs the same
+ * however many photos the followed users have posted. A timeline can't serve pages older
+ * than the photos it kept, which are left to the caller to read some other way.
+ */
+final class TimelineStore {
+    // Timeline settings, overridable through system properties
+    static final String CAPACITY_PROPERTY = "photoshare.timeline.capacity";
+    static final String PULL_THRESHOLD_PROPERTY = "photoshare.timeline.pullThreshold";
+    static final String MAX_TIMELINES_PROPERTY = "photoshare.timeline.maxTimelines";
+    static final int DEFAULT_CAPACITY = 500;
+    static final int DEFAULT_PULL_THRESHOLD = 1000;
+    static final int DEFAULT_MAX_TIMELINES = 10 * 1000;
+
+    // Photos are ordered by time, and then by id among photos posted at the same time, newest first
+    private static final Comparator<FeedCursor> NEWEST_FIRST = Comparator.comparingLong(FeedCursor::getPhotoTime)
+            .thenComparingLong(FeedCursor::getPhotoId).reversed();
+
+    private final DataStore dataStore;
+    private final int capacity;
+    private final long pullThreshold;
+    private final LruCache<String, Timeline> timelines;
+    private final Set<String> pulledAuthors = ConcurrentHashMap.newKeySet();
+
+    // Timelines are rebuilt one at a time, off the request threads
+    private final ExecutorService rebuilds = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "timeline-rebuild");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @param dataStore the store timelines are built from
+     * @param capacity the maximum number of photos in each timeline
+     * @param pullThreshold the number of followers above which an author's photos are pulled
+     * @param maxTimelines the maximum number of timelines to keep
+     */
+    TimelineStore(DataStore dataStore, int capacity, long pullThreshold, int maxTimelines) {
+        this.dataStore = dataStore;
+        this.capacity = capacity;
+        this.pullThreshold = pullThreshold;
+        this.timelines = new LruCache<>("timelines", maxTimelines);
+    }
+
+    /**
+     * Pushes the new photo into the timelines of its author's followers,
+     * unless the author has too many followers
+     * @param author the user who posted the photo
+     * @param photoId the id of the new photo
+     * @param time the time the photo was posted, in milliseconds since the epoch
+     */
+    void photoUploaded(String author, long photoId, long time) {
+        if(isPulled(author)) return;
+
+        // Only timelines already built need the photo. The others will find it when built.
+        FeedCursor position = new FeedCursor(time, photoId);
+        for(User follower : getFollowers(author)) {
+            Timeline timeline = timelines.getIfPresent(follower.getUsername());
+            if(timeline != null) timeline.push(position);
+        }
+    }
+
+    /**
+     * Discards the user's timeline, and rebuilds it in the background
+     * @param username the user who followed or unfollowed someone
+     */
+    void followingChanged(String username) {
+        timelines.invalidate(username);
+        rebuilds.submit(() -> getTimeline(username));
+    }
+
+    /**
+     * Reads a page of a user's timeline. Only a page of pushed photos, and a page of each popular author's
+     * photos, are read, and the pushed photos are looked up all at once.
+     * @param username the user whose timeline to read
+     * @param before the position to read from, or null for the newest photos
+     * @param limit the maximum number of photos to return
+     * @return the newest photos posted by the users the given user follows, newest first,
+     * along with the cursor for the next page, or null if the page reaches past the oldest photo
+     * the timeline kept
+     */
+    NewsFeedPage read(String username, FeedCursor before, int limit) {
+        List<FeedCursor> positions = getTimeline(username).page(before, limit);
+        if(positions == null) return null;
+
+        // Take a page of the pushed photos, and pull a page of each popular author being followed
+        TreeMap<FeedCursor, Photo> candidates = new TreeMap<>(NEWEST_FIRST);
+        for(FeedCursor position : positions) candidates.put(position, null);
+        for(User followed : getFollowing(username)) {
+            if(!pulledAuthors.contains(followed.getUsername())) continue;
+            for(Photo photo : dataStore.getPhotos(followed.getUsername(), before, limit)) {
+                candidates.put(FeedCursor.after(photo), photo);
+            }
+        }
+
+        // Keep the newest of them, and look up the pushed photos among those in one go
+        List<Map.Entry<FeedCursor, Photo>> page = new ArrayList<>(limit);
+        List<Long> pushed = new ArrayList<>();
+        for(Map.Entry<FeedCursor, Photo> candidate : candidates.entrySet()) {
+            if(page.size() == limit) break;
+            page.add(candidate);
+            if(candidate.getValue() == null) pushed.add(candidate.getKey().getPhotoId());
+        }
+        Map<Long, Photo> found = new HashMap<>();
+        if(!pushed.isEmpty()) {
+            for(Photo photo : dataStore.getPhotosById(pushed)) found.put(photo.getId(), photo);
+        }
+
+        // Photos removed since being pushed are skipped
+        List<Photo> photos = new ArrayList<>(page.size());
+        for(Map.Entry<FeedCursor, Photo> entry : page) {
+            Photo photo = entry.getValue() != null ? entry.getValue() : found.get(entry.getKey().getPhotoId());
+            if(photo != null) photos.add(photo);
+        }
+
+        // There may be more photos if the page was filled
+        String next = page.size() == limit ? page.get(page.size() - 1).getKey().encode() : null;
+        return new NewsFeedPage(photos, next);
+    }
+
+    /**
+     * Empties every timeline
+     */
+    void clear() {
+        timelines.invalidateAll();
+        pulledAuthors.clear();
+    }
+
+    /**
+     * @param username the user whose timeline to get
+     * @return the user's timeline, built if it wasn't already
+     */
+    private Timeline getTimeline(String username) {
+        Timeline timeline = timelines.computeIfAbsent(username, k -> new Timeline());
+        timeline.build(username);
+        return timeline;
+    }
+
+    /**
+     * @param author the user who posted the photos
+     * @return true if the given author's photos are pulled, rather than pushed
+     */
+    private boolean isPulled(String author) {
+        if(pulledAuthors.contains(author)) return true;
+
+        // Once pulled, an author stays pulled, so their photos are never in two places
+        if(dataStore.countFollowers(author) > pullThreshold) {
+            pulledAuthors.add(author);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param username the given user
+     * @return the users the given user follows
+     */
+    private List<User> getFollowing(String username) {
+        try {
+            return dataStore.getFollowing(username);
+        }
+        catch (InvalidResourceRequestException e) {
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * @param author the given user
+     * @return the users following the given user
+     */
+    private List<User> getFollowers(String author) {
+        try {
+            return dataStore.getFollowers(author);
+        }
+        catch (InvalidResourceRequestException e) {
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * The positions of the newest photos pushed to one user, newest first
+     */
+    private final class Timeline {
+        private final TreeSet<FeedCursor> positions = new TreeSet<>(NEWEST_FIRST);
+
+        // Whether any photo has been dropped, so photos older than those kept may be missing
+        private boolean built, truncated;
+
+        /**
+         * Fills the timeline with the newest photos of each pushed author the user follows,
+         * unless that has already been done. Photos pushed meanwhile are kept.
+         * @param username the user whose timeline this is
+         */
+        synchronized void build(String username) {
+            if(built) return;
+
+            for(User followed : getFollowing(username)) {
+                if(isPulled(followed.getUsername())) continue;
+                for(Photo photo : dataStore.getPhotos(followed.getUsername(), null, capacity)) {
+                    add(FeedCursor.after(photo));
+                }
+            }
+            built = true;
+        }
+
+        /**
+         * @param position the position of the new photo
+         */
+        synchronized void push(FeedCursor position) {
+            add(position);
+        }
+
+        /**
+         * @param before the position to read from, or null for the newest photos
+         * @param limit the maximum number of positions to return
+         * @return the positions of the newest photos older than the given position, newest first,
+         * or null if the page runs past the oldest position kept after others were dropped
+         */
+        synchronized List<FeedCursor> page(FeedCursor before, int limit) {
+            List<FeedCursor> page = new ArrayList<>(Math.min(limit, positions.size()));
+            for(FeedCursor position : before == null ? positions : positions.tailSet(before, false)) {
+                if(page.size() == limit) break;
+                page.add(position);
+            }
+            return page.size() < limit && truncated ? null : page;
+        }
+
+        /**
+         * Adds the given position, dropping the oldest once over capacity
+         * @param position the position to add
+         */
+        private void add(FeedCursor position) {
+            positions.add(position);
+            if(positions.size() > capacity) {
+                positions.pollLast();
+                truncated = true;
+            }
+        }
+    }
+}
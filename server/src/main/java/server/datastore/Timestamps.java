@@ -0,0 +1,34 @@
+package server.datastore;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Conversions between the date strings clients send and show, such as "2018/03/01 12:00:00",
+ * and the epoch milliseconds albums, photos and comments are stored and queried with.
+ * Date strings are in the server's time zone.
+ */
+final class Timestamps {
+    private static final DateTimeFormatter FORMAT = DateTimeFormatter.ofPattern("yyyy/MM/dd HH:mm:ss");
+
+    private Timestamps() {}
+
+    /**
+     * @param date the formatted date string
+     * @return the date in milliseconds since the epoch
+     * @throws java.time.format.DateTimeParseException if the date is malformed
+     */
+    static long parse(String date) {
+        return LocalDateTime.parse(date, FORMAT).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    /**
+     * @param time the date in milliseconds since the epoch
+     * @return the formatted date string
+     */
+    static String format(long time) {
+        return FORMAT.format(Instant.ofEpochMilli(time).atZone(ZoneId.systemDefault()));
+    }
+}
@@ -0,0 +1,77 @@
+package server.datastore;
+
+import server.objects.User;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Sorted index of usernames, for finding the users whose names start with a prefix.
+ *
+ * Names are ordered case-insensitively, so the matches for a prefix are one contiguous range,
+ * found with a single seek. The index is built from the data store when it is created, and is
+ * kept up to date as users are added.
+ */
+final class UsernameIndex {
+    // Separates the folded name from the name itself, so names differing only in case get their own keys
+    private static final char SEPARATOR = '\0';
+
+    private final DataStore dataStore;
+
+    // Users keyed by their folded name then their name, without their passwords
+    private final ConcurrentSkipListMap<String, User> users = new ConcurrentSkipListMap<>();
+
+    /**
+     * @param dataStore the store to build the index from
+     */
+    UsernameIndex(DataStore dataStore) {
+        this.dataStore = dataStore;
+        rebuild();
+    }
+
+    /**
+     * Replaces the index's contents with the users in the data store
+     */
+    void rebuild() {
+        long start = System.currentTimeMillis();
+        users.clear();
+        for(User user : dataStore.getUsers()) add(user.getUsername(), user.isAdmin());
+        System.out.println(String.format("Indexed %d usernames in %dms", users.size(),
+                System.currentTimeMillis() - start));
+    }
+
+    /**
+     * @param username the new user's name
+     * @param admin whether the new user is an admin
+     */
+    void add(String username, boolean admin) {
+        User user = new User(username, null);
+        user.setAdmin(admin);
+        users.put(fold(username) + SEPARATOR + username, user);
+    }
+
+    /**
+     * @param prefix the start of the names to find, in any case
+     * @param limit the maximum number of users to return
+     * @return the users whose names start with the prefix, in alphabetical order ignoring case
+     */
+    List<User> search(String prefix, int limit) {
+        String folded = fold(prefix);
+        List<User> found = new ArrayList<>(Math.min(limit, 16));
+        for(Map.Entry<String, User> entry : users.tailMap(folded).entrySet()) {
+            if(found.size() >= limit || !entry.getKey().startsWith(folded)) break;
+            found.add(entry.getValue());
+        }
+        return found;
+    }
+
+    void clear() {
+        users.clear();
+    }
+
+    private static String fold(String name) {
+        return name.toLowerCase(RequestResolver.LOCALE);
+    }
+}
@@ -2,9 +2,6 @@ package server.objects;
 
 import server.requests.AddCommentRequest;
 
-import java.util.ArrayList;
-import java.util.List;
-
 /**
  * Class representing a comment on either a photo / another comment
  */
@@ -19,25 +16,41 @@ public class Comment implements NotifiableEvent{
     private final long referenceId;
     private final EventType eventType;
 
-    private List<String> votes;
+    // Likes, and whether the user viewing this comment is among them
+    private final long likeCount;
+    private final boolean likedByMe;
 
     public Comment(long id, String author, String commentContents, long referenceId, EventType eventType,
-                   List<String> commentVotes, String time) {
+                   long likeCount, String time) {
+        this(id, author, commentContents, referenceId, eventType, likeCount, false, time);
+    }
+
+    public Comment(long id, String author, AddCommentRequest request, String date) {
+        this(id, author, request.getCommentContents(), request.getReferenceId(),
+                request.getEventType(), 0, date);
+    }
+
+    private Comment(long id, String author, String commentContents, long referenceId, EventType eventType,
+                    long likeCount, boolean likedByMe, String time) {
         // Comment information
         this.author = author;
         this.commentContents = commentContents;
         this.commentTime = time;
         this.id = id;
-        this.votes = commentVotes;
+        this.likeCount = likeCount;
+        this.likedByMe = likedByMe;
 
         // Reference information
         this.referenceId = referenceId;
         this.eventType = eventType;
     }
 
-    public Comment(long id, String author, AddCommentRequest request, String date) {
-        this(id, author, request.getCommentContents(), request.getReferenceId(),
-                request.getEventType(), new ArrayList<>(), date);
+    /**
+     * @param likedByMe whether the user viewing this comment has liked it
+     * @return a copy of this comment, for the given viewer
+     */
+    public Comment withLikedByMe(boolean likedByMe) {
+        return new Comment(id, author, commentContents, referenceId, eventType, likeCount, likedByMe, commentTime);
     }
 
     /**
@@ -95,9 +108,16 @@ public class Comment implements NotifiableEvent{
     }
 
     /**
-     * @return the users who upvoted  this comment
+     * @return the number of users who liked this comment
+     */
+    public long getLikeCount() {
+        return likeCount;
+    }
+
+    /**
+     * @return whether the user viewing this comment has liked it
      */
-    public List<String> getLikes() {
-        return votes;
+    public boolean isLikedByMe() {
+        return likedByMe;
     }
 }
@@ -0,0 +1,30 @@
+package server.objects;
+
+import java.util.List;
+
+/**
+ * Class representing a comment, along with its replies and theirs, nested to any depth.
+ */
+public final class CommentThread {
+    private final Comment comment;
+    private final List<CommentThread> replies;
+
+    public CommentThread(Comment comment, List<CommentThread> replies) {
+        this.comment = comment;
+        this.replies = replies;
+    }
+
+    /**
+     * @return the comment
+     */
+    public Comment getComment() {
+        return comment;
+    }
+
+    /**
+     * @return the replies to the comment, oldest first, each with its own replies
+     */
+    public List<CommentThread> getReplies() {
+        return replies;
+    }
+}
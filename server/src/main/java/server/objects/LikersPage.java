@@ -0,0 +1,30 @@
+package server.objects;
+
+import java.util.List;
+
+/**
+ * Class representing one page of the users who liked a photo or comment.
+ */
+public final class LikersPage {
+    private final List<String> likers;
+    private final String nextCursor;
+
+    public LikersPage(List<String> likers, String nextCursor) {
+        this.likers = likers;
+        this.nextCursor = nextCursor;
+    }
+
+    /**
+     * @return the names of the users on this page, in alphabetical order
+     */
+    public List<String> getLikers() {
+        return likers;
+    }
+
+    /**
+     * @return the cursor to request the next page with, or null if this is the last page
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+}
@@ -0,0 +1,30 @@
+package server.objects;
+
+import java.util.List;
+
+/**
+ * Class representing one page of a user's news feed.
+ */
+public final class NewsFeedPage {
+    private final List<Photo> photos;
+    private final String nextCursor;
+
+    public NewsFeedPage(List<Photo> photos, String nextCursor) {
+        this.photos = photos;
+        this.nextCursor = nextCursor;
+    }
+
+    /**
+     * @return the photos on this page, newest first
+     */
+    public List<Photo> getPhotos() {
+        return photos;
+    }
+
+    /**
+     * @return the cursor to request the next page with, or null if this is the last page
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+}
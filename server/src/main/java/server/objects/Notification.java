@@ -7,6 +7,9 @@ package server.objects;
  */
 public final class Notification {
 
+    // The notification's own id, which increases with each new notification
+    private final long id;
+
     // The id of the new comment or follow event which generated the notification
     private final long contentId;
 
@@ -18,14 +21,22 @@ public final class Notification {
     private final String author;
     private final String notifiedUser;
 
-    public Notification(long contentId, String notifiedUser,
+    public Notification(long id, long contentId, String notifiedUser,
                         String author, EventType type) {
+        this.id = id;
         this.contentId = contentId;
         this.notifiedUser = notifiedUser;
         this.author = author;
         eventType = type;
     }
 
+    /**
+     * @return the id of the notification, which can be used to mark it and all earlier ones as read
+     */
+    public long getId() {
+        return id;
+    }
+
     /**
      * @return The id of the new comment which generated the notification
      */
@@ -1,8 +1,5 @@
 package server.objects;
 
-
-import java.util.List;
-
 /**
  * Class representing an uploaded photo
  */
@@ -13,21 +10,43 @@ public final class Photo {
     private final String photoName;
     private final String photoTime;
     private final long id, albumId;
+
+    // The exact time the photo was created, in milliseconds since the epoch. Cursors are built from this rather
+    // than the formatted time, which is ambiguous when clocks go back. Only known on the server.
+    private final transient long photoTimeMillis;
     private final String description;
 
-    private List<String> votes;
+    // Likes, and whether the user viewing this photo is among them
+    private final long likeCount;
+    private final boolean likedByMe;
 
     public Photo(String authorName, String photoName, String ext, String description, long id, long albumId,
-                 List<String> photoRatings, String photoTime) {
+                 long likeCount, String photoTime, long photoTimeMillis) {
+        this(authorName, photoName, ext, description, id, albumId, likeCount, false, photoTime, photoTimeMillis);
+    }
+
+    private Photo(String authorName, String photoName, String ext, String description, long id, long albumId,
+                  long likeCount, boolean likedByMe, String photoTime, long photoTimeMillis) {
         this.authorName = authorName;
         this.photoName = photoName;
         this.photoTime = photoTime;
+        this.photoTimeMillis = photoTimeMillis;
         this.ext = ext;
         this.description = description;
 
         this.albumId = albumId;
         this.id = id;
-        votes = photoRatings;
+        this.likeCount = likeCount;
+        this.likedByMe = likedByMe;
+    }
+
+    /**
+     * @param likedByMe whether the user viewing this photo has liked it
+     * @return a copy of this photo, for the given viewer
+     */
+    public Photo withLikedByMe(boolean likedByMe) {
+        return new Photo(authorName, photoName, ext, description, id, albumId, likeCount, likedByMe, photoTime,
+                photoTimeMillis);
     }
 
     /**
@@ -44,6 +63,13 @@ public final class Photo {
         return photoTime;
     }
 
+    /**
+     * @return the time this photo was created, in milliseconds since the epoch
+     */
+    public long getPhotoTimeMillis() {
+        return photoTimeMillis;
+    }
+
     /**
      * @return the photo's extension
      */
@@ -74,10 +100,17 @@ public final class Photo {
 
 
     /**
-     * @return the users who upvoted  this comment
+     * @return the number of users who liked this photo
+     */
+    public long getLikeCount() {
+        return likeCount;
+    }
+
+    /**
+     * @return whether the user viewing this photo has liked it
      */
-    public List<String> getLikes() {
-        return votes;
+    public boolean isLikedByMe() {
+        return likedByMe;
     }
 
     /**
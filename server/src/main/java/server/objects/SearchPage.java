@@ -0,0 +1,30 @@
+package server.objects;
+
+import java.util.List;
+
+/**
+ * Class representing one page of the results of a full-text search.
+ */
+public final class SearchPage {
+    private final List<SearchResult> results;
+    private final String nextCursor;
+
+    public SearchPage(List<SearchResult> results, String nextCursor) {
+        this.results = results;
+        this.nextCursor = nextCursor;
+    }
+
+    /**
+     * @return the results on this page, best match first
+     */
+    public List<SearchResult> getResults() {
+        return results;
+    }
+
+    /**
+     * @return the cursor to request the next page with, or null if this is the last page
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+}
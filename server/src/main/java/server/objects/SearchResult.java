@@ -0,0 +1,46 @@
+package server.objects;
+
+/**
+ * Class representing one match of a full-text search.
+ */
+public final class SearchResult {
+    private final SearchResultType type;
+    private final long id;
+    private final String text;
+    private final double score;
+
+    public SearchResult(SearchResultType type, long id, String text, double score) {
+        this.type = type;
+        this.id = id;
+        this.text = text;
+        this.score = score;
+    }
+
+    /**
+     * @return whether the match is a photo's description, an album's description or a comment
+     */
+    public SearchResultType getType() {
+        return type;
+    }
+
+    /**
+     * @return the id of the photo, album or comment
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * @return the text which matched
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * @return how well the text matched the query. Higher is better.
+     */
+    public double getScore() {
+        return score;
+    }
+}
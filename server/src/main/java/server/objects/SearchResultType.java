@@ -0,0 +1,8 @@
+package server.objects;
+
+/**
+ * Enum representing the kind of content a search result refers to
+ */
+public enum SearchResultType {
+    PHOTO, ALBUM, COMMENT;
+}
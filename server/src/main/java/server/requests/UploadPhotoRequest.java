@@ -1,11 +1,17 @@
 package server.requests;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Base64;
 
 /**
  * Request wrapper for uploading a photo
  */
 public final class UploadPhotoRequest {
+    // How far into encoded contents to look for a data URL prefix
+    private static final int DATA_URL_PEEK = 256;
 
     private final String encodedPhotoContents;
     private final String photoName;
@@ -23,6 +29,18 @@ public final class UploadPhotoRequest {
         encodedPhotoContents = encodeContents(photoContents);
     }
 
+    /**
+     * Creates a request carrying only the photo's details, for uploads
+     * whose raw contents are sent separately as the request body.
+     */
+    public UploadPhotoRequest(String photoName, String extension, String description, long albumId) {
+        this.photoName = photoName;
+        this.extension = extension;
+        this.albumId = albumId;
+        this.description = description;
+        this.encodedPhotoContents = null;
+    }
+
     /**
      * Static method encoding byte[] into base64 string
      *
@@ -47,6 +65,30 @@ public final class UploadPhotoRequest {
         return Base64.getDecoder().decode(photoContents);
     }
 
+    /**
+     * Decodes a stream of base64 encoded photo contents as it is read,
+     * so the encoded contents never need to be held in memory at once.
+     *
+     * @param photoContents the base64 encoded contents, possibly as a data URL
+     * @return a stream of the decoded contents
+     * @throws IOException if the start of the stream couldn't be read
+     */
+    public static InputStream decodeContents(InputStream photoContents) throws IOException {
+        // Peek at the start of the contents, to check for a data URL prefix
+        byte[] head = new byte[DATA_URL_PEEK];
+        PushbackInputStream in = new PushbackInputStream(photoContents, DATA_URL_PEEK);
+        int read = 0, n;
+        while(read < head.length && (n = in.read(head, read, head.length - read)) != -1) read += n;
+
+        // Attempt to remove unnecessary info
+        String start = new String(head, 0, read, StandardCharsets.US_ASCII);
+        int prefix = start.startsWith("data:") ? start.indexOf("base64,") : -1;
+        int skip = prefix == -1 ? 0 : prefix + "base64,".length();
+        in.unread(head, skip, read - skip);
+
+        return Base64.getDecoder().wrap(in);
+    }
+
     /**
      * @return the base64 encoded photo contents
      */
@@ -0,0 +1,106 @@
+package server.restApi;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * One inclusive range of bytes requested through an HTTP Range header.
+ */
+final class ByteRange {
+    // More ranges than this and the header is ignored, so a request can't ask for the same bytes many times over
+    static final int MAX_RANGES = 16;
+    private static final String UNIT = "bytes=";
+
+    private final long start, end;
+
+    ByteRange(long start, long end) {
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * @return the offset of the first byte in the range
+     */
+    long getStart() {
+        return start;
+    }
+
+    /**
+     * @return the offset of the last byte in the range
+     */
+    long getEnd() {
+        return end;
+    }
+
+    /**
+     * @return the number of bytes in the range
+     */
+    long getLength() {
+        return end - start + 1;
+    }
+
+    /**
+     * @param total the length of the whole contents
+     * @return the value of a Content-Range header describing this range
+     */
+    String toContentRange(long total) {
+        return String.format("bytes %d-%d/%d", start, end, total);
+    }
+
+    /**
+     * Parses the ranges requested in a Range header, such as 'bytes=0-99,200-,-50'. Ranges outside the contents
+     * are left out, the rest are cut off at the end of the contents, and overlapping or adjacent ranges are merged.
+     * @param header the header's value
+     * @param length the length of the contents the ranges are of
+     * @return the requested ranges in order, which is empty if none of them are satisfiable, or null if the header
+     * is malformed or asks for too many ranges, in which case it should be ignored
+     */
+    static List<ByteRange> parse(String header, long length) {
+        if(header == null || !header.toLowerCase(Locale.ROOT).startsWith(UNIT)) return null;
+        String[] specs = header.substring(UNIT.length()).split(",");
+        if(specs.length > MAX_RANGES) return null;
+
+        // Parse each range, leaving out those beyond the end of the contents
+        List<ByteRange> ranges = new ArrayList<>();
+        for(String spec : specs) {
+            spec = spec.trim();
+            int dash = spec.indexOf('-');
+            if(dash < 0) return null;
+
+            try {
+                String first = spec.substring(0, dash).trim(), last = spec.substring(dash + 1).trim();
+
+                // The last n bytes
+                if(first.isEmpty()) {
+                    long suffix = Long.parseLong(last);
+                    if(suffix < 0) return null;
+                    if(suffix > 0 && length > 0) ranges.add(new ByteRange(Math.max(0, length - suffix), length - 1));
+                    continue;
+                }
+
+                // From a given byte to another, or to the end
+                long start = Long.parseLong(first);
+                long end = last.isEmpty() ? Long.MAX_VALUE : Long.parseLong(last);
+                if(start < 0 || end < start) return null;
+                if(start < length) ranges.add(new ByteRange(start, Math.min(end, length - 1)));
+            }
+            catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        // Merge ranges which overlap or touch
+        ranges.sort(Comparator.comparingLong(ByteRange::getStart));
+        List<ByteRange> merged = new ArrayList<>();
+        for(ByteRange range : ranges) {
+            ByteRange previous = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+            if(previous != null && range.start <= previous.end + 1) {
+                merged.set(merged.size() - 1, new ByteRange(previous.start, Math.max(previous.end, range.end)));
+            }
+            else merged.add(range);
+        }
+        return merged;
+    }
+}
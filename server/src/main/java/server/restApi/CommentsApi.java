@@ -2,6 +2,7 @@ package server.restApi;
 
 import com.google.gson.Gson;
 import server.Resources;
+import server.datastore.RequestResolver;
 import server.datastore.exceptions.DoesNotOwnCommentException;
 import server.requests.*;
 import server.objects.*;
@@ -113,12 +114,17 @@ public class CommentsApi {
 
     /**
      * @param user the provided username in the URL
+     * @param since if given, only comments made at or after this time, in milliseconds since the epoch
+     * @param until if given, only comments made before this time, in milliseconds since the epoch
      * @return a parsed list of all comments from the requested user in the system
      */
     @GET
     @Path("{username}")
     @Produces(MediaType.APPLICATION_JSON)
-    public Response getAllUserComments(@PathParam("username") String user, @Context HttpHeaders headers) {
+    public Response getAllUserComments(@PathParam("username") String user,
+                                       @QueryParam(Resources.SINCE_PARAM) Long since,
+                                       @QueryParam(Resources.UNTIL_PARAM) Long until,
+                                       @Context HttpHeaders headers) {
         try {
             // Retrieve provided auth info
             String[] authHeader = headers.getHeaderString(HttpHeaders.AUTHORIZATION).split(":");
@@ -128,7 +134,7 @@ public class CommentsApi {
 
             // Retrieve list retrieved from data manipulation layer
             // and convert comments into JSON array
-            List<Comment> comments = RESOLVER.getComments(user);
+            List<Comment> comments = RESOLVER.getComments(user, since, until);
 
             // Find all top-level replies for each comment, and compose them into CommentResult objects
             // This is converted into JSON and returned
@@ -136,18 +142,25 @@ public class CommentsApi {
             return Response.ok(gson.toJson(result)).build();
 
         }
-        catch(InvalidResourceRequestException e) { return Response.status(Response.Status.BAD_REQUEST).build(); }
+        catch(InvalidResourceRequestException | IllegalArgumentException e) {
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
         catch(UnauthorisedException e) { return Response.status(Response.Status.UNAUTHORIZED).build();}
     }
 
     /**
      * @param photoId the provided photoId in the URL
+     * @param since if given, only comments made at or after this time, in milliseconds since the epoch
+     * @param until if given, only comments made before this time, in milliseconds since the epoch
      * @return a parsed list of all comments on the requested photo in the system
      */
     @GET
     @Path(Resources.PHOTOS_PATH + "/{photoId}")
     @Produces(MediaType.APPLICATION_JSON)
-    public Response getTopLevelPhotoComments(@PathParam("photoId") long photoId, @Context HttpHeaders headers) {
+    public Response getTopLevelPhotoComments(@PathParam("photoId") long photoId,
+                                             @QueryParam(Resources.SINCE_PARAM) Long since,
+                                             @QueryParam(Resources.UNTIL_PARAM) Long until,
+                                             @Context HttpHeaders headers) {
         // Retrieve provided auth info
         try {
             String[] authHeader = headers.getHeaderString(HttpHeaders.AUTHORIZATION).split(":");
@@ -157,7 +170,7 @@ public class CommentsApi {
 
             // Retrieve list retrieved from data manipulation layer
             // and convert comments into JSON array
-            List<Comment> comments = RESOLVER.getPhotoComments(sender, photoId);
+            List<Comment> comments = RESOLVER.getPhotoComments(sender, photoId, since, until);
 
             // Find all top-level replies for each comment, and compose them into CommentResult objects
             // This is converted into JSON and returned
@@ -165,7 +178,9 @@ public class CommentsApi {
             return Response.ok(gson.toJson(result)).build();
 
         }
-        catch(InvalidResourceRequestException e) { return Response.status(Response.Status.BAD_REQUEST).build(); }
+        catch(InvalidResourceRequestException | IllegalArgumentException e) {
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
         catch(UnauthorisedException e) { return Response.status(Response.Status.UNAUTHORIZED).build();}
     }
 
@@ -198,6 +213,62 @@ public class CommentsApi {
         catch(UnauthorisedException e) { return Response.status(Response.Status.UNAUTHORIZED).build();}
     }
 
+    /**
+     * @param photoId the provided photoId in the URL
+     * @param depth if given, the deepest level of replies to include, where 0 is only the top-level comments
+     * @return the photo's whole comment thread, with replies nested below their comments
+     */
+    @GET
+    @Path(Resources.THREAD + Resources.PHOTOS_PATH + "/{photoId}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getPhotoCommentThread(@PathParam("photoId") long photoId,
+                                          @QueryParam(Resources.DEPTH_PARAM) Integer depth,
+                                          @Context HttpHeaders headers) {
+        // Retrieve provided auth info
+        try {
+            String[] authHeader = headers.getHeaderString(HttpHeaders.AUTHORIZATION).split(":");
+            String sender = authHeader[0], apiKey = authHeader[1];
+            String date = headers.getHeaderString(Resources.DATE_HEADER);
+            RESOLVER.verifyAuth(sender, apiKey, date);
+
+            // Retrieve the nested thread, and convert it into JSON
+            List<CommentThread> thread = RESOLVER.getCommentThread(sender, photoId, depth);
+            return Response.ok(gson.toJson(thread)).build();
+        }
+        catch(InvalidResourceRequestException | IllegalArgumentException e) {
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
+        catch(UnauthorisedException e) { return Response.status(Response.Status.UNAUTHORIZED).build();}
+    }
+
+    /**
+     * @param commentId the provided commentId in the URL
+     * @param depth if given, the deepest level of replies to include, where 0 is only the comment itself
+     * @return the comment, with its replies nested below it
+     */
+    @GET
+    @Path(Resources.THREAD + "/{commentId}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getCommentThread(@PathParam("commentId") long commentId,
+                                     @QueryParam(Resources.DEPTH_PARAM) Integer depth,
+                                     @Context HttpHeaders headers) {
+        // Retrieve provided auth info
+        try {
+            String[] authHeader = headers.getHeaderString(HttpHeaders.AUTHORIZATION).split(":");
+            String sender = authHeader[0], apiKey = authHeader[1];
+            String date = headers.getHeaderString(Resources.DATE_HEADER);
+            RESOLVER.verifyAuth(sender, apiKey, date);
+
+            // Retrieve the nested thread, and convert it into JSON
+            CommentThread thread = RESOLVER.getReplyThread(sender, commentId, depth);
+            return Response.ok(gson.toJson(thread)).build();
+        }
+        catch(InvalidResourceRequestException | IllegalArgumentException e) {
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
+        catch(UnauthorisedException e) { return Response.status(Response.Status.UNAUTHORIZED).build();}
+    }
+
     /**
      * Registers an upvote from the authorised user on the provided commentId, if it exists.
      * @param commentId the provided commentId in the URL
@@ -250,4 +321,36 @@ public class CommentsApi {
         catch(InvalidResourceRequestException e) { return Response.status(Response.Status.BAD_REQUEST).build(); }
         catch(UnauthorisedException e) { return Response.status(Response.Status.UNAUTHORIZED).build();}
     }
+
+    /**
+     * @param commentId the provided commentId in the URL
+     * @param limit the maximum number of users to return
+     * @param after the cursor returned with the previous page, if any
+     * @return a page of the users who liked the comment, in alphabetical order
+     */
+    @GET
+    @Path(Resources.LIKERS + "/{commentId}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getLikers(@PathParam("commentId") long commentId,
+                              @QueryParam(Resources.LIMIT_PARAM) Integer limit,
+                              @QueryParam(Resources.AFTER_PARAM) String after,
+                              @Context HttpHeaders headers) {
+        // Retrieve provided auth info
+        try {
+            String[] authHeader = headers.getHeaderString(HttpHeaders.AUTHORIZATION).split(":");
+            String sender = authHeader[0], apiKey = authHeader[1];
+            String date = headers.getHeaderString(Resources.DATE_HEADER);
+            RESOLVER.verifyAuth(sender, apiKey, date);
+
+            // Retrieve the page of users
+            LikersPage page = RESOLVER.getCommentLikers(commentId,
+                    limit != null ? limit : RequestResolver.DEFAULT_LIKERS_PAGE, after);
+            return Response.ok(gson.toJson(page)).build();
+
+        }
+        catch(InvalidResourceRequestException | IllegalArgumentException e) {
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
+        catch(UnauthorisedException e) { return Response.status(Response.Status.UNAUTHORIZED).build();}
+    }
 }
\ No newline at end of file
@@ -4,12 +4,15 @@ import com.google.gson.Gson;
 import server.Resources;
 import server.datastore.exceptions.InvalidResourceRequestException;
 import server.datastore.exceptions.UnauthorisedException;
+import server.datastore.RequestResolver;
+import server.objects.NewsFeedPage;
 import server.objects.Photo;
 
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
@@ -28,12 +31,18 @@ public final class NewsFeedAPI {
     private final Gson gson = new Gson();
 
     /**
-     * @return all the photos posted by the people a user is following
+     * @return all the photos posted by the people a user is following, or with the timeline
+     * mode, the newest photos from the user's materialised timeline. Given a limit or cursor,
+     * a single page of photos is returned, newest first, in either mode.
      */
     @GET
     @Path("/{username}")
     @Produces(MediaType.APPLICATION_JSON)
-    public Response getUsers(@PathParam("username") String username, @Context HttpHeaders headers) {
+    public Response getUsers(@PathParam("username") String username,
+                             @QueryParam(Resources.NEWS_FEED_MODE_PARAM) String mode,
+                             @QueryParam(Resources.LIMIT_PARAM) Integer limit,
+                             @QueryParam(Resources.BEFORE_PARAM) String before,
+                             @Context HttpHeaders headers) {
         try {
             // Retrieve provided auth info
             String authHeader = headers.getHeaderString(HttpHeaders.AUTHORIZATION);
@@ -42,15 +51,25 @@ public final class NewsFeedAPI {
             String date = headers.getHeaderString(Resources.DATE_HEADER);
             RESOLVER.verifyAuth(sender, apiKey, date);
 
-            // Processing Request
-            List<Photo> photos = RESOLVER.getNewsFeed(username);
+            // Processing Request, one page at a time if asked for
+            boolean timeline = mode != null && mode.equals(Resources.NEWS_FEED_TIMELINE_MODE);
+            if(mode != null && !timeline) return Response.status(Response.Status.BAD_REQUEST).build();
+            if(limit != null || before != null) {
+                int pageSize = limit != null ? limit : RequestResolver.DEFAULT_NEWS_FEED_PAGE;
+                NewsFeedPage page = timeline ? RESOLVER.getNewsFeedTimeline(username, pageSize, before)
+                        : RESOLVER.getNewsFeed(username, pageSize, before);
+                return Response.ok(gson.toJson(page)).build();
+            }
+
+            List<Photo> photos = timeline ? RESOLVER.getNewsFeedTimeline(username) : RESOLVER.getNewsFeed(username);
+
             return Response.ok(gson.toJson(photos)).build();
 
         }
         catch(UnauthorisedException e) {
 
             return Response.status(Response.Status.UNAUTHORIZED).build();
-        } catch (InvalidResourceRequestException e) {
+        } catch (InvalidResourceRequestException | IllegalArgumentException e) {
 
             e.printStackTrace();
             return Response.status(Response.Status.BAD_REQUEST).build();
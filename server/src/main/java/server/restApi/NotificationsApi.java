@@ -2,6 +2,7 @@ package server.restApi;
 
 import com.google.gson.Gson;
 import server.Resources;
+import server.datastore.NotificationStreams;
 import server.datastore.exceptions.InvalidResourceRequestException;
 import server.datastore.exceptions.UnauthorisedException;
 import server.objects.Notification;
@@ -11,6 +12,9 @@ import javax.ws.rs.core.Context;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.sse.OutboundSseEvent;
+import javax.ws.rs.sse.Sse;
+import javax.ws.rs.sse.SseEventSink;
 import java.util.List;
 
 import static server.ServerMain.RESOLVER;
@@ -24,6 +28,9 @@ public class NotificationsApi {
     // Json serialiser and deserialiser
     private final Gson gson = new Gson();
 
+    // How long clients refused a stream should wait before trying again, in seconds
+    private static final long STREAM_RETRY_AFTER = 30;
+
     /**
      * Grabs notifications for the given user
      * @return a parsed list of all users in the system
@@ -48,4 +55,100 @@ public class NotificationsApi {
         catch(InvalidResourceRequestException e) { return Response.status(Response.Status.BAD_REQUEST).build(); }
         catch(UnauthorisedException e) { return Response.status(Response.Status.UNAUTHORIZED).build();}
     }
-}
\ No newline at end of file
+
+    /**
+     * Marks the authorised user's notifications as read, up to and including the given one
+     * @param notificationId the id of the last notification which was read
+     * @param headers the headers of the http request.
+     * @return a response indicating success / failure
+     */
+    @PUT
+    @Path(Resources.READ + "/{notificationId}")
+    public Response markRead(@PathParam("notificationId") long notificationId, @Context HttpHeaders headers) {
+        try {
+            // Retrieve provided auth info
+            String[] authHeader = headers.getHeaderString(HttpHeaders.AUTHORIZATION).split(":");
+            String sender = authHeader[0], apiKey = authHeader[1];
+            String date = headers.getHeaderString(Resources.DATE_HEADER);
+            RESOLVER.verifyAuth(sender, apiKey, date);
+
+            // Remove the notifications up to the given one
+            RESOLVER.markNotificationsRead(sender, notificationId);
+            return Response.noContent().build();
+        }
+        catch(InvalidResourceRequestException e) { return Response.status(Response.Status.BAD_REQUEST).build(); }
+        catch(UnauthorisedException e) { return Response.status(Response.Status.UNAUTHORIZED).build();}
+    }
+
+    /**
+     * Opens a stream of server-sent events, pushing each new notification for the authorised user as it happens.
+     * If the client sends a Last-Event-ID, the notifications it missed since then are sent first.
+     * @param lastEventId the id of the last notification the client received, if it is reconnecting
+     * @param headers the headers of the http request.
+     * @param sink the stream to send events down
+     * @param sse the factory for events
+     */
+    @GET
+    @Path(Resources.STREAM)
+    @Produces(MediaType.SERVER_SENT_EVENTS)
+    public void streamNotifications(@HeaderParam(HttpHeaders.LAST_EVENT_ID_HEADER) String lastEventId,
+                                    @Context HttpHeaders headers, @Context SseEventSink sink, @Context Sse sse) {
+        try {
+            // Retrieve provided auth info
+            String[] authHeader = headers.getHeaderString(HttpHeaders.AUTHORIZATION).split(":");
+            String sender = authHeader[0], apiKey = authHeader[1];
+            String date = headers.getHeaderString(Resources.DATE_HEADER);
+            RESOLVER.verifyAuth(sender, apiKey, date);
+
+            // Subscribe the sink, refusing it if there are already too many streams open
+            Long resumeFrom = lastEventId != null ? Long.valueOf(lastEventId.trim()) : null;
+            NotificationStreams.Subscription subscription =
+                    RESOLVER.openNotificationStream(sender, resumeFrom, new SinkListener(sink, sse));
+            if(subscription == null) throw new ServiceUnavailableException(STREAM_RETRY_AFTER);
+        }
+        catch(NumberFormatException | InvalidResourceRequestException e) { throw new BadRequestException(); }
+        catch(UnauthorisedException e) { throw new WebApplicationException(Response.Status.UNAUTHORIZED); }
+    }
+
+    /**
+     * Sends a stream's events down its sink, as server-sent events
+     */
+    private final class SinkListener implements NotificationStreams.Listener {
+        private final SseEventSink sink;
+        private final Sse sse;
+
+        SinkListener(SseEventSink sink, Sse sse) {
+            this.sink = sink;
+            this.sse = sse;
+        }
+
+        @Override
+        public void onNotification(Notification notification) {
+            send(sse.newEventBuilder()
+                    .id(String.valueOf(notification.getId()))
+                    .name(Resources.NOTIFICATION_EVENT)
+                    .mediaType(MediaType.APPLICATION_JSON_TYPE)
+                    .data(String.class, gson.toJson(notification))
+                    .build());
+        }
+
+        @Override
+        public void onKeepAlive() {
+            send(sse.newEventBuilder().comment("").build());
+        }
+
+        @Override
+        public void onClose() {
+            sink.close();
+        }
+
+        /**
+         * Sends the event, waiting until it has been written, and throwing if the client has gone away
+         * so the stream is closed. Only the stream's own sender thread waits.
+         */
+        private void send(OutboundSseEvent event) {
+            if(sink.isClosed()) throw new IllegalStateException("Notification stream closed");
+            sink.send(event).toCompletableFuture().join();
+        }
+    }
+}
@@ -4,7 +4,10 @@ import com.google.gson.Gson;
 import server.datastore.exceptions.DoesNotOwnAlbumException;
 import server.datastore.exceptions.DoesNotOwnPhotoException;
 import server.Resources;
+import server.datastore.PhotoContents;
+import server.datastore.RequestResolver;
 import server.datastore.exceptions.*;
+import server.objects.LikersPage;
 import server.objects.Photo;
 import server.objects.PhotoResult;
 import server.objects.Receipt;
@@ -13,10 +16,19 @@ import server.requests.UploadPhotoRequest;
 
 import javax.ws.rs.*;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.UUID;
 import java.util.stream.Collectors;
 
 import static server.Resources.*;
@@ -27,6 +39,13 @@ import static server.ServerMain.RESOLVER;
  */
 @Path(PHOTOS_PATH)
 public class PhotosApi {
+    // Photos' contents never change once uploaded, so may be cached by anyone for as long as they like
+    private static final String CONTENTS_CACHE_CONTROL = "public, max-age=31536000, immutable";
+
+    // Range request headers, which JAX-RS has no constants for
+    private static final String RANGE = "Range", IF_RANGE = "If-Range";
+    private static final String ACCEPT_RANGES = "Accept-Ranges", CONTENT_RANGE = "Content-Range";
+
     private final Gson gson = new Gson();
 
     /**
@@ -59,6 +78,49 @@ public class PhotosApi {
         }
     }
 
+    /**
+     * Uploads a photo sent as the raw request body, streaming it straight to storage.
+     * The photo's name, description and album are sent as headers, URL encoded,
+     * and its extension is given by the body's content type.
+     *
+     * @param contents the raw photo contents
+     * @return a response object containing the result of the request
+     */
+    @POST
+    @Path(Resources.UPLOAD_PHOTO + Resources.UPLOAD_RAW)
+    @Consumes({"image/jpeg", "image/png"})
+    public Response uploadRawPhoto(InputStream contents, @Context HttpHeaders headers) {
+        try {
+            // Retrieve provided auth info
+            String[] authHeader = headers.getHeaderString(HttpHeaders.AUTHORIZATION).split(":");
+            String sender = authHeader[0], apiKey = authHeader[1];
+            String date = headers.getHeaderString(Resources.DATE_HEADER);
+            RESOLVER.verifyAuth(sender, apiKey, date);
+
+            // Retrieve the photo's details from the headers
+            String photoName = headers.getHeaderString(PHOTO_NAME_HEADER);
+            String description = headers.getHeaderString(PHOTO_DESCRIPTION_HEADER);
+            String album = headers.getHeaderString(ALBUM_ID_HEADER);
+            if(photoName == null || description == null || album == null) {
+                return Response.status(Response.Status.BAD_REQUEST).build();
+            }
+            photoName = URLDecoder.decode(photoName, CHARSET_AS_STRING);
+            description = URLDecoder.decode(description, CHARSET_AS_STRING);
+            long albumId = Long.parseLong(album);
+            String ext = headers.getMediaType().getSubtype().equals("png") ? "png" : "jpg";
+            UploadPhotoRequest request = new UploadPhotoRequest(photoName, ext, description, albumId);
+
+            // Stream photo to the data store
+            Receipt receipt = RESOLVER.uploadPhoto(sender, request, contents, date);
+            return Response.ok(gson.toJson(receipt)).build();
+        }
+        catch(UnauthorisedException e) { return Response.status(Response.Status.UNAUTHORIZED).build();}
+        catch(InvalidResourceRequestException | DoesNotOwnAlbumException | InvalidFileFormatException
+                | IllegalArgumentException | UnsupportedEncodingException e) {
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
+    }
+
     @DELETE
     @Path(Resources.DELETE_PHOTO + "/{photoId}")
     @Consumes(MediaType.APPLICATION_JSON)
@@ -82,12 +144,17 @@ public class PhotosApi {
 
     /**
      * @param albumId the provided album ID in the URL
+     * @param since if given, only photos added at or after this time, in milliseconds since the epoch
+     * @param until if given, only photos added before this time, in milliseconds since the epoch
      * @return a parsed list of all photos from the requested album in the system
      */
     @GET
     @Path(Resources.ALBUMS_PATH + "/{id}")
     @Produces(MediaType.APPLICATION_JSON)
-    public Response getAllPhotosFromAlbum(@PathParam("id") long albumId, @Context HttpHeaders headers) {
+    public Response getAllPhotosFromAlbum(@PathParam("id") long albumId,
+                                          @QueryParam(Resources.SINCE_PARAM) Long since,
+                                          @QueryParam(Resources.UNTIL_PARAM) Long until,
+                                          @Context HttpHeaders headers) {
         try {
             // Retrieve provided auth info
             String[] authHeader = headers.getHeaderString(HttpHeaders.AUTHORIZATION).split(":");
@@ -96,7 +163,7 @@ public class PhotosApi {
             RESOLVER.verifyAuth(sender, apiKey, date);
 
             // Retrieve list retrieved from data manipulation layer
-            List<Photo> photos = RESOLVER.getPhotos(albumId);
+            List<Photo> photos = RESOLVER.getPhotos(albumId, since, until);
 
             // Find all top-level comments for each photo, and compose them into PhotoResult objects
             // This is converted into JSON and returned
@@ -104,7 +171,9 @@ public class PhotosApi {
             return Response.ok(gson.toJson(result)).build();
 
         }
-        catch(InvalidResourceRequestException e) { return Response.status(Response.Status.BAD_REQUEST).build(); }
+        catch(InvalidResourceRequestException | IllegalArgumentException e) {
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
         catch(UnauthorisedException e) { return Response.status(Response.Status.UNAUTHORIZED).build();}
     }
 
@@ -114,7 +183,8 @@ public class PhotosApi {
     @GET
     @Path(PHOTO_CONTENTS + PNG + "/{id}")
     @Produces("image/png")
-    public Response getPhotoContentsPNG(@PathParam("id") String idAndExt, @Context HttpHeaders headers) {
+    public Response getPhotoContentsPNG(@PathParam("id") String idAndExt, @Context HttpHeaders headers,
+                                        @Context Request request) {
         // Parse parameter in form id.ext into an id and file extension
         String[] components = idAndExt.split("\\.");
         long id = Long.parseLong(components[0]);
@@ -122,10 +192,8 @@ public class PhotosApi {
         if(!ext.toLowerCase(RESOLVER.LOCALE).equals("png")) return Response.status(Response.Status.BAD_REQUEST).build();
 
         try {
-            // Send the given photo's contents back to the client, while ensuring it is
-            // decoded from base64 to its raw representation
-            byte[] contents = UploadPhotoRequest.decodeContents(RESOLVER.getPhotoContents(id, ext));
-            return Response.ok(contents).build();
+            // Stream the given photo's raw contents back to the client
+            return streamContents(RESOLVER.getPhotoContents(id, ext), "image/png", request, headers);
         }
         catch(InvalidResourceRequestException e) { return Response.status(Response.Status.BAD_REQUEST).build(); }
     }
@@ -138,7 +206,8 @@ public class PhotosApi {
     @Path(PHOTO_CONTENTS + JPG + "/{id}")
     @Consumes(MediaType.APPLICATION_JSON)
     @Produces("image/jpg")
-    public Response getPhotoContentsJPG(@PathParam("id") String idAndExt, @Context HttpHeaders headers) {
+    public Response getPhotoContentsJPG(@PathParam("id") String idAndExt, @Context HttpHeaders headers,
+                                        @Context Request request) {
         // Parse parameter in form id.ext into an id and file extension
         String[] components = idAndExt.split("\\.");
         long id = Long.parseLong(components[0]);
@@ -146,14 +215,95 @@ public class PhotosApi {
         if(!ext.toLowerCase(RESOLVER.LOCALE).equals("jpg")) return Response.status(Response.Status.BAD_REQUEST).build();
 
         try {
-            // Send the given photo's contents back to the client, while ensuring it is
-            // decoded from base64 to its raw representation
-            byte[] contents = UploadPhotoRequest.decodeContents(RESOLVER.getPhotoContents(id, ext));
-            return Response.ok(contents).build();
+            // Stream the given photo's raw contents back to the client
+            return streamContents(RESOLVER.getPhotoContents(id, ext), "image/jpg", request, headers);
         }
         catch(InvalidResourceRequestException e) { return Response.status(Response.Status.BAD_REQUEST).build(); }
     }
 
+    /**
+     * Builds a response which streams the given contents to the client as it is written,
+     * so the contents are never held in memory in full. The contents are tagged with their hash,
+     * and if the client already has them, nothing is sent and they are never read.
+     * If only some ranges of the contents were requested, only those are read and sent.
+     * @param contents the photo contents to send
+     * @param type the contents' media type
+     * @param request the request, holding any If-None-Match header
+     * @param headers the request's headers, holding any Range and If-Range headers
+     * @return the response
+     */
+    private Response streamContents(PhotoContents contents, String type, Request request, HttpHeaders headers) {
+        EntityTag tag = new EntityTag(contents.getHash());
+        Response.ResponseBuilder notModified = request.evaluatePreconditions(tag);
+        if(notModified != null) {
+            return notModified.tag(tag).header(HttpHeaders.CACHE_CONTROL, CONTENTS_CACHE_CONTROL).build();
+        }
+
+        // Only honour ranges of the contents the client has, if it says which contents it has
+        long length = contents.getLength();
+        String ifRange = headers.getHeaderString(IF_RANGE);
+        List<ByteRange> ranges = ifRange == null || ifRange.equals(tag.toString())
+                ? ByteRange.parse(headers.getHeaderString(RANGE), length) : null;
+
+        // Send the whole contents
+        if(ranges == null) {
+            StreamingOutput output = contents::writeTo;
+            return contentsResponse(Response.ok(output), tag)
+                    .header(HttpHeaders.CONTENT_LENGTH, length).build();
+        }
+
+        // None of the ranges are within the contents
+        if(ranges.isEmpty()) {
+            return contentsResponse(Response.status(Response.Status.REQUESTED_RANGE_NOT_SATISFIABLE), tag)
+                    .header(CONTENT_RANGE, "bytes */" + length).build();
+        }
+
+        // Send the one range
+        if(ranges.size() == 1) {
+            ByteRange range = ranges.get(0);
+            StreamingOutput output = out -> contents.writeTo(out, range.getStart(), range.getLength());
+            return contentsResponse(Response.status(Response.Status.PARTIAL_CONTENT).entity(output), tag)
+                    .header(CONTENT_RANGE, range.toContentRange(length))
+                    .header(HttpHeaders.CONTENT_LENGTH, range.getLength()).build();
+        }
+
+        // Send each range as a part of a multipart body, each with a header giving its type and range
+        String boundary = UUID.randomUUID().toString().replace("-", "");
+        List<byte[]> partHeaders = new ArrayList<>();
+        long bodyLength = 0;
+        for(ByteRange range : ranges) {
+            byte[] partHeader = String.format("\r\n--%s\r\n%s: %s\r\n%s: %s\r\n\r\n", boundary,
+                    HttpHeaders.CONTENT_TYPE, type, CONTENT_RANGE, range.toContentRange(length))
+                    .getBytes(StandardCharsets.US_ASCII);
+            partHeaders.add(partHeader);
+            bodyLength += partHeader.length + range.getLength();
+        }
+        byte[] end = String.format("\r\n--%s--\r\n", boundary).getBytes(StandardCharsets.US_ASCII);
+        bodyLength += end.length;
+
+        StreamingOutput output = out -> {
+            for(int i = 0; i < ranges.size(); i++) {
+                out.write(partHeaders.get(i));
+                contents.writeTo(out, ranges.get(i).getStart(), ranges.get(i).getLength());
+            }
+            out.write(end);
+        };
+        return contentsResponse(Response.status(Response.Status.PARTIAL_CONTENT).entity(output), tag)
+                .type("multipart/byteranges; boundary=" + boundary)
+                .header(HttpHeaders.CONTENT_LENGTH, bodyLength).build();
+    }
+
+    /**
+     * @param response the response to add to
+     * @param tag the contents' ETag
+     * @return the response, with the headers sent with all photo contents
+     */
+    private Response.ResponseBuilder contentsResponse(Response.ResponseBuilder response, EntityTag tag) {
+        return response.tag(tag)
+                .header(HttpHeaders.CACHE_CONTROL, CONTENTS_CACHE_CONTROL)
+                .header(ACCEPT_RANGES, "bytes");
+    }
+
     /**
      * @return the requested meta-data, sent as JSON.
      */
@@ -254,4 +404,36 @@ public class PhotosApi {
         catch(InvalidResourceRequestException e) { return Response.status(Response.Status.BAD_REQUEST).build(); }
         catch(UnauthorisedException e) { return Response.status(Response.Status.UNAUTHORIZED).build();}
     }
+
+    /**
+     * @param photoId the provided photoId in the URL
+     * @param limit the maximum number of users to return
+     * @param after the cursor returned with the previous page, if any
+     * @return a page of the users who liked the photo, in alphabetical order
+     */
+    @GET
+    @Path(Resources.LIKERS + "/{photoId}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getLikers(@PathParam("photoId") long photoId,
+                              @QueryParam(Resources.LIMIT_PARAM) Integer limit,
+                              @QueryParam(Resources.AFTER_PARAM) String after,
+                              @Context HttpHeaders headers) {
+        // Retrieve provided auth info
+        try {
+            String[] authHeader = headers.getHeaderString(HttpHeaders.AUTHORIZATION).split(":");
+            String sender = authHeader[0], apiKey = authHeader[1];
+            String date = headers.getHeaderString(Resources.DATE_HEADER);
+            RESOLVER.verifyAuth(sender, apiKey, date);
+
+            // Retrieve the page of users
+            LikersPage page = RESOLVER.getPhotoLikers(photoId,
+                    limit != null ? limit : RequestResolver.DEFAULT_LIKERS_PAGE, after);
+            return Response.ok(gson.toJson(page)).build();
+
+        }
+        catch(InvalidResourceRequestException | IllegalArgumentException e) {
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
+        catch(UnauthorisedException e) { return Response.status(Response.Status.UNAUTHORIZED).build();}
+    }
 }
\ No newline at end of file
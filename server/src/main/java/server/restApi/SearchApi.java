@@ -0,0 +1,58 @@
+package server.restApi;
+
+import com.google.gson.Gson;
+import server.Resources;
+import server.datastore.RequestResolver;
+import server.datastore.exceptions.UnauthorisedException;
+import server.objects.SearchPage;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import static server.ServerMain.RESOLVER;
+
+/**
+ * Class describing the behaviour of the api at SEARCH_PATH
+ */
+@Path(Resources.SEARCH_PATH)
+public final class SearchApi {
+    // Json serialiser and deserialiser
+    private final Gson gson = new Gson();
+
+    /**
+     * Searches the text of photo descriptions, album descriptions and comments
+     * @param query the words to search for
+     * @param limit the maximum number of results to return
+     * @param after the cursor returned with the previous page, or null for the first page
+     * @param headers the headers of the http request.
+     * @return a page of results, best match first
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response search(@QueryParam(Resources.QUERY_PARAM) String query,
+                           @QueryParam(Resources.LIMIT_PARAM) Integer limit,
+                           @QueryParam(Resources.AFTER_PARAM) String after,
+                           @Context HttpHeaders headers) {
+        try {
+            // Retrieve provided auth info
+            String[] authHeader = headers.getHeaderString(HttpHeaders.AUTHORIZATION).split(":");
+            String sender = authHeader[0], apiKey = authHeader[1];
+            String date = headers.getHeaderString(Resources.DATE_HEADER);
+            RESOLVER.verifyAuth(sender, apiKey, date);
+
+            // Retrieve the page of results
+            SearchPage page = RESOLVER.search(query,
+                    limit != null ? limit : RequestResolver.DEFAULT_SEARCH_PAGE, after);
+            return Response.ok(gson.toJson(page)).build();
+
+        }
+        catch(IllegalArgumentException e) { return Response.status(Response.Status.BAD_REQUEST).build(); }
+        catch(UnauthorisedException e) { return Response.status(Response.Status.UNAUTHORIZED).build();}
+    }
+}
@@ -2,6 +2,7 @@ package server.restApi;
 
 import com.google.gson.Gson;
 import server.Resources;
+import server.datastore.RequestResolver;
 import server.datastore.exceptions.ExistingException;
 import server.datastore.exceptions.InvalidResourceRequestException;
 import server.datastore.exceptions.UnauthorisedException;
@@ -104,12 +105,17 @@ public final class UsersAPI {
 
     /**
      * @param username the provided username in the URL
+     * @param since if given, only photos posted at or after this time, in milliseconds since the epoch
+     * @param until if given, only photos posted before this time, in milliseconds since the epoch
      * @return a parsed list of all photos from the requested user in the system
      */
     @GET
     @Path("/{username}" + PHOTOS_PATH)
     @Produces(MediaType.APPLICATION_JSON)
-    public Response getAllPhotosFromUser(@PathParam("username") String username, @Context HttpHeaders headers) {
+    public Response getAllPhotosFromUser(@PathParam("username") String username,
+                                         @QueryParam(Resources.SINCE_PARAM) Long since,
+                                         @QueryParam(Resources.UNTIL_PARAM) Long until,
+                                         @Context HttpHeaders headers) {
         try {
             // Retrieve provided auth info
             String[] authHeader = headers.getHeaderString(HttpHeaders.AUTHORIZATION).split(":");
@@ -119,7 +125,7 @@ public final class UsersAPI {
             RESOLVER.verifyAuth(sender, apiKey, date);
 
             // Retrieve list retrieved from data manipulation layer
-            List<Photo> photos = RESOLVER.getPhotos(username);
+            List<Photo> photos = RESOLVER.getPhotos(username, since, until);
 
             // Find all top-level comments for each photo, and compose them into PhotoResult objects
             // This is converted into JSON and returned
@@ -127,7 +133,9 @@ public final class UsersAPI {
             return Response.ok(gson.toJson(result)).build();
 
         }
-        catch(InvalidResourceRequestException e) { return Response.status(Response.Status.BAD_REQUEST).build(); }
+        catch(InvalidResourceRequestException | IllegalArgumentException e) {
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
         catch(UnauthorisedException e) { return Response.status(Response.Status.UNAUTHORIZED).build();}
     }
 
@@ -211,7 +219,6 @@ public final class UsersAPI {
         try {
             // Process request
             RESOLVER.verifyAuth(sender, apiKey, date);
-            RESOLVER.getFollowers(username);
 
             List<User> following = RESOLVER.getFollowing(username);
             return Response.ok(gson.toJson(following)).build();
@@ -240,7 +247,6 @@ public final class UsersAPI {
         try {
             // Process request
             RESOLVER.verifyAuth(sender, apiKey, date);
-            RESOLVER.getFollowers(username);
 
             List<User> following = RESOLVER.getFollowers(username);
             return Response.ok(gson.toJson(following)).build();
@@ -253,10 +259,70 @@ public final class UsersAPI {
 
     }
 
+    /**
+     * Counts the users who follow the user, without listing them
+     * @param username the user's name
+     * @return the number of followers
+     */
+    @GET
+    @Path(Resources.FOLLOWERS + "/{username}" + Resources.COUNT)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response countFollowers(@PathParam("username") String username, @Context HttpHeaders headers) {
+        // Retrieve provided auth info
+        String[] authHeader = headers.getHeaderString(HttpHeaders.AUTHORIZATION).split(":");
+        String sender = authHeader[0], apiKey = authHeader[1];
+        String date = headers.getHeaderString(Resources.DATE_HEADER);
+
+        try {
+            // Process request
+            RESOLVER.verifyAuth(sender, apiKey, date);
+            return Response.ok(gson.toJson(RESOLVER.countFollowers(username))).build();
+
+        } catch (InvalidResourceRequestException e) {
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        } catch (UnauthorisedException e) {
+            return Response.status(Response.Status.UNAUTHORIZED).build();
+        }
+    }
+
+    /**
+     * Counts the users the user follows, without listing them
+     * @param username the user's name
+     * @return the number of users followed
+     */
+    @GET
+    @Path(Resources.FOLLOWING + "/{username}" + Resources.COUNT)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response countFollowing(@PathParam("username") String username, @Context HttpHeaders headers) {
+        // Retrieve provided auth info
+        String[] authHeader = headers.getHeaderString(HttpHeaders.AUTHORIZATION).split(":");
+        String sender = authHeader[0], apiKey = authHeader[1];
+        String date = headers.getHeaderString(Resources.DATE_HEADER);
+
+        try {
+            // Process request
+            RESOLVER.verifyAuth(sender, apiKey, date);
+            return Response.ok(gson.toJson(RESOLVER.countFollowing(username))).build();
+
+        } catch (InvalidResourceRequestException e) {
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        } catch (UnauthorisedException e) {
+            return Response.status(Response.Status.UNAUTHORIZED).build();
+        }
+    }
+
+    /**
+     * Searches for users whose names start with the given query, ignoring case
+     * @param value the start of the names to find
+     * @param limit the maximum number of users to return
+     * @param headers the headers of the http request.
+     * @return the matching users, in alphabetical order
+     */
     @GET
     @Path(SEARCH)
     @Produces(MediaType.APPLICATION_JSON)
-    public Response bar(@QueryParam(NAME_PARAM) String value, @Context HttpHeaders headers) {
+    public Response bar(@QueryParam(NAME_PARAM) String value, @QueryParam(LIMIT_PARAM) Integer limit,
+                        @Context HttpHeaders headers) {
 
         // Retrieve provided auth info
         String[] authHeader = headers.getHeaderString(HttpHeaders.AUTHORIZATION).split(":");
@@ -268,10 +334,13 @@ public final class UsersAPI {
             // Process request
             RESOLVER.verifyAuth(sender, apiKey, date);
 
-            List<User> users = RESOLVER.getUsersWithName(value);
+            List<User> users = RESOLVER.getUsersWithName(value,
+                    limit != null ? limit : RequestResolver.DEFAULT_USER_SEARCH_LIMIT);
 
             return Response.ok(gson.toJson(users)).build();
 
+        } catch (IllegalArgumentException e) {
+            return Response.status(Response.Status.BAD_REQUEST).build();
         } catch (UnauthorisedException e) {
             return Response.status(Response.Status.UNAUTHORIZED).build();
         }
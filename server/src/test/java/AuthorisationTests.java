@@ -1,4 +1,5 @@
 import org.junit.Test;
+import server.Auth;
 import server.datastore.exceptions.InvalidResourceRequestException;
 import server.objects.LoginResult;
 import server.objects.Receipt;
@@ -7,6 +8,7 @@ import server.objects.User;
 import javax.ws.rs.core.Response;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static server.objects.EventType.PHOTO_COMMENT;
 import static server.objects.EventType.REPLY;
@@ -32,6 +34,21 @@ public class AuthorisationTests extends TestUtility {
         assertTrue(res.isAdmin());
     }
 
+    @Test
+    public void verifyApiKeyTest() {
+        // Generate an api key, as the client does
+        String password = Auth.hashAndEncodeHex(pw), date = "2018/01/01 12:00:00";
+        String apiKey = Auth.getApiKey(username, password, date).split(":")[1];
+
+        // Only the exact key, for the same user, password and time, should verify
+        assertTrue(Auth.verifyApiKey(username, password, date, apiKey));
+        assertFalse(Auth.verifyApiKey(username, password, "2018/01/01 12:00:01", apiKey));
+        assertFalse(Auth.verifyApiKey(username, Auth.hashAndEncodeHex(""), date, apiKey));
+        assertFalse(Auth.verifyApiKey(username, password, date, apiKey.substring(1) + "0"));
+        assertFalse(Auth.verifyApiKey(username, password, date, apiKey.substring(1)));
+        assertFalse(Auth.verifyApiKey(username, password, date, null));
+    }
+
     @Test
     public void unauthorisedLoginException() {
         // Add user
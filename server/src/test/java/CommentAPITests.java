@@ -2,6 +2,8 @@ import org.junit.Test;
 import server.datastore.exceptions.InvalidResourceRequestException;
 import server.objects.Comment;
 import server.objects.CommentResult;
+import server.objects.CommentThread;
+import server.objects.EventType;
 import server.objects.Receipt;
 
 import javax.ws.rs.core.Response;
@@ -31,7 +33,7 @@ public class CommentAPITests extends TestUtility{
         // Send upvote request to server, and check it was successful on the server.
         Response voteResponse = apiClient.voteOnComment(id, true);
         assertEquals(Response.Status.NO_CONTENT.getStatusCode(), voteResponse.getStatus());
-        assertEquals(1, resolver.getComment(id).getLikes().size());
+        assertEquals(1, resolver.getComment(id).getLikeCount());
     }
 
     @Test
@@ -52,12 +54,12 @@ public class CommentAPITests extends TestUtility{
         // Send upvote request to server, and check it was successful on the server.
         Response voteResponse = apiClient.voteOnComment(id, true);
         assertEquals(Response.Status.NO_CONTENT.getStatusCode(), voteResponse.getStatus());
-        assertEquals(1, resolver.getComment(id).getLikes().size());
+        assertEquals(1, resolver.getComment(id).getLikeCount());
 
         // Send same upvote request again. Ensure it worked, but that nothing changed on the server
         voteResponse = apiClient.voteOnComment(id, true);
         assertEquals(Response.Status.NO_CONTENT.getStatusCode(), voteResponse.getStatus());
-        assertEquals(1, resolver.getComment(id).getLikes().size());
+        assertEquals(1, resolver.getComment(id).getLikeCount());
     }
 
     @Test
@@ -78,13 +80,13 @@ public class CommentAPITests extends TestUtility{
         // Send upvote request to server, and check it was successful on the server.
         Response voteResponse = apiClient.voteOnComment(id, true);
         assertEquals(Response.Status.NO_CONTENT.getStatusCode(), voteResponse.getStatus());
-        assertEquals(1, resolver.getComment(id).getLikes().size());
+        assertEquals(1, resolver.getComment(id).getLikeCount());
 
         // Send downvote request to server, and check it was successful on the server.
         // Also check it overwrote previous persistCommentVote
         voteResponse = apiClient.voteOnComment(id, false);
         assertEquals(Response.Status.NO_CONTENT.getStatusCode(), voteResponse.getStatus());
-        assertEquals(0, resolver.getComment(id).getLikes().size());
+        assertEquals(0, resolver.getComment(id).getLikeCount());
     }
 
     @Test
@@ -200,6 +202,30 @@ public class CommentAPITests extends TestUtility{
         assertEquals(newComment, recordedComment.getCommentContents());
     }
 
+    @Test
+    public void deeplyNestedReplyTest() throws InvalidResourceRequestException {
+        // Add sample user and register it
+        loginAndSetupNewUser(username);
+
+        // Upload 'photo', and comment on it
+        Response response = apiClient.uploadPhoto(photoName, ext, description, albumId, contents);
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        long photoId = gson.fromJson(response.readEntity(String.class), Receipt.class).getReferenceId();
+        response = apiClient.addComment(photoId, PHOTO_COMMENT, comment);
+        long id = gson.fromJson(response.readEntity(String.class), Receipt.class).getReferenceId();
+
+        // Reply to each reply in turn, nesting deeper than a fixed length thread path could hold
+        int depth = 300;
+        for(int i = 0; i < depth; i++) {
+            response = apiClient.addComment(id, REPLY, comment);
+            assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+            long reply = gson.fromJson(response.readEntity(String.class), Receipt.class).getReferenceId();
+            assertEquals(id, resolver.getComment(reply).getReferenceId());
+            id = reply;
+        }
+        assertEquals(depth + 1, resolver.getComments(username).size());
+    }
+
     @Test
     public void addReplyTest() throws InvalidResourceRequestException {
         // Add sample user and register it
@@ -326,6 +352,73 @@ public class CommentAPITests extends TestUtility{
         assertEquals(commentId, replies[0].getComment().getReferenceId());
     }
 
+    @Test
+    public void getCommentThreadTest() {
+        // Add sample user and register it
+        loginAndSetupNewUser(username);
+
+        // Upload 'photo'
+        Response response = apiClient.uploadPhoto(photoName, ext, description, albumId, contents);
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        long id = gson.fromJson(response.readEntity(String.class), Receipt.class).getReferenceId();
+
+        // Build a thread: two comments, the first with a chain of two replies and a second reply
+        long first = addComment(id, PHOTO_COMMENT), second = addComment(id, PHOTO_COMMENT);
+        long reply = addComment(first, REPLY), nestedReply = addComment(reply, REPLY);
+        long secondReply = addComment(first, REPLY);
+
+        // Ask for the whole thread, and check every reply is nested below its parent
+        response = apiClient.getPhotoCommentThread(id, null);
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        CommentThread[] thread = gson.fromJson(response.readEntity(String.class), CommentThread[].class);
+        assertEquals(2, thread.length);
+        assertEquals(first, thread[0].getComment().getId());
+        assertEquals(second, thread[1].getComment().getId());
+        assertEquals(0, thread[1].getReplies().size());
+
+        List<CommentThread> replies = thread[0].getReplies();
+        assertEquals(2, replies.size());
+        assertEquals(reply, replies.get(0).getComment().getId());
+        assertEquals(secondReply, replies.get(1).getComment().getId());
+        assertEquals(1, replies.get(0).getReplies().size());
+        assertEquals(nestedReply, replies.get(0).getReplies().get(0).getComment().getId());
+
+        // Limit the depth
+        response = apiClient.getPhotoCommentThread(id, 1);
+        thread = gson.fromJson(response.readEntity(String.class), CommentThread[].class);
+        assertEquals(2, thread[0].getReplies().size());
+        assertEquals(0, thread[0].getReplies().get(0).getReplies().size());
+
+        // Ask for a single comment's subtree
+        response = apiClient.getCommentThread(reply, null);
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        CommentThread subtree = gson.fromJson(response.readEntity(String.class), CommentThread.class);
+        assertEquals(reply, subtree.getComment().getId());
+        assertEquals(1, subtree.getReplies().size());
+        assertEquals(nestedReply, subtree.getReplies().get(0).getComment().getId());
+        assertEquals(0, gson.fromJson(apiClient.getCommentThread(first, 0).readEntity(String.class),
+                CommentThread.class).getReplies().size());
+
+        // Check bad depths and unknown references are rejected
+        assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), apiClient.getPhotoCommentThread(id, -1).getStatus());
+        assertEquals(Response.Status.BAD_REQUEST.getStatusCode(),
+                apiClient.getPhotoCommentThread(id + 1, null).getStatus());
+        assertEquals(Response.Status.BAD_REQUEST.getStatusCode(),
+                apiClient.getCommentThread(secondReply + 1, null).getStatus());
+    }
+
+    /**
+     * Adds a comment with the default contents
+     * @param referenceId the id of the photo / comment being commented on
+     * @param type whether this is a comment on a photo, or a reply
+     * @return the id of the new comment
+     */
+    private long addComment(long referenceId, EventType type) {
+        Response response = apiClient.addComment(referenceId, type, comment);
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        return gson.fromJson(response.readEntity(String.class), Receipt.class).getReferenceId();
+    }
+
     @Test
     public void userRemoveReplyTest() throws InvalidResourceRequestException {
         // Add two users and login as second. Only the first user will be an admin.
@@ -410,6 +503,42 @@ public class CommentAPITests extends TestUtility{
         }
     }
 
+    @Test
+    public void getCommentsInTimeRangeTest() {
+        // Add sample user and register it
+        loginAndSetupNewUser(username);
+        long before = System.currentTimeMillis() - 60 * 1000, after = System.currentTimeMillis() + 60 * 1000;
+
+        // Upload 'photo', and comment on it
+        Response response = apiClient.uploadPhoto(photoName, ext, description, albumId, contents);
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        long id = gson.fromJson(response.readEntity(String.class), Receipt.class).getReferenceId();
+        Response commentResponse = apiClient.addComment(id, PHOTO_COMMENT, comment);
+        assertEquals(Response.Status.OK.getStatusCode(), commentResponse.getStatus());
+        long commentId = gson.fromJson(commentResponse.readEntity(String.class), Receipt.class).getReferenceId();
+
+        // Check only ranges containing the comment's time find it, for both the user and the photo
+        CommentResult[] comments = gson.fromJson(apiClient.getAllComments(username, before, after)
+                .readEntity(String.class), CommentResult[].class);
+        assertEquals(1, comments.length);
+        assertEquals(commentId, comments[0].getComment().getId());
+        comments = gson.fromJson(apiClient.getAllPhotoComments(id, before, null)
+                .readEntity(String.class), CommentResult[].class);
+        assertEquals(1, comments.length);
+        comments = gson.fromJson(apiClient.getAllComments(username, after, null)
+                .readEntity(String.class), CommentResult[].class);
+        assertEquals(0, comments.length);
+        comments = gson.fromJson(apiClient.getAllPhotoComments(id, null, before)
+                .readEntity(String.class), CommentResult[].class);
+        assertEquals(0, comments.length);
+
+        // Check a range which ends before it starts is rejected
+        assertEquals(Response.Status.BAD_REQUEST.getStatusCode(),
+                apiClient.getAllComments(username, after, before).getStatus());
+        assertEquals(Response.Status.BAD_REQUEST.getStatusCode(),
+                apiClient.getAllPhotoComments(id, after, before).getStatus());
+    }
+
     @Test
     public void getAllPhotoCommentsTest() {
         // Add sample user and register it
@@ -223,6 +223,21 @@ public class InvalidInputTests extends TestUtility {
         assertEquals(0, photos.size());
     }
 
+    @Test
+    public void uploadRawPhotoTooBigTest() throws InvalidResourceRequestException {
+        // Add sample user and register it
+        loginAndSetupNewUser(username);
+
+        // Send request to upload a photo as raw bytes
+        // Fail because photo is too large
+        byte[] contents = new byte[4500000];
+        Response response = apiClient.uploadRawPhoto(photoName, ext, description, albumId, contents);
+        assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), response.getStatus());
+
+        // Check data-store that no photo is recorded
+        assertEquals(0, resolver.getPhotos(username).size());
+    }
+
     @Test
     public void voteBadIdTest() {
         // Add sample user and register it
@@ -1,15 +1,19 @@
 import org.junit.Test;
 import server.datastore.exceptions.InvalidResourceRequestException;
+import server.objects.NewsFeedPage;
 import server.objects.Photo;
 import server.objects.Receipt;
 
 import javax.ws.rs.core.Response;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.stream.Collectors;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 
 public class NewsFeedAPITests extends TestUtility{
 
@@ -167,4 +171,160 @@ public class NewsFeedAPITests extends TestUtility{
         assertEquals(photoOfAllFollowers.size(), photosInNewsFeed.size());
 
     }
+
+    @Test
+    public void timelineNewsFeedTest() throws InvalidResourceRequestException {
+        // Set up user who is being followed, with a photo posted before being followed
+        String userBeingFollowed = "user_being_followed";
+        loginAndSetupNewUser(userBeingFollowed);
+        long followedAlbumId = albumId;
+        long first = gson.fromJson(apiClient.uploadPhoto(photoName, ext, description, followedAlbumId, contents)
+                .readEntity(String.class), Receipt.class).getReferenceId();
+
+        // Set up user whose news feed we want, and follow the first user
+        loginAndSetupNewUser(username);
+        Response followResponse = apiClient.followUser(userBeingFollowed);
+        assertEquals(Response.Status.NO_CONTENT.getStatusCode(), followResponse.getStatus());
+        assertEquals(1, resolver.getNewsFeedTimeline(username).size());
+
+        // Post another photo, which should be pushed to the top of the timeline
+        apiClient.loginUser(userBeingFollowed, pw);
+        long second = gson.fromJson(apiClient.uploadPhoto(photoName, ext, description, followedAlbumId, contents)
+                .readEntity(String.class), Receipt.class).getReferenceId();
+
+        apiClient.loginUser(username, pw);
+        Response newsFeedResponse = apiClient.getNewsFeedTimeline();
+        assertEquals(Response.Status.OK.getStatusCode(), newsFeedResponse.getStatus());
+        Photo[] photos = gson.fromJson(newsFeedResponse.readEntity(String.class), Photo[].class);
+        assertEquals(2, photos.length);
+        assertEquals(second, photos[0].getId());
+        assertEquals(first, photos[1].getId());
+
+        // Unfollowing should empty the timeline
+        Response unfollowResponse = apiClient.unfollowUser(userBeingFollowed);
+        assertEquals(Response.Status.NO_CONTENT.getStatusCode(), unfollowResponse.getStatus());
+        assertEquals(0, resolver.getNewsFeedTimeline(username).size());
+    }
+
+    @Test
+    public void pagedNewsFeedTest() throws InvalidResourceRequestException {
+        // Set up two users being followed, each posting several photos, interleaved
+        String userBeingFollowedOne = "user_followed_one", userBeingFollowedTwo = "user_followed_two";
+        loginAndSetupNewUser(userBeingFollowedOne);
+        long albumIdOne = albumId;
+        loginAndSetupNewUser(userBeingFollowedTwo);
+        long albumIdTwo = albumId;
+        for(int i = 0; i < 3; i++) {
+            apiClient.loginUser(userBeingFollowedOne, pw);
+            apiClient.uploadPhoto(photoName, ext, description, albumIdOne, contents);
+            apiClient.loginUser(userBeingFollowedTwo, pw);
+            apiClient.uploadPhoto(photoName, ext, description, albumIdTwo, contents);
+        }
+
+        // Set up user whose news feed we want, following both
+        loginAndSetupNewUser(username);
+        apiClient.followUser(userBeingFollowedOne);
+        apiClient.followUser(userBeingFollowedTwo);
+
+        // Work out the expected order: newest first, and then by id
+        List<Photo> expected = new ArrayList<>(resolver.getPhotos(userBeingFollowedOne));
+        expected.addAll(resolver.getPhotos(userBeingFollowedTwo));
+        expected.sort(Comparator.comparingLong(Photo::getPhotoTimeMillis).thenComparingLong(Photo::getId).reversed());
+        List<Long> expectedIds = expected.stream().map(Photo::getId).collect(Collectors.toList());
+
+        // The first page should be full, with a cursor for the next
+        Response response = apiClient.getNewsFeed(4, null);
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        NewsFeedPage page = gson.fromJson(response.readEntity(String.class), NewsFeedPage.class);
+        assertEquals(expectedIds.subList(0, 4), page.getPhotos().stream().map(Photo::getId).collect(Collectors.toList()));
+        assertNotNull(page.getNextCursor());
+
+        // The second page should hold the rest, and be the last
+        response = apiClient.getNewsFeed(4, page.getNextCursor());
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        page = gson.fromJson(response.readEntity(String.class), NewsFeedPage.class);
+        assertEquals(expectedIds.subList(4, 6), page.getPhotos().stream().map(Photo::getId).collect(Collectors.toList()));
+        assertNull(page.getNextCursor());
+
+        // Malformed cursors and page sizes should be rejected
+        assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), apiClient.getNewsFeed(4, "%%%").getStatus());
+        assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), apiClient.getNewsFeed(0, null).getStatus());
+    }
+
+    @Test
+    public void pagedTimelineTest() throws InvalidResourceRequestException {
+        // Set up a user being followed, posting several photos
+        String userBeingFollowed = "user_being_followed";
+        loginAndSetupNewUser(userBeingFollowed);
+        long followedAlbumId = albumId;
+        for(int i = 0; i < 5; i++) apiClient.uploadPhoto(photoName, ext, description, followedAlbumId, contents);
+
+        // Set up user whose timeline we want, following the first user, and post one more photo to be pushed
+        loginAndSetupNewUser(username);
+        apiClient.followUser(userBeingFollowed);
+        assertEquals(5, resolver.getNewsFeedTimeline(username).size());
+        apiClient.loginUser(userBeingFollowed, pw);
+        long pushed = gson.fromJson(apiClient.uploadPhoto(photoName, ext, description, followedAlbumId, contents)
+                .readEntity(String.class), Receipt.class).getReferenceId();
+
+        // Work out the expected order: newest first, and then by id
+        List<Photo> expected = new ArrayList<>(resolver.getPhotos(userBeingFollowed));
+        expected.sort(Comparator.comparingLong(Photo::getPhotoTimeMillis).thenComparingLong(Photo::getId).reversed());
+        List<Long> expectedIds = expected.stream().map(Photo::getId).collect(Collectors.toList());
+        assertEquals(pushed, (long) expectedIds.get(0));
+
+        // The first page should be full, with a cursor for the next
+        apiClient.loginUser(username, pw);
+        Response response = apiClient.getNewsFeedTimeline(4, null);
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        NewsFeedPage page = gson.fromJson(response.readEntity(String.class), NewsFeedPage.class);
+        assertEquals(expectedIds.subList(0, 4), page.getPhotos().stream().map(Photo::getId).collect(Collectors.toList()));
+        assertNotNull(page.getNextCursor());
+
+        // The second page should hold the rest, and be the last
+        response = apiClient.getNewsFeedTimeline(4, page.getNextCursor());
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        page = gson.fromJson(response.readEntity(String.class), NewsFeedPage.class);
+        assertEquals(expectedIds.subList(4, 6), page.getPhotos().stream().map(Photo::getId).collect(Collectors.toList()));
+        assertNull(page.getNextCursor());
+
+        // Malformed cursors and page sizes should be rejected
+        assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), apiClient.getNewsFeedTimeline(4, "%%%").getStatus());
+        assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), apiClient.getNewsFeedTimeline(0, null).getStatus());
+    }
+
+    @Test
+    public void timelinePastCapacityTest() throws InvalidResourceRequestException {
+        // Set up two users being followed, posting more photos between them than a timeline holds
+        String firstFollowee = "first_followee", secondFollowee = "second_followee";
+        loginAndSetupNewUser(firstFollowee);
+        for(int i = 0; i < TIMELINE_CAPACITY + 4; i++) {
+            apiClient.uploadPhoto(photoName, ext, description, albumId, contents);
+        }
+        loginAndSetupNewUser(secondFollowee);
+        for(int i = 0; i < 3; i++) apiClient.uploadPhoto(photoName, ext, description, albumId, contents);
+
+        // Set up user whose timeline we want, following both
+        loginAndSetupNewUser(username);
+        apiClient.followUser(firstFollowee);
+        apiClient.followUser(secondFollowee);
+
+        // Work out the expected order: newest first, and then by id
+        List<Photo> expected = new ArrayList<>(resolver.getPhotos(firstFollowee));
+        expected.addAll(resolver.getPhotos(secondFollowee));
+        expected.sort(Comparator.comparingLong(Photo::getPhotoTimeMillis).thenComparingLong(Photo::getId).reversed());
+        List<Long> expectedIds = expected.stream().map(Photo::getId).collect(Collectors.toList());
+
+        // Page through the whole timeline, which should carry on past the photos it holds
+        List<Long> ids = new ArrayList<>();
+        String cursor = null;
+        do {
+            Response response = apiClient.getNewsFeedTimeline(5, cursor);
+            assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+            NewsFeedPage page = gson.fromJson(response.readEntity(String.class), NewsFeedPage.class);
+            page.getPhotos().forEach(photo -> ids.add(photo.getId()));
+            cursor = page.getNextCursor();
+        } while(cursor != null);
+        assertEquals(expectedIds, ids);
+    }
 }
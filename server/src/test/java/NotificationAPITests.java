@@ -1,11 +1,27 @@
 import org.junit.Test;
+import server.Resources;
+import server.datastore.NotificationAckStats;
+import server.datastore.NotificationStreams;
 import server.datastore.exceptions.InvalidResourceRequestException;
 import server.objects.Notification;
 import server.objects.Receipt;
 
 import javax.ws.rs.core.Response;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 import static server.objects.EventType.PHOTO_COMMENT;
 import static server.objects.EventType.REPLY;
 
@@ -301,5 +317,180 @@ public class NotificationAPITests extends TestUtility{
         assertEquals(gson.fromJson(notifications, Notification[].class).length, 2);
     }
 
+    @Test
+    public void markNotificationsReadTest() throws InvalidResourceRequestException {
+        // Add sample user and register it
+        loginAndSetupNewUser(username);
+
+        // Upload 'photo', and comment on it twice
+        Response response = apiClient.uploadPhoto(photoName, ext, description, albumId, contents);
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        long id = gson.fromJson(response.readEntity(String.class), Receipt.class).getReferenceId();
+        apiClient.addComment(id, PHOTO_COMMENT, comment);
+        Response commentsResponse = apiClient.addComment(id, PHOTO_COMMENT, comment);
+        long secondId = gson.fromJson(commentsResponse.readEntity(String.class), Receipt.class).getReferenceId();
+
+        // Check notifications are returned oldest first
+        Notification[] notifications = gson.fromJson(apiClient.getNotifications().readEntity(String.class),
+                Notification[].class);
+        assertEquals(2, notifications.length);
+        assertTrue(notifications[0].getId() < notifications[1].getId());
 
+        // Mark the first as read, and ensure only the second is left
+        Response readResponse = apiClient.markNotificationsRead(notifications[0].getId());
+        assertEquals(Response.Status.NO_CONTENT.getStatusCode(), readResponse.getStatus());
+        notifications = gson.fromJson(apiClient.getNotifications().readEntity(String.class), Notification[].class);
+        assertEquals(1, notifications.length);
+        assertEquals(secondId, notifications[0].getContentId());
+
+        // Mark the rest as read
+        readResponse = apiClient.markNotificationsRead(notifications[0].getId());
+        assertEquals(Response.Status.NO_CONTENT.getStatusCode(), readResponse.getStatus());
+        notifications = gson.fromJson(apiClient.getNotifications().readEntity(String.class), Notification[].class);
+        assertEquals(0, notifications.length);
+    }
+
+    @Test
+    public void acknowledgedNotificationsRemovedTest() throws InterruptedException {
+        // Add sample user and register it
+        loginAndSetupNewUser(username);
+        NotificationAckStats before = resolver.getNotificationAckStats();
+
+        // Upload 'photo', comment on it, then read the comments
+        Response response = apiClient.uploadPhoto(photoName, ext, description, albumId, contents);
+        long id = gson.fromJson(response.readEntity(String.class), Receipt.class).getReferenceId();
+        apiClient.addComment(id, PHOTO_COMMENT, comment);
+        apiClient.addComment(id, PHOTO_COMMENT, comment);
+        assertEquals(Response.Status.OK.getStatusCode(), apiClient.getAllPhotoComments(id).getStatus());
+
+        // Wait for the queue to drain, and ensure both notifications were removed in one batch
+        long deadline = System.currentTimeMillis() + 5 * 1000;
+        while(resolver.getNotificationAckStats().getPending() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        NotificationAckStats after = resolver.getNotificationAckStats();
+        assertEquals(0, after.getPending());
+        assertEquals(2, after.getAcknowledged() - before.getAcknowledged());
+        assertEquals(1, after.getBatches() - before.getBatches());
+        assertEquals(2, after.getRemoved() - before.getRemoved());
+
+        // Ensure they stay gone
+        Notification[] notifications = gson.fromJson(apiClient.getNotifications().readEntity(String.class),
+                Notification[].class);
+        assertEquals(0, notifications.length);
+    }
+
+    @Test(timeout = 10 * 1000)
+    public void notificationStreamTest() throws IOException {
+        // Add sample user and register it
+        loginAndSetupNewUser(username);
+
+        // Upload 'photo'
+        Response response = apiClient.uploadPhoto(photoName, ext, description, albumId, contents);
+        long id = gson.fromJson(response.readEntity(String.class), Receipt.class).getReferenceId();
+
+        // Open a stream, then comment on the photo, and ensure the notification is pushed
+        Response streamResponse = apiClient.getNotificationStream(null);
+        assertEquals(Response.Status.OK.getStatusCode(), streamResponse.getStatus());
+        long commentId;
+        Map<String, String> event;
+        try (BufferedReader stream = new BufferedReader(new InputStreamReader(
+                streamResponse.readEntity(InputStream.class), StandardCharsets.UTF_8))) {
+            Response commentsResponse = apiClient.addComment(id, PHOTO_COMMENT, comment);
+            commentId = gson.fromJson(commentsResponse.readEntity(String.class), Receipt.class).getReferenceId();
+
+            event = readEvent(stream);
+            assertEquals(Resources.NOTIFICATION_EVENT, event.get("event"));
+            Notification notification = gson.fromJson(event.get("data"), Notification.class);
+            assertEquals(commentId, notification.getContentId());
+            assertEquals(Long.parseLong(event.get("id")), notification.getId());
+        }
+
+        // Comment again while disconnected, then resume, and ensure only the missed notification is replayed
+        Response commentsResponse = apiClient.addComment(id, PHOTO_COMMENT, comment);
+        long missedId = gson.fromJson(commentsResponse.readEntity(String.class), Receipt.class).getReferenceId();
+        streamResponse = apiClient.getNotificationStream(Long.parseLong(event.get("id")));
+        assertEquals(Response.Status.OK.getStatusCode(), streamResponse.getStatus());
+        try (BufferedReader stream = new BufferedReader(new InputStreamReader(
+                streamResponse.readEntity(InputStream.class), StandardCharsets.UTF_8))) {
+            Notification notification = gson.fromJson(readEvent(stream).get("data"), Notification.class);
+            assertEquals(missedId, notification.getContentId());
+        }
+    }
+
+    @Test(timeout = 30 * 1000)
+    public void slowNotificationStreamTest() throws InvalidResourceRequestException, InterruptedException {
+        // Add sample user and register it, and upload 'photo'
+        loginAndSetupNewUser(username);
+        Response response = apiClient.uploadPhoto(photoName, ext, description, albumId, contents);
+        long id = gson.fromJson(response.readEntity(String.class), Receipt.class).getReferenceId();
+
+        // Open a stream whose client never finishes reading, and one which keeps up
+        CountDownLatch release = new CountDownLatch(1), closed = new CountDownLatch(1);
+        BlockingQueue<Notification> received = new LinkedBlockingQueue<>();
+        resolver.openNotificationStream(username, null, new NotificationStreams.Listener() {
+            @Override
+            public void onNotification(Notification notification) {
+                try {
+                    release.await();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            @Override
+            public void onKeepAlive() {}
+
+            @Override
+            public void onClose() {
+                closed.countDown();
+            }
+        });
+        NotificationStreams.Subscription healthy = resolver.openNotificationStream(username, null,
+                new NotificationStreams.Listener() {
+                    @Override
+                    public void onNotification(Notification notification) {
+                        received.add(notification);
+                    }
+
+                    @Override
+                    public void onKeepAlive() {}
+
+                    @Override
+                    public void onClose() {}
+                });
+        long dropped = resolver.getNotificationStreamStats().getDropped();
+
+        // Comment more times than a stream's queue holds, and ensure the healthy stream gets every notification
+        int comments = 70;
+        for(int i = 0; i < comments; i++) apiClient.addComment(id, PHOTO_COMMENT, comment);
+        for(int i = 0; i < comments; i++) assertNotNull(received.poll(5, TimeUnit.SECONDS));
+
+        // Ensure the stalled stream was dropped, rather than holding everything up
+        closed.await();
+        assertEquals(dropped + 1, resolver.getNotificationStreamStats().getDropped());
+        release.countDown();
+        healthy.close();
+    }
+
+    /**
+     * Reads the next event from a stream of server-sent events, skipping comments
+     * @return the event's fields
+     */
+    private Map<String, String> readEvent(BufferedReader stream) throws IOException {
+        Map<String, String> fields = new HashMap<>();
+        String line;
+        while((line = stream.readLine()) != null) {
+            if(line.isEmpty()) {
+                if(fields.containsKey("data")) return fields;
+                continue;
+            }
+            if(line.startsWith(":")) continue;
+
+            int colon = line.indexOf(':');
+            fields.put(line.substring(0, colon), line.substring(colon + 1).trim());
+        }
+        return fields;
+    }
 }
@@ -1,15 +1,26 @@
 import org.junit.Test;
+import server.datastore.CacheStats;
+import server.datastore.LikeBufferStats;
 import server.datastore.exceptions.InvalidResourceRequestException;
+import server.objects.LikersPage;
 import server.objects.Photo;
 import server.objects.PhotoResult;
 import server.objects.Receipt;
 
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.Response;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeFalse;
+import static org.junit.Assume.assumeNotNull;
 
 public class PhotoAPITests extends TestUtility{
 
@@ -29,6 +40,24 @@ public class PhotoAPITests extends TestUtility{
         assertEquals(description, photos.get(0).getDescription());
     }
 
+    @Test
+    public void uploadRawPhotoTest() throws InvalidResourceRequestException {
+        // Add sample user and register it
+        loginAndSetupNewUser(username);
+
+        // Upload 'photo' as raw bytes, with details which need encoding in headers
+        String description = "a description, with spaces & symbols";
+        Response response = apiClient.uploadRawPhoto(photoName, ext, description, albumId, contents);
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        long id = gson.fromJson(response.readEntity(String.class), Receipt.class).getReferenceId();
+
+        // Check server has record of photo, and that its contents are unchanged
+        List<Photo> photos = resolver.getPhotos(this.username);
+        assertEquals(photoName, photos.get(0).getPhotoName());
+        assertEquals(description, photos.get(0).getDescription());
+        assertArrayEquals(contents, apiClient.getPhotoContentsJPG(id, ext).readEntity(byte[].class));
+    }
+
     @Test
     public void uploadSamePhotoTest() throws InvalidResourceRequestException {
         // Add sample user and register it
@@ -78,6 +107,37 @@ public class PhotoAPITests extends TestUtility{
         }
     }
 
+    @Test
+    public void getPhotosInTimeRangeTest() {
+        // Add sample user and register it
+        loginAndSetupNewUser(username);
+        long before = System.currentTimeMillis() - 60 * 1000, after = System.currentTimeMillis() + 60 * 1000;
+
+        // Upload 'photo' (byte[])
+        Response response = apiClient.uploadPhoto(photoName, ext, description, albumId, contents);
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        long id = gson.fromJson(response.readEntity(String.class), Receipt.class).getReferenceId();
+
+        // Check only ranges containing the photo's time find it, for both the user and the album
+        PhotoResult[] photos = gson.fromJson(apiClient.getAllPhotos(username, before, after)
+                .readEntity(String.class), PhotoResult[].class);
+        assertEquals(1, photos.length);
+        assertEquals(id, photos[0].getPhoto().getId());
+        photos = gson.fromJson(apiClient.getAllPhotos(albumId, before, null)
+                .readEntity(String.class), PhotoResult[].class);
+        assertEquals(1, photos.length);
+        photos = gson.fromJson(apiClient.getAllPhotos(username, after, null)
+                .readEntity(String.class), PhotoResult[].class);
+        assertEquals(0, photos.length);
+        photos = gson.fromJson(apiClient.getAllPhotos(albumId, null, before)
+                .readEntity(String.class), PhotoResult[].class);
+        assertEquals(0, photos.length);
+
+        // Check a range which ends before it starts is rejected
+        response = apiClient.getAllPhotos(username, after, before);
+        assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), response.getStatus());
+    }
+
     @Test
     public void get0PhotosFromUserTest() {
         // Add sample user and register it
@@ -112,11 +172,154 @@ public class PhotoAPITests extends TestUtility{
         assertEquals(photo.getAuthorName(), username);
         assertEquals(photo.getPhotoName(), photoName);
 
-        // Make separate request for photo contents
-        byte[] receivedContents = apiClient.getPhotoContentsJPG(id, ext).readEntity(byte[].class);
+        // Make separate request for photo contents, which should report its length up front
+        Response contentsResponse = apiClient.getPhotoContentsJPG(id, ext);
+        assertEquals(contents.length, contentsResponse.getLength());
+        byte[] receivedContents = contentsResponse.readEntity(byte[].class);
         assertArrayEquals(contents, receivedContents);
     }
 
+    @Test
+    public void photoContentsConditionalGetTest() {
+        // Add sample user and register it, and upload the same contents twice
+        loginAndSetupNewUser(username);
+        long id = gson.fromJson(apiClient.uploadPhoto(photoName, ext, description, albumId, contents)
+                .readEntity(String.class), Receipt.class).getReferenceId();
+        long id2 = gson.fromJson(apiClient.uploadPhoto(photoName, ext, description, albumId, contents)
+                .readEntity(String.class), Receipt.class).getReferenceId();
+
+        // Ensure the contents are tagged with their hash, and may be cached indefinitely
+        Response contentsResponse = apiClient.getPhotoContentsJPG(id, ext);
+        assertEquals(Response.Status.OK.getStatusCode(), contentsResponse.getStatus());
+        String eTag = contentsResponse.getHeaderString(HttpHeaders.ETAG);
+        assertNotNull(eTag);
+        assertTrue(contentsResponse.getHeaderString(HttpHeaders.CACHE_CONTROL).contains("immutable"));
+        assertArrayEquals(contents, contentsResponse.readEntity(byte[].class));
+
+        // Identical contents get the same tag
+        assertEquals(eTag, apiClient.getPhotoContentsJPG(id2, ext).getHeaderString(HttpHeaders.ETAG));
+
+        // Ensure nothing is sent when the client already has the contents
+        Response notModified = apiClient.getPhotoContentsJPG(id, ext, eTag);
+        assertEquals(Response.Status.NOT_MODIFIED.getStatusCode(), notModified.getStatus());
+        assertEquals(eTag, notModified.getHeaderString(HttpHeaders.ETAG));
+        assertFalse(notModified.hasEntity());
+
+        // Ensure the contents are sent when the client has something else
+        Response modified = apiClient.getPhotoContentsJPG(id, ext, "\"other\"");
+        assertEquals(Response.Status.OK.getStatusCode(), modified.getStatus());
+        assertArrayEquals(contents, modified.readEntity(byte[].class));
+    }
+
+    @Test
+    public void photoContentsRangeTest() {
+        // Add sample user and register it, and upload a photo
+        loginAndSetupNewUser(username);
+        long id = gson.fromJson(apiClient.uploadPhoto(photoName, ext, description, albumId, contents)
+                .readEntity(String.class), Receipt.class).getReferenceId();
+        Response whole = apiClient.getPhotoContentsJPG(id, ext);
+        assertEquals("bytes", whole.getHeaderString("Accept-Ranges"));
+        String eTag = whole.getHeaderString(HttpHeaders.ETAG);
+
+        // Request a single range, and the last bytes
+        Response range = apiClient.getPhotoContentsJPGRange(id, ext, "bytes=1-2", null);
+        assertEquals(Response.Status.PARTIAL_CONTENT.getStatusCode(), range.getStatus());
+        assertEquals("bytes 1-2/5", range.getHeaderString("Content-Range"));
+        assertArrayEquals(new byte[] {2, 3}, range.readEntity(byte[].class));
+        range = apiClient.getPhotoContentsJPGRange(id, ext, "bytes=-2", eTag);
+        assertEquals(Response.Status.PARTIAL_CONTENT.getStatusCode(), range.getStatus());
+        assertArrayEquals(new byte[] {4, 5}, range.readEntity(byte[].class));
+
+        // Request several ranges, which are sent as separate parts
+        range = apiClient.getPhotoContentsJPGRange(id, ext, "bytes=0-0,3-", null);
+        assertEquals(Response.Status.PARTIAL_CONTENT.getStatusCode(), range.getStatus());
+        assertEquals("multipart", range.getMediaType().getType());
+        assertEquals("byteranges", range.getMediaType().getSubtype());
+        String body = range.readEntity(String.class);
+        assertTrue(body.contains("Content-Range: bytes 0-0/5"));
+        assertTrue(body.contains("Content-Range: bytes 3-4/5"));
+
+        // Ensure ranges outside the contents are rejected
+        range = apiClient.getPhotoContentsJPGRange(id, ext, "bytes=10-", null);
+        assertEquals(Response.Status.REQUESTED_RANGE_NOT_SATISFIABLE.getStatusCode(), range.getStatus());
+        assertEquals("bytes */5", range.getHeaderString("Content-Range"));
+
+        // Ensure the whole contents are sent if the client's copy is out of date
+        range = apiClient.getPhotoContentsJPGRange(id, ext, "bytes=1-2", "\"other\"");
+        assertEquals(Response.Status.OK.getStatusCode(), range.getStatus());
+        assertArrayEquals(contents, range.readEntity(byte[].class));
+    }
+
+    @Test
+    public void photoMetaDataCacheTest() throws InvalidResourceRequestException {
+        // Only meaningful when entities are cached
+        CacheStats before = getCacheStats("photos");
+        assumeNotNull(before);
+
+        // Add sample user and register it, and upload a photo
+        loginAndSetupNewUser(username);
+        long id = gson.fromJson(apiClient.uploadPhoto(photoName, ext, description, albumId, contents)
+                .readEntity(String.class), Receipt.class).getReferenceId();
+
+        // Repeated reads should be served from the cache
+        assertEquals(0, resolver.getPhotoMetaData(id).getLikeCount());
+        assertEquals(0, resolver.getPhotoMetaData(id).getLikeCount());
+        CacheStats after = getCacheStats("photos");
+        assertEquals(before.getMisses() + 1, after.getMisses());
+        assertEquals(before.getHits() + 1, after.getHits());
+
+        // Changes to the photo should be seen straight away
+        apiClient.ratePhoto(id, true);
+        assertEquals(1, resolver.getPhotoMetaData(id).getLikeCount());
+        apiClient.updatePhotoDescription(id, "new description");
+        assertEquals("new description", resolver.getPhotoMetaData(id).getDescription());
+    }
+
+    /**
+     * @param name the name of the cache
+     * @return the given cache's stats, or null if it doesn't exist
+     */
+    private CacheStats getCacheStats(String name) {
+        for(CacheStats stats : resolver.getCacheStats()) {
+            if(stats.getName().equals(name)) return stats;
+        }
+        return null;
+    }
+
+    @Test
+    public void getPhotosQueryCountTest() throws InvalidResourceRequestException {
+        // Only meaningful when backed by a database
+        assumeNotNull(resolver.getPoolStats());
+
+        // Add sample user and register it
+        loginAndSetupNewUser(username);
+
+        // Upload and like a single photo, and count the statements needed to list it
+        long id = gson.fromJson(apiClient.uploadPhoto(photoName, ext, description, albumId, contents)
+                .readEntity(String.class), Receipt.class).getReferenceId();
+        apiClient.ratePhoto(id, true);
+        long statements = resolver.getPoolStats().getStatements();
+        assertEquals(1, resolver.getPhotos(albumId).size());
+        long singlePhoto = resolver.getPoolStats().getStatements() - statements;
+
+        // Upload and like many more photos
+        int n = 50;
+        for(int i = 0; i < n; i++) {
+            id = gson.fromJson(apiClient.uploadPhoto(photoName, ext, description, albumId, contents)
+                    .readEntity(String.class), Receipt.class).getReferenceId();
+            apiClient.ratePhoto(id, true);
+        }
+
+        // Listing every photo should take the same number of statements as listing one
+        statements = resolver.getPoolStats().getStatements();
+        List<Photo> photos = resolver.getPhotos(albumId);
+        long manyPhotos = resolver.getPoolStats().getStatements() - statements;
+
+        assertEquals(n + 1, photos.size());
+        for(Photo p : photos) assertEquals(1, p.getLikeCount());
+        assertEquals(singlePhoto, manyPhotos);
+    }
+
     @Test
     public void ratePhotoTest() throws InvalidResourceRequestException {
         // Add sample user and register it
@@ -130,7 +333,7 @@ public class PhotoAPITests extends TestUtility{
         // Send upvote request to server, and check it was successful on the server.
         Response voteResponse = apiClient.ratePhoto(id, true);
         assertEquals(Response.Status.NO_CONTENT.getStatusCode(), voteResponse.getStatus());
-        assertEquals(1, resolver.getPhotoMetaData(id).getLikes().size());
+        assertEquals(1, resolver.getPhotoMetaData(id).getLikeCount());
     }
 
     @Test
@@ -146,12 +349,12 @@ public class PhotoAPITests extends TestUtility{
         // Send upvote request to server, and check it was successful on the server.
         Response voteResponse = apiClient.ratePhoto(id, true);
         assertEquals(Response.Status.NO_CONTENT.getStatusCode(), voteResponse.getStatus());
-        assertEquals(1, resolver.getPhotoMetaData(id).getLikes().size());
+        assertEquals(1, resolver.getPhotoMetaData(id).getLikeCount());
 
         // Send same upvote request again. Ensure it worked, but that nothing changed on the server
         voteResponse = apiClient.ratePhoto(id, true);
         assertEquals(Response.Status.NO_CONTENT.getStatusCode(), voteResponse.getStatus());
-        assertEquals(1, resolver.getPhotoMetaData(id).getLikes().size());
+        assertEquals(1, resolver.getPhotoMetaData(id).getLikeCount());
     }
 
     @Test
@@ -167,12 +370,107 @@ public class PhotoAPITests extends TestUtility{
         // Send upvote request to server, and check it was successful on the server.
         Response voteResponse = apiClient.ratePhoto(id, true);
         assertEquals(Response.Status.NO_CONTENT.getStatusCode(), voteResponse.getStatus());
-        assertEquals(1, resolver.getPhotoMetaData(id).getLikes().size());
+        assertEquals(1, resolver.getPhotoMetaData(id).getLikeCount());
 
         // Send same upvote request again. Ensure it worked, but that nothing changed on the server
         voteResponse = apiClient.ratePhoto(id, false);
         assertEquals(Response.Status.NO_CONTENT.getStatusCode(), voteResponse.getStatus());
-        assertEquals(0, resolver.getPhotoMetaData(id).getLikes().size());
+        assertEquals(0, resolver.getPhotoMetaData(id).getLikeCount());
+    }
+
+    @Test
+    public void bufferedLikesTest() throws InterruptedException {
+        // Only meaningful when likes are buffered in front of a database
+        assumeFalse(resolver.getLikeBufferStats().isEmpty());
+
+        // Add sample user and register it, and upload a photo
+        loginAndSetupNewUser(username);
+        long id = gson.fromJson(apiClient.uploadPhoto(photoName, ext, description, albumId, contents)
+                .readEntity(String.class), Receipt.class).getReferenceId();
+        LikeBufferStats before = getLikeBufferStats("photos");
+
+        // Toggle the like repeatedly, ending up liked, and check each change is seen straight away
+        int toggles = 9;
+        for(int i = 0; i < toggles; i++) {
+            boolean like = i % 2 == 0;
+            apiClient.ratePhoto(id, like);
+            Photo photo = gson.fromJson(apiClient.getPhotoMetaData(id).readEntity(String.class), PhotoResult.class)
+                    .getPhoto();
+            assertEquals(like ? 1 : 0, photo.getLikeCount());
+            assertEquals(like, photo.isLikedByMe());
+        }
+
+        // Wait for the like to be written, and for nothing to be left waiting
+        long deadline = System.currentTimeMillis() + 5 * 1000;
+        LikeBufferStats after = getLikeBufferStats("photos");
+        while((after.getPending() > 0 || after.getWrites() == before.getWrites())
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+            after = getLikeBufferStats("photos");
+        }
+        assertEquals(0, after.getPending());
+        assertEquals(toggles, after.getChanges() - before.getChanges());
+        assertTrue(after.getWrites() - before.getWrites() < toggles);
+
+        Photo photo = gson.fromJson(apiClient.getPhotoMetaData(id).readEntity(String.class), PhotoResult.class)
+                .getPhoto();
+        assertEquals(1, photo.getLikeCount());
+        assertTrue(photo.isLikedByMe());
+        assertEquals(Arrays.asList(username), gson.fromJson(apiClient.getPhotoLikers(id, 10, null)
+                .readEntity(String.class), LikersPage.class).getLikers());
+    }
+
+    private LikeBufferStats getLikeBufferStats(String name) {
+        for(LikeBufferStats stats : resolver.getLikeBufferStats()) {
+            if(stats.getName().equals(name)) return stats;
+        }
+        return null;
+    }
+
+    @Test
+    public void photoLikersTest() {
+        // Add sample user and register it, and upload a photo
+        loginAndSetupNewUser(username);
+        long id = gson.fromJson(apiClient.uploadPhoto(photoName, ext, description, albumId, contents)
+                .readEntity(String.class), Receipt.class).getReferenceId();
+
+        // Have several other users like the photo, some twice
+        String[] likers = {"Amy", "Ben", "Cat", "Dan", "Eve"};
+        for(String liker : likers) {
+            addUser(liker);
+            apiClient.loginUser(liker, pw);
+            apiClient.ratePhoto(id, true);
+            apiClient.ratePhoto(id, true);
+        }
+
+        // Check the photo reports its count, and whether the viewer liked it, rather than its likers
+        Photo photo = gson.fromJson(apiClient.getPhotoMetaData(id).readEntity(String.class), PhotoResult.class)
+                .getPhoto();
+        assertEquals(likers.length, photo.getLikeCount());
+        assertTrue(photo.isLikedByMe());
+        apiClient.loginUser(username, pw);
+        photo = gson.fromJson(apiClient.getPhotoMetaData(id).readEntity(String.class), PhotoResult.class)
+                .getPhoto();
+        assertEquals(likers.length, photo.getLikeCount());
+        assertFalse(photo.isLikedByMe());
+
+        // Page through the likers, in order
+        List<String> found = new ArrayList<>();
+        String after = null;
+        do {
+            Response response = apiClient.getPhotoLikers(id, 2, after);
+            assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+            LikersPage page = gson.fromJson(response.readEntity(String.class), LikersPage.class);
+            assertTrue(page.getLikers().size() <= 2);
+            found.addAll(page.getLikers());
+            after = page.getNextCursor();
+        } while(after != null);
+        assertEquals(Arrays.asList(likers), found);
+
+        // Check bad page sizes and unknown photos are rejected
+        assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), apiClient.getPhotoLikers(id, 0, null).getStatus());
+        assertEquals(Response.Status.BAD_REQUEST.getStatusCode(),
+                apiClient.getPhotoLikers(id + 1, 2, null).getStatus());
     }
 
     @Test
@@ -0,0 +1,112 @@
+import org.junit.Test;
+import server.objects.Receipt;
+import server.objects.SearchPage;
+import server.objects.SearchResult;
+import server.objects.SearchResultType;
+
+import javax.ws.rs.core.Response;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static server.objects.EventType.PHOTO_COMMENT;
+import static server.objects.EventType.REPLY;
+import static server.objects.SearchResultType.ALBUM;
+import static server.objects.SearchResultType.COMMENT;
+import static server.objects.SearchResultType.PHOTO;
+
+public class SearchAPITests extends TestUtility {
+    @Test
+    public void rankedSearchTest() {
+        // Add sample user and register it
+        loginAndSetupNewUser(username);
+
+        // Upload photos, one of which mentions the sea more than the other, and comment on one
+        long sunset = upload("Sunset over the sea");
+        long waves = upload("sea, sea and more sea");
+        upload("Mountains");
+        Response commentResponse = apiClient.addComment(sunset, PHOTO_COMMENT, "What a lovely SEA");
+        long commentId = gson.fromJson(commentResponse.readEntity(String.class), Receipt.class).getReferenceId();
+
+        // Search, ignoring case, and ensure the photo mentioning the sea most comes first
+        SearchPage page = search("SEA", null, null);
+        assertEquals(3, page.getResults().size());
+        assertResult(page.getResults().get(0), PHOTO, waves);
+        assertNull(page.getNextCursor());
+
+        // Page through the same results one at a time
+        page = search("sea", 2, null);
+        assertEquals(2, page.getResults().size());
+        assertNotNull(page.getNextCursor());
+        page = search("sea", 2, page.getNextCursor());
+        assertEquals(1, page.getResults().size());
+        assertNull(page.getNextCursor());
+
+        // Ensure words only in the comment find it
+        page = search("lovely", null, null);
+        assertEquals(1, page.getResults().size());
+        assertResult(page.getResults().get(0), COMMENT, commentId);
+
+        // Ensure an invalid limit or cursor is rejected
+        assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), apiClient.search("sea", 0, null).getStatus());
+        assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), apiClient.search("sea", 1, "x").getStatus());
+    }
+
+    @Test
+    public void searchFollowsChangesTest() {
+        // Add sample user and register it, then upload a photo and comment on it
+        loginAndSetupNewUser(username);
+        long id = upload("A quiet harbour");
+        Response commentResponse = apiClient.addComment(id, PHOTO_COMMENT, "harbour lights");
+        long commentId = gson.fromJson(commentResponse.readEntity(String.class), Receipt.class).getReferenceId();
+        assertEquals(2, search("harbour", null, null).getResults().size());
+
+        // Edit the photo's and album's descriptions, and the comment
+        assertEquals(Response.Status.NO_CONTENT.getStatusCode(),
+                apiClient.updatePhotoDescription(id, "A busy port").getStatus());
+        apiClient.updateAlbumDescription(albumId, "Summer in the port");
+        apiClient.editComment(commentId, "port lights");
+        assertEquals(0, search("harbour", null, null).getResults().size());
+        assertEquals(3, search("port", null, null).getResults().size());
+        assertResult(search("summer", null, null).getResults().get(0), ALBUM, albumId);
+
+        // Remove the comment and the photo, and ensure neither is found any more
+        assertEquals(Response.Status.NO_CONTENT.getStatusCode(), apiClient.removeComment(commentId).getStatus());
+        assertEquals(Response.Status.NO_CONTENT.getStatusCode(), apiClient.removePhoto(id).getStatus());
+        SearchPage page = search("port", null, null);
+        assertEquals(1, page.getResults().size());
+        assertResult(page.getResults().get(0), ALBUM, albumId);
+    }
+
+    @Test
+    public void searchDropsRemovedPhotoThreadTest() {
+        // Add sample user and register it, then upload a photo and comment on it, and reply to the comment
+        loginAndSetupNewUser(username);
+        long id = upload("A lighthouse");
+        Response commentResponse = apiClient.addComment(id, PHOTO_COMMENT, "lighthouse keeper");
+        long commentId = gson.fromJson(commentResponse.readEntity(String.class), Receipt.class).getReferenceId();
+        apiClient.addComment(commentId, REPLY, "lighthouse beam");
+        assertEquals(3, search("lighthouse", null, null).getResults().size());
+
+        // Remove the photo, and ensure its comments are no longer found either
+        assertEquals(Response.Status.NO_CONTENT.getStatusCode(), apiClient.removePhoto(id).getStatus());
+        assertEquals(0, search("lighthouse", null, null).getResults().size());
+    }
+
+    private long upload(String description) {
+        Response response = apiClient.uploadPhoto(photoName, ext, description, albumId, contents);
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        return gson.fromJson(response.readEntity(String.class), Receipt.class).getReferenceId();
+    }
+
+    private SearchPage search(String query, Integer limit, String after) {
+        Response response = apiClient.search(query, limit, after);
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        return gson.fromJson(response.readEntity(String.class), SearchPage.class);
+    }
+
+    private void assertResult(SearchResult result, SearchResultType type, long id) {
+        assertEquals(type, result.getType());
+        assertEquals(id, result.getId());
+    }
+}
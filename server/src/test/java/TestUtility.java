@@ -26,6 +26,9 @@ public abstract class TestUtility {
     byte[] contents = new byte[] {1, 2, 3, 4, 5};
     String albumName = "albumName", description = "description";
 
+    // Timelines kept by the server hold this many photos, so tests can page past them
+    static final int TIMELINE_CAPACITY = 8;
+
     // Server
     private static final ServerMain server;
     static final RequestResolver resolver;
@@ -40,6 +43,7 @@ public abstract class TestUtility {
         gson = new Gson();
         apiClient = new ApiClient();
 
+        System.setProperty("photoshare.timeline.capacity", String.valueOf(TIMELINE_CAPACITY));
         server = new ServerMain();
         server.startServer();
 
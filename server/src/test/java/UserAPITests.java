@@ -158,6 +158,38 @@ public class UserAPITests extends TestUtility{
         assertEquals(gson.fromJson(users, User[].class).length, 2);
     }
 
+    @Test
+    public void followCountsTest() {
+        // Add sample user and register it
+        loginAndSetupNewUser(username);
+
+        // Set up users who are following our sample user
+        String userFollowingOne = "user_following_one";
+        loginAndSetupNewUser(userFollowingOne);
+        apiClient.followUser(username);
+
+        String userFollowingTwo = "user_following_two";
+        loginAndSetupNewUser(userFollowingTwo);
+        apiClient.followUser(username);
+        apiClient.followUser(userFollowingOne);
+
+        // Check the counts on either side of each following
+        Response response = apiClient.getFollowerCount(username);
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        assertEquals(2, (long) gson.fromJson(response.readEntity(String.class), Long.class));
+
+        response = apiClient.getFollowingCount(userFollowingTwo);
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        assertEquals(2, (long) gson.fromJson(response.readEntity(String.class), Long.class));
+
+        response = apiClient.getFollowerCount(userFollowingTwo);
+        assertEquals(0, (long) gson.fromJson(response.readEntity(String.class), Long.class));
+
+        // Unknown users have no counts
+        response = apiClient.getFollowerCount("unknown_user");
+        assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), response.getStatus());
+    }
+
     @Test
     public void emptyUsersNameSearchTest() {
         // Add sample user and register it
@@ -232,4 +264,30 @@ public class UserAPITests extends TestUtility{
         }
 
     }
+
+    @Test
+    public void usersNameSearchPrefixTest() {
+        // Add users, only some of whose names start with the search term in some case
+        for(String name : new String[] {"alice_bob", "bobby", "BOBBIE", "Bob"}) loginAndSetupNewUser(name);
+        loginAndSetupNewUser(username);
+
+        // Search ignoring case, and ensure the matches come back in alphabetical order
+        Response response = apiClient.getUserWithNameBegining("bob", null);
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        User[] users = gson.fromJson(response.readEntity(String.class), User[].class);
+        assertEquals(3, users.length);
+        assertEquals("Bob", users[0].getUsername());
+        assertEquals("BOBBIE", users[1].getUsername());
+        assertEquals("bobby", users[2].getUsername());
+
+        // Ensure the limit is applied
+        response = apiClient.getUserWithNameBegining("BOB", 2);
+        users = gson.fromJson(response.readEntity(String.class), User[].class);
+        assertEquals(2, users.length);
+        assertEquals("BOBBIE", users[1].getUsername());
+
+        // Ensure an invalid limit is rejected
+        response = apiClient.getUserWithNameBegining("bob", 0);
+        assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), response.getStatus());
+    }
 }
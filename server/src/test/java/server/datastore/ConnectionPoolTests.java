@@ -0,0 +1,109 @@
+package server.datastore;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests of the bounds, timeouts, leak detection and statistics of the connection pool.
+ */
+public class ConnectionPoolTests {
+    private static final String DB_URL = "jdbc:h2:mem:connectionPoolTests";
+    private static final long ACQUIRE_TIMEOUT = 200;
+
+    private ConnectionPool pool;
+
+    @After
+    public void tearDown() {
+        if(pool != null) pool.close();
+    }
+
+    @Test
+    public void acquireTimeoutTest() throws SQLException {
+        pool = new ConnectionPool(DB_URL, "sa", "", 1, 2, ACQUIRE_TIMEOUT, 0);
+
+        // Borrow every connection the pool may open
+        List<Connection> borrowed = new ArrayList<>();
+        borrowed.add(pool.getConnection());
+        borrowed.add(pool.getConnection());
+        assertEquals(2, pool.getStats().getActive());
+
+        // Another borrow should wait for the timeout, and then fail
+        long start = System.currentTimeMillis();
+        try {
+            pool.getConnection();
+            fail("Borrowed more connections than the pool's maximum size");
+        }
+        catch (SQLException e) {
+            assertTrue(System.currentTimeMillis() - start >= ACQUIRE_TIMEOUT);
+        }
+        assertEquals(1, pool.getStats().getTimeouts());
+        assertEquals(2, pool.getStats().getCreated());
+
+        // Once one is returned, it can be borrowed again
+        borrowed.remove(0).close();
+        borrowed.add(pool.getConnection());
+        for(Connection c : borrowed) c.close();
+    }
+
+    @Test
+    public void statsReturnToBaselineTest() throws SQLException, InterruptedException {
+        // Idle connections are trimmed on the same schedule as leak detection, every half threshold
+        pool = new ConnectionPool(DB_URL, "sa", "", 1, 4, ACQUIRE_TIMEOUT, 1000);
+        PoolStats baseline = pool.getStats();
+        assertEquals(0, baseline.getActive());
+        assertEquals(1, baseline.getIdle());
+
+        // Borrow beyond the minimum size
+        List<Connection> borrowed = new ArrayList<>();
+        for(int i = 0; i < 4; i++) borrowed.add(pool.getConnection());
+        PoolStats busy = pool.getStats();
+        assertEquals(4, busy.getActive());
+        assertEquals(0, busy.getIdle());
+
+        // Once all are returned, the pool should shrink back to where it started
+        for(Connection c : borrowed) c.close();
+        assertEquals(0, pool.getStats().getActive());
+        long deadline = System.currentTimeMillis() + 5 * 1000;
+        while(pool.getStats().getIdle() > baseline.getIdle() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        PoolStats after = pool.getStats();
+        assertEquals(baseline.getActive(), after.getActive());
+        assertEquals(baseline.getIdle(), after.getIdle());
+        assertEquals(baseline.getActive() + baseline.getIdle(), after.getActive() + after.getIdle());
+        assertEquals(baseline.getAcquired() + 4, after.getAcquired());
+
+        // Closing a connection twice shouldn't return it twice
+        borrowed.get(0).close();
+        assertEquals(baseline.getIdle(), pool.getStats().getIdle());
+    }
+
+    @Test
+    public void leakDetectionTest() throws SQLException, InterruptedException {
+        long threshold = 100;
+        pool = new ConnectionPool(DB_URL, "sa", "", 0, 2, ACQUIRE_TIMEOUT, threshold);
+
+        // Hold a connection well past the threshold, and check it is reported once
+        try (Connection ignored = pool.getConnection()) {
+            long deadline = System.currentTimeMillis() + 5 * 1000;
+            while(pool.getStats().getLeaks() == 0 && System.currentTimeMillis() < deadline) Thread.sleep(20);
+            assertEquals(1, pool.getStats().getLeaks());
+            Thread.sleep(3 * threshold);
+            assertEquals(1, pool.getStats().getLeaks());
+        }
+
+        // Connections returned in time aren't reported
+        pool.getConnection().close();
+        Thread.sleep(3 * threshold);
+        assertEquals(1, pool.getStats().getLeaks());
+    }
+}
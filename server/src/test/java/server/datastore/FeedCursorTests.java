@@ -0,0 +1,34 @@
+package server.datastore;
+
+import org.junit.Test;
+import server.objects.Photo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of news feed cursors.
+ */
+public class FeedCursorTests {
+
+    @Test
+    public void cursorUsesExactTimeTest() {
+        // Two photos an hour apart, shown with the same local time, as happens when clocks go back
+        String shown = "2018/10/28 01:30:00";
+        long first = 1540686600000L, second = first + 60 * 60 * 1000;
+        Photo earlier = new Photo("John", "name", "jpg", "description", 1, 1, 0, shown, first);
+        Photo later = new Photo("John", "name", "jpg", "description", 2, 1, 0, shown, second);
+
+        // The cursor after the later photo should still place the earlier one after it
+        FeedCursor cursor = FeedCursor.after(later);
+        assertEquals(second, cursor.getPhotoTime());
+        assertTrue(cursor.isOlder(earlier));
+        assertFalse(FeedCursor.after(earlier).isOlder(later));
+
+        // And survive being sent to the client and back
+        FeedCursor decoded = FeedCursor.decode(cursor.encode());
+        assertEquals(second, decoded.getPhotoTime());
+        assertEquals(later.getId(), decoded.getPhotoId());
+    }
+}
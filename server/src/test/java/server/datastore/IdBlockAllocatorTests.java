@@ -0,0 +1,142 @@
+package server.datastore;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static server.datastore.DatabaseResources.*;
+
+/**
+ * Tests of notification ids handed out in blocks from a database sequence.
+ */
+public class IdBlockAllocatorTests {
+    private static final String DB_URL = "jdbc:h2:mem:idBlockAllocatorTests;DB_CLOSE_DELAY=-1";
+
+    // Notifications stored before ids came from the sequence
+    private static final long[] EXISTING_IDS = {0, 1, 2, 500};
+
+    private ConnectionPool pool;
+
+    @Before
+    public void setUp() throws SQLException {
+        pool = new ConnectionPool(DB_URL, "sa", "", 0, 8, 5000, 0);
+        try (Connection conn = pool.getConnection()) {
+            new TableCreator(conn).createTables();
+            try (PreparedStatement stmt = conn.prepareStatement("INSERT INTO "+USERS_TABLE+"("+USERNAME+","
+                    +PASSWORD+","+USERS_ADMIN+") values('John', '1', FALSE)")) {
+                stmt.executeUpdate();
+            }
+            for(long id : EXISTING_IDS) addNotification(conn, id);
+
+            // The sequence is created by the migrations, after the existing notifications
+            new SchemaMigrator(conn).migrate();
+        }
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        try (Connection conn = pool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("DROP ALL OBJECTS")) {
+            stmt.executeUpdate();
+        }
+        pool.close();
+    }
+
+    @Test
+    public void idsAfterRestartTest() throws SQLException {
+        // Add some notifications with allocated ids, leaving the rest of their block unused
+        IdBlockAllocator ids = new IdBlockAllocator(pool, NOTIFICATIONS_SEQUENCE, NOTIFICATIONS_ID_BLOCK);
+        try (Connection conn = pool.getConnection()) {
+            for(int i = 0; i < 3; i++) addNotification(conn, ids.next());
+        }
+
+        // Restart, with a new pool and allocator over the same database, migrating as on start-up
+        pool.close();
+        pool = new ConnectionPool(DB_URL, "sa", "", 0, 8, 5000, 0);
+        try (Connection conn = pool.getConnection()) {
+            new SchemaMigrator(conn).migrate();
+        }
+        ids = new IdBlockAllocator(pool, NOTIFICATIONS_SEQUENCE, NOTIFICATIONS_ID_BLOCK);
+
+        // New ids should come after every stored one, and be accepted as new keys
+        long max = maxNotificationId();
+        try (Connection conn = pool.getConnection()) {
+            for(int i = 0; i < NOTIFICATIONS_ID_BLOCK + 1; i++) {
+                long id = ids.next();
+                assertTrue(String.format("Id %d reused, stored ids go up to %d", id, max), id > max);
+                addNotification(conn, id);
+            }
+        }
+    }
+
+    @Test
+    public void concurrentIdsTest() throws Exception {
+        IdBlockAllocator ids = new IdBlockAllocator(pool, NOTIFICATIONS_SEQUENCE, NOTIFICATIONS_ID_BLOCK);
+
+        // Allocate ids from several threads at once, across many blocks
+        int threads = 8, perThread = 10 * NOTIFICATIONS_ID_BLOCK;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<List<Long>>> results = new ArrayList<>();
+        for(int i = 0; i < threads; i++) {
+            results.add(executor.submit(() -> {
+                start.await();
+                List<Long> allocated = new ArrayList<>();
+                for(int j = 0; j < perThread; j++) allocated.add(ids.next());
+                return allocated;
+            }));
+        }
+        start.countDown();
+
+        // Every id should be distinct, and after the stored ones
+        Set<Long> seen = ConcurrentHashMap.newKeySet();
+        try {
+            for(Future<List<Long>> result : results) {
+                for(long id : result.get(30, TimeUnit.SECONDS)) {
+                    assertTrue(String.format("Id %d handed out twice", id), seen.add(id));
+                    assertTrue(id > EXISTING_IDS[EXISTING_IDS.length - 1]);
+                }
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+        assertEquals(threads * perThread, seen.size());
+    }
+
+    /**
+     * Stores a notification with the given id
+     */
+    private static void addNotification(Connection conn, long id) throws SQLException {
+        String query = "INSERT INTO "+NOTIFICATIONS_TABLE+"("+NOTIFICATIONS_ID+","+CONTENT_ID+","+PARENTNAME+","
+                +USERNAME+","+CONTENT_TYPE+") values(?, 0, 'John', 'John', 'follow')";
+        try (PreparedStatement stmt = conn.prepareStatement(query)) {
+            stmt.setLong(1, id);
+            stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * @return the highest stored notification id
+     */
+    private long maxNotificationId() throws SQLException {
+        try (Connection conn = pool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("SELECT MAX("+NOTIFICATIONS_ID+") FROM "
+                     +NOTIFICATIONS_TABLE)) {
+            ResultSet rs = stmt.executeQuery();
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package server.datastore;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import server.requests.UploadPhotoRequest;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Base64;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+import static server.datastore.DatabaseResources.*;
+
+/**
+ * Tests of how photo contents are moved into, and kept tidy in, the blob store.
+ */
+public class PhotoContentsTests {
+    private static final String DB_URL = "jdbc:h2:mem:photoContentsTests;DB_CLOSE_DELAY=-1";
+    private static final byte[] CONTENTS = new byte[] {1, 2, 3, 4, 5};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ConnectionPool pool;
+    private PhotoBlobStore blobs;
+    private final StripedLocks blobLocks = new StripedLocks(4);
+
+    @Before
+    public void setUp() throws SQLException, IOException {
+        pool = new ConnectionPool(DB_URL, "sa", "", 0, 4, 1000, 0);
+        blobs = new FileSystemPhotoBlobStore(folder.getRoot().toPath());
+        try (Connection conn = pool.getConnection()) {
+            new TableCreator(conn).createTables();
+            new SchemaMigrator(conn).migrate();
+        }
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        try (Connection conn = pool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("DROP ALL OBJECTS")) {
+            stmt.executeUpdate();
+        }
+        pool.close();
+    }
+
+    @Test
+    public void migrateDatabaseContentsTest() throws SQLException, IOException {
+        // Add a photo the way older versions stored it, as base64 text in the photos table
+        long id = insertLegacyPhoto("data:image/jpeg;base64," + Base64.getEncoder().encodeToString(CONTENTS));
+
+        // Migrate, and check the row now points at the decoded contents in the blob store
+        assertEquals(1, new PhotoContentsMigration(pool, blobs, blobLocks).migrate());
+        String hash = FileSystemPhotoBlobStore.toHex(FileSystemPhotoBlobStore.newDigest().digest(CONTENTS));
+        String query = "SELECT "+PHOTOS_CONTENT_HASH+","+PHOTOS_CONTENT_LENGTH+","+PHOTOS_CONTENTS+","
+                +PHOTOS_CONTENT_DECODED+" FROM "+PHOTOS_TABLE+" WHERE "+PHOTOS_ID+" = ?";
+        try (Connection conn = pool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(query)) {
+            stmt.setLong(1, id);
+            ResultSet rs = stmt.executeQuery();
+            assertTrue(rs.next());
+            assertEquals(hash, rs.getString(1));
+            assertEquals(CONTENTS.length, rs.getLong(2));
+            assertNull(rs.getBlob(3));
+            assertTrue(rs.getBoolean(4));
+        }
+        assertArrayEquals(CONTENTS, read(hash));
+
+        // Check running it again finds nothing left to do
+        assertEquals(0, new PhotoContentsMigration(pool, blobs, blobLocks).migrate());
+    }
+
+    @Test
+    public void failedUploadLeavesNoContentsTest() throws SQLException, IOException {
+        // Upload to an album which doesn't exist, so the insert fails after the contents are committed
+        String previous = System.getProperty(DatabaseBackedDataStore.BLOBS_DIR_PROPERTY);
+        System.setProperty(DatabaseBackedDataStore.BLOBS_DIR_PROPERTY, folder.getRoot().getPath());
+        DatabaseBackedDataStore dataStore = new DatabaseBackedDataStore();
+        try {
+            UploadPhotoRequest request = new UploadPhotoRequest("name", "jpg", "description", -1);
+            assertEquals(-1, dataStore.persistUploadPhoto("nobody", request, new ByteArrayInputStream(CONTENTS),
+                    System.currentTimeMillis()));
+        }
+        finally {
+            dataStore.close();
+            if(previous == null) System.clearProperty(DatabaseBackedDataStore.BLOBS_DIR_PROPERTY);
+            else System.setProperty(DatabaseBackedDataStore.BLOBS_DIR_PROPERTY, previous);
+        }
+
+        // Check nothing was left behind, either staged or in the store
+        try (Stream<Path> files = Files.walk(folder.getRoot().toPath())) {
+            assertEquals(0, files.filter(Files::isRegularFile).count());
+        }
+    }
+
+    /**
+     * Adds a photo whose contents are held in the photos table, as older versions stored them
+     * @param encoded the photo's base64 contents
+     * @return the photo's id
+     */
+    private long insertLegacyPhoto(String encoded) throws SQLException {
+        try (Connection conn = pool.getConnection()) {
+            try (PreparedStatement stmt = conn.prepareStatement("INSERT INTO "+USERS_TABLE+"("+USERNAME+","
+                    +PASSWORD+","+USERS_ADMIN+") values('John', '1', FALSE)")) {
+                stmt.executeUpdate();
+            }
+            try (PreparedStatement stmt = conn.prepareStatement("INSERT INTO "+ALBUMS_TABLE+"("+ALBUMS_NAME+","
+                    +USERNAME+","+ALBUMS_DESCRIPTION+","+ALBUMS_TIME+") values('album', 'John', 'description', 0)")) {
+                stmt.executeUpdate();
+            }
+
+            String query = "INSERT INTO "+PHOTOS_TABLE+"("+PHOTOS_NAME+","+PHOTOS_EXT+","+USERNAME+","+ALBUMS_ID+","
+                    +PHOTOS_CONTENTS+","+PHOTOS_TIME+","+PHOTOS_DESCRIPTION+") values('photo', 'jpg', 'John', "
+                    +"(SELECT MAX("+ALBUMS_ID+") FROM "+ALBUMS_TABLE+"), ?, 0, 'description')";
+            try (PreparedStatement stmt = conn.prepareStatement(query, PreparedStatement.RETURN_GENERATED_KEYS)) {
+                stmt.setBytes(1, encoded.getBytes(StandardCharsets.US_ASCII));
+                stmt.executeUpdate();
+                ResultSet keys = stmt.getGeneratedKeys();
+                assertTrue(keys.next());
+                return keys.getLong(1);
+            }
+        }
+    }
+
+    /**
+     * @return the whole of the contents with the given hash
+     */
+    private byte[] read(String hash) throws IOException {
+        try (FileChannel channel = blobs.open(hash)) {
+            ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+            while(buffer.hasRemaining() && channel.read(buffer) != -1) ;
+            return buffer.array();
+        }
+    }
+}
@@ -14,6 +14,7 @@
             this._likes = null
             this.commentsCount = 0
             this.likesCount = 0
+            this.likedByMe = null
         }
 
         static fromJson(data) {
@@ -53,6 +54,14 @@
                 post.likesCount = data.likesCount
             }
 
+            if (data.likeCount !== undefined) {
+                post.likesCount = data.likeCount
+            }
+
+            if (data.likedByMe !== undefined) {
+                post.likedByMe = data.likedByMe
+            }
+
             if (data.albumId) {
                 post.albumId = data.albumId
             }
@@ -144,6 +153,10 @@
         }
 
         userHasUpvoted(username) {
+            if (this.likedByMe !== null) {
+                return this.likedByMe
+            }
+
             return this.likes && this.likes.indexOf(username) !== -1
         }
     }
@@ -6,7 +6,8 @@
             this.postId = postId
             this.username = username
             this.comment = comment
-            this._votes = []
+            this._likeCount = 0
+            this._likedByMe = false
         }
 
         toJson() {
@@ -15,7 +16,8 @@
                 referenceId: this.postId,
                 author: this.username,
                 commentContents: this.comment,
-                votes: this._votes
+                likeCount: this._likeCount,
+                likedByMe: this._likedByMe
             }
         }
 
@@ -27,33 +29,37 @@
 
             let comment = new PostComment(data.id, data.referenceId, data.author, data.commentContents)
 
-            if (data.votes) {
-                comment._votes = data.votes
+            if (data.likeCount) {
+                comment._likeCount = data.likeCount
+            }
+
+            if (data.likedByMe) {
+                comment._likedByMe = data.likedByMe
             }
 
             return comment
         }
 
         get score() {
-            return this._votes.length
-        }
-
-        get votes() {
-            return this._votes
+            return this._likeCount
         }
 
         userHasUpvoted(username) {
-            return this._votes.indexOf(username) !== -1
+            return this._likedByMe
         }
 
         addUpvote(username) {
-            this._votes.push(username)
+            if (this._likedByMe) return
+
+            this._likedByMe = true
+            this._likeCount++
         }
 
         removeUpvote(username) {
-            let pos = this._votes.indexOf(username)
+            if (!this._likedByMe) return
 
-            if (~pos) this._votes.splice(pos, 1)
+            this._likedByMe = false
+            this._likeCount--
         }
     }
 